@@ -0,0 +1,190 @@
+package org.coda.backend;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A backend and its live state. Health, in-flight count and latency are plain fields so the
+ * request path reads them without map lookups.
+ *
+ * <p>The index is assigned when the backend joins the registry and stays the same for its
+ * lifetime; it is not a position in the current snapshot.
+ */
+public class Backend {
+
+  /**
+   * Value of {@link #getWarmupStartNanos()} for a backend that is not warming up.
+   */
+  public static final long NOT_WARMING = Long.MIN_VALUE;
+
+  private final int index;
+  private final String url;
+  private final URI uri;
+  private final String origin;
+  private volatile int weight;
+  private final PeakEwma latency;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private volatile int peerInFlight;
+  private final AtomicInteger healthStreak = new AtomicInteger();
+  private final AtomicLong warmupStartNanos = new AtomicLong(NOT_WARMING);
+  private final CompletableFuture<Void> drained = new CompletableFuture<>();
+  private final AtomicBoolean healthy = new AtomicBoolean(true);
+  private volatile boolean draining;
+
+  public Backend(int index, String url, int weight, long latencyDecayNanos) {
+    this.index = index;
+    this.url = url;
+    this.uri = URI.create(url);
+    this.origin = uri.getScheme() + "://" + uri.getRawAuthority();
+    this.weight = weight;
+    this.latency = new PeakEwma(latencyDecayNanos);
+  }
+
+  public int getIndex() {
+    return index;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public URI getUri() {
+    return uri;
+  }
+
+  /**
+   * Returns the URI of {@code target}, a path and query string, on this backend. The target is
+   * appended to the scheme and authority rather than resolved against them, so it cannot name
+   * another host; one that does not start with a single slash is rejected.
+   *
+   * @throws IllegalArgumentException if {@code target} is not a path
+   */
+  public URI resolve(String target) {
+    if (!target.startsWith("/") || target.startsWith("//")) {
+      throw new IllegalArgumentException("Not a path: " + target);
+    }
+    return URI.create(origin + target);
+  }
+
+  public int getWeight() {
+    return weight;
+  }
+
+  void setWeight(int weight) {
+    this.weight = weight;
+  }
+
+  public PeakEwma getLatency() {
+    return latency;
+  }
+
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  public void incrementInFlight() {
+    inFlight.incrementAndGet();
+  }
+
+  public void decrementInFlight() {
+    if (inFlight.decrementAndGet() == 0 && draining) {
+      drained.complete(null);
+    }
+  }
+
+  /**
+   * Returns the requests in flight to this backend from this instance and, in cluster mode, from
+   * its peers as they last reported them.
+   */
+  public int getClusterInFlight() {
+    return inFlight.get() + peerInFlight;
+  }
+
+  public void setPeerInFlight(int peerInFlight) {
+    this.peerInFlight = peerInFlight;
+  }
+
+  public boolean isHealthy() {
+    return healthy.get();
+  }
+
+  public void setHealthy(boolean healthy) {
+    this.healthy.set(healthy);
+  }
+
+  /**
+   * Records a health observation. The backend turns healthy after {@code rise} consecutive
+   * successes and unhealthy after {@code fall} consecutive failures. Streaks stop counting at
+   * their threshold, so a backend that was put back by {@link #setHealthy} after a failure flips
+   * again on the next one; until then further matching observations are plain reads.
+   *
+   * @return {@code true} if this observation changed the health of the backend
+   */
+  public boolean recordHealth(boolean success, int rise, int fall) {
+    int current;
+    int updated;
+    do {
+      current = healthStreak.get();
+      updated = success
+          ? Math.min(Math.max(current, 0) + 1, rise)
+          : Math.max(Math.min(current, 0) - 1, -fall);
+    } while (current != updated && !healthStreak.compareAndSet(current, updated));
+
+    if (success
+        ? updated < rise || healthy.get() || !healthy.compareAndSet(false, true)
+        : updated > -fall || !healthy.get() || !healthy.compareAndSet(true, false)) {
+      return false;
+    }
+    if (success) {
+      startWarmup();
+    }
+    return true;
+  }
+
+  /**
+   * Returns when the backend last joined or recovered, or {@link #NOT_WARMING} if it has served
+   * at full weight since.
+   */
+  public long getWarmupStartNanos() {
+    return warmupStartNanos.get();
+  }
+
+  /**
+   * Marks the backend as just joined or recovered, so slow start ramps its share of traffic up.
+   */
+  public void startWarmup() {
+    warmupStartNanos.set(System.nanoTime());
+  }
+
+  /**
+   * Ends the warm-up that began at {@code startNanos}, unless a newer one has begun since.
+   */
+  public void finishWarmup(long startNanos) {
+    warmupStartNanos.compareAndSet(startNanos, NOT_WARMING);
+  }
+
+  public boolean isDraining() {
+    return draining;
+  }
+
+  /**
+   * Stops the backend from being selected. The returned future completes once the requests that
+   * were already in flight have finished.
+   */
+  CompletableFuture<Void> drain() {
+    draining = true;
+    if (inFlight.get() == 0) {
+      drained.complete(null);
+    }
+    return drained;
+  }
+
+  @Override
+  public String toString() {
+    return url;
+  }
+
+}
@@ -0,0 +1,73 @@
+package org.coda.backend;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.coda.config.AppConfig;
+
+/**
+ * Applies {@code loadbalancer.backends} and {@code loadbalancer.weights} from an external
+ * properties file to the registry, once on start and again whenever the file changes.
+ *
+ * <p>A file that cannot be read or parsed, or that lists no backends, is logged and ignored so a
+ * half-written edit never empties the pool.
+ */
+public class BackendConfigWatcher implements Runnable {
+
+  private final Path file;
+  private final BackendRegistry backendRegistry;
+  private final Logger logger = Logger.getLogger(getClass().getName());
+
+  public BackendConfigWatcher(Path file, BackendRegistry backendRegistry) {
+    this.file = file.toAbsolutePath();
+    this.backendRegistry = backendRegistry;
+  }
+
+  @Override
+  public void run() {
+    try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+      file.getParent().register(watchService,
+                                StandardWatchEventKinds.ENTRY_CREATE,
+                                StandardWatchEventKinds.ENTRY_MODIFY);
+      reload();
+      while (!Thread.currentThread().isInterrupted()) {
+        WatchKey key = watchService.take();
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+          changed |= file.getFileName().equals(event.context());
+        }
+        key.reset();
+        if (changed) {
+          reload();
+        }
+      }
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    } catch (IOException | ClosedWatchServiceException exception) {
+      logger.log(Level.SEVERE, "Stopped watching " + file, exception);
+    }
+  }
+
+  void reload() {
+    try {
+      AppConfig config = AppConfig.load(file);
+      List<String> urls = config.getBackends();
+      if (urls.isEmpty()) {
+        logger.log(Level.WARNING, "Ignoring {0}: no backends listed", file);
+        return;
+      }
+      backendRegistry.update(urls, config.getBackendWeights());
+    } catch (IOException | RuntimeException exception) {
+      logger.log(Level.WARNING, "Ignoring " + file + ": " + exception.getMessage(), exception);
+    }
+  }
+
+}
@@ -0,0 +1,169 @@
+package org.coda.backend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.coda.config.AppConfig;
+
+/**
+ * Holds the current set of backends as an immutable array. Readers take the array once per
+ * request and index into it; changes publish a new array.
+ *
+ * <p>Changes are serialized on the registry. A drained backend leaves the snapshot at once, so no
+ * new requests are routed to it, and is handed to the removal listeners after its in-flight
+ * requests have finished.
+ *
+ * <p>Backends that serve configured routes are registered with the others, so they are health
+ * checked and reported alike, but stay registered whatever a backends file lists.
+ */
+public class BackendRegistry {
+
+  private final long latencyDecayNanos;
+  private final Set<String> routed;
+  private final List<Backend> draining = new CopyOnWriteArrayList<>();
+  private final List<Consumer<Backend>> removalListeners = new CopyOnWriteArrayList<>();
+  private final Logger logger = Logger.getLogger(getClass().getName());
+  private volatile Backend[] snapshot;
+  private int nextIndex;
+
+  public BackendRegistry(List<Backend> backends, long latencyDecayNanos) {
+    this(backends, latencyDecayNanos, Set.of());
+  }
+
+  /**
+   * Creates a registry whose {@link #update(List, List)} never drains the backends in
+   * {@code routed}.
+   */
+  public BackendRegistry(List<Backend> backends, long latencyDecayNanos, Set<String> routed) {
+    this.latencyDecayNanos = latencyDecayNanos;
+    this.routed = routed;
+    this.snapshot = backends.toArray(new Backend[0]);
+    this.nextIndex = backends.stream().mapToInt(Backend::getIndex).max().orElse(-1) + 1;
+  }
+
+  public static BackendRegistry fromConfig(AppConfig appConfig) {
+    List<String> urls = appConfig.getBackends();
+    List<Integer> weights = weightsFor(urls, appConfig.getBackendWeights());
+    long latencyDecayNanos = TimeUnit.MILLISECONDS.toNanos(appConfig.getLatencyDecayMs());
+    List<Backend> backends = new ArrayList<>();
+    for (int i = 0; i < urls.size(); i++) {
+      backends.add(new Backend(i, urls.get(i), weights.get(i), latencyDecayNanos));
+    }
+    Set<String> routed = new LinkedHashSet<>();
+    appConfig.getRoutes().values().forEach(routed::addAll);
+    for (String url : routed) {
+      if (!urls.contains(url)) {
+        backends.add(new Backend(backends.size(), url, 1, latencyDecayNanos));
+      }
+    }
+    return new BackendRegistry(backends, latencyDecayNanos, Set.copyOf(routed));
+  }
+
+  private static List<Integer> weightsFor(List<String> urls, List<Integer> weights) {
+    if (weights.isEmpty()) {
+      return urls.stream().map(url -> 1).toList();
+    }
+    if (weights.size() != urls.size()) {
+      throw new IllegalStateException(String.format(
+          "Expected %d backend weights but got %d", urls.size(), weights.size()));
+    }
+    return weights;
+  }
+
+  public Backend[] snapshot() {
+    return snapshot;
+  }
+
+  public List<Backend> draining() {
+    return List.copyOf(draining);
+  }
+
+  public void onRemoved(Consumer<Backend> listener) {
+    removalListeners.add(listener);
+  }
+
+  /**
+   * Adds a backend, or changes its weight if it is already registered. A new backend starts
+   * warming up.
+   */
+  public synchronized Backend add(String url, int weight) {
+    Backend[] current = snapshot;
+    for (Backend backend : current) {
+      if (backend.getUrl().equals(url)) {
+        if (backend.getWeight() != weight) {
+          backend.setWeight(weight);
+          // A new array makes strategies that cache per snapshot pick up the weight.
+          snapshot = current.clone();
+          logger.log(Level.INFO, "Backend {0} reweighted to {1}", new Object[]{url, weight});
+        }
+        return backend;
+      }
+    }
+    Backend backend = new Backend(nextIndex++, url, weight, latencyDecayNanos);
+    backend.startWarmup();
+    Backend[] updated = Arrays.copyOf(current, current.length + 1);
+    updated[current.length] = backend;
+    snapshot = updated;
+    logger.log(Level.INFO, "Backend {0} added with weight {1}", new Object[]{url, weight});
+    return backend;
+  }
+
+  /**
+   * Removes a backend from selection and releases it once its in-flight requests finish.
+   *
+   * @return {@code false} if no backend with this URL is registered
+   */
+  public synchronized boolean drain(String url) {
+    Backend[] current = snapshot;
+    Backend[] updated = Arrays.stream(current)
+        .filter(backend -> !backend.getUrl().equals(url))
+        .toArray(Backend[]::new);
+    if (updated.length == current.length) {
+      return false;
+    }
+    snapshot = updated;
+    for (Backend backend : current) {
+      if (backend.getUrl().equals(url)) {
+        draining.add(backend);
+        logger.log(Level.INFO, "Backend {0} draining ({1} in flight)",
+                   new Object[]{url, backend.getInFlight()});
+        backend.drain().thenRun(() -> release(backend));
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Makes the registered backends match {@code urls}: missing backends are added, existing ones
+   * are reweighted and backends that are no longer listed are drained, unless they serve a route.
+   */
+  public synchronized void update(List<String> urls, List<Integer> weights) {
+    List<Integer> resolvedWeights = weightsFor(urls, weights);
+    Set<String> wanted = new HashSet<>(urls);
+    List<String> stale = new ArrayList<>();
+    for (Backend backend : snapshot) {
+      if (!wanted.contains(backend.getUrl()) && !routed.contains(backend.getUrl())) {
+        stale.add(backend.getUrl());
+      }
+    }
+    for (int i = 0; i < urls.size(); i++) {
+      add(urls.get(i), resolvedWeights.get(i));
+    }
+    stale.forEach(this::drain);
+  }
+
+  private void release(Backend backend) {
+    draining.remove(backend);
+    logger.log(Level.INFO, "Backend {0} removed", backend);
+    removalListeners.forEach(listener -> listener.accept(backend));
+  }
+
+}
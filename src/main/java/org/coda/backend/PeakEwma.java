@@ -0,0 +1,62 @@
+package org.coda.backend;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Peak-EWMA of a backend's response times.
+ *
+ * <p>A sample above the current estimate replaces it immediately; lower samples are blended in
+ * with a weight that grows with the time since the previous sample, so the estimate decays with
+ * a time constant of {@code decayNanos} rather than per request. Reads decay the estimate towards
+ * zero as well, which lets an idle backend that was slow earn traffic back.
+ *
+ * <p>The cost is stored as raw double bits, so updates are a CAS loop with no locks or
+ * allocation. The time stamp is written after the cost; a reader racing with a writer may apply
+ * slightly too much or too little decay once, which is harmless for routing.
+ */
+public class PeakEwma {
+
+  static final long DEFAULT_RTT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  private final double decayNanos;
+  private final AtomicLong costBits = new AtomicLong(Double.doubleToRawLongBits(DEFAULT_RTT_NANOS));
+  private volatile long stamp = System.nanoTime();
+
+  public PeakEwma(long decayNanos) {
+    this.decayNanos = decayNanos;
+  }
+
+  public void record(long rttNanos) {
+    record(rttNanos, System.nanoTime());
+  }
+
+  void record(long rttNanos, long nowNanos) {
+    double weight = decayWeight(nowNanos);
+    long currentBits;
+    long updatedBits;
+    do {
+      currentBits = costBits.get();
+      double current = Double.longBitsToDouble(currentBits);
+      double updated = rttNanos > current
+          ? rttNanos
+          : current * weight + rttNanos * (1 - weight);
+      updatedBits = Double.doubleToRawLongBits(updated);
+    } while (!costBits.compareAndSet(currentBits, updatedBits));
+    stamp = nowNanos;
+  }
+
+  public double cost() {
+    return cost(System.nanoTime());
+  }
+
+  double cost(long nowNanos) {
+    return Double.longBitsToDouble(costBits.get()) * decayWeight(nowNanos);
+  }
+
+  private double decayWeight(long nowNanos) {
+    long elapsed = Math.max(nowNanos - stamp, 0);
+    return Math.exp(-elapsed / decayNanos);
+  }
+
+}
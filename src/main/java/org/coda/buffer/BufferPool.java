@@ -0,0 +1,61 @@
+package org.coda.buffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BufferPool {
+
+  private final int bufferSize;
+  private final int maxPooled;
+  private final Queue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pooled = new AtomicInteger();
+
+  public BufferPool(int bufferSize, int maxPooled) {
+    this.bufferSize = bufferSize;
+    this.maxPooled = maxPooled;
+  }
+
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  public byte[] acquire() {
+    byte[] buffer = buffers.poll();
+    if (buffer == null) {
+      return new byte[bufferSize];
+    }
+    pooled.decrementAndGet();
+    return buffer;
+  }
+
+  public void release(byte[] buffer) {
+    if (buffer.length != bufferSize) {
+      return;
+    }
+    if (pooled.incrementAndGet() > maxPooled) {
+      pooled.decrementAndGet();
+      return;
+    }
+    buffers.offer(buffer);
+  }
+
+  public long transfer(InputStream in, OutputStream out) throws IOException {
+    byte[] buffer = acquire();
+    try {
+      long transferred = 0;
+      int read;
+      while ((read = in.read(buffer)) >= 0) {
+        out.write(buffer, 0, read);
+        transferred += read;
+      }
+      return transferred;
+    } finally {
+      release(buffer);
+    }
+  }
+
+}
@@ -0,0 +1,179 @@
+package org.coda.buffer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request body held in pooled chunks so that it can be sent to more than one backend.
+ *
+ * <p>Only the first {@code maxReplayBytes} are buffered. A larger body keeps the rest of the
+ * inbound stream and can be sent exactly once.
+ */
+public class ReplayableBody {
+
+  private final BufferPool bufferPool;
+  private final List<byte[]> chunks;
+  private final int length;
+  private final InputStream remainder;
+
+  private ReplayableBody(BufferPool bufferPool,
+                         List<byte[]> chunks,
+                         int length,
+                         InputStream remainder) {
+    this.bufferPool = bufferPool;
+    this.chunks = chunks;
+    this.length = length;
+    this.remainder = remainder;
+  }
+
+  public static ReplayableBody read(InputStream in,
+                                    BufferPool bufferPool,
+                                    int maxReplayBytes) throws IOException {
+    List<byte[]> chunks = new ArrayList<>();
+    int chunkSize = bufferPool.getBufferSize();
+    int length = 0;
+    while (length < maxReplayBytes) {
+      byte[] chunk = bufferPool.acquire();
+      chunks.add(chunk);
+      int limit = Math.min(chunkSize, maxReplayBytes - length);
+      int filled = readFully(in, chunk, limit);
+      length += filled;
+      if (filled < limit) {
+        return new ReplayableBody(bufferPool, chunks, length, null);
+      }
+    }
+    PushbackInputStream remainder = new PushbackInputStream(in, 1);
+    int next = remainder.read();
+    if (next < 0) {
+      return new ReplayableBody(bufferPool, chunks, length, null);
+    }
+    remainder.unread(next);
+    return new ReplayableBody(bufferPool, chunks, length, remainder);
+  }
+
+  private static int readFully(InputStream in, byte[] chunk, int limit) throws IOException {
+    int filled = 0;
+    while (filled < limit) {
+      int read = in.read(chunk, filled, limit - filled);
+      if (read < 0) {
+        break;
+      }
+      filled += read;
+    }
+    return filled;
+  }
+
+  public boolean isReplayable() {
+    return remainder == null;
+  }
+
+  public int getBufferedLength() {
+    return length;
+  }
+
+  /**
+   * Returns a stream over the buffered bytes only, leaving any unbuffered remainder unread.
+   */
+  public InputStream bufferedStream() {
+    List<InputStream> streams = new ArrayList<>(chunks.size());
+    int remaining = length;
+    for (byte[] chunk : chunks) {
+      int count = Math.min(chunk.length, remaining);
+      streams.add(new ByteArrayInputStream(chunk, 0, count));
+      remaining -= count;
+    }
+    return new SequenceInputStream(Collections.enumeration(streams));
+  }
+
+  /**
+   * Publishes the buffered chunks without copying them; the chunks must not be released until
+   * the exchange using the publisher has completed.
+   */
+  public BodyPublisher toBodyPublisher() {
+    if (isReplayable()) {
+      return length == 0
+          ? BodyPublishers.noBody()
+          : BodyPublishers.fromPublisher(new ChunkPublisher(), length);
+    }
+    BodyPublisher rest = BodyPublishers.ofInputStream(() -> remainder);
+    return length == 0
+        ? rest
+        : BodyPublishers.concat(BodyPublishers.fromPublisher(new ChunkPublisher(), length), rest);
+  }
+
+  public void release() {
+    chunks.forEach(bufferPool::release);
+    chunks.clear();
+  }
+
+  private class ChunkPublisher implements Flow.Publisher<ByteBuffer> {
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+      subscriber.onSubscribe(new ChunkSubscription(subscriber));
+    }
+  }
+
+  private class ChunkSubscription implements Flow.Subscription {
+
+    private final Flow.Subscriber<? super ByteBuffer> subscriber;
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger emitting = new AtomicInteger();
+    private int nextChunk;
+    private int remaining = length;
+    private volatile boolean done;
+
+    ChunkSubscription(Flow.Subscriber<? super ByteBuffer> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        done = true;
+        subscriber.onError(new IllegalArgumentException("Non-positive request: " + n));
+        return;
+      }
+      demand.getAndUpdate(current -> Long.MAX_VALUE - current < n ? Long.MAX_VALUE : current + n);
+      if (emitting.getAndIncrement() != 0) {
+        return;
+      }
+      do {
+        emit();
+      } while (emitting.decrementAndGet() != 0);
+    }
+
+    @Override
+    public void cancel() {
+      done = true;
+    }
+
+    private void emit() {
+      int chunkSize = bufferPool.getBufferSize();
+      while (!done && remaining > 0 && demand.get() > 0) {
+        int count = Math.min(chunkSize, remaining);
+        ByteBuffer buffer = ByteBuffer.wrap(chunks.get(nextChunk++), 0, count);
+        remaining -= count;
+        demand.decrementAndGet();
+        subscriber.onNext(buffer);
+      }
+      if (!done && remaining == 0) {
+        done = true;
+        subscriber.onComplete();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,101 @@
+package org.coda.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Request method and path plus canonical payload bytes, identifying requests that get the same
+ * response. Two payloads that differ only in the order of their object properties must serialize
+ * to the same bytes before they reach this class.
+ *
+ * <p>Like the names in a {@code Vary} header, {@code headers} holds the request headers the
+ * response depends on, keyed by lower-case name. Requests that differ in any of them never share
+ * a response.
+ */
+public final class CacheKey {
+
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final String method;
+  private final String path;
+  private final byte[] payload;
+  private final Map<String, String> headers;
+  private final long hash;
+  private final int headersLength;
+
+  public CacheKey(String method, String path, byte[] payload) {
+    this(method, path, payload, Map.of());
+  }
+
+  public CacheKey(String method, String path, byte[] payload, Map<String, String> headers) {
+    this.method = method;
+    this.path = path;
+    this.payload = payload;
+    this.headers = Collections.unmodifiableMap(new TreeMap<>(headers));
+    long hash = fnv(payload, fnv(path.getBytes(StandardCharsets.UTF_8),
+                                 fnv(method.getBytes(StandardCharsets.UTF_8), FNV_OFFSET)));
+    int headersLength = 0;
+    for (Map.Entry<String, String> header : this.headers.entrySet()) {
+      byte[] name = header.getKey().getBytes(StandardCharsets.UTF_8);
+      byte[] value = header.getValue().getBytes(StandardCharsets.UTF_8);
+      hash = fnv(value, fnv(new byte[] {':'}, fnv(name, hash)));
+      headersLength += name.length + value.length;
+    }
+    this.hash = hash;
+    this.headersLength = headersLength;
+  }
+
+  private static long fnv(byte[] bytes, long hash) {
+    for (byte b : bytes) {
+      hash = (hash ^ (b & 0xFF)) * FNV_PRIME;
+    }
+    return hash;
+  }
+
+  public String getMethod() {
+    return method;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  public byte[] getPayload() {
+    return payload;
+  }
+
+  /**
+   * Returns the values of the headers the response depends on, by lower-case name.
+   */
+  public Map<String, String> getHeaders() {
+    return headers;
+  }
+
+  long hash() {
+    return hash;
+  }
+
+  int weight() {
+    return method.length() + path.length() + payload.length + headersLength;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return this == other
+        || other instanceof CacheKey key
+           && hash == key.hash
+           && method.equals(key.method)
+           && path.equals(key.path)
+           && Arrays.equals(payload, key.payload)
+           && headers.equals(key.headers);
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(hash);
+  }
+}
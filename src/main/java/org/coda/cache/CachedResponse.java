@@ -0,0 +1,36 @@
+package org.coda.cache;
+
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.ResponseBuilder;
+import java.net.http.HttpHeaders;
+
+/**
+ * Backend response held as the bytes it was received in, so serving it needs no JSON processing.
+ *
+ * @param headers the end-to-end headers to send with it, without those that may not be shared
+ *     between clients
+ */
+public record CachedResponse(int status, String contentType, HttpHeaders headers, byte[] body) {
+
+  public Response toResponse() {
+    ResponseBuilder response = Response.status(status);
+    headers.map().forEach((name, values) -> values.forEach(value -> response.header(name, value)));
+    return response
+        .type(contentType)
+        .entity(body)
+        .build();
+  }
+
+  /**
+   * Returns the size of the body and headers in bytes, roughly.
+   */
+  int weight() {
+    int weight = body.length;
+    for (var header : headers.map().entrySet()) {
+      for (String value : header.getValue()) {
+        weight += header.getKey().length() + value.length();
+      }
+    }
+    return weight;
+  }
+}
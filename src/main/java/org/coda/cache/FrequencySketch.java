@@ -0,0 +1,72 @@
+package org.coda.cache;
+
+/**
+ * Approximate access counts for the TinyLFU admission policy.
+ *
+ * <p>A count-min sketch of 4-bit counters, sixteen to a {@code long}. Each key maps to four
+ * counters and its frequency is the smallest of them, so collisions can only overestimate. After
+ * ten increments per counter slot every counter is halved, which ages out past popularity.
+ */
+final class FrequencySketch {
+
+  private static final long[] SEEDS = {
+      0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final int MAX_COUNT = 15;
+
+  private long[] table = new long[16];
+  private int sampleSize = 10 * table.length;
+  private int additions;
+
+  /**
+   * Grows the sketch to track about {@code entries} keys, forgetting all counts if it grows.
+   */
+  void ensureCapacity(int entries) {
+    int length = Integer.highestOneBit(Math.max(Math.min(entries, 1 << 26) - 1, 15)) << 1;
+    if (length > table.length) {
+      table = new long[length];
+      sampleSize = 10 * length;
+      additions = 0;
+    }
+  }
+
+  int frequency(long hash) {
+    int frequency = MAX_COUNT;
+    for (int i = 0; i < SEEDS.length; i++) {
+      frequency = Math.min(frequency, (int) (table[index(hash, i)] >>> shift(hash, i)) & 0xF);
+    }
+    return frequency;
+  }
+
+  void increment(long hash) {
+    boolean added = false;
+    for (int i = 0; i < SEEDS.length; i++) {
+      int index = index(hash, i);
+      int shift = shift(hash, i);
+      if (((table[index] >>> shift) & 0xF) < MAX_COUNT) {
+        table[index] += 1L << shift;
+        added = true;
+      }
+    }
+    if (added && ++additions >= sampleSize) {
+      reset();
+    }
+  }
+
+  private void reset() {
+    for (int i = 0; i < table.length; i++) {
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    additions /= 2;
+  }
+
+  private int index(long hash, int i) {
+    long h = (hash + SEEDS[i]) * SEEDS[i];
+    h += h >>> 32;
+    return (int) h & (table.length - 1);
+  }
+
+  private static int shift(long hash, int i) {
+    return (int) ((hash >>> (i << 3)) & 0xF) << 2;
+  }
+}
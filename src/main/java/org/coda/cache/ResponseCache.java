@@ -0,0 +1,287 @@
+package org.coda.cache;
+
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import org.coda.config.AppConfig;
+import org.coda.routing.PathPrefixes;
+
+/**
+ * Size-bounded cache of backend responses to JSON POSTs on the configured routes.
+ *
+ * <p>Eviction follows W-TinyLFU. A new entry goes into a small LRU window holding about 1% of the
+ * bytes. When it leaves the window it is admitted to the main space only if a
+ * {@link FrequencySketch} says it has been requested more often than the entry it would push
+ * out, so a burst of one-off payloads cannot flush the popular ones. The main space is a
+ * segmented LRU: entries hit again while on probation move to the protected segment, which holds
+ * up to 80% of the main space.
+ *
+ * <p>Entries are weighed by their key, body, headers and an estimated fixed overhead. All
+ * operations take one lock; they only relink a few nodes, and the caller reads and writes bodies
+ * outside it.
+ */
+public class ResponseCache {
+
+  private static final int ENTRY_OVERHEAD = 128;
+  private static final int WINDOW = 0;
+  private static final int PROBATION = 1;
+  private static final int PROTECTED = 2;
+
+  private final long maxBytes;
+  private final long windowMaxBytes;
+  private final long protectedMaxBytes;
+  private final int maxEntryBytes;
+  private final PathPrefixes<Duration> routes;
+  private final LongSupplier nanoClock;
+  private final Map<CacheKey, Node> data = new HashMap<>();
+  private final FrequencySketch sketch = new FrequencySketch();
+  private final Node window = Node.sentinel();
+  private final Node probation = Node.sentinel();
+  private final Node protectedSegment = Node.sentinel();
+  private long windowBytes;
+  private long probationBytes;
+  private long protectedBytes;
+
+  /**
+   * Creates a cache.
+   *
+   * @param maxEntryBytes the largest response body that is stored
+   * @param routes path prefixes to cache and the time to live of their responses when the backend
+   *     sends no {@code Cache-Control}; zero caches only responses the backend marks cacheable
+   */
+  public ResponseCache(long maxBytes, int maxEntryBytes, Map<String, Duration> routes) {
+    this(maxBytes, maxEntryBytes, routes, System::nanoTime);
+  }
+
+  ResponseCache(long maxBytes,
+                int maxEntryBytes,
+                Map<String, Duration> routes,
+                LongSupplier nanoClock) {
+    this.maxBytes = maxBytes;
+    this.windowMaxBytes = Math.max(maxBytes / 100, 1);
+    this.protectedMaxBytes = (maxBytes - windowMaxBytes) * 8 / 10;
+    this.maxEntryBytes = maxEntryBytes;
+    this.routes = PathPrefixes.of(routes);
+    this.nanoClock = nanoClock;
+  }
+
+  /**
+   * Returns the cache configured by {@code appConfig}, or {@code null} if caching is disabled.
+   */
+  public static ResponseCache fromConfig(AppConfig appConfig) {
+    if (!appConfig.isCacheEnabled()) {
+      return null;
+    }
+    Map<String, Duration> routes = new HashMap<>();
+    appConfig.getCacheRoutes().forEach(
+        (prefix, seconds) -> routes.put(prefix, Duration.ofSeconds(seconds)));
+    return new ResponseCache(appConfig.getCacheMaxBytes(),
+                             appConfig.getCacheMaxEntryBytes(),
+                             routes);
+  }
+
+  /**
+   * Returns the time to live of the longest route prefix {@code path} falls under, or
+   * {@code null} if responses for {@code path} are not cached.
+   */
+  public Duration routeTtl(String path) {
+    return routes.match(path);
+  }
+
+  /**
+   * Returns how long a response may be cached: zero if its {@code Cache-Control} forbids it for a
+   * shared cache, {@code s-maxage} or {@code max-age} if present, and {@code routeTtl} otherwise.
+   */
+  public static Duration ttl(HttpHeaders headers, Duration routeTtl) {
+    Duration maxAge = null;
+    Duration sharedMaxAge = null;
+    for (String value : headers.allValues("Cache-Control")) {
+      for (String directive : value.split(",")) {
+        String normalized = directive.trim().toLowerCase(Locale.ROOT);
+        if (normalized.startsWith("no-store")
+            || normalized.startsWith("no-cache")
+            || normalized.startsWith("private")) {
+          return Duration.ZERO;
+        }
+        if (normalized.startsWith("s-maxage=")) {
+          sharedMaxAge = seconds(normalized.substring("s-maxage=".length()), sharedMaxAge);
+        } else if (normalized.startsWith("max-age=")) {
+          maxAge = seconds(normalized.substring("max-age=".length()), maxAge);
+        }
+      }
+    }
+    return sharedMaxAge != null ? sharedMaxAge : maxAge != null ? maxAge : routeTtl;
+  }
+
+  private static Duration seconds(String value, Duration fallback) {
+    try {
+      return Duration.ofSeconds(Long.parseLong(value.replace("\"", "")));
+    } catch (NumberFormatException exception) {
+      return fallback;
+    }
+  }
+
+  /**
+   * Returns the live response for {@code key}, or {@code null}. Misses count towards the key's
+   * frequency as well, so a payload that keeps missing is admitted once it is stored.
+   */
+  public synchronized CachedResponse get(CacheKey key) {
+    sketch.increment(key.hash());
+    Node node = data.get(key);
+    if (node == null) {
+      return null;
+    }
+    if (isExpired(node)) {
+      evict(node);
+      return null;
+    }
+    onHit(node);
+    return node.response;
+  }
+
+  /**
+   * Stores {@code response} for {@code ttl}, unless the time to live is not positive or the body
+   * is larger than the maximum entry size.
+   */
+  public synchronized void put(CacheKey key, CachedResponse response, Duration ttl) {
+    int weight = key.weight() + response.weight() + ENTRY_OVERHEAD;
+    if (ttl.isZero() || ttl.isNegative()
+        || response.body().length > maxEntryBytes
+        || weight > maxBytes) {
+      return;
+    }
+    Node existing = data.get(key);
+    if (existing != null) {
+      evict(existing);
+    }
+    Node node = new Node(key, response, weight, nanoClock.getAsLong() + ttl.toNanos());
+    data.put(key, node);
+    sketch.ensureCapacity(data.size());
+    linkLast(window, node, WINDOW);
+    while (windowBytes > windowMaxBytes) {
+      Node candidate = window.next;
+      unlink(candidate);
+      linkLast(probation, candidate, PROBATION);
+      admit(candidate);
+    }
+  }
+
+  public synchronized int size() {
+    return data.size();
+  }
+
+  /**
+   * Returns the weight of all entries in bytes.
+   */
+  public synchronized long weightedSize() {
+    return windowBytes + probationBytes + protectedBytes;
+  }
+
+  private void onHit(Node node) {
+    switch (node.segment) {
+      case WINDOW -> {
+        unlink(node);
+        linkLast(window, node, WINDOW);
+      }
+      case PROBATION -> {
+        unlink(node);
+        linkLast(protectedSegment, node, PROTECTED);
+        while (protectedBytes > protectedMaxBytes) {
+          Node demoted = protectedSegment.next;
+          unlink(demoted);
+          linkLast(probation, demoted, PROBATION);
+        }
+      }
+      default -> {
+        unlink(node);
+        linkLast(protectedSegment, node, PROTECTED);
+      }
+    }
+  }
+
+  /**
+   * Makes room for {@code candidate}, which has just left the window, by evicting either it or
+   * the least recently used entries of the main space, whichever is requested less often.
+   */
+  private void admit(Node candidate) {
+    while (weightedSize() > maxBytes) {
+      Node victim = probation.next != candidate ? probation.next : candidate.next;
+      if (victim == probation) {
+        victim = protectedSegment.next;
+      }
+      if (victim == protectedSegment) {
+        evict(candidate);
+        return;
+      }
+      if (isExpired(victim)
+          || sketch.frequency(candidate.key.hash()) > sketch.frequency(victim.key.hash())) {
+        evict(victim);
+      } else {
+        evict(candidate);
+        return;
+      }
+    }
+  }
+
+  private boolean isExpired(Node node) {
+    return node.expiresAtNanos - nanoClock.getAsLong() <= 0;
+  }
+
+  private void evict(Node node) {
+    data.remove(node.key);
+    unlink(node);
+  }
+
+  private void linkLast(Node sentinel, Node node, int segment) {
+    node.segment = segment;
+    node.prev = sentinel.prev;
+    node.next = sentinel;
+    sentinel.prev.next = node;
+    sentinel.prev = node;
+    addWeight(segment, node.weight);
+  }
+
+  private void unlink(Node node) {
+    node.prev.next = node.next;
+    node.next.prev = node.prev;
+    node.prev = null;
+    node.next = null;
+    addWeight(node.segment, -node.weight);
+  }
+
+  private void addWeight(int segment, long weight) {
+    switch (segment) {
+      case WINDOW -> windowBytes += weight;
+      case PROBATION -> probationBytes += weight;
+      default -> protectedBytes += weight;
+    }
+  }
+
+  private static final class Node {
+
+    private final CacheKey key;
+    private final CachedResponse response;
+    private final int weight;
+    private final long expiresAtNanos;
+    private int segment;
+    private Node prev;
+    private Node next;
+
+    Node(CacheKey key, CachedResponse response, int weight, long expiresAtNanos) {
+      this.key = key;
+      this.response = response;
+      this.weight = weight;
+      this.expiresAtNanos = expiresAtNanos;
+    }
+
+    static Node sentinel() {
+      Node sentinel = new Node(null, null, 0, 0);
+      sentinel.prev = sentinel;
+      sentinel.next = sentinel;
+      return sentinel;
+    }
+  }
+}
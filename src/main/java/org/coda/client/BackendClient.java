@@ -0,0 +1,119 @@
+package org.coda.client;
+
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import org.coda.backend.Backend;
+
+public class BackendClient implements AutoCloseable {
+
+  private final Duration connectTimeout;
+  private final Duration readTimeout;
+  private final int maxConnectionsPerBackend;
+  private final int maxPendingPerBackend;
+  private final HttpClient.Version version;
+  private final Executor executor;
+  private final ConcurrentMap<Backend, BackendConnectionPool> pools = new ConcurrentHashMap<>();
+  private final HttpClient probeClient;
+
+  public BackendClient(Duration connectTimeout,
+                       Duration readTimeout,
+                       int maxConnectionsPerBackend,
+                       int maxPendingPerBackend,
+                       boolean http2,
+                       Executor executor) {
+    this.connectTimeout = connectTimeout;
+    this.readTimeout = readTimeout;
+    this.maxConnectionsPerBackend = maxConnectionsPerBackend;
+    this.maxPendingPerBackend = maxPendingPerBackend;
+    this.version = http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1;
+    this.executor = executor;
+    this.probeClient = newHttpClient();
+  }
+
+  public CompletableFuture<BackendResponse> send(Backend backend, BackendRequest request) {
+    HttpRequest httpRequest = toHttpRequest(backend, request);
+    BackendConnectionPool pool = backend.isDraining()
+        ? pools.get(backend)
+        : pools.computeIfAbsent(backend, this::newPool);
+    if (pool == null) {
+      return CompletableFuture.failedFuture(
+          new ConnectException("Backend " + backend + " has been removed"));
+    }
+    return pool.send(httpRequest);
+  }
+
+  /**
+   * Sends a health check on a client of its own, so that it neither waits behind nor counts
+   * against the backend's connection cap. The body is discarded.
+   */
+  public CompletableFuture<BackendResponse> probe(Backend backend, BackendRequest request) {
+    return probeClient.sendAsync(toHttpRequest(backend, request), BodyHandlers.discarding())
+        .thenApply(response -> new BackendResponse(response.statusCode(),
+                                                   response.headers(),
+                                                   InputStream.nullInputStream()));
+  }
+
+  /**
+   * Drops the pool of a removed backend. Its connections close once the exchanges still using
+   * them have finished.
+   */
+  public void release(Backend backend) {
+    BackendConnectionPool pool = pools.remove(backend);
+    if (pool != null) {
+      pool.closeWhenIdle();
+    }
+  }
+
+  public List<PoolStats> getPoolStats() {
+    return pools.values()
+        .stream()
+        .map(BackendConnectionPool::stats)
+        .toList();
+  }
+
+  @Override
+  public void close() {
+    pools.values().forEach(BackendConnectionPool::close);
+    pools.clear();
+    probeClient.close();
+  }
+
+  private HttpRequest toHttpRequest(Backend backend, BackendRequest request) {
+    HttpRequest.Builder builder = HttpRequest.newBuilder(backend.resolve(request.path()))
+        .timeout(request.timeout() == null ? readTimeout : request.timeout())
+        .method(request.method(), request.body());
+    if (request.contentType() != null) {
+      builder.header("Content-Type", request.contentType());
+    }
+    request.headers().forEach(builder::header);
+    return builder.build();
+  }
+
+  private HttpClient newHttpClient() {
+    HttpClient.Builder builder = HttpClient.newBuilder()
+        .version(version)
+        .connectTimeout(connectTimeout)
+        .followRedirects(HttpClient.Redirect.NEVER);
+    if (executor != null) {
+      builder.executor(executor);
+    }
+    return builder.build();
+  }
+
+  private BackendConnectionPool newPool(Backend backend) {
+    return new BackendConnectionPool(backend.getUrl(),
+                                     newHttpClient(),
+                                     maxConnectionsPerBackend,
+                                     maxPendingPerBackend);
+  }
+
+}
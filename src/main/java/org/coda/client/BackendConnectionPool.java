@@ -0,0 +1,243 @@
+package org.coda.client;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connections to a single backend.
+ *
+ * <p>Each pool owns its own {@link HttpClient}, so keep-alive connections are never shared across
+ * backends. At most {@code maxConnections} exchanges are in flight at once; further requests wait
+ * in a bounded queue without holding a thread and are dispatched as exchanges finish.
+ *
+ * <p>Cancelling a returned future aborts its exchange, or drops it from the queue if it has not
+ * been dispatched yet. A response that arrives for a cancelled future is closed so its connection
+ * goes back to the pool.
+ *
+ * <p>The JDK client completes its futures on the common pool whatever executor it was built with,
+ * so if it has one, responses are handed back to that executor instead.
+ */
+class BackendConnectionPool implements AutoCloseable {
+
+  private final String backend;
+  private final HttpClient httpClient;
+  private final int maxConnections;
+  private final int maxPending;
+  private final Executor responseExecutor;
+
+  private final AtomicInteger active = new AtomicInteger();
+  private final AtomicInteger pendingCount = new AtomicInteger();
+  private final Queue<PendingExchange> pending = new ConcurrentLinkedQueue<>();
+  private final LongAdder completed = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final AtomicBoolean closed = new AtomicBoolean();
+  private volatile boolean closing;
+
+  BackendConnectionPool(String backend, HttpClient httpClient, int maxConnections, int maxPending) {
+    this.backend = backend;
+    this.httpClient = httpClient;
+    this.maxConnections = maxConnections;
+    this.maxPending = maxPending;
+    this.responseExecutor = httpClient.executor().orElse(Runnable::run);
+  }
+
+  CompletableFuture<BackendResponse> send(HttpRequest request) {
+    if (tryAcquire()) {
+      return dispatch(request);
+    }
+    if (pendingCount.incrementAndGet() > maxPending) {
+      pendingCount.decrementAndGet();
+      rejected.increment();
+      return CompletableFuture.failedFuture(new PoolExhaustedException(backend));
+    }
+    CompletableFuture<BackendResponse> future = new CompletableFuture<>();
+    pending.offer(new PendingExchange(request, future));
+    drainPending();
+    return future;
+  }
+
+  PoolStats stats() {
+    return new PoolStats(backend,
+                         maxConnections,
+                         active.get(),
+                         pendingCount.get(),
+                         completed.sum(),
+                         failed.sum(),
+                         rejected.sum());
+  }
+
+  @Override
+  public void close() {
+    httpClient.close();
+  }
+
+  void closeWhenIdle() {
+    closing = true;
+    closeIfIdle();
+  }
+
+  private void closeIfIdle() {
+    if (closing
+        && active.get() == 0
+        && pendingCount.get() == 0
+        && closed.compareAndSet(false, true)) {
+      // Nothing is in flight, so this only closes idle keep-alive connections.
+      httpClient.shutdownNow();
+    }
+  }
+
+  private boolean tryAcquire() {
+    int current;
+    do {
+      current = active.get();
+      if (current >= maxConnections) {
+        return false;
+      }
+    } while (!active.compareAndSet(current, current + 1));
+    return true;
+  }
+
+  private void release() {
+    active.decrementAndGet();
+    drainPending();
+    closeIfIdle();
+  }
+
+  private void drainPending() {
+    while (!pending.isEmpty() && tryAcquire()) {
+      PendingExchange exchange = pending.poll();
+      if (exchange == null) {
+        active.decrementAndGet();
+        return;
+      }
+      pendingCount.decrementAndGet();
+      CompletableFuture<BackendResponse> future = exchange.future();
+      if (future.isDone()) {
+        // Cancelled while queued; hand the slot to the next exchange.
+        active.decrementAndGet();
+        continue;
+      }
+      CompletableFuture<BackendResponse> dispatched = dispatch(exchange.request());
+      future.whenComplete((response, throwable) -> {
+        if (future.isCancelled()) {
+          dispatched.cancel(true);
+        }
+      });
+      dispatched.whenComplete((response, throwable) -> {
+        if (throwable != null) {
+          future.completeExceptionally(throwable);
+        } else if (!future.complete(response)) {
+          response.close();
+        }
+      });
+    }
+  }
+
+  private CompletableFuture<BackendResponse> dispatch(HttpRequest request) {
+    CompletableFuture<HttpResponse<Flow.Publisher<List<ByteBuffer>>>> exchange;
+    try {
+      exchange = httpClient.sendAsync(request, BodyHandlers.ofPublisher());
+    } catch (RuntimeException exception) {
+      failed.increment();
+      release();
+      return CompletableFuture.failedFuture(exception);
+    }
+    CompletableFuture<BackendResponse> result = new CompletableFuture<>();
+    result.whenComplete((response, throwable) -> {
+      if (result.isCancelled()) {
+        exchange.cancel(true);
+      }
+    });
+    exchange.whenCompleteAsync((response, throwable) -> {
+      if (throwable != null) {
+        failed.increment();
+        release();
+        result.completeExceptionally(throwable);
+        return;
+      }
+      BackendResponse backendResponse =
+          new BackendResponse(response.statusCode(),
+                              response.headers(),
+                              new ReleasingPublisher(response.body()));
+      if (!result.complete(backendResponse)) {
+        backendResponse.close();
+      }
+    }, responseExecutor);
+    return result;
+  }
+
+  private record PendingExchange(HttpRequest request, CompletableFuture<BackendResponse> future) {
+  }
+
+  /**
+   * Gives the exchange's slot back once its body completes, fails or is cancelled.
+   */
+  private class ReleasingPublisher implements Flow.Publisher<List<ByteBuffer>> {
+
+    private final Flow.Publisher<List<ByteBuffer>> publisher;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    ReleasingPublisher(Flow.Publisher<List<ByteBuffer>> publisher) {
+      this.publisher = publisher;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super List<ByteBuffer>> subscriber) {
+      publisher.subscribe(new Flow.Subscriber<>() {
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+          subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+              subscription.request(n);
+            }
+
+            @Override
+            public void cancel() {
+              subscription.cancel();
+              releaseOnce();
+            }
+          });
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+          subscriber.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+          releaseOnce();
+          subscriber.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+          releaseOnce();
+          subscriber.onComplete();
+        }
+      });
+    }
+
+    private void releaseOnce() {
+      if (released.compareAndSet(false, true)) {
+        completed.increment();
+        release();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,50 @@
+package org.coda.client;
+
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public record BackendRequest(String method,
+                             String path,
+                             String contentType,
+                             BodyPublisher body,
+                             Duration timeout,
+                             Map<String, String> headers) {
+
+  public static BackendRequest get(String path) {
+    return new BackendRequest("GET", path, null, BodyPublishers.noBody(), null, Map.of());
+  }
+
+  public static BackendRequest post(String path, String contentType, BodyPublisher body) {
+    return new BackendRequest("POST", path, contentType, body, null, Map.of());
+  }
+
+  public static BackendRequest of(String method,
+                                  String path,
+                                  String contentType,
+                                  BodyPublisher body) {
+    return new BackendRequest(method, path, contentType, body, null, Map.of());
+  }
+
+  public BackendRequest withTimeout(Duration timeout) {
+    return new BackendRequest(method, path, contentType, body, timeout, headers);
+  }
+
+  public BackendRequest withHeaders(Map<String, String> added) {
+    if (added.isEmpty()) {
+      return this;
+    }
+    Map<String, String> updated = new LinkedHashMap<>(headers);
+    updated.putAll(added);
+    return new BackendRequest(method, path, contentType, body, timeout, Map.copyOf(updated));
+  }
+
+  public BackendRequest withHeader(String name, String value) {
+    Map<String, String> updated = new LinkedHashMap<>(headers);
+    updated.put(name, value);
+    return new BackendRequest(method, path, contentType, body, timeout, Map.copyOf(updated));
+  }
+
+}
@@ -0,0 +1,128 @@
+package org.coda.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A backend's status, headers and body. The body is read once, either as a stream or, for
+ * responses received by the HTTP client, as the buffers the client read from the socket.
+ */
+public class BackendResponse implements AutoCloseable {
+
+  private final int status;
+  private final HttpHeaders headers;
+  private final Flow.Publisher<List<ByteBuffer>> publisher;
+  private final AtomicBoolean subscribed = new AtomicBoolean();
+  private volatile InputStream body;
+
+  public BackendResponse(int status, HttpHeaders headers, InputStream body) {
+    this.status = status;
+    this.headers = headers;
+    this.publisher = null;
+    this.body = body;
+  }
+
+  public BackendResponse(int status,
+                         HttpHeaders headers,
+                         Flow.Publisher<List<ByteBuffer>> publisher) {
+    this.status = status;
+    this.headers = headers;
+    this.publisher = publisher;
+  }
+
+  public int getStatus() {
+    return status;
+  }
+
+  public HttpHeaders getHeaders() {
+    return headers;
+  }
+
+  public String getContentType() {
+    return headers.firstValue("Content-Type").orElse(null);
+  }
+
+  public String getContentEncoding() {
+    return headers.firstValue("Content-Encoding").orElse(null);
+  }
+
+  /**
+   * Returns the body as a stream.
+   *
+   * @throws IllegalStateException if the body buffers were taken instead
+   */
+  public InputStream getBody() {
+    InputStream current = body;
+    if (current == null) {
+      if (!claim()) {
+        throw new IllegalStateException("Response body already taken");
+      }
+      BodySubscriber<InputStream> subscriber = BodySubscribers.ofInputStream();
+      publisher.subscribe(subscriber);
+      // Completes at once; the stream is read as the buffers arrive.
+      current = subscriber.getBody().toCompletableFuture().join();
+      body = current;
+    }
+    return current;
+  }
+
+  /**
+   * Hands the body buffers to the caller, who becomes responsible for requesting them until the
+   * body completes or for cancelling. Returns {@code null} if this response has no buffers to
+   * give, because it was built from a stream or its body has already been read.
+   */
+  public Flow.Publisher<List<ByteBuffer>> takeBodyPublisher() {
+    return claim() ? publisher : null;
+  }
+
+  @Override
+  public void close() {
+    if (claim()) {
+      // Nothing read the body; cancelling frees the connection it would have arrived on.
+      publisher.subscribe(new CancellingSubscriber());
+      return;
+    }
+    InputStream current = body;
+    if (current == null) {
+      return;
+    }
+    try {
+      current.close();
+    } catch (IOException exception) {
+      throw new UncheckedIOException(exception);
+    }
+  }
+
+  private boolean claim() {
+    return publisher != null && subscribed.compareAndSet(false, true);
+  }
+
+  private static final class CancellingSubscriber implements Flow.Subscriber<List<ByteBuffer>> {
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      subscription.cancel();
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> item) {
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+    }
+
+    @Override
+    public void onComplete() {
+    }
+  }
+
+}
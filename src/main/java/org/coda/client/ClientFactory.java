@@ -1,28 +1,25 @@
 package org.coda.client;
 
-import jakarta.ws.rs.client.Client;
-import jakarta.ws.rs.client.ClientBuilder;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.time.Duration;
+import java.util.concurrent.Executor;
 import org.coda.config.AppConfig;
-import org.glassfish.jersey.client.ClientProperties;
-import org.glassfish.jersey.jackson.JacksonFeature;
-import org.glassfish.jersey.logging.LoggingFeature;
 
 public class ClientFactory {
 
-  public static Client create(AppConfig appConfig) {
-    return ClientBuilder.newBuilder()
-        .register(JacksonFeature.class)
-        .property(ClientProperties.CONNECT_TIMEOUT, appConfig.getConnectTimeoutMs())
-        .property(ClientProperties.READ_TIMEOUT, appConfig.getReadTimeoutMs())
-        .register(new LoggingFeature(
-            Logger.getLogger(LoggingFeature.class.getName()),
-            Level.INFO,
-            LoggingFeature.Verbosity.HEADERS_ONLY,
-            Integer.MAX_VALUE
-        ))
-        .build();
+  // Read once by the JDK HTTP client when its connection pool class is first loaded.
+  private static final String KEEP_ALIVE_TIMEOUT_PROPERTY = "jdk.httpclient.keepalive.timeout";
+
+  public static BackendClient create(AppConfig appConfig, Executor executor) {
+    System.setProperty(KEEP_ALIVE_TIMEOUT_PROPERTY,
+                       String.valueOf(appConfig.getKeepAliveTimeoutSec()));
+    return new BackendClient(
+        Duration.ofMillis(appConfig.getConnectTimeoutMs()),
+        Duration.ofMillis(appConfig.getReadTimeoutMs()),
+        appConfig.getMaxConnectionsPerBackend(),
+        appConfig.getMaxPendingPerBackend(),
+        appConfig.isHttp2(),
+        executor
+    );
   }
 
 }
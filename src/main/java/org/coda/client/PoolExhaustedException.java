@@ -0,0 +1,13 @@
+package org.coda.client;
+
+import java.io.IOException;
+
+public class PoolExhaustedException extends IOException {
+
+  private static final long serialVersionUID = 1L;
+
+  public PoolExhaustedException(String backend) {
+    super("Connection pool exhausted for backend " + backend);
+  }
+
+}
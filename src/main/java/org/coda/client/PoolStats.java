@@ -0,0 +1,15 @@
+package org.coda.client;
+
+public record PoolStats(String backend,
+                        int maxConnections,
+                        int activeConnections,
+                        int pendingRequests,
+                        long completedRequests,
+                        long failedRequests,
+                        long rejectedRequests) {
+
+  public double utilization() {
+    return maxConnections == 0 ? 0 : (double) activeConnections / maxConnections;
+  }
+
+}
@@ -0,0 +1,285 @@
+package org.coda.cluster;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.coda.backend.Backend;
+import org.coda.backend.BackendRegistry;
+import org.coda.cluster.GossipMessage.BackendState;
+import org.coda.config.AppConfig;
+import org.coda.health.PeerHealth;
+import org.coda.strategy.KeyHash;
+
+/**
+ * Shares health verdicts, ejections and in-flight counts with the other balancer instances over
+ * UDP, with no coordinator.
+ *
+ * <p>Every gossip interval each instance sends its view of every backend to each configured peer.
+ * A peer is live while its messages keep arriving within the peer timeout. Backends are sharded
+ * across the live instances by rendezvous hashing: each one is probed only by the instance whose
+ * id hashes highest with its URL, and the others count that instance's verdict instead. When an
+ * instance stops gossiping, its backends pass to the survivors within one timeout.
+ *
+ * <p>A circuit that an instance's own traffic opens is opened on its peers as well, within their
+ * ejection caps. The in-flight counts that peers report are added to the local ones, so the
+ * load-aware strategies balance the combined load.
+ *
+ * <p>Datagrams are accepted only from the configured peer addresses, and each instance is known by
+ * a node id that must differ from every peer's; it defaults to the gossip host and port, so that
+ * host must be one the peers can tell apart rather than a wildcard.
+ */
+public class Cluster implements PeerHealth, AutoCloseable {
+
+  private final String host;
+  private final int port;
+  private final String self;
+  private final List<InetSocketAddress> peers;
+  private final Set<InetSocketAddress> peerAddresses;
+  private final long peerTimeoutNanos;
+  private final BackendRegistry backendRegistry;
+  private final ConcurrentMap<String, PeerView> views = new ConcurrentHashMap<>();
+  private final Logger logger = Logger.getLogger(getClass().getName());
+  private volatile Predicate<Backend> ejectedLocally = backend -> false;
+  private volatile Consumer<Backend> ejectForPeer = backend -> {};
+  private DatagramChannel channel;
+
+  /**
+   * Creates a cluster member.
+   *
+   * @param nodeId the id this instance gossips as, unique within the cluster
+   * @param host the address to bind, which may be a wildcard
+   */
+  public Cluster(String nodeId,
+                 String host,
+                 int port,
+                 List<InetSocketAddress> peers,
+                 Duration peerTimeout,
+                 BackendRegistry backendRegistry) {
+    this.host = host;
+    this.port = port;
+    this.self = nodeId;
+    this.peers = peers;
+    this.peerAddresses = Set.copyOf(peers);
+    this.peerTimeoutNanos = peerTimeout.toNanos();
+    this.backendRegistry = backendRegistry;
+  }
+
+  public static Cluster fromConfig(AppConfig appConfig, BackendRegistry backendRegistry) {
+    List<InetSocketAddress> peers = new ArrayList<>();
+    for (String peer : appConfig.getClusterPeers()) {
+      int colon = peer.lastIndexOf(':');
+      if (colon < 0) {
+        throw new IllegalStateException("Cluster peer " + peer + " has no port");
+      }
+      String peerHost = peer.substring(0, colon);
+      int peerPort = Integer.parseInt(peer.substring(colon + 1));
+      InetSocketAddress address = new InetSocketAddress(peerHost, peerPort);
+      if (address.isUnresolved()) {
+        // Its datagrams are matched by address, so none would be accepted.
+        throw new IllegalStateException("Cluster peer " + peer + " does not resolve");
+      }
+      peers.add(address);
+    }
+    String host = appConfig.getClusterHost();
+    int port = appConfig.getClusterPort();
+    String nodeId = appConfig.getClusterNodeId();
+    if (nodeId == null) {
+      InetSocketAddress bound = host == null ? null : new InetSocketAddress(host, port);
+      if (bound == null || bound.isUnresolved() || bound.getAddress().isAnyLocalAddress()) {
+        // Instances on the same port would all call themselves the same and ignore each other.
+        throw new IllegalStateException(
+            "cluster.nodeId must be set when cluster.host is not a concrete address");
+      }
+      nodeId = host + ":" + port;
+    }
+    return new Cluster(nodeId,
+                       host,
+                       port,
+                       peers,
+                       Duration.ofMillis(appConfig.getClusterPeerTimeoutMs()),
+                       backendRegistry);
+  }
+
+  /**
+   * Reports the backends {@code ejectedLocally} accepts as ejected, and passes backends that a
+   * peer has just ejected to {@code ejectForPeer}.
+   */
+  public void shareEjections(Predicate<Backend> ejectedLocally, Consumer<Backend> ejectForPeer) {
+    this.ejectedLocally = ejectedLocally;
+    this.ejectForPeer = ejectForPeer;
+  }
+
+  /**
+   * Binds the gossip port, then receives on a daemon thread and sends from {@code scheduler}
+   * every {@code interval}.
+   */
+  public void start(ScheduledExecutorService scheduler, Duration interval) throws IOException {
+    channel = DatagramChannel.open().bind(new InetSocketAddress(host, port));
+    Thread receiver = new Thread(this::receiveLoop, "cluster-gossip");
+    receiver.setDaemon(true);
+    receiver.start();
+    scheduler.scheduleWithFixedDelay(this::gossip,
+                                     0,
+                                     interval.toNanos(),
+                                     TimeUnit.NANOSECONDS);
+    logger.info(String.format("Gossiping as %s with %s", self, peers));
+  }
+
+  @Override
+  public Boolean probeVerdict(Backend backend) {
+    long now = System.nanoTime();
+    PeerView owner = null;
+    long best = score(self, backend);
+    for (Map.Entry<String, PeerView> view : views.entrySet()) {
+      long score = score(view.getKey(), backend);
+      if (score > best && isLive(view.getValue(), now)) {
+        owner = view.getValue();
+        best = score;
+      }
+    }
+    if (owner == null) {
+      return null;
+    }
+    // A peer that does not know the backend leaves it to be probed here.
+    BackendState state = owner.backends().get(backend.getUrl());
+    return state == null ? null : state.healthy();
+  }
+
+  /**
+   * Applies a message from a peer.
+   */
+  void receive(GossipMessage message, long nowNanos) {
+    if (message.sender().equals(self)) {
+      return;
+    }
+    Map<String, BackendState> states = new HashMap<>();
+    for (BackendState state : message.backends()) {
+      states.put(state.url(), state);
+    }
+    PeerView previous = views.put(message.sender(), new PeerView(nowNanos, states));
+    boolean rejoined = previous == null || !isLive(previous, nowNanos);
+    if (rejoined) {
+      logger.log(Level.INFO, "Cluster peer {0} joined", message.sender());
+    }
+    for (Backend backend : backendRegistry.snapshot()) {
+      BackendState state = states.get(backend.getUrl());
+      if (state == null || !state.ejected()) {
+        continue;
+      }
+      // Only fresh ejections are followed, so a circuit that recovered here is not reopened for
+      // one it already followed.
+      BackendState before = rejoined ? null : previous.backends().get(backend.getUrl());
+      if (before == null || !before.ejected()) {
+        ejectForPeer.accept(backend);
+      }
+    }
+  }
+
+  /**
+   * Drops peers that have gone quiet, updates the peer in-flight counts of the backends and
+   * returns the message to send.
+   */
+  GossipMessage tick(long nowNanos) {
+    views.entrySet().removeIf(view -> {
+      if (isLive(view.getValue(), nowNanos)) {
+        return false;
+      }
+      logger.log(Level.WARNING, "Cluster peer {0} timed out", view.getKey());
+      return true;
+    });
+    Backend[] snapshot = backendRegistry.snapshot();
+    List<BackendState> states = new ArrayList<>(snapshot.length);
+    for (Backend backend : snapshot) {
+      int peerInFlight = 0;
+      for (PeerView view : views.values()) {
+        BackendState state = view.backends().get(backend.getUrl());
+        if (state != null) {
+          peerInFlight += state.inFlight();
+        }
+      }
+      backend.setPeerInFlight(peerInFlight);
+      states.add(new BackendState(backend.getUrl(),
+                                  backend.isHealthy(),
+                                  ejectedLocally.test(backend),
+                                  backend.getInFlight()));
+    }
+    return new GossipMessage(self, states);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+    }
+  }
+
+  private void gossip() {
+    try {
+      ByteBuffer message = ByteBuffer.wrap(tick(System.nanoTime()).encode());
+      for (InetSocketAddress peer : peers) {
+        try {
+          channel.send(message.rewind(), peer);
+        } catch (IOException exception) {
+          logger.log(Level.FINE, "Failed to gossip to " + peer, exception);
+        }
+      }
+    } catch (RuntimeException exception) {
+      logger.log(Level.SEVERE, "Gossip round failed", exception);
+    }
+  }
+
+  private void receiveLoop() {
+    ByteBuffer buffer = ByteBuffer.allocate(GossipMessage.MAX_BYTES);
+    while (channel.isOpen()) {
+      buffer.clear();
+      try {
+        SocketAddress source = channel.receive(buffer);
+        if (!isPeer(source)) {
+          logger.log(Level.FINE, "Dropped a gossip datagram from {0}, not a peer", source);
+          continue;
+        }
+        receive(GossipMessage.decode(buffer.flip()), System.nanoTime());
+      } catch (ClosedChannelException exception) {
+        return;
+      } catch (IOException | IllegalArgumentException exception) {
+        logger.log(Level.FINE, "Dropped a gossip datagram", exception);
+      }
+    }
+  }
+
+  /**
+   * Returns whether {@code source} is the address of a configured peer. Peers send from the port
+   * they gossip on, so the port has to match as well.
+   */
+  boolean isPeer(SocketAddress source) {
+    return source instanceof InetSocketAddress address && peerAddresses.contains(address);
+  }
+
+  private boolean isLive(PeerView view, long nowNanos) {
+    return nowNanos - view.receivedNanos() <= peerTimeoutNanos;
+  }
+
+  private static long score(String member, Backend backend) {
+    return KeyHash.of(member + "|" + backend.getUrl());
+  }
+
+  private record PeerView(long receivedNanos, Map<String, BackendState> backends) {
+  }
+}
@@ -0,0 +1,104 @@
+package org.coda.cluster;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One instance's view of its backends, sent to every peer each gossip interval.
+ *
+ * <p>The encoding is a magic number and version, the sender, then per backend its URL, a flags
+ * byte and the sender's in-flight count. Strings are length-prefixed UTF-8. A message for a few
+ * hundred backends fits in one datagram.
+ *
+ * @param sender the sender's {@code cluster.nodeId}, unique within the cluster, which keys its
+ *     view; whether a message comes from a peer is decided by its source address, not by this
+ */
+record GossipMessage(String sender, List<BackendState> backends) {
+
+  /**
+   * Largest payload a UDP datagram can carry.
+   */
+  static final int MAX_BYTES = 65_507;
+
+  private static final short MAGIC = 0x4C42;
+  private static final byte VERSION = 1;
+  private static final int HEALTHY = 1;
+  private static final int EJECTED = 2;
+
+  /**
+   * What the sender knows about one backend.
+   *
+   * @param healthy the sender's health verdict
+   * @param ejected whether the sender's own traffic opened the backend's circuit
+   * @param inFlight the sender's requests in flight to the backend
+   */
+  record BackendState(String url, boolean healthy, boolean ejected, int inFlight) {
+  }
+
+  byte[] encode() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + backends.size() * 48);
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeShort(MAGIC);
+      out.writeByte(VERSION);
+      writeString(out, sender);
+      out.writeShort(backends.size());
+      for (BackendState backend : backends) {
+        writeString(out, backend.url());
+        out.writeByte((backend.healthy() ? HEALTHY : 0) | (backend.ejected() ? EJECTED : 0));
+        out.writeInt(backend.inFlight());
+      }
+    } catch (IOException exception) {
+      throw new UncheckedIOException(exception);
+    }
+    if (bytes.size() > MAX_BYTES) {
+      throw new IllegalStateException("Gossip message of " + bytes.size() + " bytes is too large");
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Decodes a datagram.
+   *
+   * @throws IllegalArgumentException if it is not a gossip message of this version
+   */
+  static GossipMessage decode(ByteBuffer buffer) {
+    try {
+      if (buffer.getShort() != MAGIC || buffer.get() != VERSION) {
+        throw new IllegalArgumentException("Not a gossip message");
+      }
+      String sender = readString(buffer);
+      int count = Short.toUnsignedInt(buffer.getShort());
+      List<BackendState> backends = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        String url = readString(buffer);
+        int flags = buffer.get();
+        backends.add(new BackendState(url,
+                                      (flags & HEALTHY) != 0,
+                                      (flags & EJECTED) != 0,
+                                      buffer.getInt()));
+      }
+      return new GossipMessage(sender, backends);
+    } catch (BufferUnderflowException exception) {
+      throw new IllegalArgumentException("Truncated gossip message", exception);
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeShort(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
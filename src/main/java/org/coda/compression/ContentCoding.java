@@ -0,0 +1,68 @@
+package org.coda.compression;
+
+import java.util.Locale;
+
+/**
+ * Helpers for the {@code Accept-Encoding} and {@code Content-Encoding} headers.
+ */
+public final class ContentCoding {
+
+  public static final String GZIP = "gzip";
+
+  private ContentCoding() {}
+
+  /**
+   * Returns whether an {@code Accept-Encoding} value allows {@code coding}, honouring q-values
+   * and the {@code *} wildcard.
+   */
+  public static boolean accepts(String acceptEncoding, String coding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    boolean wildcard = false;
+    for (String entry : acceptEncoding.split(",")) {
+      String[] parts = entry.split(";");
+      String name = parts[0].trim().toLowerCase(Locale.ROOT);
+      boolean allowed = quality(parts) > 0;
+      if (name.equals(coding) || (coding.equals(GZIP) && name.equals("x-gzip"))) {
+        return allowed;
+      }
+      if (name.equals("*")) {
+        wildcard = allowed;
+      }
+    }
+    return wildcard;
+  }
+
+  /**
+   * Returns whether a {@code Content-Encoding} value leaves the body as it is.
+   */
+  public static boolean isIdentity(String contentEncoding) {
+    return contentEncoding == null
+        || contentEncoding.isBlank()
+        || contentEncoding.trim().equalsIgnoreCase("identity");
+  }
+
+  /**
+   * Returns whether a {@code Content-Encoding} value is gzip.
+   */
+  public static boolean isGzip(String contentEncoding) {
+    return contentEncoding != null
+        && (contentEncoding.trim().equalsIgnoreCase(GZIP)
+            || contentEncoding.trim().equalsIgnoreCase("x-gzip"));
+  }
+
+  private static double quality(String[] parameters) {
+    for (int i = 1; i < parameters.length; i++) {
+      String parameter = parameters[i].trim();
+      if (parameter.startsWith("q=")) {
+        try {
+          return Double.parseDouble(parameter.substring(2));
+        } catch (NumberFormatException exception) {
+          return 0;
+        }
+      }
+    }
+    return 1;
+  }
+}
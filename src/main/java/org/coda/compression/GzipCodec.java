@@ -0,0 +1,119 @@
+package org.coda.compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Gzip compression with pooled {@link Deflater}s.
+ *
+ * <p>{@link java.util.zip.GZIPOutputStream} allocates a deflater, and with it a few hundred
+ * kilobytes of native memory, for every stream. Here the gzip header and trailer are written
+ * around a raw deflate stream whose deflater is reset and returned to the pool when the stream
+ * is closed. At most {@code maxPooled} idle deflaters are kept; the rest are ended.
+ */
+public final class GzipCodec {
+
+  private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0,
+                                        (byte) 0xff};
+
+  private final int level;
+  private final int maxPooled;
+  private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pooled = new AtomicInteger();
+
+  public GzipCodec(int level, int maxPooled) {
+    this.level = level;
+    this.maxPooled = maxPooled;
+  }
+
+  /**
+   * Returns a stream that writes the gzip encoding of what is written to it to {@code out}.
+   * Closing it finishes the encoding and returns the deflater; {@code out} is flushed but left
+   * open.
+   */
+  public OutputStream compress(OutputStream out) throws IOException {
+    out.write(HEADER);
+    return new PooledGzipOutputStream(out, acquire());
+  }
+
+  /**
+   * Returns a stream that decodes the gzip-encoded {@code in}.
+   */
+  public static InputStream decompress(InputStream in) throws IOException {
+    return new GZIPInputStream(in);
+  }
+
+  private Deflater acquire() {
+    Deflater deflater = deflaters.poll();
+    if (deflater == null) {
+      return new Deflater(level, true);
+    }
+    pooled.decrementAndGet();
+    return deflater;
+  }
+
+  private void release(Deflater deflater) {
+    if (pooled.incrementAndGet() > maxPooled) {
+      pooled.decrementAndGet();
+      deflater.end();
+      return;
+    }
+    deflater.reset();
+    deflaters.offer(deflater);
+  }
+
+  private final class PooledGzipOutputStream extends DeflaterOutputStream {
+
+    private final CRC32 crc = new CRC32();
+    private boolean closed;
+
+    PooledGzipOutputStream(OutputStream out, Deflater deflater) {
+      super(out, deflater, 8192);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+      super.write(buffer, offset, length);
+      crc.update(buffer, offset, length);
+    }
+
+    @Override
+    public void finish() throws IOException {
+      if (def.finished()) {
+        return;
+      }
+      super.finish();
+      writeInt((int) crc.getValue());
+      writeInt((int) def.getBytesRead());
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        finish();
+        out.flush();
+      } finally {
+        release(def);
+      }
+    }
+
+    private void writeInt(int value) throws IOException {
+      out.write(value & 0xff);
+      out.write((value >> 8) & 0xff);
+      out.write((value >> 16) & 0xff);
+      out.write((value >> 24) & 0xff);
+    }
+  }
+}
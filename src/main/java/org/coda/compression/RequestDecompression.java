@@ -0,0 +1,22 @@
+package org.coda.compression;
+
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.ext.ReaderInterceptor;
+import jakarta.ws.rs.ext.ReaderInterceptorContext;
+import java.io.IOException;
+
+/**
+ * Decodes gzip request bodies before they are parsed. Only registered when bodies are parsed as
+ * JSON; pass-through mode forwards them as they are.
+ */
+public final class RequestDecompression implements ReaderInterceptor {
+
+  @Override
+  public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException {
+    if (ContentCoding.isGzip(context.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING))) {
+      context.getHeaders().remove(HttpHeaders.CONTENT_ENCODING);
+      context.setInputStream(GzipCodec.decompress(context.getInputStream()));
+    }
+    return context.proceed();
+  }
+}
@@ -0,0 +1,132 @@
+package org.coda.compression;
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.ext.WriterInterceptor;
+import jakarta.ws.rs.ext.WriterInterceptorContext;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Gzips response bodies for clients that accept it.
+ *
+ * <p>A body that already carries a {@code Content-Encoding}, such as a compressed backend
+ * response passed through, is left alone. Otherwise the first {@code minBytes} of the body are
+ * held back: a body that ends before then goes out as it is, and a longer one is compressed from
+ * the start. The decision is made before the first byte reaches the client, so the headers can
+ * still say which way it went.
+ */
+public final class ResponseCompression implements ContainerResponseFilter, WriterInterceptor {
+
+  private static final String COMPRESS = ResponseCompression.class.getName() + ".compress";
+
+  private final GzipCodec codec;
+  private final int minBytes;
+
+  public ResponseCompression(GzipCodec codec, int minBytes) {
+    this.codec = codec;
+    this.minBytes = minBytes;
+  }
+
+  @Override
+  public void filter(ContainerRequestContext requestContext,
+                     ContainerResponseContext responseContext) {
+    MultivaluedMap<String, Object> headers = responseContext.getHeaders();
+    if (!responseContext.hasEntity()) {
+      return;
+    }
+    headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    if (!headers.containsKey(HttpHeaders.CONTENT_ENCODING)
+        && ContentCoding.accepts(requestContext.getHeaderString(HttpHeaders.ACCEPT_ENCODING),
+                                  ContentCoding.GZIP)) {
+      requestContext.setProperty(COMPRESS, Boolean.TRUE);
+    }
+  }
+
+  @Override
+  public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+    if (context.getProperty(COMPRESS) == null) {
+      context.proceed();
+      return;
+    }
+    ThresholdOutputStream out = new ThresholdOutputStream(context.getOutputStream(),
+                                                          context.getHeaders());
+    context.setOutputStream(out);
+    try {
+      context.proceed();
+    } finally {
+      out.finish();
+    }
+  }
+
+  /**
+   * Holds back the start of a body until it is known whether the body reaches the threshold.
+   */
+  private final class ThresholdOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final MultivaluedMap<String, Object> headers;
+    private final byte[] pending = new byte[Math.max(minBytes, 1)];
+    private int pendingLength;
+    private OutputStream target;
+    private boolean finished;
+
+    ThresholdOutputStream(OutputStream out, MultivaluedMap<String, Object> headers) {
+      this.out = out;
+      this.headers = headers;
+    }
+
+    @Override
+    public void write(int value) throws IOException {
+      write(new byte[]{(byte) value}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+      if (target == null && pendingLength + length < pending.length) {
+        System.arraycopy(buffer, offset, pending, pendingLength, length);
+        pendingLength += length;
+        return;
+      }
+      if (target == null) {
+        headers.putSingle(HttpHeaders.CONTENT_ENCODING, ContentCoding.GZIP);
+        headers.remove(HttpHeaders.CONTENT_LENGTH);
+        target = codec.compress(out);
+        target.write(pending, 0, pendingLength);
+      }
+      target.write(buffer, offset, length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      // Nothing is flushed while the encoding is undecided.
+      if (target != null) {
+        target.flush();
+      }
+    }
+
+    /**
+     * Ends the gzip stream, or writes out a body that stayed under the threshold as it is. The
+     * underlying stream is left open for the container to close.
+     */
+    void finish() throws IOException {
+      if (finished) {
+        return;
+      }
+      finished = true;
+      if (target == null) {
+        out.write(pending, 0, pendingLength);
+      } else {
+        target.close();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      finish();
+    }
+  }
+}
@@ -3,26 +3,46 @@ package org.coda.config;
 import jakarta.ws.rs.core.UriBuilder;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
+import org.coda.strategy.StrategyType;
 
 public class AppConfig {
 
   private final Properties props = new Properties();
 
-  private AppConfig() {
-    try (InputStream in = getClass().getResourceAsStream("/application.properties")) {
-      if (in != null) {
-        props.load(in);
-      }
+  private AppConfig(InputStream in) throws IOException {
+    if (in != null) {
+      props.load(in);
+    }
+  }
+
+  private AppConfig(Properties properties) {
+    props.putAll(properties);
+  }
+
+  public static AppConfig load() {
+    try (InputStream in = AppConfig.class.getResourceAsStream("/application.properties")) {
+      return new AppConfig(in);
     } catch (IOException exception) {
       throw new IllegalStateException("Failed to load application properties", exception);
     }
   }
 
-  public static AppConfig load() {
-    return new AppConfig();
+  public static AppConfig load(Path path) throws IOException {
+    try (InputStream in = Files.newInputStream(path)) {
+      return new AppConfig(in);
+    }
+  }
+
+  public static AppConfig of(Properties properties) {
+    return new AppConfig(properties);
   }
 
   public String getScheme() {
@@ -37,6 +57,18 @@ public class AppConfig {
     return Integer.parseInt(props.getProperty("server.port"));
   }
 
+  public int getAdminPort() {
+    return getInt("admin.port", 0);
+  }
+
+  public boolean isVirtualThreads() {
+    return Boolean.parseBoolean(props.getProperty("server.virtualThreads", "false"));
+  }
+
+  public boolean isFastPath() {
+    return Boolean.parseBoolean(props.getProperty("server.fastPath", "false"));
+  }
+
   public int getConnectTimeoutMs() {
     return Integer.parseInt(props.getProperty("client.connectTimeoutMs"));
   }
@@ -45,9 +77,120 @@ public class AppConfig {
     return Integer.parseInt(props.getProperty("client.readTimeoutMs"));
   }
 
+  public int getMaxConnectionsPerBackend() {
+    return getInt("client.maxConnectionsPerBackend", 64);
+  }
+
+  public int getMaxPendingPerBackend() {
+    return getInt("client.maxPendingPerBackend", 1024);
+  }
+
+  public int getKeepAliveTimeoutSec() {
+    return getInt("client.keepAliveTimeoutSec", 30);
+  }
+
+  public boolean isHttp2() {
+    return Boolean.parseBoolean(props.getProperty("client.http2", "false"));
+  }
+
   public List<String> getBackends() {
     String s = props.getProperty("loadbalancer.backends");
-    return Arrays.asList(s.split("\\s*,\\s*"));
+    if (s == null || s.isBlank()) {
+      return List.of();
+    }
+    return Arrays.asList(s.trim().split("\\s*,\\s*"));
+  }
+
+  /**
+   * Returns path prefixes with the backends that serve them, from entries such as
+   * {@code /static=http://localhost:8091|http://localhost:8092}.
+   */
+  public Map<String, List<String>> getRoutes() {
+    String s = props.getProperty("loadbalancer.routes");
+    Map<String, List<String>> routes = new LinkedHashMap<>();
+    if (s == null || s.isBlank()) {
+      return routes;
+    }
+    for (String route : s.trim().split("\\s*,\\s*")) {
+      String[] parts = route.split("\\s*=\\s*", 2);
+      if (parts.length < 2 || parts[1].isBlank()) {
+        throw new IllegalStateException("Route " + parts[0] + " lists no backends");
+      }
+      routes.put(parts[0], List.of(parts[1].split("\\s*\\|\\s*")));
+    }
+    return routes;
+  }
+
+  public Path getBackendsFile() {
+    String s = props.getProperty("loadbalancer.backendsFile");
+    return s == null || s.isBlank() ? null : Path.of(s.trim());
+  }
+
+  public StrategyType getLoadBalancingStrategy() {
+    return StrategyType.valueOf(props.getProperty("loadbalancer.strategy", "ROUND_ROBIN")
+                                     .trim()
+                                     .toUpperCase(Locale.ROOT));
+  }
+
+  public List<Integer> getBackendWeights() {
+    String s = props.getProperty("loadbalancer.weights");
+    if (s == null || s.isBlank()) {
+      return List.of();
+    }
+    return Arrays.stream(s.trim().split("\\s*,\\s*"))
+        .map(Integer::valueOf)
+        .toList();
+  }
+
+  public int getLatencyDecayMs() {
+    return getInt("loadbalancer.latencyDecayMs", 10000);
+  }
+
+  public String getHashKeyHeader() {
+    String value = props.getProperty("loadbalancer.hashKeyHeader");
+    return value == null || value.isBlank() ? null : value.trim();
+  }
+
+  public String getHashKeyPointer() {
+    String value = props.getProperty("loadbalancer.hashKeyPointer");
+    return value == null || value.isBlank() ? null : value.trim();
+  }
+
+  public double getHashLoadFactor() {
+    String value = props.getProperty("loadbalancer.hashLoadFactor");
+    return value == null ? 1.25 : Double.parseDouble(value.trim());
+  }
+
+  public int getCircuitBreakerWindowSize() {
+    return getInt("circuitBreaker.windowSize", 20);
+  }
+
+  public int getCircuitBreakerMinimumCalls() {
+    return getInt("circuitBreaker.minimumCalls", 10);
+  }
+
+  public int getCircuitBreakerFailureRatePercent() {
+    return getInt("circuitBreaker.failureRatePercent", 50);
+  }
+
+  public int getCircuitBreakerSlowCallRatePercent() {
+    return getInt("circuitBreaker.slowCallRatePercent", 80);
+  }
+
+  public int getCircuitBreakerSlowCallMs() {
+    return getInt("circuitBreaker.slowCallMs", 2000);
+  }
+
+  public int getCircuitBreakerOpenMs() {
+    return getInt("circuitBreaker.openMs", 10000);
+  }
+
+  public int getCircuitBreakerHalfOpenTrials() {
+    return getInt("circuitBreaker.halfOpenTrials", 3);
+  }
+
+  public int getCircuitBreakerMaxEjectionPercent() {
+    return getInt("circuitBreaker.maxEjectionPercent", 50);
   }
 
   public int getScheduleInitialDelay() {
@@ -58,6 +201,297 @@ public class AppConfig {
     return Integer.parseInt(props.getProperty("schedule.period"));
   }
 
+  public double getScheduleJitter() {
+    String value = props.getProperty("schedule.jitter");
+    return value == null ? 0.2 : Double.parseDouble(value.trim());
+  }
+
+  public int getHealthTimeoutMs() {
+    return getInt("health.timeoutMs", 1000);
+  }
+
+  public int getHealthRise() {
+    return getInt("health.rise", 2);
+  }
+
+  public int getHealthFall() {
+    return getInt("health.fall", 3);
+  }
+
+  public int getRequestDeadlineMs() {
+    return getInt("loadbalancer.requestDeadlineMs", 10000);
+  }
+
+  public String getDeadlineHeader() {
+    String value = props.getProperty("loadbalancer.deadlineHeader", "X-Request-Timeout-Ms");
+    return value.isBlank() ? null : value.trim();
+  }
+
+  public int getRetryMaxAttempts() {
+    return getInt("retry.maxAttempts", 3);
+  }
+
+  public double getRetryBudgetRatio() {
+    String value = props.getProperty("retry.budgetRatio");
+    return value == null ? 0.2 : Double.parseDouble(value.trim());
+  }
+
+  public int getRetryBudgetMaxTokens() {
+    return getInt("retry.budgetMaxTokens", 20);
+  }
+
+  public boolean isHedgeEnabled() {
+    return Boolean.parseBoolean(props.getProperty("hedge.enabled", "false"));
+  }
+
+  public double getHedgePercentile() {
+    String value = props.getProperty("hedge.percentile");
+    return value == null ? 95 : Double.parseDouble(value.trim());
+  }
+
+  public int getHedgeWindowSize() {
+    return getInt("hedge.windowSize", 1000);
+  }
+
+  public boolean isPassThrough() {
+    return Boolean.parseBoolean(props.getProperty("loadbalancer.passThrough", "false"));
+  }
+
+  public int getPassThroughMaxReplayBytes() {
+    return getInt("loadbalancer.passThrough.maxReplayBytes", 1024 * 1024);
+  }
+
+  public int getBufferSize() {
+    return getInt("buffer.size", 8 * 1024);
+  }
+
+  public int getBufferPoolSize() {
+    return getInt("buffer.poolSize", 1024);
+  }
+
+  public Path getAccessLogFile() {
+    String s = props.getProperty("accessLog.file");
+    return s == null || s.isBlank() ? null : Path.of(s.trim());
+  }
+
+  public double getAccessLogSampleRate() {
+    String value = props.getProperty("accessLog.sampleRate");
+    return value == null ? 1 : Double.parseDouble(value.trim());
+  }
+
+  public int getAccessLogSlowMs() {
+    return getInt("accessLog.slowMs", 1000);
+  }
+
+  public int getAccessLogBufferSize() {
+    return getInt("accessLog.bufferSize", 8192);
+  }
+
+  public int getAccessLogFlushMs() {
+    return getInt("accessLog.flushMs", 100);
+  }
+
+  public boolean isCacheEnabled() {
+    return Boolean.parseBoolean(props.getProperty("cache.enabled", "false"));
+  }
+
+  public long getCacheMaxBytes() {
+    String value = props.getProperty("cache.maxBytes");
+    return value == null ? 64L * 1024 * 1024 : Long.parseLong(value.trim());
+  }
+
+  public int getCacheMaxEntryBytes() {
+    return getInt("cache.maxEntryBytes", 1024 * 1024);
+  }
+
+  /**
+   * Returns the cached path prefixes, each with its time to live in seconds, from entries such as
+   * {@code /quote=30}.
+   */
+  public Map<String, Integer> getCacheRoutes() {
+    String s = props.getProperty("cache.routes");
+    Map<String, Integer> routes = new LinkedHashMap<>();
+    if (s == null || s.isBlank()) {
+      return routes;
+    }
+    for (String route : s.trim().split("\\s*,\\s*")) {
+      String[] parts = route.split("\\s*=\\s*", 2);
+      routes.put(parts[0], parts.length > 1 ? Integer.parseInt(parts[1]) : 0);
+    }
+    return routes;
+  }
+
+  /**
+   * Returns cached path prefixes with the request headers their responses depend on, from entries
+   * such as {@code /quote=X-Tenant;Accept-Language}.
+   */
+  public Map<String, List<String>> getCacheVary() {
+    return headerLists("cache.vary");
+  }
+
+  public List<String> getSingleFlightRoutes() {
+    String s = props.getProperty("singleFlight.routes");
+    if (s == null || s.isBlank()) {
+      return List.of();
+    }
+    return Arrays.asList(s.trim().split("\\s*,\\s*"));
+  }
+
+  /**
+   * Returns coalesced path prefixes with the request headers their responses depend on, in the
+   * form of {@link #getCacheVary()}.
+   */
+  public Map<String, List<String>> getSingleFlightVary() {
+    return headerLists("singleFlight.vary");
+  }
+
+  public int getSingleFlightMaxWaiters() {
+    return getInt("singleFlight.maxWaiters", 1000);
+  }
+
+  public int getSingleFlightMaxPayloadBytes() {
+    return getInt("singleFlight.maxPayloadBytes", 64 * 1024);
+  }
+
+  /**
+   * Returns the largest decoded response body that is shared with waiting requests or cached.
+   * Larger ones are streamed to the request that made the call.
+   */
+  public int getSingleFlightMaxResponseBytes() {
+    return getInt("singleFlight.maxResponseBytes", 1024 * 1024);
+  }
+
+  public boolean isCompressionEnabled() {
+    return Boolean.parseBoolean(props.getProperty("compression.enabled", "false"));
+  }
+
+  public int getCompressionMinBytes() {
+    return getInt("compression.minBytes", 1024);
+  }
+
+  public int getCompressionLevel() {
+    return getInt("compression.level", 6);
+  }
+
+  public int getCompressionPoolSize() {
+    return getInt("compression.poolSize", 64);
+  }
+
+  public int getSlowStartWindowMs() {
+    return getInt("slowStart.windowMs", 0);
+  }
+
+  public double getSlowStartAggression() {
+    String value = props.getProperty("slowStart.aggression");
+    return value == null ? 1.0 : Double.parseDouble(value.trim());
+  }
+
+  public int getSlowStartMinWeightPercent() {
+    return getInt("slowStart.minWeightPercent", 10);
+  }
+
+  public boolean isLimiterEnabled() {
+    return Boolean.parseBoolean(props.getProperty("limiter.enabled", "false"));
+  }
+
+  public int getLimiterMinLimit() {
+    return getInt("limiter.minLimit", 10);
+  }
+
+  public int getLimiterInitialLimit() {
+    return getInt("limiter.initialLimit", 200);
+  }
+
+  public int getLimiterMaxLimit() {
+    return getInt("limiter.maxLimit", 2000);
+  }
+
+  public int getLimiterBackendInitialLimit() {
+    return getInt("limiter.backendInitialLimit", 50);
+  }
+
+  public int getLimiterBackendMaxLimit() {
+    return getInt("limiter.backendMaxLimit", 500);
+  }
+
+  public double getLimiterRttTolerance() {
+    String value = props.getProperty("limiter.rttTolerance");
+    return value == null ? 1.5 : Double.parseDouble(value.trim());
+  }
+
+  public double getLimiterLowPriorityShare() {
+    String value = props.getProperty("limiter.lowPriorityShare");
+    return value == null ? 0.75 : Double.parseDouble(value.trim());
+  }
+
+  public String getLimiterPriorityHeader() {
+    String value = props.getProperty("limiter.priorityHeader", "X-Priority");
+    return value.isBlank() ? null : value.trim();
+  }
+
+  /**
+   * Returns path prefixes with the priority of their requests, from entries such as
+   * {@code /health=critical}.
+   */
+  public Map<String, String> getLimiterPriorityRoutes() {
+    String s = props.getProperty("limiter.priorityRoutes");
+    Map<String, String> routes = new LinkedHashMap<>();
+    if (s == null || s.isBlank()) {
+      return routes;
+    }
+    for (String route : s.trim().split("\\s*,\\s*")) {
+      String[] parts = route.split("\\s*=\\s*", 2);
+      routes.put(parts[0], parts.length > 1 ? parts[1] : "");
+    }
+    return routes;
+  }
+
+  public int getLimiterRetryAfterSeconds() {
+    return getInt("limiter.retryAfterSeconds", 1);
+  }
+
+  /**
+   * Returns the UDP port this instance gossips on, or 0 if cluster mode is off.
+   */
+  public int getClusterPort() {
+    return getInt("cluster.port", 0);
+  }
+
+  /**
+   * Returns the host this instance binds for gossip and is known to its peers by.
+   */
+  public String getClusterHost() {
+    String value = props.getProperty("cluster.host");
+    return value == null || value.isBlank() ? getHost() : value.trim();
+  }
+
+  /**
+   * Returns the id this instance gossips as, or {@code null} to use the gossip host and port.
+   */
+  public String getClusterNodeId() {
+    String value = props.getProperty("cluster.nodeId");
+    return value == null || value.isBlank() ? null : value.trim();
+  }
+
+  /**
+   * Returns the {@code host:port} gossip addresses of the other instances.
+   */
+  public List<String> getClusterPeers() {
+    String s = props.getProperty("cluster.peers");
+    if (s == null || s.isBlank()) {
+      return List.of();
+    }
+    return Arrays.asList(s.trim().split("\\s*,\\s*"));
+  }
+
+  public int getClusterGossipMs() {
+    return getInt("cluster.gossipMs", 500);
+  }
+
+  public int getClusterPeerTimeoutMs() {
+    return getInt("cluster.peerTimeoutMs", 3000);
+  }
+
   public UriBuilder baseUriBuilder() {
     return UriBuilder.fromPath("/")
         .scheme(getScheme())
@@ -65,4 +499,28 @@ public class AppConfig {
         .port(getPort());
   }
 
+  public UriBuilder adminBaseUriBuilder() {
+    return baseUriBuilder().port(getAdminPort());
+  }
+
+  private Map<String, List<String>> headerLists(String key) {
+    String s = props.getProperty(key);
+    Map<String, List<String>> routes = new LinkedHashMap<>();
+    if (s == null || s.isBlank()) {
+      return routes;
+    }
+    for (String route : s.trim().split("\\s*,\\s*")) {
+      String[] parts = route.split("\\s*=\\s*", 2);
+      routes.put(parts[0], parts.length > 1 && !parts[1].isBlank()
+          ? List.of(parts[1].trim().split("\\s*;\\s*"))
+          : List.of());
+    }
+    return routes;
+  }
+
+  private int getInt(String key, int defaultValue) {
+    String value = props.getProperty(key);
+    return value == null ? defaultValue : Integer.parseInt(value.trim());
+  }
+
 }
@@ -1,6 +1,7 @@
 package org.coda.exception;
 
 import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.ext.ExceptionMapper;
 import jakarta.ws.rs.ext.Provider;
@@ -22,7 +23,17 @@ public class GenericExceptionMapper implements ExceptionMapper<Throwable> {
         exception.getMessage() // @todo: Do not expose internal information
     );
 
-    return Response.status(statusCode)
+    Response.ResponseBuilder response = Response.status(statusCode);
+    if (exception instanceof WebApplicationException webApplicationException) {
+      // Headers such as Allow on a 405 or Retry-After on a 503 belong with the status.
+      webApplicationException.getResponse().getStringHeaders().forEach((name, values) -> {
+        if (!name.equalsIgnoreCase(HttpHeaders.CONTENT_TYPE)
+            && !name.equalsIgnoreCase(HttpHeaders.CONTENT_LENGTH)) {
+          values.forEach(value -> response.header(name, value));
+        }
+      });
+    }
+    return response
         .entity(errorResponse)
         .build();
   }
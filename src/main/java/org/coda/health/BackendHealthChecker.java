@@ -1,50 +1,174 @@
 package org.coda.health;
 
-import jakarta.ws.rs.client.Client;
-import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
-import java.util.List;
+import java.time.Duration;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.coda.backend.Backend;
+import org.coda.backend.BackendRegistry;
+import org.coda.client.BackendClient;
+import org.coda.client.BackendRequest;
+import org.coda.metrics.ProxyMetrics;
 
+/**
+ * Active and passive health checking.
+ *
+ * <p>A sweep sends a probe to every backend at once and returns without waiting; results are
+ * applied from the HTTP client's callbacks, so one scheduler thread handles any number of
+ * backends and a sweep never takes longer than a single probe timeout. Sweeps are spaced by the
+ * period plus or minus a random jitter so that balancers started together do not probe in step.
+ *
+ * <p>Probe results and request outcomes feed the same counters: a backend changes state only
+ * after {@code rise} consecutive successes or {@code fall} consecutive failures. Probes bypass the
+ * backend's connection pool, so a backend whose pool is full is not failed for being busy. A
+ * backend that a peer probes is not probed here; the peer's latest verdict is counted in place of
+ * a probe.
+ *
+ * <p>Request failures alone may take out only as many backends as the cap set with
+ * {@link #capPassiveEjections} allows; past it a failing backend stays in rotation until a probe
+ * fails it or an ejection is released.
+ */
 public class BackendHealthChecker implements BackendHealthManager, Runnable {
-  private final List<String> backends;
-  private final Client client;
-  private final ConcurrentMap<String, Boolean> healthyMap;
 
-  public BackendHealthChecker(List<String> backends, Client client) {
-    this.backends = backends;
-    this.client = client;
-    this.healthyMap = new ConcurrentHashMap<>();
-    backends.forEach(backend -> healthyMap.put(backend, true));
+  private final BackendRegistry backendRegistry;
+  private final BackendClient backendClient;
+  private final ProxyMetrics proxyMetrics;
+  private final Duration probeTimeout;
+  private final int rise;
+  private final int fall;
+  private final PeerHealth peerHealth;
+  private final Set<Backend> passivelyEjected = ConcurrentHashMap.newKeySet();
+  private volatile BooleanSupplier tryEject = () -> true;
+  private volatile Runnable releaseEjection = () -> {};
+  private final Logger logger = Logger.getLogger(getClass().getName());
+
+  public BackendHealthChecker(BackendRegistry backendRegistry,
+                              BackendClient backendClient,
+                              ProxyMetrics proxyMetrics,
+                              Duration probeTimeout,
+                              int rise,
+                              int fall) {
+    this(backendRegistry, backendClient, proxyMetrics, probeTimeout, rise, fall, PeerHealth.NONE);
+  }
+
+  public BackendHealthChecker(BackendRegistry backendRegistry,
+                              BackendClient backendClient,
+                              ProxyMetrics proxyMetrics,
+                              Duration probeTimeout,
+                              int rise,
+                              int fall,
+                              PeerHealth peerHealth) {
+    this.backendRegistry = backendRegistry;
+    this.backendClient = backendClient;
+    this.proxyMetrics = proxyMetrics;
+    this.probeTimeout = probeTimeout;
+    this.rise = rise;
+    this.fall = fall;
+    this.peerHealth = peerHealth;
+  }
+
+  /**
+   * Asks {@code tryEject} before request failures take a backend out, and calls
+   * {@code releaseEjection} once such a backend is healthy again or removed.
+   */
+  public void capPassiveEjections(BooleanSupplier tryEject, Runnable releaseEjection) {
+    this.tryEject = tryEject;
+    this.releaseEjection = releaseEjection;
+  }
+
+  /**
+   * Releases the ejection of a backend that has left the registry.
+   */
+  public void release(Backend backend) {
+    if (passivelyEjected.remove(backend)) {
+      releaseEjection.run();
+    }
+  }
+
+  /**
+   * Runs a sweep after {@code initialDelay} and then repeatedly, each one {@code period} after the
+   * previous, scaled by a random factor in {@code [1 - jitter, 1 + jitter]}.
+   */
+  public void schedule(ScheduledExecutorService scheduler,
+                       Duration initialDelay,
+                       Duration period,
+                       double jitter) {
+    scheduler.schedule(() -> {
+      try {
+        run();
+      } catch (RuntimeException exception) {
+        logger.log(Level.SEVERE, "Health check sweep failed", exception);
+      } finally {
+        double factor = 1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        Duration next = Duration.ofNanos((long) (period.toNanos() * factor));
+        schedule(scheduler, next, period, jitter);
+      }
+    }, initialDelay.toNanos(), TimeUnit.NANOSECONDS);
   }
 
   @Override
   public void run() {
-    for (String backend : backends) {
-      boolean isHealthy = checkOneBackend(backend);
-      healthyMap.put(backend, isHealthy);
+    for (Backend backend : backendRegistry.snapshot()) {
+      Boolean verdict = peerHealth.probeVerdict(backend);
+      if (verdict == null) {
+        probe(backend);
+      } else {
+        record(backend, verdict, "peer");
+      }
     }
   }
 
   @Override
-  public boolean isHealthy(String backend) {
-    return healthyMap.getOrDefault(backend, true);
+  public boolean isHealthy(Backend backend) {
+    return backend.isHealthy();
+  }
+
+  @Override
+  public void recordSuccess(Backend backend, long elapsedNanos) {
+    record(backend, true, "request");
   }
 
   @Override
-  public void setToUnhealthy(String backend) {
-    healthyMap.put(backend, false);
-  }
-
-  private boolean checkOneBackend(String backend) {
-    try (Response response = client.target(backend)
-                                   .path("/health")
-                                   .request()
-                                   .get()) {
-      return response.getStatus() == Status.OK.getStatusCode();
-    } catch (Exception exception) {
-      return false;
+  public void recordFailure(Backend backend, long elapsedNanos) {
+    record(backend, false, "request");
+  }
+
+  private void probe(Backend backend) {
+    BackendRequest request = BackendRequest.get("/health").withTimeout(probeTimeout);
+    backendClient.probe(backend, request)
+        .orTimeout(probeTimeout.toMillis(), TimeUnit.MILLISECONDS)
+        .whenComplete((response, throwable) -> {
+          boolean healthy = false;
+          if (response != null) {
+            healthy = response.getStatus() == Status.OK.getStatusCode();
+            response.close();
+          }
+          record(backend, healthy, "probe");
+        });
+  }
+
+  private void record(Backend backend, boolean success, String source) {
+    if (backend.recordHealth(success, rise, fall)) {
+      if (success) {
+        release(backend);
+      } else if ("request".equals(source)) {
+        if (!tryEject.getAsBoolean()) {
+          backend.setHealthy(true);
+          logger.log(Level.FINE, "Backend {0} kept in rotation: ejection cap reached", backend);
+          return;
+        }
+        passivelyEjected.add(backend);
+      }
+      proxyMetrics.recordHealthTransition(backend, success);
+      logger.log(success ? Level.INFO : Level.WARNING,
+                 "Backend {0} marked {1} after a {2} result",
+                 new Object[]{backend, success ? "healthy" : "unhealthy", source});
     }
   }
 }
@@ -1,8 +1,27 @@
 package org.coda.health;
 
+import org.coda.backend.Backend;
+
 public interface BackendHealthManager {
 
-  boolean isHealthy(String backend);
+  boolean isHealthy(Backend backend);
+
+  /**
+   * Claims {@code backend}, which {@link #isHealthy} accepted, for one request just before it is
+   * sent. Returns {@code false} if it can take no more requests after all.
+   */
+  default boolean tryAcquire(Backend backend) {
+    return true;
+  }
+
+  /**
+   * Gives back the claim of a request that ended without an outcome: it was cancelled, or it could
+   * not be sent at all.
+   */
+  default void abandon(Backend backend) {
+  }
+
+  void recordSuccess(Backend backend, long elapsedNanos);
 
-  void setToUnhealthy(String backend);
+  void recordFailure(Backend backend, long elapsedNanos);
 }
@@ -0,0 +1,352 @@
+package org.coda.health;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.coda.backend.Backend;
+import org.coda.backend.BackendRegistry;
+import org.coda.config.AppConfig;
+import org.coda.metrics.ProxyMetrics;
+
+/**
+ * Adds a circuit breaker per backend in front of another {@link BackendHealthManager}.
+ *
+ * <p>Each breaker keeps the outcomes of the last {@code windowSize} requests in a ring buffer.
+ * Once at least {@code minimumCalls} are recorded and the failure rate or the slow-call rate
+ * reaches its threshold, the circuit opens and the backend gets no traffic for
+ * {@code openDuration}. It then turns half-open and hands out {@code halfOpenTrials} trial
+ * permits, one per request sent to it: that many successes close it, any failure opens it again.
+ * Outcomes of requests sent before it turned half-open are ignored.
+ *
+ * <p>No more than {@code maxEjectionPercent} of the backends (but always at least one) are open or
+ * half-open at a time; past that cap failing backends stay in rotation so the pool is never
+ * emptied by a shared fault such as a bad deploy of a dependency. The same cap covers backends
+ * that the delegate takes out after consecutive request failures, through {@link #tryEject()}.
+ *
+ * <p>In cluster mode a circuit opened by a peer's traffic is opened here too, within the same cap,
+ * and then recovers through the usual half-open trials.
+ */
+public class CircuitBreakingHealthManager implements BackendHealthManager {
+
+  private static final int RECORDED = 1;
+  private static final int FAILED = 2;
+  private static final int SLOW = 4;
+
+  private final BackendHealthManager delegate;
+  private final BackendRegistry backendRegistry;
+  private final ProxyMetrics proxyMetrics;
+  private final int windowSize;
+  private final int minimumCalls;
+  private final int failureRatePercent;
+  private final int slowCallRatePercent;
+  private final long slowCallNanos;
+  private final long openNanos;
+  private final int halfOpenTrials;
+  private final int maxEjectionPercent;
+
+  private final ConcurrentMap<Backend, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+  private final AtomicInteger ejected = new AtomicInteger();
+  private final Logger logger = Logger.getLogger(getClass().getName());
+
+  public CircuitBreakingHealthManager(BackendHealthManager delegate,
+                                      BackendRegistry backendRegistry,
+                                      ProxyMetrics proxyMetrics,
+                                      AppConfig appConfig) {
+    this.delegate = delegate;
+    this.backendRegistry = backendRegistry;
+    this.proxyMetrics = proxyMetrics;
+    this.windowSize = appConfig.getCircuitBreakerWindowSize();
+    this.minimumCalls = appConfig.getCircuitBreakerMinimumCalls();
+    this.failureRatePercent = appConfig.getCircuitBreakerFailureRatePercent();
+    this.slowCallRatePercent = appConfig.getCircuitBreakerSlowCallRatePercent();
+    this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(appConfig.getCircuitBreakerSlowCallMs());
+    this.openNanos = TimeUnit.MILLISECONDS.toNanos(appConfig.getCircuitBreakerOpenMs());
+    this.halfOpenTrials = appConfig.getCircuitBreakerHalfOpenTrials();
+    this.maxEjectionPercent = appConfig.getCircuitBreakerMaxEjectionPercent();
+  }
+
+  @Override
+  public boolean isHealthy(Backend backend) {
+    if (!delegate.isHealthy(backend)) {
+      return false;
+    }
+    CircuitBreaker breaker = breakerFor(backend);
+    return breaker == null || breaker.allows(backend);
+  }
+
+  @Override
+  public boolean tryAcquire(Backend backend) {
+    if (!delegate.tryAcquire(backend)) {
+      return false;
+    }
+    CircuitBreaker breaker = breakers.get(backend);
+    return breaker == null || breaker.tryAcquireTrial();
+  }
+
+  @Override
+  public void abandon(Backend backend) {
+    delegate.abandon(backend);
+    CircuitBreaker breaker = breakers.get(backend);
+    if (breaker != null) {
+      breaker.releaseTrial();
+    }
+  }
+
+  @Override
+  public void recordSuccess(Backend backend, long elapsedNanos) {
+    delegate.recordSuccess(backend, elapsedNanos);
+    record(backend,
+           elapsedNanos >= slowCallNanos ? RECORDED | SLOW : RECORDED,
+           System.nanoTime() - elapsedNanos);
+  }
+
+  @Override
+  public void recordFailure(Backend backend, long elapsedNanos) {
+    delegate.recordFailure(backend, elapsedNanos);
+    record(backend, RECORDED | FAILED, System.nanoTime() - elapsedNanos);
+  }
+
+  /**
+   * Counts one more backend as ejected, unless that would exceed the ejection cap.
+   */
+  public boolean tryEject() {
+    int limit = Math.max(1, backendRegistry.snapshot().length * maxEjectionPercent / 100);
+    int current;
+    do {
+      current = ejected.get();
+      if (current >= limit) {
+        return false;
+      }
+    } while (!ejected.compareAndSet(current, current + 1));
+    return true;
+  }
+
+  /**
+   * Gives back an ejection counted by {@link #tryEject()}.
+   */
+  public void releaseEjection() {
+    ejected.decrementAndGet();
+  }
+
+  /**
+   * Forgets the breaker of a backend that has left the registry.
+   */
+  public void release(Backend backend) {
+    CircuitBreaker breaker = breakers.remove(backend);
+    if (breaker != null && breaker.state.get() != State.CLOSED) {
+      ejected.decrementAndGet();
+    }
+  }
+
+  /**
+   * Returns whether this instance's own traffic opened the circuit of {@code backend}, as opposed
+   * to a peer's.
+   */
+  public boolean isEjectedLocally(Backend backend) {
+    CircuitBreaker breaker = breakers.get(backend);
+    return breaker != null && breaker.state.get() != State.CLOSED && !breaker.peerEjected;
+  }
+
+  /**
+   * Opens the circuit of {@code backend} because a peer's traffic opened it, unless it is open
+   * already or the ejection cap is reached.
+   */
+  public void ejectForPeer(Backend backend) {
+    CircuitBreaker breaker = breakerFor(backend);
+    if (breaker != null) {
+      breaker.ejectForPeer(backend);
+    }
+  }
+
+  State stateOf(Backend backend) {
+    CircuitBreaker breaker = breakers.get(backend);
+    return breaker == null ? State.CLOSED : breaker.state.get();
+  }
+
+  private void record(Backend backend, int outcome, long sentNanos) {
+    CircuitBreaker breaker = breakerFor(backend);
+    if (breaker != null) {
+      breaker.record(backend, outcome, sentNanos);
+    }
+  }
+
+  private CircuitBreaker breakerFor(Backend backend) {
+    CircuitBreaker breaker = breakers.get(backend);
+    if (breaker == null && !backend.isDraining()) {
+      breaker = breakers.computeIfAbsent(backend, key -> new CircuitBreaker());
+    }
+    return breaker;
+  }
+
+  enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  private final class CircuitBreaker {
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger trialPermits = new AtomicInteger();
+    private final AtomicInteger trialSuccesses = new AtomicInteger();
+    private volatile Window window = new Window(windowSize);
+    private volatile long openedAt;
+    private volatile long halfOpenedAt;
+    private volatile boolean peerEjected;
+
+    boolean allows(Backend backend) {
+      State current = state.get();
+      long now = System.nanoTime();
+      if (current == State.OPEN && now - openedAt >= openNanos) {
+        if (state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+          halfOpenedAt = now;
+          trialSuccesses.set(0);
+          trialPermits.set(halfOpenTrials);
+          logger.log(Level.INFO, "Circuit for backend {0} half-open", backend);
+        }
+        current = state.get();
+      }
+      return switch (current) {
+        case CLOSED -> true;
+        case OPEN -> false;
+        case HALF_OPEN -> trialPermits.get() > 0;
+      };
+    }
+
+    boolean tryAcquireTrial() {
+      return switch (state.get()) {
+        case CLOSED -> true;
+        case OPEN -> false;
+        case HALF_OPEN -> {
+          int permits;
+          do {
+            permits = trialPermits.get();
+            if (permits <= 0) {
+              yield false;
+            }
+          } while (!trialPermits.compareAndSet(permits, permits - 1));
+          yield true;
+        }
+      };
+    }
+
+    void releaseTrial() {
+      if (state.get() != State.HALF_OPEN) {
+        return;
+      }
+      int permits;
+      do {
+        permits = trialPermits.get();
+        if (permits >= halfOpenTrials) {
+          return;
+        }
+      } while (!trialPermits.compareAndSet(permits, permits + 1));
+    }
+
+    void ejectForPeer(Backend backend) {
+      if (state.get() != State.CLOSED || !tryEject()) {
+        return;
+      }
+      openedAt = System.nanoTime();
+      peerEjected = true;
+      if (state.compareAndSet(State.CLOSED, State.OPEN)) {
+        proxyMetrics.recordCircuitOpened(backend);
+        logger.log(Level.WARNING, "Circuit for backend {0} opened by a peer", backend);
+      } else {
+        peerEjected = false;
+        ejected.decrementAndGet();
+      }
+    }
+
+    void record(Backend backend, int outcome, long sentNanos) {
+      switch (state.get()) {
+        case CLOSED -> {
+          Window current = window;
+          current.record(outcome);
+          if (current.shouldTrip() && tryEject()) {
+            openedAt = System.nanoTime();
+            if (state.compareAndSet(State.CLOSED, State.OPEN)) {
+              proxyMetrics.recordCircuitOpened(backend);
+              logger.log(Level.WARNING,
+                         "Circuit for backend {0} opened: {1} failed and {2} slow of {3} calls",
+                         new Object[]{backend, current.failures.get(), current.slowCalls.get(),
+                                      current.size()});
+            } else {
+              ejected.decrementAndGet();
+            }
+          }
+        }
+        case HALF_OPEN -> {
+          if (sentNanos - halfOpenedAt < 0) {
+            // Sent before the trials began, so it holds no permit and says nothing new.
+            return;
+          }
+          if ((outcome & FAILED) != 0) {
+            openedAt = System.nanoTime();
+            peerEjected = false;
+            if (state.compareAndSet(State.HALF_OPEN, State.OPEN)) {
+              trialPermits.set(0);
+              proxyMetrics.recordCircuitOpened(backend);
+              logger.log(Level.WARNING, "Circuit for backend {0} reopened", backend);
+            }
+          } else if (trialSuccesses.incrementAndGet() >= halfOpenTrials) {
+            window = new Window(windowSize);
+            peerEjected = false;
+            if (state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+              ejected.decrementAndGet();
+              backend.startWarmup();
+              logger.log(Level.INFO, "Circuit for backend {0} closed", backend);
+            }
+          }
+        }
+        default -> {
+          // Open: late responses from before the circuit opened carry no new information.
+        }
+      }
+    }
+  }
+
+  /**
+   * Ring buffer of recent outcomes. Each slot is swapped atomically and the counters are adjusted
+   * by the difference between the new and the evicted outcome, so they always match the slots.
+   */
+  private final class Window {
+
+    private final AtomicIntegerArray outcomes;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicInteger slowCalls = new AtomicInteger();
+
+    Window(int windowSize) {
+      this.outcomes = new AtomicIntegerArray(windowSize);
+    }
+
+    void record(int outcome) {
+      int slot = (int) (calls.getAndIncrement() % outcomes.length());
+      int evicted = outcomes.getAndSet(slot, outcome);
+      failures.addAndGet(flag(outcome, FAILED) - flag(evicted, FAILED));
+      slowCalls.addAndGet(flag(outcome, SLOW) - flag(evicted, SLOW));
+    }
+
+    int size() {
+      return (int) Math.min(calls.get(), outcomes.length());
+    }
+
+    boolean shouldTrip() {
+      int size = size();
+      return size >= minimumCalls
+          && (failures.get() * 100 >= failureRatePercent * size
+              || slowCalls.get() * 100 >= slowCallRatePercent * size);
+    }
+
+    private int flag(int outcome, int flag) {
+      return (outcome & flag) != 0 ? 1 : 0;
+    }
+  }
+}
@@ -0,0 +1,20 @@
+package org.coda.health;
+
+import org.coda.backend.Backend;
+
+/**
+ * Health verdicts reached by other balancer instances.
+ */
+public interface PeerHealth {
+
+  /**
+   * No peers: every backend is probed locally.
+   */
+  PeerHealth NONE = backend -> null;
+
+  /**
+   * Returns the verdict of the peer responsible for probing {@code backend}, or {@code null} if
+   * this instance should probe it itself.
+   */
+  Boolean probeVerdict(Backend backend);
+}
@@ -0,0 +1,136 @@
+package org.coda.limit;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.coda.backend.Backend;
+import org.coda.config.AppConfig;
+
+/**
+ * Adaptive concurrency limits for the proxy as a whole and for each backend.
+ *
+ * <p>Requests over the global limit are rejected on arrival instead of queueing, and a backend
+ * whose own limit is reached is passed over like an unhealthy one. Both limits are
+ * {@link GradientLimit}s: the global one follows the time whole requests take, each backend's
+ * the time of its own attempts. {@link Priority#LOW} requests may only use a share of the global
+ * limit, so they are shed first, and {@link Priority#CRITICAL} requests are never rejected; they
+ * still count towards the limits.
+ */
+public final class ConcurrencyLimiter {
+
+  private final GradientLimit limit;
+  private final double lowPriorityShare;
+  private final int minLimit;
+  private final int backendInitialLimit;
+  private final int backendMaxLimit;
+  private final double rttTolerance;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final ConcurrentMap<Backend, GradientLimit> backendLimits = new ConcurrentHashMap<>();
+
+  public ConcurrencyLimiter(GradientLimit limit,
+                            double lowPriorityShare,
+                            int minLimit,
+                            int backendInitialLimit,
+                            int backendMaxLimit,
+                            double rttTolerance) {
+    this.limit = limit;
+    this.lowPriorityShare = lowPriorityShare;
+    this.minLimit = minLimit;
+    this.backendInitialLimit = backendInitialLimit;
+    this.backendMaxLimit = backendMaxLimit;
+    this.rttTolerance = rttTolerance;
+  }
+
+  /**
+   * Returns the limiter configured by {@code appConfig}, or {@code null} if limiting is disabled.
+   */
+  public static ConcurrencyLimiter fromConfig(AppConfig appConfig) {
+    if (!appConfig.isLimiterEnabled()) {
+      return null;
+    }
+    return new ConcurrencyLimiter(new GradientLimit(appConfig.getLimiterInitialLimit(),
+                                                    appConfig.getLimiterMinLimit(),
+                                                    appConfig.getLimiterMaxLimit(),
+                                                    appConfig.getLimiterRttTolerance()),
+                                  appConfig.getLimiterLowPriorityShare(),
+                                  appConfig.getLimiterMinLimit(),
+                                  appConfig.getLimiterBackendInitialLimit(),
+                                  appConfig.getLimiterBackendMaxLimit(),
+                                  appConfig.getLimiterRttTolerance());
+  }
+
+  /**
+   * Admits a request if the limit for its priority leaves room. An admitted request must be
+   * {@linkplain #release() released} when it completes.
+   */
+  public boolean tryAcquire(Priority priority) {
+    if (priority == Priority.CRITICAL) {
+      inFlight.incrementAndGet();
+      return true;
+    }
+    int max = priority == Priority.LOW
+        ? (int) (limit.getLimit() * lowPriorityShare)
+        : limit.getLimit();
+    int current;
+    do {
+      current = inFlight.get();
+      if (current >= max) {
+        return false;
+      }
+    } while (!inFlight.compareAndSet(current, current + 1));
+    return true;
+  }
+
+  public void release() {
+    inFlight.decrementAndGet();
+  }
+
+  /**
+   * Adjusts the global limit to an admitted request that went upstream; call it before
+   * {@link #release()}.
+   */
+  public void sample(long rttNanos, boolean dropped) {
+    limit.sample(rttNanos, inFlight.get(), dropped);
+  }
+
+  /**
+   * Returns whether {@code backend} may take another request.
+   */
+  public boolean hasCapacity(Backend backend) {
+    return backend.getInFlight() < limitFor(backend).getLimit();
+  }
+
+  /**
+   * Adjusts the limit of {@code backend} to an attempt it answered or failed.
+   *
+   * @param inFlight the requests in flight to {@code backend}, including this one
+   */
+  public void sampleBackend(Backend backend, long rttNanos, int inFlight, boolean dropped) {
+    limitFor(backend).sample(rttNanos, inFlight, dropped);
+  }
+
+  public int getLimit() {
+    return limit.getLimit();
+  }
+
+  public int getBackendLimit(Backend backend) {
+    return limitFor(backend).getLimit();
+  }
+
+  /**
+   * Forgets the limit of a backend that has left the registry.
+   */
+  public void forget(Backend backend) {
+    backendLimits.remove(backend);
+  }
+
+  private GradientLimit limitFor(Backend backend) {
+    GradientLimit backendLimit = backendLimits.get(backend);
+    return backendLimit != null
+        ? backendLimit
+        : backendLimits.computeIfAbsent(backend, key -> new GradientLimit(backendInitialLimit,
+                                                                           minLimit,
+                                                                           backendMaxLimit,
+                                                                           rttTolerance));
+  }
+}
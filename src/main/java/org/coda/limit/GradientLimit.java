@@ -0,0 +1,75 @@
+package org.coda.limit;
+
+/**
+ * Concurrency limit that follows round-trip times, after Netflix's Gradient2.
+ *
+ * <p>A long-term average of the round-trip time stands for the time a request takes when nothing
+ * queues. Each sample compares it with the latest round-trip time: while requests take no longer
+ * than {@code rttTolerance} times the average the limit grows by about its square root, and once
+ * they take longer it shrinks in proportion, by at most half. Changes are smoothed, and a sample
+ * taken while less than half the limit was in use cannot raise it, so quiet periods do not
+ * inflate it. A dropped request (an error, a timeout or a 5xx) cuts the limit by a tenth, which
+ * reacts to a failing backend before its latency shows it.
+ *
+ * <p>When requests become much faster than the average, as they do once a backlog has cleared, the
+ * average is pulled down quickly instead of over hundreds of samples, so the limit stops growing
+ * past what the backends can take.
+ */
+public final class GradientLimit {
+
+  private static final int WARMUP_SAMPLES = 10;
+  private static final double LONG_WINDOW = 600;
+  private static final double SMOOTHING = 0.2;
+  private static final double DROP_BACKOFF = 0.9;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final double rttTolerance;
+  private double estimate;
+  private double longRttNanos;
+  private long samples;
+  private volatile int limit;
+
+  public GradientLimit(int initialLimit, int minLimit, int maxLimit, double rttTolerance) {
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.rttTolerance = rttTolerance;
+    this.estimate = Math.clamp(initialLimit, minLimit, maxLimit);
+    this.limit = (int) estimate;
+  }
+
+  public int getLimit() {
+    return limit;
+  }
+
+  /**
+   * Adjusts the limit to one request.
+   *
+   * @param inFlight the number of requests in flight when this one completed
+   * @param dropped whether the request failed, in which case its round-trip time is ignored
+   */
+  public synchronized void sample(long rttNanos, int inFlight, boolean dropped) {
+    if (dropped) {
+      update(estimate * DROP_BACKOFF);
+      return;
+    }
+    samples++;
+    longRttNanos = samples <= WARMUP_SAMPLES
+        ? longRttNanos + (rttNanos - longRttNanos) / samples
+        : longRttNanos + (rttNanos - longRttNanos) / LONG_WINDOW;
+    if (longRttNanos > 2 * rttNanos) {
+      longRttNanos *= 0.95;
+    }
+    if (inFlight < estimate / 2) {
+      return;
+    }
+    double gradient = Math.clamp(rttTolerance * longRttNanos / Math.max(rttNanos, 1), 0.5, 1.0);
+    double target = estimate * gradient + Math.sqrt(estimate);
+    update(estimate * (1 - SMOOTHING) + target * SMOOTHING);
+  }
+
+  private void update(double value) {
+    estimate = Math.clamp(value, minLimit, maxLimit);
+    limit = (int) estimate;
+  }
+}
@@ -0,0 +1,37 @@
+package org.coda.limit;
+
+/**
+ * How readily a request is shed when the proxy is at its concurrency limit.
+ */
+public enum Priority {
+
+  /**
+   * Never shed, and not held back by the limits of single backends either.
+   */
+  CRITICAL,
+
+  /**
+   * Shed once the limit is reached.
+   */
+  NORMAL,
+
+  /**
+   * Shed first, once a configured share of the limit is in use.
+   */
+  LOW;
+
+  /**
+   * Returns the priority named by {@code value}, ignoring case, or {@code NORMAL} if it names
+   * none.
+   */
+  public static Priority parse(String value) {
+    if (value != null) {
+      for (Priority priority : values()) {
+        if (priority.name().equalsIgnoreCase(value.trim())) {
+          return priority;
+        }
+      }
+    }
+    return NORMAL;
+  }
+}
@@ -0,0 +1,271 @@
+package org.coda.logging;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.coda.backend.Backend;
+import org.coda.config.AppConfig;
+
+/**
+ * Structured access log, one JSON object per line.
+ *
+ * <p>Request threads copy a few fields into a preallocated slot of a bounded ring buffer and
+ * return; a single writer thread formats the entries and appends them to the file in batches, so
+ * no formatting, locking or I/O happens on the request path. When the ring is full the entry is
+ * dropped and counted rather than blocking the request.
+ *
+ * <p>Successful requests are sampled at {@code sampleRate}. Server errors and requests slower than
+ * {@code slowNanos} are always logged.
+ */
+public class AccessLog implements AutoCloseable {
+
+  private static final AccessLog DISABLED = new AccessLog();
+  private static final int BATCH_BYTES = 64 * 1024;
+
+  private final Entry[] entries;
+  private final AtomicLongArray sequences;
+  private final AtomicLong tail = new AtomicLong();
+  private final LongAdder dropped = new LongAdder();
+  private final int mask;
+  private final double sampleRate;
+  private final long slowNanos;
+  private final long flushNanos;
+  private final FileChannel channel;
+  private final Logger logger = Logger.getLogger(getClass().getName());
+  private volatile Thread writer;
+  private volatile boolean closed;
+  private long head;
+
+  private AccessLog() {
+    this.entries = null;
+    this.sequences = null;
+    this.mask = 0;
+    this.sampleRate = 0;
+    this.slowNanos = Long.MAX_VALUE;
+    this.flushNanos = 0;
+    this.channel = null;
+  }
+
+  private AccessLog(Path file,
+                    int capacity,
+                    double sampleRate,
+                    long slowNanos,
+                    long flushNanos) throws IOException {
+    int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+    this.entries = new Entry[size];
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      entries[i] = new Entry();
+      sequences.set(i, i);
+    }
+    this.mask = size - 1;
+    this.sampleRate = sampleRate;
+    this.slowNanos = slowNanos;
+    this.flushNanos = flushNanos;
+    this.channel = FileChannel.open(file,
+                                    StandardOpenOption.CREATE,
+                                    StandardOpenOption.WRITE,
+                                    StandardOpenOption.APPEND);
+  }
+
+  /**
+   * Opens {@code file} for appending and starts the writer thread.
+   *
+   * @param capacity the number of entries the ring buffer holds, rounded up to a power of two
+   */
+  public static AccessLog open(Path file,
+                               int capacity,
+                               double sampleRate,
+                               long slowNanos,
+                               long flushNanos) throws IOException {
+    AccessLog accessLog = new AccessLog(file, capacity, sampleRate, slowNanos, flushNanos);
+    // Started only once the log is fully built, so the writer never sees it half-initialized.
+    Thread writer = new Thread(accessLog::drain, "access-log-writer");
+    writer.setDaemon(true);
+    accessLog.writer = writer;
+    writer.start();
+    return accessLog;
+  }
+
+  public static AccessLog disabled() {
+    return DISABLED;
+  }
+
+  /**
+   * Returns the access log configured by {@code accessLog.file}, or a disabled one if it is not
+   * set.
+   */
+  public static AccessLog fromConfig(AppConfig appConfig) throws IOException {
+    Path file = appConfig.getAccessLogFile();
+    if (file == null) {
+      return DISABLED;
+    }
+    return open(file,
+                appConfig.getAccessLogBufferSize(),
+                appConfig.getAccessLogSampleRate(),
+                TimeUnit.MILLISECONDS.toNanos(appConfig.getAccessLogSlowMs()),
+                TimeUnit.MILLISECONDS.toNanos(appConfig.getAccessLogFlushMs()));
+  }
+
+  /**
+   * Records a completed request, subject to sampling.
+   *
+   * @param backend the backend that served the response, or {@code null} if none did
+   */
+  public void log(String path, int status, long durationNanos, int attempts, Backend backend) {
+    if (entries == null
+        || (status < 500
+            && durationNanos < slowNanos
+            && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+      return;
+    }
+    long position = tail.get();
+    while (true) {
+      int slot = (int) position & mask;
+      long sequence = sequences.get(slot);
+      if (sequence == position) {
+        if (tail.compareAndSet(position, position + 1)) {
+          Entry entry = entries[slot];
+          entry.timeMillis = System.currentTimeMillis();
+          entry.path = path;
+          entry.status = status;
+          entry.durationNanos = durationNanos;
+          entry.attempts = attempts;
+          entry.backend = backend;
+          sequences.set(slot, position + 1);
+          return;
+        }
+        position = tail.get();
+      } else if (sequence < position) {
+        dropped.increment();
+        return;
+      } else {
+        position = tail.get();
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (writer == null) {
+      return;
+    }
+    closed = true;
+    LockSupport.unpark(writer);
+    try {
+      writer.join();
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    }
+    channel.close();
+  }
+
+  private void drain() {
+    ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_BYTES);
+    StringBuilder line = new StringBuilder(256);
+    long reportedDrops = 0;
+    while (true) {
+      final boolean finished = closed;
+      while (poll(line)) {
+        byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > batch.remaining()) {
+          write(batch);
+        }
+        if (bytes.length > batch.capacity()) {
+          write(ByteBuffer.wrap(bytes).position(bytes.length));
+        } else {
+          batch.put(bytes);
+        }
+      }
+      write(batch);
+      long drops = dropped.sum();
+      if (drops != reportedDrops) {
+        logger.log(Level.WARNING, "Access log buffer full, {0} entries dropped so far", drops);
+        reportedDrops = drops;
+      }
+      if (finished) {
+        return;
+      }
+      LockSupport.parkNanos(this, flushNanos);
+    }
+  }
+
+  private boolean poll(StringBuilder line) {
+    int slot = (int) head & mask;
+    if (sequences.get(slot) != head + 1) {
+      return false;
+    }
+    Entry entry = entries[slot];
+    line.setLength(0);
+    line.append("{\"time\":\"");
+    DateTimeFormatter.ISO_INSTANT.formatTo(Instant.ofEpochMilli(entry.timeMillis), line);
+    line.append("\",\"path\":\"");
+    appendEscaped(entry.path, line);
+    line.append("\",\"status\":").append(entry.status)
+        .append(",\"durationMs\":").append(entry.durationNanos / 1_000_000)
+        .append('.').append(entry.durationNanos / 1_000 % 1_000 / 100)
+        .append(",\"attempts\":").append(entry.attempts)
+        .append(",\"backend\":");
+    if (entry.backend == null) {
+      line.append("null");
+    } else {
+      line.append('"');
+      appendEscaped(entry.backend.getUrl(), line);
+      line.append('"');
+    }
+    line.append("}\n");
+    entry.path = null;
+    entry.backend = null;
+    sequences.set(slot, head + entries.length);
+    head++;
+    return true;
+  }
+
+  private void write(ByteBuffer buffer) {
+    buffer.flip();
+    try {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } catch (IOException exception) {
+      logger.log(Level.SEVERE, "Failed to write access log", exception);
+    }
+    buffer.clear();
+  }
+
+  private static void appendEscaped(String value, StringBuilder target) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        target.append('\\').append(c);
+      } else if (c < 0x20) {
+        target.append(String.format("\\u%04x", (int) c));
+      } else {
+        target.append(c);
+      }
+    }
+  }
+
+  private static final class Entry {
+
+    private long timeMillis;
+    private String path;
+    private int status;
+    private long durationNanos;
+    private int attempts;
+    private Backend backend;
+  }
+}
@@ -0,0 +1,85 @@
+package org.coda.metrics;
+
+/**
+ * Builds a scrape in the Prometheus text exposition format, version 0.0.4. Label sets are passed
+ * as built by {@link #labels}, or as {@code ""} for none.
+ */
+class PrometheusWriter {
+
+  private final StringBuilder out = new StringBuilder(4096);
+
+  static String labels(String... namesAndValues) {
+    StringBuilder labels = new StringBuilder();
+    for (int i = 0; i < namesAndValues.length; i += 2) {
+      if (i > 0) {
+        labels.append(',');
+      }
+      labels.append(namesAndValues[i]).append("=\"");
+      escape(namesAndValues[i + 1], labels);
+      labels.append('"');
+    }
+    return labels.toString();
+  }
+
+  private static void escape(String value, StringBuilder target) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '\\' -> target.append("\\\\");
+        case '"' -> target.append("\\\"");
+        case '\n' -> target.append("\\n");
+        default -> target.append(c);
+      }
+    }
+  }
+
+  PrometheusWriter header(String name, String type, String help) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    return this;
+  }
+
+  PrometheusWriter sample(String name, String labels, long value) {
+    series(name, labels).append(value).append('\n');
+    return this;
+  }
+
+  PrometheusWriter sample(String name, String labels, double value) {
+    series(name, labels).append(value).append('\n');
+    return this;
+  }
+
+  /**
+   * Writes the series of a histogram of nanosecond values as seconds. {@code boundsNanos} are the
+   * bucket bounds, {@code boundsSeconds} the same bounds as they appear in the {@code le} label.
+   */
+  PrometheusWriter histogram(String name,
+                             String labels,
+                             LatencyHistogram histogram,
+                             long[] boundsNanos,
+                             String[] boundsSeconds) {
+    long[] cumulative = histogram.cumulativeCounts(boundsNanos);
+    String prefix = labels.isEmpty() ? "" : labels + ",";
+    for (int i = 0; i < boundsNanos.length; i++) {
+      sample(name + "_bucket", prefix + "le=\"" + boundsSeconds[i] + "\"", cumulative[i]);
+    }
+    long count = cumulative[boundsNanos.length];
+    sample(name + "_bucket", prefix + "le=\"+Inf\"", count);
+    sample(name + "_sum", labels, histogram.sum() / 1e9);
+    sample(name + "_count", labels, count);
+    return this;
+  }
+
+  private StringBuilder series(String name, String labels) {
+    out.append(name);
+    if (!labels.isEmpty()) {
+      out.append('{').append(labels).append('}');
+    }
+    return out.append(' ');
+  }
+
+  @Override
+  public String toString() {
+    return out.toString();
+  }
+}
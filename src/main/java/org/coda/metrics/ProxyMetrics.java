@@ -0,0 +1,306 @@
+package org.coda.metrics;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import org.coda.backend.Backend;
+import org.coda.client.PoolStats;
+import org.coda.limit.ConcurrencyLimiter;
+
+/**
+ * Counters and latency histograms for the proxy path.
+ *
+ * <p>Recording only adds to {@link LongAdder}s and {@link LatencyHistogram}s, so request threads
+ * on different cores do not contend on a shared word. Gauges such as in-flight requests and pool
+ * occupancy are not tracked here; they are read from their owners when {@link #scrape} renders
+ * the Prometheus text format.
+ */
+public class ProxyMetrics {
+
+  private static final String[] STATUS_CLASSES = {"1xx", "2xx", "3xx", "4xx", "5xx", "error"};
+  private static final int ERROR = STATUS_CLASSES.length - 1;
+  private static final String[] BOUNDS_SECONDS = {
+      "0.001", "0.0025", "0.005", "0.01", "0.025", "0.05", "0.1", "0.25", "0.5", "1", "2.5", "5",
+      "10"};
+  private static final long[] BOUNDS_NANOS = Stream.of(BOUNDS_SECONDS)
+      .mapToLong(bound -> (long) (Double.parseDouble(bound) * TimeUnit.SECONDS.toNanos(1)))
+      .toArray();
+
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder inFlight = new LongAdder();
+  private final LongAdder[] responses = adders(ERROR);
+  private final LatencyHistogram requestLatency = new LatencyHistogram();
+  private final LongAdder attempts = new LongAdder();
+  private final LongAdder retries = new LongAdder();
+  private final LongAdder hedges = new LongAdder();
+  private final LongAdder retryBudgetExhausted = new LongAdder();
+  private final LongAdder deadlinesExceeded = new LongAdder();
+  private final LongAdder cacheHits = new LongAdder();
+  private final LongAdder cacheMisses = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+  private final LongAdder shedByLimit = new LongAdder();
+  private final LongAdder shedByBackendLimit = new LongAdder();
+  private volatile ConcurrencyLimiter limiter;
+  private final ConcurrentMap<Backend, BackendMetrics> backends = new ConcurrentHashMap<>();
+
+  private static LongAdder[] adders(int size) {
+    LongAdder[] adders = new LongAdder[size];
+    for (int i = 0; i < size; i++) {
+      adders[i] = new LongAdder();
+    }
+    return adders;
+  }
+
+  private static int statusClass(int status) {
+    return Math.min(Math.max(status / 100, 1), 5) - 1;
+  }
+
+  /**
+   * Counts a request received from a client.
+   *
+   * @return the start time to pass to {@link #requestCompleted}
+   */
+  public long requestStarted() {
+    requests.increment();
+    inFlight.increment();
+    return System.nanoTime();
+  }
+
+  public void requestCompleted(long startNanos, int status) {
+    inFlight.decrement();
+    responses[statusClass(status)].increment();
+    requestLatency.record(System.nanoTime() - startNanos);
+  }
+
+  public void recordAttempt(boolean retry) {
+    attempts.increment();
+    if (retry) {
+      retries.increment();
+    }
+  }
+
+  public void recordHedge() {
+    attempts.increment();
+    hedges.increment();
+  }
+
+  public void recordRetryBudgetExhausted() {
+    retryBudgetExhausted.increment();
+  }
+
+  public void recordDeadlineExceeded() {
+    deadlinesExceeded.increment();
+  }
+
+  public void recordCacheHit() {
+    cacheHits.increment();
+  }
+
+  public void recordCacheMiss() {
+    cacheMisses.increment();
+  }
+
+  /**
+   * Counts a request answered with the response to an identical request that was in flight.
+   */
+  public void recordCoalesced() {
+    coalesced.increment();
+  }
+
+  /**
+   * Counts a request rejected because the proxy, or every backend it could use, was at its
+   * concurrency limit.
+   */
+  public void recordShed(boolean backendLimit) {
+    (backendLimit ? shedByBackendLimit : shedByLimit).increment();
+  }
+
+  /**
+   * Reports the current limits of {@code limiter} as gauges.
+   */
+  public void trackLimiter(ConcurrencyLimiter limiter) {
+    this.limiter = limiter;
+  }
+
+  public void recordUpstreamResponse(Backend backend, int status, long elapsedNanos) {
+    recordUpstream(backend, statusClass(status), elapsedNanos);
+  }
+
+  public void recordUpstreamError(Backend backend, long elapsedNanos) {
+    recordUpstream(backend, ERROR, elapsedNanos);
+  }
+
+  public void recordHealthTransition(Backend backend, boolean healthy) {
+    BackendMetrics metrics = metricsFor(backend);
+    (healthy ? metrics.markedUp : metrics.markedDown).increment();
+  }
+
+  public void recordCircuitOpened(Backend backend) {
+    metricsFor(backend).circuitOpens.increment();
+  }
+
+  /**
+   * Forgets the series of a backend that has left the registry.
+   */
+  public void release(Backend backend) {
+    backends.remove(backend);
+  }
+
+  private void recordUpstream(Backend backend, int statusClass, long elapsedNanos) {
+    BackendMetrics metrics = metricsFor(backend);
+    metrics.responses[statusClass].increment();
+    metrics.latency.record(elapsedNanos);
+  }
+
+  private BackendMetrics metricsFor(Backend backend) {
+    BackendMetrics metrics = backends.get(backend);
+    return metrics != null
+        ? metrics
+        : backends.computeIfAbsent(backend, key -> new BackendMetrics());
+  }
+
+  /**
+   * Renders all metrics in the Prometheus text format.
+   *
+   * @param registered the backends to report gauges for, including draining ones
+   * @param pools the connection pool statistics, matched to backends by URL
+   */
+  public String scrape(List<Backend> registered, List<PoolStats> pools) {
+    PrometheusWriter out = new PrometheusWriter();
+    out.header("lb_requests_total", "counter", "Requests received from clients.")
+        .sample("lb_requests_total", "", requests.sum())
+        .header("lb_requests_in_flight", "gauge", "Client requests awaiting a response.")
+        .sample("lb_requests_in_flight", "", inFlight.sum())
+        .header("lb_responses_total", "counter", "Responses sent to clients by status class.");
+    for (int i = 0; i < ERROR; i++) {
+      out.sample("lb_responses_total", PrometheusWriter.labels("code", STATUS_CLASSES[i]),
+                 responses[i].sum());
+    }
+    out.header("lb_request_duration_seconds", "histogram",
+               "Time from receiving a request to sending the response headers.")
+        .histogram("lb_request_duration_seconds", "", requestLatency, BOUNDS_NANOS,
+                   BOUNDS_SECONDS)
+        .header("lb_attempts_total", "counter", "Requests sent to backends, including retries.")
+        .sample("lb_attempts_total", "", attempts.sum())
+        .header("lb_retries_total", "counter", "Attempts made after a failed attempt.")
+        .sample("lb_retries_total", "", retries.sum())
+        .header("lb_hedges_total", "counter", "Hedged copies sent for slow attempts.")
+        .sample("lb_hedges_total", "", hedges.sum())
+        .header("lb_retry_budget_exhausted_total", "counter",
+                "Retries refused because the retry budget was empty.")
+        .sample("lb_retry_budget_exhausted_total", "", retryBudgetExhausted.sum())
+        .header("lb_deadline_exceeded_total", "counter",
+                "Requests failed because their deadline passed.")
+        .sample("lb_deadline_exceeded_total", "", deadlinesExceeded.sum())
+        .header("lb_cache_requests_total", "counter", "Requests on cached routes by result.")
+        .sample("lb_cache_requests_total", PrometheusWriter.labels("result", "hit"),
+                cacheHits.sum())
+        .sample("lb_cache_requests_total", PrometheusWriter.labels("result", "miss"),
+                cacheMisses.sum())
+        .header("lb_coalesced_requests_total", "counter",
+                "Requests answered with the response to an identical request in flight.")
+        .sample("lb_coalesced_requests_total", "", coalesced.sum())
+        .header("lb_shed_requests_total", "counter",
+                "Requests rejected by the concurrency limit of the proxy or of every backend.")
+        .sample("lb_shed_requests_total", PrometheusWriter.labels("limit", "global"),
+                shedByLimit.sum())
+        .sample("lb_shed_requests_total", PrometheusWriter.labels("limit", "backend"),
+                shedByBackendLimit.sum());
+    ConcurrencyLimiter currentLimiter = limiter;
+    if (currentLimiter != null) {
+      out.header("lb_concurrency_limit", "gauge", "Adaptive limit on client requests in flight.")
+          .sample("lb_concurrency_limit", "", currentLimiter.getLimit());
+    }
+
+    List<Map.Entry<Backend, BackendMetrics>> recorded = backends.entrySet().stream()
+        .sorted(Comparator.comparingInt(entry -> entry.getKey().getIndex()))
+        .toList();
+    out.header("lb_backend_responses_total", "counter",
+               "Backend responses by status class, or error if none was received.");
+    for (Map.Entry<Backend, BackendMetrics> entry : recorded) {
+      for (int i = 0; i < STATUS_CLASSES.length; i++) {
+        long count = entry.getValue().responses[i].sum();
+        if (count > 0) {
+          out.sample("lb_backend_responses_total",
+                     PrometheusWriter.labels("backend", entry.getKey().getUrl(),
+                                             "code", STATUS_CLASSES[i]),
+                     count);
+        }
+      }
+    }
+    out.header("lb_backend_request_duration_seconds", "histogram",
+               "Time from sending a request to a backend to receiving its response headers.");
+    for (Map.Entry<Backend, BackendMetrics> entry : recorded) {
+      out.histogram("lb_backend_request_duration_seconds",
+                    PrometheusWriter.labels("backend", entry.getKey().getUrl()),
+                    entry.getValue().latency, BOUNDS_NANOS, BOUNDS_SECONDS);
+    }
+    out.header("lb_backend_health_transitions_total", "counter",
+               "Times a backend was marked up or down by the health checker.");
+    for (Map.Entry<Backend, BackendMetrics> entry : recorded) {
+      String url = entry.getKey().getUrl();
+      out.sample("lb_backend_health_transitions_total",
+                 PrometheusWriter.labels("backend", url, "to", "up"),
+                 entry.getValue().markedUp.sum())
+          .sample("lb_backend_health_transitions_total",
+                  PrometheusWriter.labels("backend", url, "to", "down"),
+                  entry.getValue().markedDown.sum());
+    }
+    out.header("lb_backend_circuit_opens_total", "counter", "Times a backend circuit opened.");
+    for (Map.Entry<Backend, BackendMetrics> entry : recorded) {
+      out.sample("lb_backend_circuit_opens_total",
+                 PrometheusWriter.labels("backend", entry.getKey().getUrl()),
+                 entry.getValue().circuitOpens.sum());
+    }
+
+    out.header("lb_backend_in_flight", "gauge", "Requests in flight to a backend.");
+    for (Backend backend : registered) {
+      out.sample("lb_backend_in_flight", PrometheusWriter.labels("backend", backend.getUrl()),
+                 backend.getInFlight());
+    }
+    if (currentLimiter != null) {
+      out.header("lb_backend_concurrency_limit", "gauge",
+                 "Adaptive limit on requests in flight to a backend.");
+      for (Backend backend : registered) {
+        out.sample("lb_backend_concurrency_limit",
+                   PrometheusWriter.labels("backend", backend.getUrl()),
+                   currentLimiter.getBackendLimit(backend));
+      }
+    }
+    out.header("lb_backend_healthy", "gauge", "1 if the health checker considers a backend up.");
+    for (Backend backend : registered) {
+      out.sample("lb_backend_healthy", PrometheusWriter.labels("backend", backend.getUrl()),
+                 backend.isHealthy() ? 1 : 0);
+    }
+    out.header("lb_backend_weight", "gauge", "Configured backend weight.");
+    for (Backend backend : registered) {
+      out.sample("lb_backend_weight", PrometheusWriter.labels("backend", backend.getUrl()),
+                 backend.getWeight());
+    }
+    out.header("lb_pool_connections_active", "gauge", "Backend exchanges using a connection.");
+    for (PoolStats pool : pools) {
+      out.sample("lb_pool_connections_active", PrometheusWriter.labels("backend", pool.backend()),
+                 pool.activeConnections());
+    }
+    out.header("lb_pool_requests_pending", "gauge", "Backend requests waiting for a connection.");
+    for (PoolStats pool : pools) {
+      out.sample("lb_pool_requests_pending", PrometheusWriter.labels("backend", pool.backend()),
+                 pool.pendingRequests());
+    }
+    return out.toString();
+  }
+
+  private static final class BackendMetrics {
+
+    private final LongAdder[] responses = adders(STATUS_CLASSES.length);
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder markedUp = new LongAdder();
+    private final LongAdder markedDown = new LongAdder();
+    private final LongAdder circuitOpens = new LongAdder();
+  }
+}
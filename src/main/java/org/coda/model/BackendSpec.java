@@ -0,0 +1,31 @@
+package org.coda.model;
+
+public class BackendSpec {
+
+  private String url;
+  private Integer weight;
+
+  public BackendSpec() {}
+
+  public BackendSpec(String url, Integer weight) {
+    this.url = url;
+    this.weight = weight;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public void setUrl(String url) {
+    this.url = url;
+  }
+
+  public Integer getWeight() {
+    return weight;
+  }
+
+  public void setWeight(Integer weight) {
+    this.weight = weight;
+  }
+
+}
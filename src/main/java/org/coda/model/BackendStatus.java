@@ -0,0 +1,71 @@
+package org.coda.model;
+
+import org.coda.backend.Backend;
+
+public class BackendStatus {
+
+  private String url;
+  private int weight;
+  private boolean healthy;
+  private boolean draining;
+  private int inFlight;
+
+  public BackendStatus() {}
+
+  public BackendStatus(String url, int weight, boolean healthy, boolean draining, int inFlight) {
+    this.url = url;
+    this.weight = weight;
+    this.healthy = healthy;
+    this.draining = draining;
+    this.inFlight = inFlight;
+  }
+
+  public static BackendStatus of(Backend backend) {
+    return new BackendStatus(backend.getUrl(),
+                             backend.getWeight(),
+                             backend.isHealthy(),
+                             backend.isDraining(),
+                             backend.getInFlight());
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public void setUrl(String url) {
+    this.url = url;
+  }
+
+  public int getWeight() {
+    return weight;
+  }
+
+  public void setWeight(int weight) {
+    this.weight = weight;
+  }
+
+  public boolean isHealthy() {
+    return healthy;
+  }
+
+  public void setHealthy(boolean healthy) {
+    this.healthy = healthy;
+  }
+
+  public boolean isDraining() {
+    return draining;
+  }
+
+  public void setDraining(boolean draining) {
+    this.draining = draining;
+  }
+
+  public int getInFlight() {
+    return inFlight;
+  }
+
+  public void setInFlight(int inFlight) {
+    this.inFlight = inFlight;
+  }
+
+}
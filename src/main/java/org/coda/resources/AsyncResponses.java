@@ -0,0 +1,24 @@
+package org.coda.resources;
+
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.core.Response;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+final class AsyncResponses {
+
+  private AsyncResponses() {}
+
+  static void resumeWhenComplete(CompletionStage<Response> stage, AsyncResponse asyncResponse) {
+    stage.whenComplete((response, throwable) -> {
+      if (throwable == null) {
+        asyncResponse.resume(response);
+      } else if (throwable instanceof CompletionException && throwable.getCause() != null) {
+        asyncResponse.resume(throwable.getCause());
+      } else {
+        asyncResponse.resume(throwable);
+      }
+    });
+  }
+
+}
@@ -0,0 +1,70 @@
+package org.coda.resources;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import java.net.URI;
+import java.util.List;
+import java.util.stream.Stream;
+import org.coda.backend.BackendRegistry;
+import org.coda.model.BackendSpec;
+import org.coda.model.BackendStatus;
+
+/**
+ * Admin view of the backend pool. Served on the admin port only.
+ */
+@Path("/backends")
+@Produces(MediaType.APPLICATION_JSON)
+public class Backends {
+
+  @Inject
+  BackendRegistry backendRegistry;
+
+  @GET
+  public List<BackendStatus> list() {
+    return Stream.concat(Stream.of(backendRegistry.snapshot()),
+                         backendRegistry.draining().stream())
+        .map(BackendStatus::of)
+        .toList();
+  }
+
+  @POST
+  @Consumes(MediaType.APPLICATION_JSON)
+  public BackendStatus add(BackendSpec spec) {
+    if (spec == null || spec.getUrl() == null || spec.getUrl().isBlank()) {
+      throw new BadRequestException("Backend url is required");
+    }
+    int weight = spec.getWeight() == null ? 1 : spec.getWeight();
+    if (weight < 0) {
+      throw new BadRequestException("Backend weight must not be negative");
+    }
+    String url = spec.getUrl().trim();
+    try {
+      URI uri = URI.create(url);
+      if (uri.getScheme() == null || uri.getHost() == null) {
+        throw new BadRequestException("Backend url must be absolute: " + url);
+      }
+    } catch (IllegalArgumentException exception) {
+      throw new BadRequestException("Invalid backend url: " + url, exception);
+    }
+    return BackendStatus.of(backendRegistry.add(url, weight));
+  }
+
+  @DELETE
+  public Response drain(@QueryParam("url") String url) {
+    if (url == null || !backendRegistry.drain(url)) {
+      throw new NotFoundException("Unknown backend: " + url);
+    }
+    return Response.accepted().build();
+  }
+
+}
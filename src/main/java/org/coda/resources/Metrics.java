@@ -0,0 +1,36 @@
+package org.coda.resources;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import java.util.stream.Stream;
+import org.coda.backend.BackendRegistry;
+import org.coda.client.BackendClient;
+import org.coda.metrics.ProxyMetrics;
+
+/**
+ * Prometheus scrape endpoint. Served on the admin port only.
+ */
+@Path("/metrics")
+public class Metrics {
+
+  @Inject
+  ProxyMetrics proxyMetrics;
+
+  @Inject
+  BackendRegistry backendRegistry;
+
+  @Inject
+  BackendClient backendClient;
+
+  @GET
+  @Produces("text/plain; version=0.0.4; charset=utf-8")
+  public String scrape() {
+    return proxyMetrics.scrape(Stream.concat(Stream.of(backendRegistry.snapshot()),
+                                             backendRegistry.draining().stream())
+                                   .toList(),
+                               backendClient.getPoolStats());
+  }
+
+}
@@ -0,0 +1,91 @@
+package org.coda.resources;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HEAD;
+import jakarta.ws.rs.OPTIONS;
+import jakarta.ws.rs.PATCH;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.PUT;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.UriInfo;
+import org.coda.service.IncomingRequest;
+import org.coda.service.LoadBalancerService;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.jersey.server.ContainerRequest;
+
+/**
+ * Forwards requests of every method and content type with their bodies streamed through. The
+ * body is taken from the request rather than as an entity parameter, so it reaches the backend
+ * exactly as the client sent it.
+ */
+public abstract class ProxyResource {
+
+  @Context
+  UriInfo uriInfo;
+
+  @Context
+  HttpHeaders httpHeaders;
+
+  @Context
+  ContainerRequest containerRequest;
+
+  @Context
+  Request request;
+
+  @Inject
+  LoadBalancerService loadBalancerService;
+
+  @GET
+  public void get(@Suspended AsyncResponse asyncResponse) {
+    forward(asyncResponse);
+  }
+
+  @HEAD
+  public void head(@Suspended AsyncResponse asyncResponse) {
+    forward(asyncResponse);
+  }
+
+  @POST
+  public void post(@Suspended AsyncResponse asyncResponse) {
+    forward(asyncResponse);
+  }
+
+  @PUT
+  public void put(@Suspended AsyncResponse asyncResponse) {
+    forward(asyncResponse);
+  }
+
+  @PATCH
+  public void patch(@Suspended AsyncResponse asyncResponse) {
+    forward(asyncResponse);
+  }
+
+  @DELETE
+  public void delete(@Suspended AsyncResponse asyncResponse) {
+    forward(asyncResponse);
+  }
+
+  @OPTIONS
+  public void options(@Suspended AsyncResponse asyncResponse) {
+    forward(asyncResponse);
+  }
+
+  IncomingRequest incoming() {
+    return IncomingRequest.of(containerRequest.getMethod(),
+                              uriInfo,
+                              httpHeaders,
+                              request == null ? null : request.getRemoteAddr());
+  }
+
+  private void forward(AsyncResponse asyncResponse) {
+    AsyncResponses.resumeWhenComplete(
+        loadBalancerService.proxy(incoming(), containerRequest.getEntityStream()),
+        asyncResponse);
+  }
+
+}
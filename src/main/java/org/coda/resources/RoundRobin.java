@@ -1,31 +1,27 @@
 package org.coda.resources;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import jakarta.inject.Inject;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
-import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
 import jakarta.ws.rs.core.MediaType;
-import jakarta.ws.rs.core.Response;
-import jakarta.ws.rs.core.UriInfo;
-import org.coda.service.LoadBalancerService;
 
+/**
+ * Parses JSON POSTs, so they can be cached, coalesced and routed by a field of the payload. Other
+ * requests are forwarded as they are.
+ */
 @Path("/{any:.*}")
-public class RoundRobin {
-
-  @Context
-  UriInfo uriInfo;
-
-  @Inject
-  LoadBalancerService loadBalancerService;
+public class RoundRobin extends ProxyResource {
 
   @POST
   @Consumes(MediaType.APPLICATION_JSON)
   @Produces(MediaType.APPLICATION_JSON)
-  public Response proxy(JsonNode payload) {
-    return loadBalancerService.proxy(payload, uriInfo);
+  public void proxy(JsonNode payload, @Suspended AsyncResponse asyncResponse) {
+    AsyncResponses.resumeWhenComplete(loadBalancerService.proxy(payload, incoming()),
+                                      asyncResponse);
   }
 
 }
@@ -0,0 +1,8 @@
+package org.coda.resources;
+
+import jakarta.ws.rs.Path;
+
+@Path("/{any:.*}")
+public class RoundRobinPassThrough extends ProxyResource {
+
+}
@@ -0,0 +1,80 @@
+package org.coda.routing;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Finds the value at a JSON pointer by streaming tokens, without building a tree. Properties and
+ * elements off the path are skipped, and parsing stops as soon as the value is reached, so a key
+ * near the start of a large body costs next to nothing.
+ */
+public final class JsonKeyExtractor {
+
+  private final JsonFactory jsonFactory;
+  private final JsonPointer pointer;
+
+  public JsonKeyExtractor(JsonFactory jsonFactory, JsonPointer pointer) {
+    this.jsonFactory = jsonFactory;
+    this.pointer = pointer;
+  }
+
+  /**
+   * Returns the text of the scalar at the pointer, or {@code null} if there is none or the body
+   * is not valid JSON up to that point.
+   */
+  public String extract(InputStream in) {
+    try (JsonParser parser = jsonFactory.createParser(in)) {
+      JsonPointer remaining = pointer;
+      JsonToken token = parser.nextToken();
+      while (token != null && !remaining.matches()) {
+        if (token == JsonToken.START_OBJECT) {
+          token = enterProperty(parser, remaining.getMatchingProperty());
+        } else if (token == JsonToken.START_ARRAY) {
+          token = enterElement(parser, remaining.getMatchingIndex());
+        } else {
+          return null;
+        }
+        remaining = remaining.tail();
+      }
+      return token != null && token.isScalarValue() && token != JsonToken.VALUE_NULL
+          ? parser.getText()
+          : null;
+    } catch (IOException exception) {
+      return null;
+    }
+  }
+
+  private static JsonToken enterProperty(JsonParser parser, String property) throws IOException {
+    for (JsonToken token = parser.nextToken();
+         token == JsonToken.FIELD_NAME;
+         token = parser.nextToken()) {
+      boolean match = property.equals(parser.currentName());
+      JsonToken value = parser.nextToken();
+      if (match) {
+        return value;
+      }
+      parser.skipChildren();
+    }
+    return null;
+  }
+
+  private static JsonToken enterElement(JsonParser parser, int index) throws IOException {
+    if (index < 0) {
+      return null;
+    }
+    int position = 0;
+    for (JsonToken token = parser.nextToken();
+         token != null && token != JsonToken.END_ARRAY;
+         token = parser.nextToken()) {
+      if (position++ == index) {
+        return token;
+      }
+      parser.skipChildren();
+    }
+    return null;
+  }
+}
@@ -0,0 +1,87 @@
+package org.coda.routing;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Values for path prefixes, matched on whole segments with the longest prefix winning:
+ * {@code /quote} matches {@code /quote} and {@code /quote/fx} but not {@code /quotes}.
+ *
+ * <p>The prefixes are compiled into a trie of path segments, so a lookup walks the path once
+ * whatever the number of prefixes.
+ */
+public final class PathPrefixes<V> {
+
+  private final Node<V> root;
+  private final boolean empty;
+
+  private PathPrefixes(Node<V> root, boolean empty) {
+    this.root = root;
+    this.empty = empty;
+  }
+
+  public static <V> PathPrefixes<V> of(Map<String, V> prefixes) {
+    Node<V> root = new Node<>();
+    for (Map.Entry<String, V> prefix : prefixes.entrySet()) {
+      String normalized = normalize(prefix.getKey());
+      // A trailing slash only admits paths that continue past it.
+      boolean childrenOnly = normalized.length() > 1 && normalized.endsWith("/");
+      String segments = normalized.substring(1, normalized.length() - (childrenOnly ? 1 : 0));
+      Node<V> node = root;
+      if (!segments.isEmpty()) {
+        for (String segment : segments.split("/", -1)) {
+          node = node.children.computeIfAbsent(segment, key -> new Node<>());
+        }
+      }
+      if (childrenOnly) {
+        node.childValue = prefix.getValue();
+      } else {
+        node.value = prefix.getValue();
+      }
+    }
+    return new PathPrefixes<>(root, prefixes.isEmpty());
+  }
+
+  /**
+   * Adds the leading slash that paths taken from {@code UriInfo} leave out.
+   */
+  public static String normalize(String path) {
+    return path.startsWith("/") ? path : "/" + path;
+  }
+
+  /**
+   * Returns the value of the longest prefix {@code path} falls under, or {@code null}.
+   */
+  public V match(String path) {
+    int start = path.startsWith("/") ? 1 : 0;
+    Node<V> node = root;
+    V match = root.value;
+    while (start <= path.length()) {
+      if (node.childValue != null) {
+        match = node.childValue;
+      }
+      int end = path.indexOf('/', start);
+      end = end < 0 ? path.length() : end;
+      node = node.children.get(path.substring(start, end));
+      if (node == null) {
+        break;
+      }
+      if (node.value != null) {
+        match = node.value;
+      }
+      start = end + 1;
+    }
+    return match;
+  }
+
+  public boolean isEmpty() {
+    return empty;
+  }
+
+  private static final class Node<V> {
+
+    private final Map<String, Node<V>> children = new HashMap<>();
+    private V value;
+    private V childValue;
+  }
+}
@@ -0,0 +1,152 @@
+package org.coda.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.ws.rs.HttpMethod;
+import jakarta.ws.rs.NotAllowedException;
+import jakarta.ws.rs.core.AbstractMultivaluedMap;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.coda.exception.GenericExceptionMapper;
+import org.coda.service.IncomingRequest;
+import org.coda.service.LoadBalancerService;
+import org.coda.service.StreamedBody;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.util.Header;
+
+/**
+ * Forwards every request straight from Grizzly, without Jersey's resource matching, filters and
+ * entity providers. Bodies are always streamed through, as in pass-through mode, and backend
+ * response bodies are spliced into the connection by {@link ResponseSplice}.
+ */
+final class ProxyHttpHandler extends HttpHandler {
+
+  private static final Logger logger = Logger.getLogger(ProxyHttpHandler.class.getName());
+  // The methods the Jersey resources accept; CONNECT, TRACE and the like are not proxied.
+  private static final Set<String> METHODS = Set.of(HttpMethod.GET,
+                                                    HttpMethod.HEAD,
+                                                    HttpMethod.POST,
+                                                    HttpMethod.PUT,
+                                                    HttpMethod.PATCH,
+                                                    HttpMethod.DELETE,
+                                                    HttpMethod.OPTIONS);
+
+  private final LoadBalancerService loadBalancerService;
+  private final GenericExceptionMapper exceptionMapper = new GenericExceptionMapper();
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  ProxyHttpHandler(LoadBalancerService loadBalancerService) {
+    this.loadBalancerService = loadBalancerService;
+  }
+
+  @Override
+  public void service(Request request, org.glassfish.grizzly.http.server.Response response) {
+    response.suspend();
+    CompletionStage<Response> proxied;
+    try {
+      proxied = loadBalancerService.proxy(incoming(request), request.getInputStream());
+    } catch (RuntimeException exception) {
+      complete(response, null, exception);
+      return;
+    }
+    proxied.whenComplete((proxyResponse, throwable) ->
+                             complete(response, proxyResponse, throwable));
+  }
+
+  static IncomingRequest incoming(Request request) {
+    String method = request.getMethod().getMethodString();
+    if (!METHODS.contains(method)) {
+      throw new NotAllowedException(
+          Response.status(Response.Status.METHOD_NOT_ALLOWED).allow(METHODS).build());
+    }
+    MultivaluedMap<String, String> headers =
+        new AbstractMultivaluedMap<>(new TreeMap<>(String.CASE_INSENSITIVE_ORDER)) {};
+    for (String name : request.getHeaderNames()) {
+      for (String value : request.getHeaders(name)) {
+        headers.add(name, value);
+      }
+    }
+    String query = request.getQueryString();
+    String target = query == null
+        ? request.getRequestURI()
+        : request.getRequestURI() + "?" + query;
+    return IncomingRequest.of(method,
+                              target,
+                              request.getScheme(),
+                              headers,
+                              request.getRemoteAddr());
+  }
+
+  private void complete(org.glassfish.grizzly.http.server.Response response,
+                        Response proxyResponse,
+                        Throwable throwable) {
+    boolean spliced = false;
+    try {
+      if (throwable != null) {
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+            ? throwable.getCause()
+            : throwable;
+        proxyResponse = exceptionMapper.toResponse(cause);
+      }
+      spliced = write(response, proxyResponse);
+    } catch (IOException | RuntimeException exception) {
+      // The status line may already be out, so the connection is all that can be given up.
+      logger.log(Level.FINE, "Failed to write response", exception);
+    } finally {
+      if (!spliced) {
+        response.resume();
+      }
+    }
+  }
+
+  /**
+   * Writes {@code proxyResponse}, and returns whether its body was handed to a
+   * {@link ResponseSplice} that resumes the response when it is done.
+   */
+  private boolean write(org.glassfish.grizzly.http.server.Response response,
+                        Response proxyResponse) throws IOException {
+    response.setStatus(proxyResponse.getStatus());
+    for (var header : proxyResponse.getStringHeaders().entrySet()) {
+      for (String value : header.getValue()) {
+        response.addHeader(header.getKey(), value);
+      }
+    }
+    Object entity = proxyResponse.getEntity();
+    if (entity == null) {
+      return false;
+    }
+    if (entity instanceof StreamedBody streamedBody) {
+      Flow.Publisher<List<ByteBuffer>> buffers = streamedBody.takeBuffers();
+      if (buffers != null) {
+        buffers.subscribe(new ResponseSplice(response));
+        return true;
+      }
+    }
+    OutputStream out = response.getOutputStream();
+    if (entity instanceof StreamingOutput streamingOutput) {
+      streamingOutput.write(out);
+    } else if (entity instanceof byte[] bytes) {
+      out.write(bytes);
+    } else {
+      if (!response.containsHeader(Header.ContentType)) {
+        response.setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
+      }
+      objectMapper.writeValue(out, entity);
+    }
+    return false;
+  }
+}
@@ -0,0 +1,113 @@
+package org.coda.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.WriteHandler;
+import org.glassfish.grizzly.http.io.OutputBuffer;
+import org.glassfish.grizzly.http.server.Response;
+import org.glassfish.grizzly.memory.Buffers;
+import org.glassfish.grizzly.memory.CompositeBuffer;
+import org.glassfish.grizzly.memory.MemoryManager;
+
+/**
+ * Writes a backend body to a suspended Grizzly response on the fast path, as the HTTP client
+ * delivers it. The client's buffers are wrapped rather than copied again and queued on the
+ * connection; the next buffers are requested only once the connection can take more, so a slow
+ * client holds back the backend instead of piling up memory or blocking a thread.
+ *
+ * <p>If either side fails part way, the client connection is closed so a truncated body is not
+ * mistaken for a complete one.
+ */
+final class ResponseSplice implements Flow.Subscriber<List<ByteBuffer>> {
+
+  private static final Logger logger = Logger.getLogger(ResponseSplice.class.getName());
+
+  private final Response response;
+  private final OutputBuffer out;
+  private final MemoryManager<?> memoryManager;
+  private final WriteHandler writePossible = new WriteHandler() {
+    @Override
+    public void onWritePossible() {
+      subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      subscription.cancel();
+      abort(throwable);
+    }
+  };
+  private final AtomicBoolean finished = new AtomicBoolean();
+  private Flow.Subscription subscription;
+
+  ResponseSplice(Response response) {
+    this.response = response;
+    this.out = response.getOutputBuffer();
+    this.memoryManager = response.getRequest().getContext().getMemoryManager();
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    this.subscription = subscription;
+    subscription.request(1);
+  }
+
+  @Override
+  public void onNext(List<ByteBuffer> buffers) {
+    try {
+      out.writeBuffer(wrap(buffers));
+      if (out.canWrite()) {
+        subscription.request(1);
+      } else {
+        out.notifyCanWrite(writePossible);
+      }
+    } catch (IOException | RuntimeException exception) {
+      subscription.cancel();
+      abort(exception);
+    }
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    abort(throwable);
+  }
+
+  @Override
+  public void onComplete() {
+    if (finished.compareAndSet(false, true)) {
+      response.resume();
+    }
+  }
+
+  private Buffer wrap(List<ByteBuffer> buffers) {
+    if (buffers.size() == 1) {
+      return wrap(buffers.get(0));
+    }
+    CompositeBuffer composite = CompositeBuffer.newBuffer(memoryManager);
+    for (ByteBuffer buffer : buffers) {
+      composite.append(wrap(buffer));
+    }
+    return composite;
+  }
+
+  private Buffer wrap(ByteBuffer buffer) {
+    Buffer wrapped = Buffers.wrap(memoryManager, buffer);
+    // The HTTP client allocated it, so Grizzly must not return it to its own pool.
+    wrapped.allowBufferDispose(false);
+    return wrapped;
+  }
+
+  private void abort(Throwable throwable) {
+    if (finished.compareAndSet(false, true)) {
+      logger.log(Level.FINE, "Response body aborted", throwable);
+      response.getRequest().getConnection().closeSilently();
+      response.resume();
+    }
+  }
+}
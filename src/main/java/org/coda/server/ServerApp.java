@@ -1,89 +1,253 @@
 package org.coda.server;
 
 import jakarta.inject.Singleton;
-import jakarta.ws.rs.client.Client;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.coda.backend.BackendConfigWatcher;
+import org.coda.backend.BackendRegistry;
+import org.coda.client.BackendClient;
 import org.coda.client.ClientFactory;
+import org.coda.cluster.Cluster;
+import org.coda.compression.GzipCodec;
+import org.coda.compression.RequestDecompression;
+import org.coda.compression.ResponseCompression;
 import org.coda.config.AppConfig;
 import org.coda.exception.GenericExceptionMapper;
 import org.coda.health.BackendHealthChecker;
 import org.coda.health.BackendHealthManager;
+import org.coda.health.CircuitBreakingHealthManager;
+import org.coda.health.PeerHealth;
+import org.coda.logging.AccessLog;
+import org.coda.metrics.ProxyMetrics;
+import org.coda.resources.Backends;
+import org.coda.resources.Metrics;
+import org.coda.resources.RoundRobin;
+import org.coda.resources.RoundRobinPassThrough;
 import org.coda.service.LoadBalancerService;
 import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
 import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
 import org.glassfish.jersey.jackson.JacksonFeature;
-import org.glassfish.jersey.logging.LoggingFeature;
 import org.glassfish.jersey.server.ResourceConfig;
 
 public class ServerApp {
 
   private final AppConfig appConfig;
+  private final ExecutorService virtualThreadExecutor;
+  private final BackendClient backendClient;
+  private final BackendRegistry backendRegistry;
+  private final ProxyMetrics proxyMetrics = new ProxyMetrics();
+  private final AccessLog accessLog;
   private final Logger logger = Logger.getLogger(getClass().getName());
+  private ScheduledExecutorService healthCheckScheduler;
+  private Cluster cluster;
+  private HttpServer server;
+  private HttpServer adminServer;
 
-  public ServerApp(AppConfig appConfig) {
+  public ServerApp(AppConfig appConfig) throws IOException {
     this.appConfig = appConfig;
+    this.virtualThreadExecutor = appConfig.isVirtualThreads()
+        ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("lb-virtual-", 0).factory())
+        : null;
+    this.backendClient = ClientFactory.create(appConfig, virtualThreadExecutor);
+    this.backendRegistry = BackendRegistry.fromConfig(appConfig);
+    backendRegistry.onRemoved(backendClient::release);
+    backendRegistry.onRemoved(proxyMetrics::release);
+    this.accessLog = AccessLog.fromConfig(appConfig);
   }
 
-  private ResourceConfig buildResourceConfig() {
-    LoggingFeature loggingFeature = new LoggingFeature(
-        Logger.getLogger(LoggingFeature.class.getName()),
-        Level.INFO,
-        LoggingFeature.Verbosity.HEADERS_ONLY,
-        Integer.MAX_VALUE
-    );
-
-    Client client = ClientFactory.create(appConfig);
-
+  private CircuitBreakingHealthManager startHealthChecks() throws IOException {
+    cluster = appConfig.getClusterPort() > 0
+        ? Cluster.fromConfig(appConfig, backendRegistry)
+        : null;
     BackendHealthChecker backendHealthChecker =
-        new BackendHealthChecker(appConfig.getBackends(), client);
-    ScheduledExecutorService scheduledExecutorService =
+        new BackendHealthChecker(backendRegistry,
+                                 backendClient,
+                                 proxyMetrics,
+                                 Duration.ofMillis(appConfig.getHealthTimeoutMs()),
+                                 appConfig.getHealthRise(),
+                                 appConfig.getHealthFall(),
+                                 cluster == null ? PeerHealth.NONE : cluster);
+    CircuitBreakingHealthManager circuitBreakingHealthManager =
+        new CircuitBreakingHealthManager(backendHealthChecker,
+                                         backendRegistry,
+                                         proxyMetrics,
+                                         appConfig);
+    backendHealthChecker.capPassiveEjections(circuitBreakingHealthManager::tryEject,
+                                             circuitBreakingHealthManager::releaseEjection);
+    backendRegistry.onRemoved(circuitBreakingHealthManager::release);
+    backendRegistry.onRemoved(backendHealthChecker::release);
+    healthCheckScheduler =
         Executors.newSingleThreadScheduledExecutor(runnable -> {
           Thread thread = new Thread(runnable, "health-checker");
           thread.setDaemon(true);
           return thread;
         });
-    scheduledExecutorService.scheduleAtFixedRate(backendHealthChecker,
-                                                 appConfig.getScheduleInitialDelay(),
-                                                 appConfig.getSchedulePeriod(),
-                                                 TimeUnit.SECONDS);
+    backendHealthChecker.schedule(healthCheckScheduler,
+                                  Duration.ofSeconds(appConfig.getScheduleInitialDelay()),
+                                  Duration.ofSeconds(appConfig.getSchedulePeriod()),
+                                  appConfig.getScheduleJitter());
+    if (cluster != null) {
+      cluster.shareEjections(circuitBreakingHealthManager::isEjectedLocally,
+                             circuitBreakingHealthManager::ejectForPeer);
+      cluster.start(healthCheckScheduler, Duration.ofMillis(appConfig.getClusterGossipMs()));
+    }
+    return circuitBreakingHealthManager;
+  }
 
-    return new ResourceConfig()
-        .packages("org.coda.resources")
+  private ResourceConfig buildResourceConfig(BackendHealthManager healthManager) {
+    ResourceConfig resourceConfig = new ResourceConfig();
+    if (appConfig.isCompressionEnabled()) {
+      resourceConfig.register(new ResponseCompression(
+          new GzipCodec(appConfig.getCompressionLevel(), appConfig.getCompressionPoolSize()),
+          appConfig.getCompressionMinBytes()));
+      if (!appConfig.isPassThrough()) {
+        resourceConfig.register(RequestDecompression.class);
+      }
+    }
+    return resourceConfig
+        .register(appConfig.isPassThrough() ? RoundRobinPassThrough.class : RoundRobin.class)
         .register(GenericExceptionMapper.class)
         .register(JacksonFeature.class)
-        .register(loggingFeature)
         .register(new AbstractBinder() {
           @Override
           protected void configure() {
             bind(appConfig).to(AppConfig.class);
-            bind(client).to(Client.class);
-            bind(backendHealthChecker).to(BackendHealthManager.class);
+            bind(backendRegistry).to(BackendRegistry.class);
+            bind(backendClient).to(BackendClient.class);
+            bind(proxyMetrics).to(ProxyMetrics.class);
+            bind(accessLog).to(AccessLog.class);
+            bind(healthManager).to(BackendHealthManager.class);
             bindAsContract(LoadBalancerService.class).in(Singleton.class);
           }
         })
         .property("jersey.config.server.wadl.disableWadl", true);
   }
 
-  private void start() throws IOException, InterruptedException {
-    var resourceConfig = buildResourceConfig();
+  /**
+   * Returns a server that hands every request to {@link ProxyHttpHandler}, leaving Jersey to the
+   * admin server.
+   */
+  private HttpServer createFastPathServer(BackendHealthManager healthManager) {
+    LoadBalancerService loadBalancerService = new LoadBalancerService(appConfig,
+                                                                      backendRegistry,
+                                                                      backendClient,
+                                                                      healthManager,
+                                                                      proxyMetrics,
+                                                                      accessLog);
+    HttpServer fastPathServer = new HttpServer();
+    fastPathServer.addListener(
+        new NetworkListener("grizzly", appConfig.getHost(), appConfig.getPort()));
+    fastPathServer.getServerConfiguration()
+        .addHttpHandler(new ProxyHttpHandler(loadBalancerService), "/");
+    return fastPathServer;
+  }
+
+  private ResourceConfig buildAdminResourceConfig() {
+    return new ResourceConfig()
+        .register(Backends.class)
+        .register(Metrics.class)
+        .register(GenericExceptionMapper.class)
+        .register(JacksonFeature.class)
+        .register(new AbstractBinder() {
+          @Override
+          protected void configure() {
+            bind(backendRegistry).to(BackendRegistry.class);
+            bind(backendClient).to(BackendClient.class);
+            bind(proxyMetrics).to(ProxyMetrics.class);
+          }
+        })
+        .property("jersey.config.server.wadl.disableWadl", true);
+  }
+
+  private HttpServer startAdminServer() throws IOException {
+    var uri = appConfig.adminBaseUriBuilder().build();
+    HttpServer adminServer =
+        GrizzlyHttpServerFactory.createHttpServer(uri, buildAdminResourceConfig(), false);
+    adminServer.start();
+    logger.info(String.format("Admin server started at %s", uri));
+    return adminServer;
+  }
+
+  private void watchBackendsFile(Path backendsFile) {
+    Thread watcher = new Thread(new BackendConfigWatcher(backendsFile, backendRegistry),
+                                "backend-config-watcher");
+    watcher.setDaemon(true);
+    watcher.start();
+    logger.info(String.format("Watching %s for backend changes", backendsFile));
+  }
+
+  /**
+   * Starts the proxy and admin servers and returns once they accept connections.
+   */
+  public void start() throws IOException {
+    BackendHealthManager healthManager = startHealthChecks();
     var uri = appConfig.baseUriBuilder().build();
-    HttpServer server = GrizzlyHttpServerFactory.createHttpServer(uri, resourceConfig, false);
+    server = appConfig.isFastPath()
+        ? createFastPathServer(healthManager)
+        : GrizzlyHttpServerFactory.createHttpServer(uri, buildResourceConfig(healthManager), false);
+    if (virtualThreadExecutor != null) {
+      server.getListeners()
+          .forEach(listener -> listener.getTransport()
+                                       .setWorkerThreadPool(virtualThreadExecutor));
+    }
+
+    adminServer = appConfig.getAdminPort() > 0 ? startAdminServer() : null;
+    Path backendsFile = appConfig.getBackendsFile();
+    if (backendsFile != null) {
+      watchBackendsFile(backendsFile);
+    }
 
-    Runtime.getRuntime().addShutdownHook(new Thread(server::shutdown));
     server.start();
-    logger.info(String.format("Server started at %s", uri));
-    Thread.currentThread().join();
+    logger.info(String.format("Server started at %s (virtual threads: %s, fast path: %s)",
+                              uri,
+                              virtualThreadExecutor != null,
+                              appConfig.isFastPath()));
+  }
+
+  /**
+   * Stops both servers and releases health checking, backend connections and the access log.
+   */
+  public void stop() {
+    if (server != null) {
+      server.shutdownNow();
+    }
+    if (adminServer != null) {
+      adminServer.shutdownNow();
+    }
+    if (healthCheckScheduler != null) {
+      healthCheckScheduler.shutdownNow();
+    }
+    if (cluster != null) {
+      try {
+        cluster.close();
+      } catch (IOException exception) {
+        logger.log(Level.WARNING, "Failed to close gossip channel", exception);
+      }
+    }
+    backendClient.close();
+    if (virtualThreadExecutor != null) {
+      virtualThreadExecutor.shutdown();
+    }
+    try {
+      accessLog.close();
+    } catch (IOException exception) {
+      logger.log(Level.WARNING, "Failed to close access log", exception);
+    }
   }
 
   public static void main(String[] args) throws Exception {
-    var appConfig = AppConfig.load();
-    new ServerApp(appConfig).start();
+    var serverApp = new ServerApp(AppConfig.load());
+    Runtime.getRuntime().addShutdownHook(new Thread(serverApp::stop));
+    serverApp.start();
+    Thread.currentThread().join();
   }
 
 }
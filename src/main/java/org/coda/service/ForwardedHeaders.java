@@ -0,0 +1,130 @@
+package org.coda.service;
+
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Response.ResponseBuilder;
+import java.net.http.HttpHeaders;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decides which headers cross the proxy in each direction.
+ *
+ * <p>Hop-by-hop headers, and any header a {@code Connection} header names, describe a single
+ * connection and are dropped both ways. Requests also lose the headers the HTTP client sets
+ * itself, and gain {@code X-Forwarded-For}, {@code X-Forwarded-Proto} and
+ * {@code X-Forwarded-Host}. A proxy in front may already have set the last two; its values are
+ * kept, and the client address is appended to its {@code X-Forwarded-For}.
+ */
+final class ForwardedHeaders {
+
+  static final String X_FORWARDED_FOR = "X-Forwarded-For";
+  static final String X_FORWARDED_PROTO = "X-Forwarded-Proto";
+  static final String X_FORWARDED_HOST = "X-Forwarded-Host";
+
+  private static final Set<String> HOP_BY_HOP = Set.of("connection",
+                                                       "keep-alive",
+                                                       "proxy-authenticate",
+                                                       "proxy-authorization",
+                                                       "proxy-connection",
+                                                       "te",
+                                                       "trailer",
+                                                       "transfer-encoding",
+                                                       "upgrade");
+  // Set by the HTTP client from the request itself; it rejects them as request headers.
+  private static final Set<String> CLIENT_SET = Set.of("host", "content-length", "expect");
+
+  private ForwardedHeaders() {}
+
+  /**
+   * Returns the headers to send upstream for a client request.
+   *
+   * @param excluded lower-case names of further headers to drop
+   */
+  static Map<String, String> request(IncomingRequest incoming, Set<String> excluded) {
+    MultivaluedMap<String, String> headers = incoming.headers();
+    Set<String> dropped = connectionTokens(headers.get("Connection"));
+    Map<String, String> forwarded = new HashMap<>();
+    String forwardedFor = null;
+    String forwardedProto = incoming.scheme();
+    String forwardedHost = headers.getFirst("Host");
+    for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+      String name = header.getKey();
+      String lowerName = name.toLowerCase(Locale.ROOT);
+      List<String> values = header.getValue();
+      if (values.isEmpty()
+          || HOP_BY_HOP.contains(lowerName)
+          || CLIENT_SET.contains(lowerName)
+          || excluded.contains(lowerName)
+          || dropped.contains(lowerName)) {
+        continue;
+      }
+      // Cookies are the one request header whose values are not joined with commas.
+      String value = String.join(lowerName.equals("cookie") ? "; " : ", ", values);
+      switch (lowerName) {
+        case "x-forwarded-for" -> forwardedFor = value;
+        case "x-forwarded-proto" -> forwardedProto = value;
+        case "x-forwarded-host" -> forwardedHost = value;
+        default -> forwarded.put(name, value);
+      }
+    }
+    String clientAddress = incoming.clientAddress();
+    if (clientAddress != null) {
+      forwardedFor = forwardedFor == null ? clientAddress : forwardedFor + ", " + clientAddress;
+    }
+    putIfPresent(forwarded, X_FORWARDED_FOR, forwardedFor);
+    putIfPresent(forwarded, X_FORWARDED_PROTO, forwardedProto);
+    putIfPresent(forwarded, X_FORWARDED_HOST, forwardedHost);
+    return forwarded;
+  }
+
+  /**
+   * Copies the end-to-end headers of a backend response to {@code response}.
+   *
+   * @param excluded lower-case names of further headers to leave out
+   */
+  static void response(HttpHeaders headers, ResponseBuilder response, Set<String> excluded) {
+    endToEnd(headers, excluded).map()
+        .forEach((name, values) -> values.forEach(value -> response.header(name, value)));
+  }
+
+  /**
+   * Returns the end-to-end headers of a backend response, the ones
+   * {@link #response(HttpHeaders, ResponseBuilder, Set)} copies.
+   *
+   * @param excluded lower-case names of further headers to leave out
+   */
+  static HttpHeaders endToEnd(HttpHeaders headers, Set<String> excluded) {
+    Set<String> dropped = connectionTokens(headers.allValues("Connection"));
+    return HttpHeaders.of(headers.map(), (name, value) -> {
+      String lowerName = name.toLowerCase(Locale.ROOT);
+      return !lowerName.startsWith(":")
+          && !lowerName.equals("content-length")
+          && !HOP_BY_HOP.contains(lowerName)
+          && !excluded.contains(lowerName)
+          && !dropped.contains(lowerName);
+    });
+  }
+
+  private static Set<String> connectionTokens(List<String> connection) {
+    if (connection == null || connection.isEmpty()) {
+      return Set.of();
+    }
+    Set<String> tokens = new HashSet<>();
+    for (String value : connection) {
+      for (String token : value.split(",")) {
+        tokens.add(token.trim().toLowerCase(Locale.ROOT));
+      }
+    }
+    return tokens;
+  }
+
+  private static void putIfPresent(Map<String, String> headers, String name, String value) {
+    if (value != null) {
+      headers.put(name, value);
+    }
+  }
+}
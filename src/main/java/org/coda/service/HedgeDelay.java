@@ -0,0 +1,43 @@
+package org.coda.service;
+
+import java.util.concurrent.atomic.AtomicReference;
+import org.coda.metrics.LatencyHistogram;
+
+/**
+ * Delay after which a second copy of a request is sent, taken as a percentile of recent backend
+ * latencies.
+ *
+ * <p>Latencies are collected in windows of {@code windowSize} samples. When a window fills up its
+ * percentile becomes the new delay and a fresh window starts, so the delay follows the backends
+ * without a percentile scan per request. Until the first window is complete nothing is hedged.
+ */
+final class HedgeDelay {
+
+  private final double percentile;
+  private final int windowSize;
+  private final AtomicReference<LatencyHistogram> window =
+      new AtomicReference<>(new LatencyHistogram());
+  private volatile long delayNanos = -1;
+
+  HedgeDelay(double percentile, int windowSize) {
+    this.percentile = percentile;
+    this.windowSize = windowSize;
+  }
+
+  void record(long latencyNanos) {
+    LatencyHistogram current = window.get();
+    current.record(latencyNanos);
+    if (current.count() >= windowSize
+        && window.compareAndSet(current, new LatencyHistogram())) {
+      delayNanos = current.percentile(percentile);
+    }
+  }
+
+  /**
+   * Returns the current delay, or {@code -1} while it is not known yet.
+   */
+  long delayNanos() {
+    return delayNanos;
+  }
+
+}
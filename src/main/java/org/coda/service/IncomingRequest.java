@@ -0,0 +1,104 @@
+package org.coda.service;
+
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.UriInfo;
+import java.net.URI;
+import java.util.Locale;
+
+/**
+ * What the proxy needs to know about a client request, whether Jersey or a bare Grizzly handler
+ * received it.
+ *
+ * @param path the decoded path of {@code target}, which routes are matched against
+ * @param target the path and query string as the client sent them, with dot segments removed
+ * @param headers the request headers, looked up without regard to case
+ * @param clientAddress the address of the client, or {@code null} if unknown
+ */
+public record IncomingRequest(String method,
+                              String path,
+                              String target,
+                              String scheme,
+                              MultivaluedMap<String, String> headers,
+                              String clientAddress) {
+
+  public static IncomingRequest of(String method,
+                                   UriInfo uriInfo,
+                                   HttpHeaders headers,
+                                   String clientAddress) {
+    URI requestUri = uriInfo.getRequestUri();
+    String query = requestUri.getRawQuery();
+    return of(method,
+              query == null ? requestUri.getRawPath() : requestUri.getRawPath() + "?" + query,
+              requestUri.getScheme(),
+              headers.getRequestHeaders(),
+              clientAddress);
+  }
+
+  /**
+   * Returns the request for {@code target} as the client sent it. Routes are matched against the
+   * decoded path of the target that is forwarded, so both name the same resource.
+   *
+   * @throws BadRequestException if the target is not a valid origin-form target, or if decoding
+   *     its path would add segments, as an encoded slash or dot segment does
+   */
+  public static IncomingRequest of(String method,
+                                   String target,
+                                   String scheme,
+                                   MultivaluedMap<String, String> headers,
+                                   String clientAddress) {
+    String forwarded = originForm(target);
+    return new IncomingRequest(method,
+                               decodedPath(forwarded),
+                               forwarded,
+                               scheme,
+                               headers,
+                               clientAddress);
+  }
+
+  /**
+   * Returns {@code target} with its dot segments removed, or throws
+   * {@link BadRequestException} unless it is a path starting with exactly one slash that stays
+   * within the root. A target such as {@code //host/path} would otherwise name a host of its own.
+   */
+  public static String originForm(String target) {
+    if (target == null || !target.startsWith("/") || target.startsWith("//")) {
+      throw new BadRequestException("Request target must be an absolute path");
+    }
+    URI normalized;
+    try {
+      normalized = URI.create(target).normalize();
+    } catch (IllegalArgumentException exception) {
+      throw new BadRequestException("Malformed request target", exception);
+    }
+    String path = normalized.getRawPath();
+    if (normalized.getRawAuthority() != null
+        || path == null
+        || !path.startsWith("/")
+        || path.startsWith("//")
+        || path.equals("/..")
+        || path.startsWith("/../")) {
+      throw new BadRequestException("Request target must be an absolute path");
+    }
+    return normalized.toString();
+  }
+
+  private static String decodedPath(String target) {
+    URI uri = URI.create(target);
+    String path = uri.getPath();
+    if (uri.getRawPath().toUpperCase(Locale.ROOT).contains("%2F")) {
+      throw new BadRequestException("Request path must not contain an encoded slash");
+    }
+    for (String segment : path.split("/", -1)) {
+      if (segment.equals(".") || segment.equals("..")) {
+        throw new BadRequestException("Request path must not contain an encoded dot segment");
+      }
+    }
+    return path;
+  }
+
+  public String header(String name) {
+    return headers.getFirst(name);
+  }
+}
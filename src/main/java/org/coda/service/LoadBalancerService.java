@@ -1,108 +1,966 @@
 package org.coda.service;
 
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.cfg.JsonNodeFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
 import jakarta.inject.Inject;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.HttpMethod;
 import jakarta.ws.rs.ProcessingException;
-import jakarta.ws.rs.client.Client;
-import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.ResponseBuilder;
 import jakarta.ws.rs.core.Response.Status;
-import jakarta.ws.rs.core.UriInfo;
-import java.net.URI;
+import jakarta.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import org.coda.backend.Backend;
+import org.coda.backend.BackendRegistry;
+import org.coda.buffer.BufferPool;
+import org.coda.buffer.ReplayableBody;
+import org.coda.cache.CacheKey;
+import org.coda.cache.CachedResponse;
+import org.coda.cache.ResponseCache;
+import org.coda.client.BackendClient;
+import org.coda.client.BackendRequest;
+import org.coda.client.BackendResponse;
+import org.coda.compression.ContentCoding;
+import org.coda.compression.GzipCodec;
 import org.coda.config.AppConfig;
 import org.coda.health.BackendHealthManager;
+import org.coda.limit.ConcurrencyLimiter;
+import org.coda.limit.Priority;
+import org.coda.logging.AccessLog;
+import org.coda.metrics.ProxyMetrics;
 import org.coda.model.ErrorResponse;
+import org.coda.routing.JsonKeyExtractor;
+import org.coda.routing.PathPrefixes;
+import org.coda.strategy.KeyHash;
+import org.coda.strategy.LoadBalancingStrategies;
+import org.coda.strategy.LoadBalancingStrategy;
 
 public class LoadBalancerService {
 
-  private final List<String> backends;
-  private final Client client;
+  // Bodies are parsed here, so backends may only use an encoding the proxy can decode.
+  private static final Map<String, String> ACCEPT_GZIP =
+      Map.of(HttpHeaders.ACCEPT_ENCODING, ContentCoding.GZIP);
+  // The type is set from the entity and the body is decoded before it is passed on.
+  private static final Set<String> RESPONSE_EXCLUDED = Set.of("content-type", "content-encoding");
+  // Cookies a backend sets are meant for one client, so they are neither stored nor shared.
+  private static final Set<String> SHARED_EXCLUDED =
+      Set.of("content-type", "content-encoding", "set-cookie");
+  // Requests carrying these get a response of their own unless a route varies on them.
+  private static final List<String> CREDENTIALS = List.of(HttpHeaders.AUTHORIZATION,
+                                                          HttpHeaders.COOKIE);
+
+  private final BackendRegistry backendRegistry;
+  private final BackendClient backendClient;
   private final BackendHealthManager backendHealthManager;
+  private final ProxyMetrics proxyMetrics;
+  private final AccessLog accessLog;
+  private final BufferPool bufferPool;
+  private final int maxReplayBytes;
+  private final boolean compression;
+  private final Duration readTimeout;
+  private final Duration requestDeadline;
+  private final String deadlineHeader;
+  private final Set<String> jsonExcluded;
+  private final Set<String> streamedExcluded;
+  private final int maxAttempts;
+  private final RetryBudget retryBudget;
+  private final HedgeDelay hedgeDelay;
+  private final Route defaultRoute;
+  private final PathPrefixes<Route> routes;
+  private final SlowStart slowStart;
+  private final String hashKeyHeader;
+  private final JsonPointer hashKeyPointer;
+  private final JsonKeyExtractor hashKeyExtractor;
+  private final ResponseCache responseCache;
+  private final PathPrefixes<List<String>> cacheVary;
+  private final PathPrefixes<Boolean> singleFlightRoutes;
+  private final PathPrefixes<List<String>> singleFlightVary;
+  private final SingleFlight<CacheKey, CachedResponse> singleFlight;
+  private final int singleFlightMaxPayloadBytes;
+  private final int singleFlightMaxResponseBytes;
+  private final ConcurrencyLimiter limiter;
+  private final String priorityHeader;
+  private final PathPrefixes<Priority> priorityRoutes;
+  private final String retryAfter;
 
-  private final AtomicInteger counter = new AtomicInteger();
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  // Equal payloads serialize to equal bytes whatever the order of their properties.
+  private final ObjectMapper canonicalMapper = JsonMapper.builder()
+      .enable(JsonNodeFeature.WRITE_PROPERTIES_SORTED)
+      .build();
   private final Logger logger = Logger.getLogger(getClass().getName());
 
   @Inject
   public LoadBalancerService(AppConfig appConfig,
-                             Client client,
-                             BackendHealthManager backendHealthManager) {
-    this.backends = appConfig.getBackends();
-    this.client = client;
+                             BackendRegistry backendRegistry,
+                             BackendClient backendClient,
+                             BackendHealthManager backendHealthManager,
+                             ProxyMetrics proxyMetrics,
+                             AccessLog accessLog) {
+    this(appConfig,
+         backendRegistry,
+         backendClient,
+         backendHealthManager,
+         proxyMetrics,
+         accessLog,
+         () -> ThreadLocalRandom.current().nextDouble());
+  }
+
+  /**
+   * Creates a service whose slow start admits warming backends by {@code slowStartDraw}.
+   */
+  LoadBalancerService(AppConfig appConfig,
+                      BackendRegistry backendRegistry,
+                      BackendClient backendClient,
+                      BackendHealthManager backendHealthManager,
+                      ProxyMetrics proxyMetrics,
+                      AccessLog accessLog,
+                      DoubleSupplier slowStartDraw) {
+    this.backendRegistry = backendRegistry;
+    this.backendClient = backendClient;
     this.backendHealthManager = backendHealthManager;
+    this.proxyMetrics = proxyMetrics;
+    this.accessLog = accessLog;
+    this.bufferPool = new BufferPool(appConfig.getBufferSize(), appConfig.getBufferPoolSize());
+    this.maxReplayBytes = appConfig.getPassThroughMaxReplayBytes();
+    this.compression = appConfig.isCompressionEnabled();
+    this.readTimeout = Duration.ofMillis(appConfig.getReadTimeoutMs());
+    this.requestDeadline = Duration.ofMillis(appConfig.getRequestDeadlineMs());
+    this.deadlineHeader = appConfig.getDeadlineHeader();
+    // Parsed bodies are sent re-serialized, and the proxy sets its own deadline.
+    this.jsonExcluded = excludedHeaders(deadlineHeader,
+                                        "content-type",
+                                        "content-encoding",
+                                        "accept-encoding");
+    this.streamedExcluded = excludedHeaders(deadlineHeader, "content-type");
+    this.maxAttempts = appConfig.getRetryMaxAttempts();
+    this.retryBudget = new RetryBudget(appConfig.getRetryBudgetRatio(),
+                                       appConfig.getRetryBudgetMaxTokens());
+    this.hedgeDelay = appConfig.isHedgeEnabled()
+        ? new HedgeDelay(appConfig.getHedgePercentile(), appConfig.getHedgeWindowSize())
+        : null;
+    Set<String> routed = new HashSet<>();
+    appConfig.getRoutes().values().forEach(routed::addAll);
+    this.defaultRoute = Route.excluding(routed, newStrategy(appConfig));
+    this.routes = PathPrefixes.of(appConfig.getRoutes()
+        .entrySet()
+        .stream()
+        .collect(Collectors.toMap(Map.Entry::getKey,
+                                  entry -> Route.to(Set.copyOf(entry.getValue()),
+                                                    newStrategy(appConfig)))));
+    this.slowStart = appConfig.getSlowStartWindowMs() > 0
+        ? new SlowStart(TimeUnit.MILLISECONDS.toNanos(appConfig.getSlowStartWindowMs()),
+                        appConfig.getSlowStartAggression(),
+                        appConfig.getSlowStartMinWeightPercent() / 100.0,
+                        slowStartDraw)
+        : null;
+    this.hashKeyHeader = appConfig.getHashKeyHeader();
+    this.hashKeyPointer = appConfig.getHashKeyPointer() == null
+        ? null
+        : JsonPointer.compile(appConfig.getHashKeyPointer());
+    this.hashKeyExtractor = hashKeyPointer == null
+        ? null
+        : new JsonKeyExtractor(objectMapper.getFactory(), hashKeyPointer);
+    this.responseCache = ResponseCache.fromConfig(appConfig);
+    this.cacheVary = PathPrefixes.of(appConfig.getCacheVary());
+    this.singleFlightRoutes = PathPrefixes.of(appConfig.getSingleFlightRoutes()
+        .stream()
+        .collect(Collectors.toMap(route -> route, route -> true)));
+    this.singleFlightVary = PathPrefixes.of(appConfig.getSingleFlightVary());
+    this.singleFlight = new SingleFlight<>(appConfig.getSingleFlightMaxWaiters());
+    this.singleFlightMaxPayloadBytes = appConfig.getSingleFlightMaxPayloadBytes();
+    this.singleFlightMaxResponseBytes = appConfig.getSingleFlightMaxResponseBytes();
+    this.limiter = ConcurrencyLimiter.fromConfig(appConfig);
+    this.priorityHeader = appConfig.getLimiterPriorityHeader();
+    this.priorityRoutes = PathPrefixes.of(appConfig.getLimiterPriorityRoutes()
+        .entrySet()
+        .stream()
+        .collect(Collectors.toMap(Map.Entry::getKey, entry -> Priority.parse(entry.getValue()))));
+    this.retryAfter = Integer.toString(appConfig.getLimiterRetryAfterSeconds());
+    if (limiter != null) {
+      backendRegistry.onRemoved(limiter::forget);
+      proxyMetrics.trackLimiter(limiter);
+    }
+  }
+
+  /**
+   * Proxies a JSON POST whose body has been parsed.
+   */
+  public CompletionStage<Response> proxy(JsonNode payload, IncomingRequest incoming) {
+    String path = incoming.path();
+    Priority priority = priority(incoming);
+    return limited(priority, () -> {
+      String routingKey = routingKey(incoming, payload);
+      String target = incoming.target();
+      Map<String, String> forwarded = ForwardedHeaders.request(incoming, jsonExcluded);
+      Duration routeTtl = responseCache == null ? null : responseCache.routeTtl(path);
+      if (routeTtl != null || singleFlightRoutes.match(path) != null) {
+        Map<String, String> varied = varied(incoming, routeTtl != null
+            ? cacheVary.match(path)
+            : singleFlightVary.match(path));
+        if (varied != null) {
+          CacheKey key = new CacheKey(HttpMethod.POST,
+                                      target,
+                                      serialize(canonicalMapper, payload),
+                                      varied);
+          long startNanos = proxyMetrics.requestStarted();
+          return proxyShared(key, forwarded, path, routingKey, priority, routeTtl, startNanos);
+        }
+      }
+
+      BackendRequest request = BackendRequest
+          .post(target,
+                MediaType.APPLICATION_JSON,
+                BodyPublishers.ofByteArray(serialize(objectMapper, payload)))
+          .withHeaders(forwarded)
+          .withHeaders(compression ? ACCEPT_GZIP : Map.of());
+      ProxyExchange exchange =
+          new ProxyExchange(path, request, true, routingKey, priority, this::toJsonResponse);
+      retryBudget.deposit();
+      return measure(exchange, proxyMetrics.requestStarted());
+    });
+  }
+
+  /**
+   * Proxies a request of any method with its body streamed through as it is.
+   */
+  public CompletionStage<Response> proxy(IncomingRequest incoming, InputStream body) {
+    Priority priority = priority(incoming);
+    return limited(priority, () -> proxyStreamed(incoming, body, priority));
+  }
+
+  private CompletionStage<Response> proxyStreamed(IncomingRequest incoming,
+                                                  InputStream body,
+                                                  Priority priority) {
+    ReplayableBody replayableBody;
+    try {
+      replayableBody = ReplayableBody.read(body, bufferPool, maxReplayBytes);
+    } catch (IOException exception) {
+      throw new BadRequestException("Failed to read request body", exception);
+    }
+
+    String routingKey = headerKey(incoming);
+    if (routingKey == null && hashKeyExtractor != null) {
+      // Only the buffered head of the body is scanned, and the scan stops at the key.
+      routingKey = hashKeyExtractor.extract(replayableBody.bufferedStream());
+    }
+    BodyPublisher publisher =
+        replayableBody.isReplayable() && replayableBody.getBufferedLength() == 0
+            ? BodyPublishers.noBody()
+            : replayableBody.toBodyPublisher();
+    BackendRequest request = BackendRequest
+        .of(incoming.method(),
+            incoming.target(),
+            incoming.header(HttpHeaders.CONTENT_TYPE),
+            publisher)
+        .withHeaders(ForwardedHeaders.request(incoming, streamedExcluded));
+    ProxyExchange exchange = new ProxyExchange(incoming.path(),
+                                               request,
+                                               replayableBody.isReplayable(),
+                                               routingKey,
+                                               priority,
+                                               this::toStreamingResponse);
+    retryBudget.deposit();
+    return measure(exchange, proxyMetrics.requestStarted())
+        .whenComplete((response, throwable) -> {
+          // An aborted exchange may still hold buffers that wrap the chunks, so they are left to
+          // the garbage collector instead of being handed to another request.
+          if (!exchange.legCancelled) {
+            replayableBody.release();
+          }
+        });
+  }
+
+  /**
+   * Runs {@code proxy} if the concurrency limit admits a request of {@code priority}, and answers
+   * 503 with {@code Retry-After} at once otherwise.
+   */
+  private CompletionStage<Response> limited(Priority priority,
+                                            Supplier<CompletionStage<Response>> proxy) {
+    if (limiter == null) {
+      return proxy.get();
+    }
+    if (!limiter.tryAcquire(priority)) {
+      proxyMetrics.recordShed(false);
+      return CompletableFuture.completedFuture(overloaded());
+    }
+    CompletionStage<Response> response;
+    try {
+      response = proxy.get();
+    } catch (RuntimeException exception) {
+      limiter.release();
+      throw exception;
+    }
+    return response.whenComplete((clientResponse, throwable) -> limiter.release());
+  }
+
+  /**
+   * Returns the priority of the longest configured route {@code path} falls under, or else the
+   * priority named by the priority header. The header can only lower a priority, so clients
+   * cannot exempt themselves from shedding.
+   */
+  private Priority priority(IncomingRequest incoming) {
+    Priority routePriority = priorityRoutes.match(incoming.path());
+    if (routePriority != null) {
+      return routePriority;
+    }
+    return priorityHeader != null
+        && Priority.parse(incoming.header(priorityHeader)) == Priority.LOW
+        ? Priority.LOW
+        : Priority.NORMAL;
+  }
+
+  /**
+   * Returns the key that hashing strategies route by, taken from the configured header or else
+   * from the configured JSON pointer into the payload, or {@code null} if there is none.
+   */
+  private String routingKey(IncomingRequest incoming, JsonNode payload) {
+    String key = headerKey(incoming);
+    if (key != null || hashKeyPointer == null) {
+      return key;
+    }
+    JsonNode value = payload.at(hashKeyPointer);
+    if (value.isMissingNode() || value.isNull()) {
+      return null;
+    }
+    return value.isValueNode() ? value.asText() : value.toString();
+  }
+
+  private static Set<String> excludedHeaders(String deadlineHeader, String... names) {
+    Set<String> excluded = new HashSet<>(List.of(names));
+    if (deadlineHeader != null) {
+      excluded.add(deadlineHeader.toLowerCase(Locale.ROOT));
+    }
+    return Set.copyOf(excluded);
+  }
+
+  private static LoadBalancingStrategy newStrategy(AppConfig appConfig) {
+    return LoadBalancingStrategies.create(appConfig.getLoadBalancingStrategy(),
+                                          appConfig.getHashLoadFactor());
+  }
+
+  private Route route(String path) {
+    Route route = routes.isEmpty() ? null : routes.match(path);
+    return route == null ? defaultRoute : route;
+  }
+
+  private String headerKey(IncomingRequest incoming) {
+    return hashKeyHeader == null ? null : incoming.header(hashKeyHeader);
+  }
+
+  /**
+   * Returns the values of the headers in {@code names} that {@code incoming} carries, by
+   * lower-case name, or {@code null} if it carries credentials that are not among them and so
+   * must not share a response with other clients.
+   */
+  private static Map<String, String> varied(IncomingRequest incoming, List<String> names) {
+    Map<String, String> varied = new HashMap<>();
+    if (names != null) {
+      for (String name : names) {
+        List<String> values = incoming.headers().get(name);
+        if (values != null && !values.isEmpty()) {
+          varied.put(name.toLowerCase(Locale.ROOT), String.join(", ", values));
+        }
+      }
+    }
+    for (String credential : CREDENTIALS) {
+      if (incoming.header(credential) != null
+          && !varied.containsKey(credential.toLowerCase(Locale.ROOT))) {
+        return null;
+      }
+    }
+    return varied;
+  }
+
+  private static byte[] serialize(ObjectMapper mapper, JsonNode payload) {
+    try {
+      return mapper.writeValueAsBytes(payload);
+    } catch (JsonProcessingException exception) {
+      throw new BadRequestException("Failed to serialize request body", exception);
+    }
+  }
+
+  /**
+   * Answers from the cache if the route is cached and it can. Otherwise the first of any
+   * concurrent identical requests goes upstream and the others wait for it and share its
+   * response, or go upstream themselves if it got none.
+   */
+  private CompletionStage<Response> proxyShared(CacheKey key,
+                                                Map<String, String> forwarded,
+                                                String path,
+                                                String routingKey,
+                                                Priority priority,
+                                                Duration routeTtl,
+                                                long startNanos) {
+    if (routeTtl != null) {
+      CachedResponse cached = responseCache.get(key);
+      if (cached != null) {
+        proxyMetrics.recordCacheHit();
+        return CompletableFuture.completedFuture(served(path, cached, startNanos));
+      }
+      proxyMetrics.recordCacheMiss();
+    }
+    if (key.getPayload().length > singleFlightMaxPayloadBytes) {
+      return measure(sharedExchange(key, forwarded, path, routingKey, priority, routeTtl, false),
+                     startNanos);
+    }
+
+    CompletableFuture<CachedResponse> flight = singleFlight.join(key);
+    if (flight != null) {
+      return flight.thenCompose(shared -> {
+        if (shared == null) {
+          return measure(
+              sharedExchange(key, forwarded, path, routingKey, priority, routeTtl, false),
+              startNanos);
+        }
+        proxyMetrics.recordCoalesced();
+        return CompletableFuture.completedFuture(served(path, shared, startNanos));
+      });
+    }
+    return measure(sharedExchange(key, forwarded, path, routingKey, priority, routeTtl, true),
+                   startNanos)
+        .whenComplete((response, throwable) -> singleFlight.land(key));
+  }
+
+  /**
+   * Returns an exchange whose response is read into bytes, stored if {@code routeTtl} is set and
+   * the response is cacheable, and shared with waiting identical requests if {@code leader}. A
+   * response over {@code singleFlight.maxResponseBytes} is streamed to this client alone instead;
+   * the waiters then get nothing and make their own calls.
+   */
+  private ProxyExchange sharedExchange(CacheKey key,
+                                       Map<String, String> forwarded,
+                                       String path,
+                                       String routingKey,
+                                       Priority priority,
+                                       Duration routeTtl,
+                                       boolean leader) {
+    Function<BackendResponse, Response> responseMapper = backendResponse -> {
+      InputStream in = null;
+      byte[] body;
+      try {
+        in = decodedBody(backendResponse);
+        body = in.readNBytes(singleFlightMaxResponseBytes + 1);
+      } catch (IOException exception) {
+        close(backendResponse, in);
+        throw new ProcessingException("Failed to read backend response", exception);
+      }
+      if (body.length > singleFlightMaxResponseBytes) {
+        return toUnsharedResponse(backendResponse, body, in);
+      }
+      close(backendResponse, in);
+      CachedResponse response = new CachedResponse(backendResponse.getStatus(),
+                                                   backendResponse.getContentType(),
+                                                   ForwardedHeaders.endToEnd(
+                                                       backendResponse.getHeaders(),
+                                                       SHARED_EXCLUDED),
+                                                   body);
+      if (routeTtl != null && response.status() == Status.OK.getStatusCode()) {
+        responseCache.put(key, response, ResponseCache.ttl(backendResponse.getHeaders(), routeTtl));
+      }
+      if (leader) {
+        singleFlight.share(key, response);
+      }
+      // The client that made the call still gets the cookies the backend set for it.
+      ResponseBuilder own = Response.fromResponse(response.toResponse());
+      backendResponse.getHeaders().allValues(HttpHeaders.SET_COOKIE)
+          .forEach(cookie -> own.header(HttpHeaders.SET_COOKIE, cookie));
+      return own.build();
+    };
+    // The headers of the request that goes upstream go along. Those the response may depend on
+    // are in the key, so every client it is shared with sent the same ones.
+    BackendRequest request = BackendRequest
+        .post(key.getPath(),
+              MediaType.APPLICATION_JSON,
+              BodyPublishers.ofByteArray(key.getPayload()))
+        .withHeaders(forwarded)
+        .withHeaders(compression ? ACCEPT_GZIP : Map.of());
+    retryBudget.deposit();
+    return new ProxyExchange(path, request, true, routingKey, priority, responseMapper);
+  }
+
+  private Response served(String path, CachedResponse cached, long startNanos) {
+    Response response = cached.toResponse();
+    proxyMetrics.requestCompleted(startNanos, response.getStatus());
+    accessLog.log(path, response.getStatus(), System.nanoTime() - startNanos, 0, null);
+    return response;
   }
 
-  public Response proxy(JsonNode payload, UriInfo uriInfo) {
-    int maxAttempts = backends.size();
-    for (int attemptNum = 1; attemptNum <= maxAttempts; attemptNum++) {
-      int nextRoundRobinIndex = getNextRoundRobinIndexAndIncrementCounter();
-      String backend = backends.get(nextRoundRobinIndex);
+  private CompletionStage<Response> measure(ProxyExchange exchange, long startNanos) {
+    return attempt(exchange).whenComplete((clientResponse, throwable) -> {
+      int status = clientResponse != null
+          ? clientResponse.getStatus()
+          : Status.INTERNAL_SERVER_ERROR.getStatusCode();
+      long elapsedNanos = System.nanoTime() - startNanos;
+      if (limiter != null && exchange.attempts > 0) {
+        limiter.sample(elapsedNanos, isStatus5xx(status));
+      }
+      proxyMetrics.requestCompleted(startNanos, status);
+      accessLog.log(exchange.path,
+                    status,
+                    elapsedNanos,
+                    exchange.attempts,
+                    exchange.servedBy);
+    });
+  }
+
+  private CompletionStage<Response> attempt(ProxyExchange exchange) {
+    int attemptNum = exchange.attempts + 1;
+    int attemptLimit = Math.min(maxAttempts, exchange.backends.length);
+    if (attemptNum > attemptLimit || (exchange.bodySent && !exchange.replayable)) {
+      return CompletableFuture.completedFuture(serviceUnavailable());
+    }
+
+    long remainingNanos = exchange.deadlineNanos - System.nanoTime();
+    if (remainingNanos <= 0) {
+      if (logger.isLoggable(Level.FINE)) {
+        logger.log(Level.FINE,
+            "Attempt {0}/{1}: Request deadline of {2} ms exceeded.",
+            new Object[]{attemptNum, attemptLimit, requestDeadline.toMillis()});
+      }
+      proxyMetrics.recordDeadlineExceeded();
+      return CompletableFuture.completedFuture(errorResponse(
+          Status.GATEWAY_TIMEOUT, "GatewayTimeout", "Request deadline exceeded."));
+    }
+
+    if (attemptNum > 1 && !retryBudget.tryWithdraw()) {
+      if (logger.isLoggable(Level.FINE)) {
+        logger.log(Level.FINE,
+            "Attempt {0}/{1}: Retry budget exhausted.",
+            new Object[]{attemptNum, attemptLimit});
+      }
+      proxyMetrics.recordRetryBudgetExhausted();
+      return CompletableFuture.completedFuture(serviceUnavailable());
+    }
 
-      if (!backendHealthManager.isHealthy(backend)) {
-        logger.log(Level.WARNING,
-            "Attempt {0}/{1}: Backend {2} unavailable.",
-            new Object[]{attemptNum, maxAttempts, backend});
-        continue;
+    Backend backend = select(exchange);
+    if (backend == null && exchange.backendLimited) {
+      if (logger.isLoggable(Level.FINE)) {
+        logger.log(Level.FINE,
+            "Attempt {0}/{1}: Every available backend is at its concurrency limit.",
+            new Object[]{attemptNum, attemptLimit});
+      }
+      proxyMetrics.recordShed(true);
+      return CompletableFuture.completedFuture(overloaded());
+    }
+    if (backend == null) {
+      if (logger.isLoggable(Level.FINE)) {
+        logger.log(Level.FINE,
+            "Attempt {0}/{1}: No healthy backend available.",
+            new Object[]{attemptNum, attemptLimit});
       }
+      return CompletableFuture.completedFuture(serviceUnavailable());
+    }
+    proxyMetrics.recordAttempt(attemptNum > 1);
 
-      try (Response backendResponse = callBackend(backend, uriInfo.getPath(), payload)) {
+    CompletableFuture<BackendResponse> primary = send(exchange, backend, remainingNanos);
+    long delayNanos = hedgeDelay == null ? -1 : hedgeDelay.delayNanos();
+    CompletableFuture<BackendResponse> outcome =
+        delayNanos >= 0 && exchange.replayable && delayNanos < remainingNanos
+            ? hedge(exchange, primary, delayNanos)
+            : primary;
+    return outcome.thenCompose(backendResponse -> backendResponse == null
+        ? attempt(exchange)
+        : CompletableFuture.completedFuture(exchange.responseMapper.apply(backendResponse)));
+  }
 
-        int backendResponseStatus = backendResponse.getStatus();
-        if (isStatus5xx(backendResponseStatus)) {
-          backendHealthManager.setToUnhealthy(backend);
-          logger.log(Level.WARNING,
-              "Attempt {0}/{1}: Backend {2} unavailable. Got: {3}",
-              new Object[]{attemptNum, maxAttempts, backend, backendResponseStatus});
-          continue;
+  private Backend select(ProxyExchange exchange) {
+    Backend[] backends = exchange.backends;
+    synchronized (exchange) {
+      exchange.backendLimited = false;
+      exchange.warmingPassed = false;
+      while (true) {
+        int index = pick(exchange, slowStart != null);
+        if (index < 0 && exchange.warmingPassed) {
+          // A warming backend is still better than none.
+          index = pick(exchange, false);
         }
+        if (index < 0) {
+          return null;
+        }
+        exchange.tried[index] = true;
+        // A half-open backend may have handed its last trial to another request meanwhile.
+        if (backendHealthManager.tryAcquire(backends[index])) {
+          exchange.attempts++;
+          exchange.bodySent = true;
+          return backends[index];
+        }
+      }
+    }
+  }
 
-        return Response
-            .status(backendResponseStatus)
-            .entity(backendResponse.readEntity(JsonNode.class))
-            .build();
-      } catch (ProcessingException processingException) {
-        backendHealthManager.setToUnhealthy(backend);
-        logger.log(Level.WARNING,
-            "Attempt {0}/{1}: Backend {2} unavailable. Reason: {3}",
-            new Object[]{attemptNum, maxAttempts, backend, processingException.getMessage()});
+  private int pick(ProxyExchange exchange, boolean rampWarming) {
+    Backend[] backends = exchange.backends;
+    IntPredicate eligible = candidate -> {
+      Backend backend = backends[candidate];
+      if (exchange.tried[candidate]
+          || backend.isDraining()
+          || !backendHealthManager.isHealthy(backend)) {
+        return false;
+      }
+      if (limiter != null
+          && exchange.priority != Priority.CRITICAL
+          && !limiter.hasCapacity(backend)) {
+        exchange.backendLimited = true;
+        return false;
+      }
+      if (rampWarming && !slowStart.admits(backend)) {
+        exchange.warmingPassed = true;
+        return false;
       }
+      return true;
+    };
+    LoadBalancingStrategy strategy = exchange.route.strategy();
+    return exchange.keyed
+        ? strategy.select(backends, eligible, exchange.routingHash)
+        : strategy.select(backends, eligible);
+  }
+
+  /**
+   * Sends one copy of the request. The returned future completes with the response, or with
+   * {@code null} once a failure has been recorded for the backend. Cancelling it aborts the
+   * exchange.
+   */
+  private CompletableFuture<BackendResponse> send(ProxyExchange exchange,
+                                                  Backend backend,
+                                                  long remainingNanos) {
+    final int attemptNum = exchange.attempts;
+    Duration timeout = Duration.ofNanos(Math.min(readTimeout.toNanos(), remainingNanos));
+    BackendRequest request = exchange.request.withTimeout(timeout);
+    if (deadlineHeader != null) {
+      long remainingMs = Math.max(TimeUnit.NANOSECONDS.toMillis(remainingNanos), 1);
+      request = request.withHeader(deadlineHeader, Long.toString(remainingMs));
     }
 
-    ErrorResponse errorResponse = new ErrorResponse(
-        Status.SERVICE_UNAVAILABLE.getStatusCode(),
-        "ServiceUnavailable",
-        "Service unavailable. Please try again later."
-    );
+    backend.incrementInFlight();
+    long startNanos = System.nanoTime();
+    CompletableFuture<BackendResponse> sent;
+    try {
+      sent = backendClient.send(backend, request);
+    } catch (RuntimeException exception) {
+      // The request could not even be built, so the backend is not to blame.
+      backend.decrementInFlight();
+      backendHealthManager.abandon(backend);
+      return CompletableFuture.failedFuture(exception);
+    }
+    CompletableFuture<BackendResponse> leg = new CompletableFuture<>();
+    leg.whenComplete((backendResponse, throwable) -> {
+      if (leg.isCancelled()) {
+        exchange.legCancelled = true;
+        sent.cancel(true);
+      }
+    });
+    sent.whenComplete((backendResponse, throwable) -> {
+      final int inFlight = backend.getInFlight();
+      backend.decrementInFlight();
+      Throwable cause = throwable instanceof CompletionException
+          ? throwable.getCause()
+          : throwable;
+      if (cause instanceof CancellationException) {
+        backendHealthManager.abandon(backend);
+        return;
+      }
+      long elapsedNanos = System.nanoTime() - startNanos;
+      backend.getLatency().record(elapsedNanos);
+      if (limiter != null) {
+        limiter.sampleBackend(backend,
+                       elapsedNanos,
+                       inFlight,
+                       cause != null || isStatus5xx(backendResponse.getStatus()));
+      }
+
+      if (cause != null) {
+        proxyMetrics.recordUpstreamError(backend, elapsedNanos);
+        backendHealthManager.recordFailure(backend, elapsedNanos);
+        if (logger.isLoggable(Level.FINE)) {
+          logger.log(Level.FINE,
+              "Attempt {0}: Backend {1} unavailable. Reason: {2}",
+              new Object[]{attemptNum, backend, cause.getMessage()});
+        }
+        leg.complete(null);
+        return;
+      }
+
+      int backendResponseStatus = backendResponse.getStatus();
+      proxyMetrics.recordUpstreamResponse(backend, backendResponseStatus, elapsedNanos);
+      if (isStatus5xx(backendResponseStatus)) {
+        backendResponse.close();
+        backendHealthManager.recordFailure(backend, elapsedNanos);
+        if (logger.isLoggable(Level.FINE)) {
+          logger.log(Level.FINE,
+              "Attempt {0}: Backend {1} unavailable. Got: {2}",
+              new Object[]{attemptNum, backend, backendResponseStatus});
+        }
+        leg.complete(null);
+        return;
+      }
+
+      backendHealthManager.recordSuccess(backend, elapsedNanos);
+      if (hedgeDelay != null) {
+        hedgeDelay.record(elapsedNanos);
+      }
+      exchange.servedBy = backend;
+      if (!leg.complete(backendResponse)) {
+        backendResponse.close();
+      }
+    });
+    return leg;
+  }
+
+  /**
+   * Sends a second copy of the request to another backend if the primary has not answered within
+   * {@code delayNanos}. The first response wins and the other copy is cancelled; the result is
+   * {@code null} only if every copy failed. Hedges draw on the retry budget.
+   */
+  private CompletableFuture<BackendResponse> hedge(ProxyExchange exchange,
+                                                   CompletableFuture<BackendResponse> primary,
+                                                   long delayNanos) {
+    Race race = new Race();
+    race.reserve();
+    race.track(primary);
+    CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS).execute(() -> {
+      if (!race.reserve()) {
+        return;
+      }
+      try {
+        long remainingNanos = exchange.deadlineNanos - System.nanoTime();
+        Backend backend = remainingNanos > 0 && retryBudget.tryWithdraw()
+            ? select(exchange)
+            : null;
+        if (backend == null) {
+          race.track(CompletableFuture.completedFuture(null));
+          return;
+        }
+        if (logger.isLoggable(Level.FINE)) {
+          logger.log(Level.FINE, "Hedging request to {0} after {1} ms",
+                     new Object[]{backend, TimeUnit.NANOSECONDS.toMillis(delayNanos)});
+        }
+        proxyMetrics.recordHedge();
+        race.track(send(exchange, backend, remainingNanos));
+      } catch (RuntimeException exception) {
+        // Nothing else would ever finish the reserved leg, leaving the race undecided.
+        race.track(CompletableFuture.failedFuture(exception));
+      }
+    });
+    return race.winner;
+  }
+
+  private Response serviceUnavailable() {
+    return errorResponse(Status.SERVICE_UNAVAILABLE,
+                         "ServiceUnavailable",
+                         "Service unavailable. Please try again later.");
+  }
+
+  private Response overloaded() {
+    return Response
+        .status(Status.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, retryAfter)
+        .entity(new ErrorResponse(Status.SERVICE_UNAVAILABLE.getStatusCode(),
+                                  "Overloaded",
+                                  "Too many requests in flight. Please retry later."))
+        .build();
+  }
 
+  private Response errorResponse(Status status, String error, String details) {
     return Response
-        .status(Response.Status.SERVICE_UNAVAILABLE)
-        .entity(errorResponse)
+        .status(status)
+        .entity(new ErrorResponse(status.getStatusCode(), error, details))
+        .build();
+  }
+
+  private Response toJsonResponse(BackendResponse backendResponse) {
+    try (backendResponse; InputStream in = decodedBody(backendResponse)) {
+      JsonNode entity = objectMapper.readTree(in);
+      ResponseBuilder response = Response.status(backendResponse.getStatus());
+      ForwardedHeaders.response(backendResponse.getHeaders(), response, RESPONSE_EXCLUDED);
+      return response
+          .entity(entity == null || entity.isMissingNode() ? null : entity)
+          .build();
+    } catch (IOException exception) {
+      throw new ProcessingException("Failed to read backend response", exception);
+    }
+  }
+
+  /**
+   * Streams a response too large to share to the client that made the call, starting with the
+   * {@code head} already read from its decoded body.
+   */
+  private Response toUnsharedResponse(BackendResponse backendResponse,
+                                      byte[] head,
+                                      InputStream in) {
+    ResponseBuilder response = Response.status(backendResponse.getStatus());
+    ForwardedHeaders.response(backendResponse.getHeaders(), response, RESPONSE_EXCLUDED);
+    StreamingOutput body = out -> {
+      try (backendResponse; in) {
+        out.write(head);
+        bufferPool.transfer(in, out);
+      }
+    };
+    return response
+        .type(backendResponse.getContentType())
+        .entity(body)
         .build();
   }
 
-  private int getNextRoundRobinIndexAndIncrementCounter() {
-    return counter.getAndUpdate(current ->
-        current >= backends.size() - 1
-            ? 0
-            : current + 1
-    );
+  private static void close(BackendResponse backendResponse, InputStream in) {
+    try (backendResponse; in) {
+      // Closes the decoded body, if there is one, and then the response.
+    } catch (IOException exception) {
+      throw new ProcessingException("Failed to close backend response", exception);
+    }
   }
 
-  private Response callBackend(String backend,
-                               String path,
-                               JsonNode payload) throws ProcessingException {
-    URI uri = URI.create(backend)
-                 .resolve(path);
-    return client.target(uri)
-                 .request(MediaType.APPLICATION_JSON)
-                 .post(Entity.json(payload));
+  private static InputStream decodedBody(BackendResponse backendResponse) throws IOException {
+    String contentEncoding = backendResponse.getContentEncoding();
+    if (ContentCoding.isIdentity(contentEncoding)) {
+      return backendResponse.getBody();
+    }
+    if (ContentCoding.isGzip(contentEncoding)) {
+      return GzipCodec.decompress(backendResponse.getBody());
+    }
+    throw new IOException("Unsupported Content-Encoding " + contentEncoding);
+  }
+
+  private Response toStreamingResponse(BackendResponse backendResponse) {
+    // An encoded body is passed back as it is; the client asked for the encoding.
+    String contentEncoding = backendResponse.getContentEncoding();
+    ResponseBuilder response = Response.status(backendResponse.getStatus());
+    ForwardedHeaders.response(backendResponse.getHeaders(), response, RESPONSE_EXCLUDED);
+    return response
+        .type(backendResponse.getContentType())
+        .header(HttpHeaders.CONTENT_ENCODING,
+                ContentCoding.isIdentity(contentEncoding) ? null : contentEncoding)
+        .entity(new StreamedBody(backendResponse, bufferPool))
+        .build();
   }
 
   private boolean isStatus5xx(int statusCode) {
     return statusCode >= 500 && statusCode < 600;
   }
+
+  private class ProxyExchange {
+
+    private final String path;
+    private final BackendRequest request;
+    private final boolean replayable;
+    private final boolean keyed;
+    private final long routingHash;
+    private final Priority priority;
+    private final Function<BackendResponse, Response> responseMapper;
+    private final long deadlineNanos = System.nanoTime() + requestDeadline.toNanos();
+    private final Route route;
+    private final Backend[] backends;
+    private final boolean[] tried;
+    private int attempts;
+    private boolean bodySent;
+    private boolean backendLimited;
+    private boolean warmingPassed;
+    private volatile boolean legCancelled;
+    private volatile Backend servedBy;
+
+    /**
+     * Creates an exchange for a request to {@code path}; {@code request} carries the rest of what
+     * is sent, with the path and query string as the client sent them.
+     */
+    ProxyExchange(String path,
+                  BackendRequest request,
+                  boolean replayable,
+                  String routingKey,
+                  Priority priority,
+                  Function<BackendResponse, Response> responseMapper) {
+      this.path = path;
+      this.request = request;
+      this.replayable = replayable;
+      this.keyed = routingKey != null;
+      this.routingHash = keyed ? KeyHash.of(routingKey) : 0;
+      this.priority = priority;
+      this.responseMapper = responseMapper;
+      this.route = route(path);
+      this.backends = route.backends(backendRegistry.snapshot());
+      this.tried = new boolean[backends.length];
+    }
+  }
+
+  /**
+   * Copies of one attempt that are in flight together. The losers are cancelled before the winner
+   * completes, so their connections are released by the time the caller sees the response.
+   */
+  private static final class Race {
+
+    private final CompletableFuture<BackendResponse> winner = new CompletableFuture<>();
+    private final List<CompletableFuture<BackendResponse>> legs = new ArrayList<>(2);
+    private int running;
+    private boolean decided;
+
+    /**
+     * Reserves a slot for another copy, unless the race is already decided.
+     */
+    synchronized boolean reserve() {
+      if (decided || (running == 0 && !legs.isEmpty())) {
+        return false;
+      }
+      running++;
+      return true;
+    }
+
+    void track(CompletableFuture<BackendResponse> leg) {
+      synchronized (this) {
+        legs.add(leg);
+      }
+      leg.whenComplete((backendResponse, throwable) -> finish(leg, backendResponse));
+    }
+
+    private void finish(CompletableFuture<BackendResponse> leg, BackendResponse backendResponse) {
+      List<CompletableFuture<BackendResponse>> losers = null;
+      boolean exhausted;
+      synchronized (this) {
+        running--;
+        if (backendResponse != null && !decided) {
+          decided = true;
+          losers = new ArrayList<>(legs);
+          losers.remove(leg);
+        }
+        exhausted = running == 0 && !decided;
+      }
+      if (losers != null) {
+        losers.forEach(loser -> loser.cancel(true));
+        winner.complete(backendResponse);
+      } else if (backendResponse != null) {
+        backendResponse.close();
+      } else if (exhausted) {
+        winner.complete(null);
+      }
+    }
+  }
 }
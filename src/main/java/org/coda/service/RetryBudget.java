@@ -0,0 +1,48 @@
+package org.coda.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket that caps retries at a fraction of primary requests.
+ *
+ * <p>Every primary request deposits {@code ratio} of a token and every retry or hedge withdraws
+ * a whole one, so over time at most {@code ratio} extra requests are sent per primary request.
+ * The bucket starts full and holds at most {@code maxTokens}, which allows short bursts of
+ * retries at low traffic. While the bucket is full, deposits are a plain read.
+ */
+final class RetryBudget {
+
+  private static final long SCALE = 1000;
+
+  private final long deposit;
+  private final long capacity;
+  private final AtomicLong balance;
+
+  RetryBudget(double ratio, int maxTokens) {
+    this.deposit = Math.round(ratio * SCALE);
+    this.capacity = maxTokens * SCALE;
+    this.balance = new AtomicLong(capacity);
+  }
+
+  void deposit() {
+    long current;
+    do {
+      current = balance.get();
+      if (current >= capacity) {
+        return;
+      }
+    } while (!balance.compareAndSet(current, Math.min(capacity, current + deposit)));
+  }
+
+  boolean tryWithdraw() {
+    long current;
+    do {
+      current = balance.get();
+      if (current < SCALE) {
+        return false;
+      }
+    } while (!balance.compareAndSet(current, current - SCALE));
+    return true;
+  }
+
+}
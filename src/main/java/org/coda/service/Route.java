@@ -0,0 +1,63 @@
+package org.coda.service;
+
+import java.util.Arrays;
+import java.util.Set;
+import org.coda.backend.Backend;
+import org.coda.strategy.LoadBalancingStrategy;
+
+/**
+ * The backends that serve a path prefix, and the strategy that picks among them.
+ *
+ * <p>A route's backends are filtered from the registry snapshot once per snapshot, so strategies
+ * that cache per snapshot see the same array on every request.
+ */
+final class Route {
+
+  private final Set<String> urls;
+  private final boolean excluding;
+  private final LoadBalancingStrategy strategy;
+  private volatile Members members = new Members(null, null);
+
+  private Route(Set<String> urls, boolean excluding, LoadBalancingStrategy strategy) {
+    this.urls = urls;
+    this.excluding = excluding;
+    this.strategy = strategy;
+  }
+
+  /**
+   * Returns a route served by the backends with the given URLs.
+   */
+  static Route to(Set<String> urls, LoadBalancingStrategy strategy) {
+    return new Route(urls, false, strategy);
+  }
+
+  /**
+   * Returns a route served by every backend except those with the given URLs.
+   */
+  static Route excluding(Set<String> urls, LoadBalancingStrategy strategy) {
+    return new Route(urls, true, strategy);
+  }
+
+  LoadBalancingStrategy strategy() {
+    return strategy;
+  }
+
+  Backend[] backends(Backend[] snapshot) {
+    if (excluding && urls.isEmpty()) {
+      return snapshot;
+    }
+    Members current = members;
+    if (current.snapshot != snapshot) {
+      // Racing threads may each filter the same snapshot; the last write wins.
+      Backend[] backends = Arrays.stream(snapshot)
+          .filter(backend -> urls.contains(backend.getUrl()) != excluding)
+          .toArray(Backend[]::new);
+      current = new Members(snapshot, backends);
+      members = current;
+    }
+    return current.backends;
+  }
+
+  private record Members(Backend[] snapshot, Backend[] backends) {
+  }
+}
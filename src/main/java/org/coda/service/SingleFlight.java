@@ -0,0 +1,69 @@
+package org.coda.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lets concurrent identical requests share one upstream call.
+ *
+ * <p>The first caller for a key leads a flight and makes the call; callers arriving while it is
+ * in flight wait for the result the leader {@linkplain #share shares} instead of making their own.
+ * The key is dropped when the leader {@linkplain #land lands}, so nothing outlives the call. At
+ * most {@code maxWaiters} callers join one flight, which bounds the responses a single slow call
+ * can hold back.
+ */
+final class SingleFlight<K, V> {
+
+  private final ConcurrentMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+  private final int maxWaiters;
+
+  SingleFlight(int maxWaiters) {
+    this.maxWaiters = maxWaiters;
+  }
+
+  /**
+   * Returns the result of the flight in progress for {@code key}. It completes with {@code null}
+   * if the leader had nothing to share, or at once if the flight has too many waiters already;
+   * the caller then makes its own call. Returns {@code null} if no flight was in progress, in
+   * which case the caller now leads one and must {@linkplain #land land} it.
+   */
+  CompletableFuture<V> join(K key) {
+    Flight<V> flight = flights.putIfAbsent(key, new Flight<>());
+    if (flight == null) {
+      return null;
+    }
+    if (flight.waiters.incrementAndGet() > maxWaiters) {
+      return CompletableFuture.completedFuture(null);
+    }
+    return flight.result;
+  }
+
+  /**
+   * Hands {@code value} to the waiters of the flight led for {@code key}.
+   */
+  void share(K key, V value) {
+    Flight<V> flight = flights.get(key);
+    if (flight != null) {
+      flight.result.complete(value);
+    }
+  }
+
+  /**
+   * Ends the flight led for {@code key}. Waiters that have not been shared a result get
+   * {@code null}.
+   */
+  void land(K key) {
+    Flight<V> flight = flights.remove(key);
+    if (flight != null) {
+      flight.result.complete(null);
+    }
+  }
+
+  private static final class Flight<V> {
+
+    private final CompletableFuture<V> result = new CompletableFuture<>();
+    private final AtomicInteger waiters = new AtomicInteger();
+  }
+}
@@ -0,0 +1,64 @@
+package org.coda.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleSupplier;
+import org.coda.backend.Backend;
+
+/**
+ * Ramps up the traffic of a backend that has just joined or recovered.
+ *
+ * <p>For {@code window} after it starts warming up, a backend is admitted when a strategy picks
+ * it only with a probability that grows from {@code minFactor} to one. The probability is the
+ * elapsed share of the window raised to {@code 1 / aggression}: an aggression of 1 ramps
+ * linearly and larger values hand over most of the traffic early. A check reads one field of the
+ * backend, and the clock only while the backend is warming, so it needs no lock.
+ */
+final class SlowStart {
+
+  private final long windowNanos;
+  private final double exponent;
+  private final double minFactor;
+  private final DoubleSupplier draw;
+
+  SlowStart(long windowNanos, double aggression, double minFactor) {
+    this(windowNanos, aggression, minFactor, () -> ThreadLocalRandom.current().nextDouble());
+  }
+
+  /**
+   * Creates a ramp that admits a warming backend when {@code draw}, which returns values from
+   * zero up to one, returns less than the backend's factor.
+   */
+  SlowStart(long windowNanos, double aggression, double minFactor, DoubleSupplier draw) {
+    this.windowNanos = windowNanos;
+    this.exponent = 1 / aggression;
+    this.minFactor = minFactor;
+    this.draw = draw;
+  }
+
+  /**
+   * Returns the share of its full traffic {@code backend} should get at {@code nowNanos}.
+   */
+  double factor(Backend backend, long nowNanos) {
+    long startNanos = backend.getWarmupStartNanos();
+    if (startNanos == Backend.NOT_WARMING) {
+      return 1;
+    }
+    long elapsedNanos = nowNanos - startNanos;
+    if (elapsedNanos >= windowNanos) {
+      backend.finishWarmup(startNanos);
+      return 1;
+    }
+    return Math.max(minFactor, Math.pow((double) elapsedNanos / windowNanos, exponent));
+  }
+
+  /**
+   * Decides whether a pick of {@code backend} stands.
+   */
+  boolean admits(Backend backend) {
+    if (backend.getWarmupStartNanos() == Backend.NOT_WARMING) {
+      return true;
+    }
+    double factor = factor(backend, System.nanoTime());
+    return factor >= 1 || draw.getAsDouble() < factor;
+  }
+}
@@ -0,0 +1,42 @@
+package org.coda.service;
+
+import jakarta.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Flow;
+import org.coda.buffer.BufferPool;
+import org.coda.client.BackendResponse;
+
+/**
+ * A backend response body passed through to the client. Jersey writes it to an output stream
+ * through a pooled buffer; a server that can write buffers itself takes them with
+ * {@link #takeBuffers()} and skips the copy.
+ */
+public final class StreamedBody implements StreamingOutput {
+
+  private final BackendResponse backendResponse;
+  private final BufferPool bufferPool;
+
+  StreamedBody(BackendResponse backendResponse, BufferPool bufferPool) {
+    this.backendResponse = backendResponse;
+    this.bufferPool = bufferPool;
+  }
+
+  @Override
+  public void write(OutputStream out) throws IOException {
+    try (backendResponse; InputStream in = backendResponse.getBody()) {
+      bufferPool.transfer(in, out);
+    }
+  }
+
+  /**
+   * Returns the buffers the HTTP client read, or {@code null} if there are none to take; see
+   * {@link BackendResponse#takeBodyPublisher()}.
+   */
+  public Flow.Publisher<List<ByteBuffer>> takeBuffers() {
+    return backendResponse.takeBodyPublisher();
+  }
+}
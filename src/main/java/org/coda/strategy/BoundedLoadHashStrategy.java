@@ -0,0 +1,113 @@
+package org.coda.strategy;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntPredicate;
+import org.coda.backend.Backend;
+
+/**
+ * Consistent hashing with bounded loads (Mirrokni, Thorup and Zadimoghaddam, SODA 2018).
+ *
+ * <p>Every backend owns {@value #POINTS_PER_WEIGHT} points on a hash ring per unit of weight. A key
+ * goes to the first eligible backend clockwise from its hash whose in-flight count stays within
+ * {@code loadFactor} times the average, so a hot key spills over to the next backends on the ring
+ * instead of overloading its own. Ineligible backends are skipped the same way, which only moves
+ * their own keys. The ring is rebuilt once per backend snapshot; requests without a key are
+ * spread at random.
+ */
+public class BoundedLoadHashStrategy implements LoadBalancingStrategy {
+
+  static final int POINTS_PER_WEIGHT = 100;
+
+  private final double loadFactor;
+  private volatile Ring ring = new Ring(new Backend[0], new long[0], new int[0]);
+
+  public BoundedLoadHashStrategy(double loadFactor) {
+    this.loadFactor = loadFactor;
+  }
+
+  @Override
+  public int select(Backend[] backends, IntPredicate eligible) {
+    return select(backends, eligible, ThreadLocalRandom.current().nextLong());
+  }
+
+  @Override
+  public int select(Backend[] backends, IntPredicate eligible, long key) {
+    Ring current = ringFor(backends);
+    long[] points = current.points;
+    if (points.length == 0) {
+      return -1;
+    }
+    int eligibleCount = 0;
+    long totalInFlight = 0;
+    for (int i = 0; i < backends.length; i++) {
+      if (eligible.test(i)) {
+        eligibleCount++;
+        totalInFlight += backends[i].getClusterInFlight();
+      }
+    }
+    if (eligibleCount == 0) {
+      return -1;
+    }
+    double capacity = Math.ceil(loadFactor * (totalInFlight + 1) / eligibleCount);
+
+    int start = Arrays.binarySearch(points, key);
+    start = start >= 0 ? start : -start - 1;
+    boolean[] seen = new boolean[backends.length];
+    int fallback = -1;
+    for (int i = 0; i < points.length && eligibleCount > 0; i++) {
+      int owner = current.owners[(start + i) % points.length];
+      if (seen[owner]) {
+        continue;
+      }
+      seen[owner] = true;
+      if (!eligible.test(owner)) {
+        continue;
+      }
+      if (backends[owner].getClusterInFlight() + 1 <= capacity) {
+        return owner;
+      }
+      fallback = fallback < 0 ? owner : fallback;
+      eligibleCount--;
+    }
+    return fallback;
+  }
+
+  private Ring ringFor(Backend[] backends) {
+    Ring current = ring;
+    if (current.backends != backends) {
+      // Racing threads may each build the same ring; the last write wins.
+      current = buildRing(backends);
+      ring = current;
+    }
+    return current;
+  }
+
+  private static Ring buildRing(Backend[] backends) {
+    boolean unweighted = Arrays.stream(backends).allMatch(backend -> backend.getWeight() == 0);
+    int total = 0;
+    for (Backend backend : backends) {
+      total += POINTS_PER_WEIGHT * (unweighted ? 1 : backend.getWeight());
+    }
+    long[][] entries = new long[total][];
+    int next = 0;
+    for (int i = 0; i < backends.length; i++) {
+      int count = POINTS_PER_WEIGHT * (unweighted ? 1 : backends[i].getWeight());
+      for (int point = 0; point < count; point++) {
+        entries[next++] = new long[]{KeyHash.of(backends[i].getUrl() + "#" + point), i};
+      }
+    }
+    Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+    long[] points = new long[total];
+    int[] owners = new int[total];
+    for (int i = 0; i < total; i++) {
+      points[i] = entries[i][0];
+      owners[i] = (int) entries[i][1];
+    }
+    return new Ring(backends, points, owners);
+  }
+
+  private record Ring(Backend[] backends, long[] points, int[] owners) {
+  }
+
+}
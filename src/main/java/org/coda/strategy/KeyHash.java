@@ -0,0 +1,30 @@
+package org.coda.strategy;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 64-bit hash of routing keys and backend URLs for the hashing strategies: FNV-1a followed by the
+ * MurmurHash3 finalizer, so that similar keys such as {@code tenant-1} and {@code tenant-2} land
+ * far apart.
+ */
+public final class KeyHash {
+
+  private KeyHash() {}
+
+  public static long of(String key) {
+    long hash = 0xcbf29ce484222325L;
+    for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+      hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+    }
+    return mix(hash);
+  }
+
+  static long mix(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
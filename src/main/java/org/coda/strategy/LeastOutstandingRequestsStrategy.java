@@ -0,0 +1,33 @@
+package org.coda.strategy;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntPredicate;
+import org.coda.backend.Backend;
+
+public class LeastOutstandingRequestsStrategy implements LoadBalancingStrategy {
+
+  @Override
+  public int select(Backend[] backends, IntPredicate eligible) {
+    int backendCount = backends.length;
+    if (backendCount == 0) {
+      return -1;
+    }
+    // Start the scan at a random offset so ties do not all land on the first backend.
+    int offset = ThreadLocalRandom.current().nextInt(backendCount);
+    int best = -1;
+    int bestInFlight = Integer.MAX_VALUE;
+    for (int i = 0; i < backendCount; i++) {
+      int index = (offset + i) % backendCount;
+      if (!eligible.test(index)) {
+        continue;
+      }
+      int inFlight = backends[index].getClusterInFlight();
+      if (inFlight < bestInFlight) {
+        best = index;
+        bestInFlight = inFlight;
+      }
+    }
+    return best;
+  }
+
+}
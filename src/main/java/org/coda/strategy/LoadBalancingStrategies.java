@@ -0,0 +1,34 @@
+package org.coda.strategy;
+
+import org.coda.backend.Backend;
+
+public final class LoadBalancingStrategies {
+
+  public static final double DEFAULT_HASH_LOAD_FACTOR = 1.25;
+
+  private LoadBalancingStrategies() {}
+
+  public static LoadBalancingStrategy create(StrategyType type) {
+    return create(type, DEFAULT_HASH_LOAD_FACTOR);
+  }
+
+  /**
+   * Creates a strategy.
+   *
+   * @param hashLoadFactor how far above the average in-flight count {@code BOUNDED_LOAD_HASH} lets
+   *     a backend go before its keys spill over to the next one
+   */
+  public static LoadBalancingStrategy create(StrategyType type, double hashLoadFactor) {
+    return switch (type) {
+      case ROUND_ROBIN -> new RoundRobinStrategy();
+      case WEIGHTED_ROUND_ROBIN -> new WeightedRoundRobinStrategy();
+      case LEAST_OUTSTANDING_REQUESTS -> new LeastOutstandingRequestsStrategy();
+      case POWER_OF_TWO_CHOICES -> new PowerOfTwoChoicesStrategy(Backend::getClusterInFlight);
+      case PEAK_EWMA -> new PowerOfTwoChoicesStrategy(
+          backend -> backend.getLatency().cost() * (backend.getClusterInFlight() + 1));
+      case MAGLEV -> new MaglevStrategy();
+      case BOUNDED_LOAD_HASH -> new BoundedLoadHashStrategy(hashLoadFactor);
+    };
+  }
+
+}
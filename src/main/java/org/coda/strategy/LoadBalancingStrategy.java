@@ -0,0 +1,25 @@
+package org.coda.strategy;
+
+import java.util.function.IntPredicate;
+import org.coda.backend.Backend;
+
+public interface LoadBalancingStrategy {
+
+  /**
+   * Picks the position of the next backend among those accepted by {@code eligible}.
+   *
+   * @param backends current backend snapshot; must not be modified
+   * @param eligible filter over positions in {@code backends}, e.g. healthy and not yet tried
+   * @return the selected position, or {@code -1} if no backend is eligible
+   */
+  int select(Backend[] backends, IntPredicate eligible);
+
+  /**
+   * Picks a backend for a request with routing key hash {@code key}. Strategies that do not route
+   * by key ignore it.
+   */
+  default int select(Backend[] backends, IntPredicate eligible, long key) {
+    return select(backends, eligible);
+  }
+
+}
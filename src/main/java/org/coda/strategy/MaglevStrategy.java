@@ -0,0 +1,134 @@
+package org.coda.strategy;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntPredicate;
+import org.coda.backend.Backend;
+
+/**
+ * Maglev consistent hashing (Eisenbud et al., NSDI 2016).
+ *
+ * <p>Every backend walks its own permutation of a prime-sized lookup table, derived from its URL,
+ * and the backends take turns claiming their next free slot, as often as their weights allow. A
+ * key hashes to one slot. The table depends only on the URLs and weights, so adding or removing a
+ * backend moves few keys; it is rebuilt once per backend snapshot.
+ *
+ * <p>If the backend in a key's slot is not eligible, the following slots are tried in order.
+ * Backends are spread evenly over the table, so the keys of an unhealthy or already-tried backend
+ * are shared out among the others while every other key keeps its backend. Requests without a key
+ * are spread at random.
+ */
+public class MaglevStrategy implements LoadBalancingStrategy {
+
+  private static final int MIN_TABLE_SIZE = 65537;
+
+  private volatile Table table = new Table(new Backend[0], new int[0], 0);
+
+  static int[] buildLookup(Backend[] backends, int size) {
+    int backendCount = backends.length;
+    if (backendCount == 0) {
+      return new int[0];
+    }
+    int maxWeight = Arrays.stream(backends).mapToInt(Backend::getWeight).max().orElse(0);
+    long[] offsets = new long[backendCount];
+    long[] skips = new long[backendCount];
+    int[] weights = new int[backendCount];
+    for (int i = 0; i < backendCount; i++) {
+      long hash = KeyHash.of(backends[i].getUrl());
+      offsets[i] = Long.remainderUnsigned(hash, size);
+      skips[i] = Long.remainderUnsigned(KeyHash.mix(hash + 1), size - 1) + 1;
+      weights[i] = maxWeight == 0 ? 1 : backends[i].getWeight();
+    }
+    int turnCost = Math.max(maxWeight, 1);
+
+    int[] lookup = new int[size];
+    Arrays.fill(lookup, -1);
+    long[] next = new long[backendCount];
+    long[] credits = new long[backendCount];
+    int filled = 0;
+    while (true) {
+      for (int i = 0; i < backendCount; i++) {
+        credits[i] += weights[i];
+        if (credits[i] < turnCost) {
+          continue;
+        }
+        credits[i] -= turnCost;
+        int slot;
+        do {
+          slot = (int) ((offsets[i] + next[i]++ * skips[i]) % size);
+        } while (lookup[slot] >= 0);
+        lookup[slot] = i;
+        if (++filled == size) {
+          return lookup;
+        }
+      }
+    }
+  }
+
+  static int tableSize(int backendCount) {
+    int size = Math.max(MIN_TABLE_SIZE, backendCount * 100 + 1);
+    while (!isPrime(size)) {
+      size += 2;
+    }
+    return size;
+  }
+
+  private static boolean isPrime(int value) {
+    for (int divisor = 3; (long) divisor * divisor <= value; divisor += 2) {
+      if (value % divisor == 0) {
+        return false;
+      }
+    }
+    return value % 2 != 0;
+  }
+
+  @Override
+  public int select(Backend[] backends, IntPredicate eligible) {
+    return select(backends, eligible, ThreadLocalRandom.current().nextLong());
+  }
+
+  @Override
+  public int select(Backend[] backends, IntPredicate eligible, long key) {
+    Table current = tableFor(backends);
+    int[] lookup = current.lookup;
+    if (lookup.length == 0) {
+      return -1;
+    }
+    int slot = (int) Long.remainderUnsigned(key, lookup.length);
+    int first = lookup[slot];
+    if (eligible.test(first)) {
+      return first;
+    }
+    boolean[] rejected = new boolean[backends.length];
+    rejected[first] = true;
+    int unseen = current.present - 1;
+    for (int i = 1; i < lookup.length && unseen > 0; i++) {
+      int candidate = lookup[(slot + i) % lookup.length];
+      if (rejected[candidate]) {
+        continue;
+      }
+      if (eligible.test(candidate)) {
+        return candidate;
+      }
+      rejected[candidate] = true;
+      unseen--;
+    }
+    return -1;
+  }
+
+  private Table tableFor(Backend[] backends) {
+    Table current = table;
+    if (current.backends != backends) {
+      // Racing threads may each build the same table; the last write wins.
+      int[] lookup = buildLookup(backends, tableSize(backends.length));
+      int present = (int) Arrays.stream(lookup).distinct().count();
+      current = new Table(backends, lookup, present);
+      table = current;
+    }
+    return current;
+  }
+
+  private record Table(Backend[] backends, int[] lookup, int present) {
+  }
+
+}
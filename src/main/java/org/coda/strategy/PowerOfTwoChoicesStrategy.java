@@ -0,0 +1,49 @@
+package org.coda.strategy;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntPredicate;
+import java.util.function.ToDoubleFunction;
+import org.coda.backend.Backend;
+
+/**
+ * Picks two distinct eligible backends at random and keeps the one with the lower load. Load is
+ * either the in-flight count or, for peak-EWMA, latency multiplied by in-flight count.
+ */
+public class PowerOfTwoChoicesStrategy implements LoadBalancingStrategy {
+
+  private final ToDoubleFunction<Backend> load;
+
+  public PowerOfTwoChoicesStrategy(ToDoubleFunction<Backend> load) {
+    this.load = load;
+  }
+
+  @Override
+  public int select(Backend[] backends, IntPredicate eligible) {
+    if (backends.length == 0) {
+      return -1;
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int first = nextEligible(backends.length, random.nextInt(backends.length), -1, eligible);
+    if (first < 0) {
+      return -1;
+    }
+    int second = nextEligible(backends.length, random.nextInt(backends.length), first, eligible);
+    if (second < 0) {
+      return first;
+    }
+    return load.applyAsDouble(backends[second]) < load.applyAsDouble(backends[first])
+        ? second
+        : first;
+  }
+
+  private int nextEligible(int backendCount, int start, int excluded, IntPredicate eligible) {
+    for (int i = 0; i < backendCount; i++) {
+      int index = (start + i) % backendCount;
+      if (index != excluded && eligible.test(index)) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+}
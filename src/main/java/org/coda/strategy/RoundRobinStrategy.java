@@ -0,0 +1,30 @@
+package org.coda.strategy;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+import org.coda.backend.Backend;
+
+public class RoundRobinStrategy implements LoadBalancingStrategy {
+
+  private final AtomicInteger counter = new AtomicInteger();
+
+  @Override
+  public int select(Backend[] backends, IntPredicate eligible) {
+    for (int i = 0; i < backends.length; i++) {
+      int index = getNextRoundRobinIndexAndIncrementCounter(backends.length);
+      if (eligible.test(index)) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  private int getNextRoundRobinIndexAndIncrementCounter(int backendCount) {
+    return counter.getAndUpdate(current ->
+        current >= backendCount - 1
+            ? 0
+            : current + 1
+    ) % backendCount;
+  }
+
+}
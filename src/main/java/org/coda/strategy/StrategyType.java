@@ -0,0 +1,11 @@
+package org.coda.strategy;
+
+public enum StrategyType {
+  ROUND_ROBIN,
+  WEIGHTED_ROUND_ROBIN,
+  LEAST_OUTSTANDING_REQUESTS,
+  POWER_OF_TWO_CHOICES,
+  PEAK_EWMA,
+  MAGLEV,
+  BOUNDED_LOAD_HASH
+}
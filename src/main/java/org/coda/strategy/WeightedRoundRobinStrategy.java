@@ -0,0 +1,83 @@
+package org.coda.strategy;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+import org.coda.backend.Backend;
+
+/**
+ * Smooth weighted round robin as implemented by Nginx.
+ *
+ * <p>The smooth sequence only depends on the weights, so it is computed once per backend
+ * snapshot and selection is a lock-free walk over it.
+ */
+public class WeightedRoundRobinStrategy implements LoadBalancingStrategy {
+
+  private final AtomicInteger position = new AtomicInteger();
+  private volatile Schedule schedule = new Schedule(new Backend[0], new int[0]);
+
+  static int[] buildSchedule(Backend[] backends) {
+    int divisor = 0;
+    for (Backend backend : backends) {
+      divisor = gcd(divisor, backend.getWeight());
+    }
+    int[] effectiveWeights = new int[backends.length];
+    int totalWeight = 0;
+    for (int i = 0; i < effectiveWeights.length; i++) {
+      effectiveWeights[i] = divisor == 0 ? 0 : backends[i].getWeight() / divisor;
+      totalWeight += effectiveWeights[i];
+    }
+
+    int[] sequence = new int[totalWeight];
+    int[] currentWeights = new int[effectiveWeights.length];
+    for (int slot = 0; slot < totalWeight; slot++) {
+      int best = -1;
+      for (int i = 0; i < effectiveWeights.length; i++) {
+        currentWeights[i] += effectiveWeights[i];
+        if (best < 0 || currentWeights[i] > currentWeights[best]) {
+          best = i;
+        }
+      }
+      currentWeights[best] -= totalWeight;
+      sequence[slot] = best;
+    }
+    return sequence;
+  }
+
+  private static int gcd(int a, int b) {
+    return b == 0 ? a : gcd(b, a % b);
+  }
+
+  @Override
+  public int select(Backend[] backends, IntPredicate eligible) {
+    int[] sequence = sequenceFor(backends);
+    if (sequence.length == 0) {
+      return -1;
+    }
+    int start = position.getAndUpdate(current ->
+        current >= sequence.length - 1
+            ? 0
+            : current + 1
+    );
+    for (int i = 0; i < sequence.length; i++) {
+      int index = sequence[(start + i) % sequence.length];
+      if (eligible.test(index)) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  private int[] sequenceFor(Backend[] backends) {
+    Schedule current = schedule;
+    if (current.backends != backends) {
+      // Racing threads may each build the same schedule; the last write wins.
+      current = new Schedule(backends, buildSchedule(backends));
+      schedule = current;
+    }
+    return current.sequence;
+  }
+
+  private record Schedule(Backend[] backends, int[] sequence) {
+  }
+
+}
@@ -0,0 +1,64 @@
+package org.coda.perf;
+
+import java.time.Duration;
+import java.util.Random;
+
+/**
+ * Distribution of the time a stub backend takes to answer.
+ */
+@FunctionalInterface
+public interface Latency {
+
+  Latency NONE = random -> 0;
+
+  // Standard normal quantile of 0.99.
+  double Z_99 = 2.326348;
+
+  long sampleNanos(Random random);
+
+  static Latency fixed(Duration latency) {
+    long nanos = latency.toNanos();
+    return random -> nanos;
+  }
+
+  static Latency uniform(Duration min, Duration max) {
+    long minNanos = min.toNanos();
+    long spread = max.toNanos() - minNanos;
+    return random -> minNanos + (long) (random.nextDouble() * spread);
+  }
+
+  /**
+   * Log-normal latency with the given median and 99th percentile, the usual shape of service
+   * response times: most requests near the median and a long right tail.
+   */
+  static Latency logNormal(Duration median, Duration p99) {
+    double mu = Math.log(median.toNanos());
+    double sigma = Math.log((double) p99.toNanos() / median.toNanos()) / Z_99;
+    return random -> (long) Math.exp(mu + sigma * random.nextGaussian());
+  }
+
+  /**
+   * Parses {@code none}, {@code fixed:5}, {@code uniform:1-10} or {@code lognormal:5,50}, with
+   * all values in milliseconds.
+   */
+  static Latency parse(String spec) {
+    String[] parts = spec.split(":", 2);
+    return switch (parts[0]) {
+      case "none" -> NONE;
+      case "fixed" -> fixed(millis(parts[1]));
+      case "uniform" -> {
+        String[] range = parts[1].split("-");
+        yield uniform(millis(range[0]), millis(range[1]));
+      }
+      case "lognormal" -> {
+        String[] values = parts[1].split(",");
+        yield logNormal(millis(values[0]), millis(values[1]));
+      }
+      default -> throw new IllegalArgumentException("Unknown latency distribution: " + spec);
+    };
+  }
+
+  private static Duration millis(String value) {
+    return Duration.ofNanos((long) (Double.parseDouble(value.trim()) * 1_000_000));
+  }
+}
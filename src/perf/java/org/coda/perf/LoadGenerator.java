@@ -0,0 +1,139 @@
+package org.coda.perf;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.coda.metrics.LatencyHistogram;
+
+/**
+ * Open-loop load at a constant rate.
+ *
+ * <p>Request {@code i} is due at {@code start + i / rate} regardless of how earlier requests are
+ * doing, and is sent asynchronously, so a slow server does not slow the arrival rate down. Response
+ * time is measured from the due time rather than from the moment the request was sent; when the
+ * generator itself falls behind, the delay still counts against the server instead of silently
+ * vanishing (coordinated omission). Service time, measured from the actual send, is kept as well
+ * for comparison.
+ */
+public class LoadGenerator {
+
+  /**
+   * Status recorded for requests that got no response, for example on timeout.
+   */
+  public static final int NO_RESPONSE = -1;
+
+  private final HttpClient httpClient;
+  private final HttpRequest request;
+  private final int rate;
+  private final LatencyHistogram responseTime = new LatencyHistogram();
+  private final LatencyHistogram serviceTime = new LatencyHistogram();
+  private final ConcurrentMap<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+  private final LongAdder completed = new LongAdder();
+  private final AtomicReference<Interval> interval = new AtomicReference<>(new Interval());
+  private volatile long sent;
+
+  public LoadGenerator(HttpClient httpClient, HttpRequest request, int rate) {
+    this.httpClient = httpClient;
+    this.request = request;
+    this.rate = rate;
+  }
+
+  /**
+   * Sends requests for {@code duration}, then waits up to {@code drainTimeout} for the
+   * outstanding ones to complete.
+   */
+  public void run(Duration duration, Duration drainTimeout) {
+    long start = System.nanoTime();
+    long total = duration.toSeconds() * rate;
+    for (long i = 0; i < total; i++) {
+      long due = start + i * TimeUnit.SECONDS.toNanos(1) / rate;
+      long wait = due - System.nanoTime();
+      if (wait > 0) {
+        LockSupport.parkNanos(wait);
+      }
+      long sentAt = System.nanoTime();
+      httpClient.sendAsync(request, BodyHandlers.discarding())
+          .whenComplete((response, throwable) -> record(
+              due, sentAt, response != null ? response.statusCode() : NO_RESPONSE));
+      sent = i + 1;
+    }
+    long deadline = System.nanoTime() + drainTimeout.toNanos();
+    while (completed.sum() < sent && System.nanoTime() < deadline) {
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+    }
+  }
+
+  private void record(long due, long sentAt, int status) {
+    long now = System.nanoTime();
+    responseTime.record(now - due);
+    serviceTime.record(now - sentAt);
+    statuses.computeIfAbsent(status, key -> new LongAdder()).increment();
+    Interval current = interval.get();
+    (status >= 200 && status < 300 ? current.succeeded : current.failed).increment();
+    current.responseTime.record(now - due);
+    completed.increment();
+  }
+
+  /**
+   * Returns the statistics gathered since the previous call and starts a new interval.
+   */
+  public Interval nextInterval() {
+    return interval.getAndSet(new Interval());
+  }
+
+  public long getSent() {
+    return sent;
+  }
+
+  public long getCompleted() {
+    return completed.sum();
+  }
+
+  public LatencyHistogram getResponseTime() {
+    return responseTime;
+  }
+
+  public LatencyHistogram getServiceTime() {
+    return serviceTime;
+  }
+
+  /**
+   * Returns the number of responses per status code, with {@link #NO_RESPONSE} for failures.
+   */
+  public Map<Integer, Long> getStatuses() {
+    Map<Integer, Long> counts = new TreeMap<>();
+    statuses.forEach((status, count) -> counts.put(status, count.sum()));
+    return counts;
+  }
+
+  /**
+   * Responses completed within one reporting interval.
+   */
+  public static final class Interval {
+
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LatencyHistogram responseTime = new LatencyHistogram();
+
+    public long getSucceeded() {
+      return succeeded.sum();
+    }
+
+    public long getFailed() {
+      return failed.sum();
+    }
+
+    public LatencyHistogram getResponseTime() {
+      return responseTime;
+    }
+  }
+}
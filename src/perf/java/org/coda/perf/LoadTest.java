@@ -0,0 +1,164 @@
+package org.coda.perf;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.coda.metrics.LatencyHistogram;
+import org.coda.perf.StubBackend.Behavior;
+
+/**
+ * Starts a balancer in front of stub backends, drives it with open-loop constant-rate load while a
+ * {@link Scenario} injects faults, and prints throughput and latency percentiles every interval
+ * and for the whole run.
+ *
+ * <pre>
+ * mvn -Pperf test-compile exec:exec@loadtest \
+ *     -Dloadtest.args="--scenario=hang --rate=500 --duration=30 --lb.hedge.enabled=true"
+ * </pre>
+ *
+ * <p>Options: {@code --scenario}, {@code --rate} (requests/s), {@code --duration} (s),
+ * {@code --backends}, {@code --latency} (see {@link Latency#parse}), {@code --timeoutMs},
+ * {@code --verbose}, and {@code --lb.<key>=<value>} to override any balancer property.
+ */
+public final class LoadTest {
+
+  private LoadTest() {}
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = parse(args);
+    Scenario scenario = Scenario.valueOf(
+        options.getOrDefault("scenario", "steady").toUpperCase(Locale.ROOT));
+    int rate = Integer.parseInt(options.getOrDefault("rate", "200"));
+    Duration duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "30")));
+    int backendCount = Integer.parseInt(options.getOrDefault("backends", "3"));
+    Latency latency = Latency.parse(options.getOrDefault("latency", "lognormal:5,50"));
+    Duration timeout = Duration.ofMillis(Long.parseLong(options.getOrDefault("timeoutMs", "5000")));
+    if (!options.containsKey("verbose")) {
+      Logger.getLogger("").setLevel(Level.WARNING);
+    }
+
+    // Health checks every second so that scenarios play out within a short run.
+    Properties overrides = new Properties();
+    overrides.setProperty("schedule.initialDelay", "0");
+    overrides.setProperty("schedule.period", "1");
+    overrides.setProperty("health.timeoutMs", "500");
+    overrides.setProperty("client.readTimeoutMs", "2000");
+    options.forEach((key, value) -> {
+      if (key.startsWith("lb.")) {
+        overrides.setProperty(key.substring(3), value);
+      }
+    });
+
+    System.out.printf("Scenario %s: %s%n", scenario.name().toLowerCase(Locale.ROOT),
+                      scenario.getDescription());
+    System.out.printf("%d backends, %d requests/s for %ds, open loop, overrides %s%n%n",
+                      backendCount, rate, duration.toSeconds(), overrides);
+
+    Behavior base = Behavior.HEALTHY.withLatency(latency);
+    ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "load-test-timer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try (ProxyFixture proxyFixture = ProxyFixture.start(backendCount, overrides);
+         HttpClient httpClient = HttpClient.newBuilder()
+             .version(HttpClient.Version.HTTP_1_1)
+             .build()) {
+      proxyFixture.getBackends().forEach(backend -> backend.setBehavior(base));
+      HttpRequest request = HttpRequest.newBuilder(proxyFixture.uri("/bounce"))
+          .header("Content-Type", "application/json")
+          .timeout(timeout)
+          .POST(BodyPublishers.ofString("{\"query\":\"load-test\"}"))
+          .build();
+      LoadGenerator loadGenerator = new LoadGenerator(httpClient, request, rate);
+
+      System.out.printf("%7s %8s %8s %10s %10s %10s%n",
+                        "time", "ok/s", "errors/s", "p50 ms", "p99 ms", "p999 ms");
+      Scenario.Timeline timeline = new Scenario.Timeline(timer, duration);
+      scenario.schedule(timeline, proxyFixture.getBackends().get(0), base);
+      long start = System.nanoTime();
+      timer.scheduleAtFixedRate(() -> printInterval(loadGenerator.nextInterval(), start),
+                                1, 1, TimeUnit.SECONDS);
+      loadGenerator.run(duration, timeout.plusSeconds(1));
+      long elapsedNanos = System.nanoTime() - start;
+      timer.shutdownNow();
+
+      printSummary(loadGenerator, elapsedNanos, proxyFixture);
+    }
+  }
+
+  private static Map<String, String> parse(String[] args) {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      if (!arg.startsWith("--")) {
+        throw new IllegalArgumentException("Unexpected argument: " + arg
+                                           + " (scenarios: " + Scenario.names() + ")");
+      }
+      int equals = arg.indexOf('=');
+      if (equals < 0) {
+        options.put(arg.substring(2), "true");
+      } else {
+        options.put(arg.substring(2, equals), arg.substring(equals + 1));
+      }
+    }
+    return options;
+  }
+
+  private static void printInterval(LoadGenerator.Interval interval, long start) {
+    LatencyHistogram responseTime = interval.getResponseTime();
+    System.out.printf("%6.1fs %8d %8d %10s %10s %10s%n",
+                      (System.nanoTime() - start) / 1e9,
+                      interval.getSucceeded(),
+                      interval.getFailed(),
+                      millis(responseTime, 50),
+                      millis(responseTime, 99),
+                      millis(responseTime, 99.9));
+  }
+
+  private static void printSummary(LoadGenerator loadGenerator,
+                                   long elapsedNanos,
+                                   ProxyFixture proxyFixture) {
+    Map<Integer, Long> statuses = loadGenerator.getStatuses();
+    long succeeded = statuses.entrySet().stream()
+        .filter(entry -> entry.getKey() >= 200 && entry.getKey() < 300)
+        .mapToLong(Map.Entry::getValue)
+        .sum();
+    System.out.printf("%nSent %d, completed %d, succeeded %d (%.1f/s)%n",
+                      loadGenerator.getSent(),
+                      loadGenerator.getCompleted(),
+                      succeeded,
+                      succeeded / (elapsedNanos / 1e9));
+    statuses.forEach((status, count) -> System.out.printf(
+        "  %-12s %d%n", status == LoadGenerator.NO_RESPONSE ? "no response" : status, count));
+    printPercentiles("Response time (from due time)", loadGenerator.getResponseTime());
+    printPercentiles("Service time (from send)     ", loadGenerator.getServiceTime());
+    System.out.println("Requests answered per backend:");
+    for (StubBackend backend : proxyFixture.getBackends()) {
+      System.out.printf("  %-24s %d%n", backend.getUrl(), backend.getServed());
+    }
+  }
+
+  private static void printPercentiles(String label, LatencyHistogram histogram) {
+    System.out.printf("%s  p50 %s  p99 %s  p999 %s  max %s ms%n",
+                      label,
+                      millis(histogram, 50),
+                      millis(histogram, 99),
+                      millis(histogram, 99.9),
+                      millis(histogram, 100));
+  }
+
+  private static String millis(LatencyHistogram histogram, double percentile) {
+    long nanos = histogram.percentile(percentile);
+    return nanos < 0 ? "-" : String.format("%.1f", nanos / 1e6);
+  }
+}
@@ -0,0 +1,80 @@
+package org.coda.perf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import org.coda.config.AppConfig;
+import org.coda.server.ServerApp;
+
+/**
+ * A {@link ServerApp} on localhost in front of in-process stub backends. Configuration starts from
+ * the bundled {@code application.properties}, with the ports, the backend list and any overrides
+ * applied on top.
+ */
+public class ProxyFixture implements AutoCloseable {
+
+  private final List<StubBackend> backends;
+  private final ServerApp serverApp;
+  private final int port;
+
+  private ProxyFixture(List<StubBackend> backends, ServerApp serverApp, int port) {
+    this.backends = backends;
+    this.serverApp = serverApp;
+    this.port = port;
+  }
+
+  public static ProxyFixture start(int backendCount, Properties overrides) throws IOException {
+    List<StubBackend> backends = new ArrayList<>();
+    for (int i = 0; i < backendCount; i++) {
+      backends.add(StubBackend.start(freePort()));
+    }
+    Properties properties = defaults();
+    int port = freePort();
+    properties.setProperty("server.port", Integer.toString(port));
+    properties.setProperty("admin.port", "0");
+    properties.setProperty("loadbalancer.backendsFile", "");
+    properties.setProperty("loadbalancer.backends", backends.stream()
+        .map(StubBackend::getUrl)
+        .collect(Collectors.joining(",")));
+    properties.putAll(overrides);
+    ServerApp serverApp = new ServerApp(AppConfig.of(properties));
+    serverApp.start();
+    return new ProxyFixture(backends, serverApp, port);
+  }
+
+  static int freePort() {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    } catch (IOException exception) {
+      throw new UncheckedIOException(exception);
+    }
+  }
+
+  private static Properties defaults() throws IOException {
+    Properties properties = new Properties();
+    try (InputStream in = ProxyFixture.class.getResourceAsStream("/application.properties")) {
+      properties.load(in);
+    }
+    return properties;
+  }
+
+  public URI uri(String path) {
+    return URI.create("http://localhost:" + port + path);
+  }
+
+  public List<StubBackend> getBackends() {
+    return backends;
+  }
+
+  @Override
+  public void close() {
+    serverApp.stop();
+    backends.forEach(StubBackend::close);
+  }
+}
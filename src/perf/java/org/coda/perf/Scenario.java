@@ -0,0 +1,118 @@
+package org.coda.perf;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.coda.perf.StubBackend.Behavior;
+
+/**
+ * Faults injected into the first stub backend while the load runs. Each one starts a third of the
+ * way into the run so the report shows the balancer before, during and after it.
+ */
+public enum Scenario {
+
+  STEADY("all backends healthy") {
+    @Override
+    void schedule(Timeline timeline, StubBackend target, Behavior base) {}
+  },
+
+  ERRORS("backend 0 answers half of its requests with 503 during the middle third") {
+    @Override
+    void schedule(Timeline timeline, StubBackend target, Behavior base) {
+      timeline.at(1 / 3.0, "backend 0 starts failing 50% of requests",
+                  () -> target.setBehavior(base.withErrorRate(0.5)));
+      timeline.at(2 / 3.0, "backend 0 recovers", () -> target.setBehavior(base));
+    }
+  },
+
+  HANG("backend 0 accepts connections but never answers during the middle third") {
+    @Override
+    void schedule(Timeline timeline, StubBackend target, Behavior base) {
+      timeline.at(1 / 3.0, "backend 0 hangs", () -> target.setBehavior(base.hanging()));
+      timeline.at(2 / 3.0, "backend 0 recovers", () -> target.setBehavior(base));
+    }
+  },
+
+  SLOW("backend 0 is ten times slower during the middle third") {
+    @Override
+    void schedule(Timeline timeline, StubBackend target, Behavior base) {
+      Latency slow = random -> base.latency().sampleNanos(random) * 10;
+      timeline.at(1 / 3.0, "backend 0 slows down 10x",
+                  () -> target.setBehavior(base.withLatency(slow)));
+      timeline.at(2 / 3.0, "backend 0 recovers", () -> target.setBehavior(base));
+    }
+  },
+
+  RESTART("backend 0 refuses connections, then comes back with a cold-cache slow start") {
+    @Override
+    void schedule(Timeline timeline, StubBackend target, Behavior base) {
+      timeline.at(1 / 3.0, "backend 0 goes down", target::stop);
+      timeline.at(1 / 2.0, "backend 0 restarts, 10x slower at first", () -> {
+        target.setBehavior(base.withSlowStart(timeline.fraction(1 / 3.0), 10));
+        target.restart();
+      });
+    }
+  };
+
+  private final String description;
+
+  Scenario(String description) {
+    this.description = description;
+  }
+
+  public String getDescription() {
+    return description;
+  }
+
+  /**
+   * Schedules the faults on {@code target}; {@code base} is the behavior all backends start with.
+   */
+  abstract void schedule(Timeline timeline, StubBackend target, Behavior base);
+
+  /**
+   * Runs actions at fractions of the load duration and reports when they fire.
+   */
+  static final class Timeline {
+
+    private final ScheduledExecutorService scheduler;
+    private final Duration duration;
+    private final long start = System.nanoTime();
+
+    Timeline(ScheduledExecutorService scheduler, Duration duration) {
+      this.scheduler = scheduler;
+      this.duration = duration;
+    }
+
+    Duration fraction(double fraction) {
+      return Duration.ofNanos((long) (duration.toNanos() * fraction));
+    }
+
+    void at(double fraction, String label, Action action) {
+      scheduler.schedule(() -> {
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        System.out.printf("%6.1fs  >> %s%n", elapsedMs / 1000.0, label);
+        try {
+          action.run();
+        } catch (IOException exception) {
+          System.out.printf("        >> failed: %s%n", exception);
+        }
+      }, fraction(fraction).toNanos(), TimeUnit.NANOSECONDS);
+    }
+  }
+
+  @FunctionalInterface
+  interface Action {
+
+    void run() throws IOException;
+  }
+
+  static List<String> names() {
+    return Arrays.stream(values())
+        .map(scenario -> scenario.name().toLowerCase(Locale.ROOT))
+        .toList();
+  }
+}
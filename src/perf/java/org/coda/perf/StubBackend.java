@@ -0,0 +1,197 @@
+package org.coda.perf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+
+/**
+ * In-process backend on localhost. Answers {@code GET /health} with 200 and any other request
+ * with a small JSON body after draining the request body.
+ *
+ * <p>Its {@link Behavior} can be changed while it runs to inject latency, errors, hangs and
+ * slow starts, and it can be stopped and restarted on the same port to refuse connections for a
+ * while. Delayed responses are suspended and completed from a timer, so a slow stub holds no
+ * worker thread.
+ */
+public class StubBackend implements AutoCloseable {
+
+  private static final byte[] RESPONSE = "{\"result\":\"ok\"}".getBytes(StandardCharsets.UTF_8);
+  private static final ScheduledExecutorService RESPONDER =
+      Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "stub-responder");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  private final int port;
+  private final LongAdder served = new LongAdder();
+  private volatile HttpServer server;
+  private volatile Behavior behavior = Behavior.HEALTHY;
+  private volatile long behaviorSince = System.nanoTime();
+
+  private StubBackend(int port) {
+    this.port = port;
+  }
+
+  public static StubBackend start(int port) throws IOException {
+    StubBackend stubBackend = new StubBackend(port);
+    stubBackend.restart();
+    return stubBackend;
+  }
+
+  public String getUrl() {
+    return "http://localhost:" + port;
+  }
+
+  /**
+   * Returns the number of requests answered, not counting health checks.
+   */
+  public long getServed() {
+    return served.sum();
+  }
+
+  public Behavior getBehavior() {
+    return behavior;
+  }
+
+  /**
+   * Applies {@code behavior} to requests from now on. A slow start is measured from this call.
+   */
+  public void setBehavior(Behavior behavior) {
+    this.behaviorSince = System.nanoTime();
+    this.behavior = behavior;
+  }
+
+  /**
+   * Closes the listener and all connections, so that requests are refused until
+   * {@link #restart}.
+   */
+  public synchronized void stop() {
+    if (server != null) {
+      server.shutdownNow();
+      server = null;
+    }
+  }
+
+  public synchronized void restart() throws IOException {
+    if (server != null) {
+      return;
+    }
+    HttpServer httpServer = HttpServer.createSimpleServer(null, "localhost", port);
+    httpServer.getServerConfiguration().addHttpHandler(new Handler(), "/");
+    httpServer.start();
+    behaviorSince = System.nanoTime();
+    server = httpServer;
+  }
+
+  @Override
+  public void close() {
+    stop();
+  }
+
+  private long delayNanos(Behavior current, ThreadLocalRandom random) {
+    long delay = current.latency().sampleNanos(random);
+    long slowStartNanos = current.slowStart().toNanos();
+    long elapsed = System.nanoTime() - behaviorSince;
+    if (elapsed < slowStartNanos) {
+      double remaining = 1 - (double) elapsed / slowStartNanos;
+      delay = (long) (delay * (1 + (current.slowStartFactor() - 1) * remaining));
+    }
+    return delay;
+  }
+
+  private static void write(Response response, int status) throws IOException {
+    response.setStatus(status);
+    response.setContentType("application/json");
+    response.setContentLength(RESPONSE.length);
+    response.getOutputStream().write(RESPONSE);
+  }
+
+  private final class Handler extends HttpHandler {
+
+    @Override
+    public void service(Request request, Response response) throws IOException {
+      Behavior current = behavior;
+      boolean health = "/health".equals(request.getRequestURI());
+      if (!health) {
+        try (InputStream in = request.getInputStream()) {
+          in.transferTo(OutputStream.nullOutputStream());
+        }
+      }
+      if (current.hang()) {
+        // Never resumed: the connection stays open until the client gives up.
+        response.suspend();
+        return;
+      }
+      if (health) {
+        response.setStatus(200);
+        return;
+      }
+
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      int status = random.nextDouble() < current.errorRate() ? 503 : 200;
+      long delay = delayNanos(current, random);
+      served.increment();
+      if (delay <= 0) {
+        write(response, status);
+        return;
+      }
+      response.suspend();
+      RESPONDER.schedule(() -> {
+        try {
+          write(response, status);
+        } catch (IOException exception) {
+          // The client has gone away.
+        } finally {
+          response.resume();
+        }
+      }, delay, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  /**
+   * How a stub answers requests.
+   *
+   * @param latency time taken to answer each request
+   * @param errorRate share of requests answered with 503
+   * @param hang whether requests, including health checks, are never answered
+   * @param slowStart how long latency stays raised after the behavior is set or the stub restarts
+   * @param slowStartFactor latency multiplier at the start of {@code slowStart}, falling linearly
+   *     to 1
+   */
+  public record Behavior(Latency latency,
+                         double errorRate,
+                         boolean hang,
+                         Duration slowStart,
+                         double slowStartFactor) {
+
+    public static final Behavior HEALTHY = new Behavior(Latency.NONE, 0, false, Duration.ZERO, 1);
+
+    public Behavior withLatency(Latency latency) {
+      return new Behavior(latency, errorRate, hang, slowStart, slowStartFactor);
+    }
+
+    public Behavior withErrorRate(double errorRate) {
+      return new Behavior(latency, errorRate, hang, slowStart, slowStartFactor);
+    }
+
+    public Behavior hanging() {
+      return new Behavior(latency, errorRate, true, slowStart, slowStartFactor);
+    }
+
+    public Behavior withSlowStart(Duration slowStart, double slowStartFactor) {
+      return new Behavior(latency, errorRate, hang, slowStart, slowStartFactor);
+    }
+  }
+}
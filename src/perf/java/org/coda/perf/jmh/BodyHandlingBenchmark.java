@@ -0,0 +1,92 @@
+package org.coda.perf.jmh;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import org.coda.buffer.BufferPool;
+import org.coda.buffer.ReplayableBody;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Handling one request and one response body in the two proxy modes: parsing into a
+ * {@link JsonNode} and writing it back out, or buffering into pooled chunks and copying through.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BodyHandlingBenchmark {
+
+  @Param({"256", "16384", "262144"})
+  int bodyBytes;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final BufferPool bufferPool = new BufferPool(8 * 1024, 1024);
+  private byte[] body;
+
+  @Setup
+  public void setUp() {
+    StringBuilder json = new StringBuilder("{\"items\":[");
+    for (int i = 0; json.length() < bodyBytes - 32; i++) {
+      json.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"name\":\"item\"}");
+    }
+    body = json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public void jsonTree(Blackhole blackhole) throws IOException {
+    JsonNode request = objectMapper.readTree(body);
+    blackhole.consume(objectMapper.writeValueAsBytes(request));
+    JsonNode response = objectMapper.readTree(new ByteArrayInputStream(body));
+    objectMapper.writeValue(OutputStream.nullOutputStream(), response);
+  }
+
+  @Benchmark
+  public void passThrough(Blackhole blackhole) throws IOException {
+    ReplayableBody request =
+        ReplayableBody.read(new ByteArrayInputStream(body), bufferPool, 1024 * 1024);
+    request.toBodyPublisher().subscribe(new Sink(blackhole));
+    request.release();
+    bufferPool.transfer(new ByteArrayInputStream(body), OutputStream.nullOutputStream());
+  }
+
+  private record Sink(Blackhole blackhole) implements Flow.Subscriber<ByteBuffer> {
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(ByteBuffer item) {
+      blackhole.consume(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      throw new IllegalStateException(throwable);
+    }
+
+    @Override
+    public void onComplete() {}
+  }
+}
@@ -0,0 +1,95 @@
+package org.coda.perf.jmh;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.coda.backend.Backend;
+import org.coda.backend.BackendRegistry;
+import org.coda.client.BackendClient;
+import org.coda.client.ClientFactory;
+import org.coda.config.AppConfig;
+import org.coda.health.BackendHealthChecker;
+import org.coda.health.CircuitBreakingHealthManager;
+import org.coda.metrics.ProxyMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Health lookups made for every candidate during selection, with eight threads reading while no
+ * health state changes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+public class HealthLookupBenchmark {
+
+  private static final int BACKENDS = 16;
+
+  private Backend[] backends;
+  private BackendClient backendClient;
+  private BackendHealthChecker backendHealthChecker;
+  private CircuitBreakingHealthManager circuitBreakingHealthManager;
+
+  @Setup
+  public void setUp() {
+    long decayNanos = TimeUnit.SECONDS.toNanos(10);
+    List<Backend> list = new ArrayList<>();
+    for (int i = 0; i < BACKENDS; i++) {
+      list.add(new Backend(i, "http://backend-" + i, 1, decayNanos));
+    }
+    BackendRegistry backendRegistry = new BackendRegistry(list, decayNanos);
+    backends = backendRegistry.snapshot();
+
+    Properties properties = new Properties();
+    properties.setProperty("client.connectTimeoutMs", "1000");
+    properties.setProperty("client.readTimeoutMs", "1000");
+    AppConfig appConfig = AppConfig.of(properties);
+    ProxyMetrics proxyMetrics = new ProxyMetrics();
+    backendClient = ClientFactory.create(appConfig, null);
+    backendHealthChecker = new BackendHealthChecker(
+        backendRegistry, backendClient, proxyMetrics, Duration.ofSeconds(1), 2, 3);
+    circuitBreakingHealthManager = new CircuitBreakingHealthManager(
+        backendHealthChecker, backendRegistry, proxyMetrics, appConfig);
+  }
+
+  @TearDown
+  public void tearDown() {
+    backendClient.close();
+  }
+
+  @State(Scope.Thread)
+  public static class Cursor {
+
+    int next;
+
+    Backend advance(Backend[] backends) {
+      return backends[next++ & (BACKENDS - 1)];
+    }
+  }
+
+  @Benchmark
+  public boolean healthChecker(Cursor cursor) {
+    return backendHealthChecker.isHealthy(cursor.advance(backends));
+  }
+
+  @Benchmark
+  public boolean circuitBreaker(Cursor cursor) {
+    return circuitBreakingHealthManager.isHealthy(cursor.advance(backends));
+  }
+}
@@ -0,0 +1,75 @@
+package org.coda.perf.jmh;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.coda.perf.ProxyFixture;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Requests per second through the whole proxy: client, Grizzly, Jersey or the fast-path handler,
+ * selection, the backend connection pool and three stub backends, all on localhost. Absolute
+ * numbers depend on the machine; compare runs on the same host only.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(16)
+public class ProxyThroughputBenchmark {
+
+  private static final byte[] BODY = "{\"query\":\"bounce\"}".getBytes();
+
+  @Param({"JSON", "PASS_THROUGH", "FAST_PATH"})
+  String mode;
+
+  @Param({"ROUND_ROBIN", "PEAK_EWMA"})
+  String strategy;
+
+  private ProxyFixture proxyFixture;
+  private HttpClient httpClient;
+  private HttpRequest request;
+
+  @Setup
+  public void setUp() throws IOException {
+    Properties overrides = new Properties();
+    overrides.setProperty("loadbalancer.passThrough", Boolean.toString(!mode.equals("JSON")));
+    overrides.setProperty("server.fastPath", Boolean.toString(mode.equals("FAST_PATH")));
+    overrides.setProperty("loadbalancer.strategy", strategy);
+    proxyFixture = ProxyFixture.start(3, overrides);
+    httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    request = HttpRequest.newBuilder(proxyFixture.uri("/bounce"))
+        .header("Content-Type", "application/json")
+        .POST(BodyPublishers.ofByteArray(BODY))
+        .build();
+  }
+
+  @TearDown
+  public void tearDown() {
+    httpClient.close();
+    proxyFixture.close();
+  }
+
+  @Benchmark
+  public int proxy() throws IOException, InterruptedException {
+    return httpClient.send(request, BodyHandlers.ofByteArray()).statusCode();
+  }
+}
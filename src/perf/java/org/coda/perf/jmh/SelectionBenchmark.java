@@ -0,0 +1,66 @@
+package org.coda.perf.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+import org.coda.backend.Backend;
+import org.coda.strategy.LoadBalancingStrategies;
+import org.coda.strategy.LoadBalancingStrategy;
+import org.coda.strategy.StrategyType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of picking a backend, alone and with eight threads sharing one strategy instance as
+ * request threads do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SelectionBenchmark {
+
+  private static final IntPredicate ANY = index -> true;
+
+  @Param
+  StrategyType strategyType;
+
+  @Param({"3", "32"})
+  int backendCount;
+
+  private Backend[] backends;
+  private LoadBalancingStrategy strategy;
+
+  @Setup
+  public void setUp() {
+    backends = new Backend[backendCount];
+    for (int i = 0; i < backendCount; i++) {
+      backends[i] = new Backend(i, "http://backend-" + i, 1 + i % 3, TimeUnit.SECONDS.toNanos(10));
+      backends[i].getLatency().record(TimeUnit.MILLISECONDS.toNanos(1 + i));
+    }
+    strategy = LoadBalancingStrategies.create(strategyType);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public int uncontended() {
+    return strategy.select(backends, ANY);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public int contended() {
+    return strategy.select(backends, ANY);
+  }
+}
@@ -0,0 +1,56 @@
+package org.coda.backend;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BackendConfigWatcherTest {
+
+  @TempDir
+  Path dir;
+
+  BackendRegistry backendRegistry;
+
+  BackendConfigWatcher watcher;
+
+  @BeforeEach
+  void setUp() {
+    long decayNanos = TimeUnit.SECONDS.toNanos(10);
+    backendRegistry = new BackendRegistry(List.of(new Backend(0, "http://a", 1, decayNanos)),
+                                          decayNanos);
+    watcher = new BackendConfigWatcher(dir.resolve("backends.properties"), backendRegistry);
+  }
+
+  private List<String> urls() {
+    return Arrays.stream(backendRegistry.snapshot()).map(Backend::getUrl).toList();
+  }
+
+  @Test
+  void reloadAppliesBackendsFromFile() throws IOException {
+    Files.writeString(dir.resolve("backends.properties"),
+                      "loadbalancer.backends=http://b, http://c\nloadbalancer.weights=2,1\n");
+
+    watcher.reload();
+
+    assertEquals(List.of("http://b", "http://c"), urls());
+    assertEquals(2, backendRegistry.snapshot()[0].getWeight());
+  }
+
+  @Test
+  void reloadKeepsBackendsWhenFileIsMissingOrEmpty() throws IOException {
+    watcher.reload();
+    assertEquals(List.of("http://a"), urls());
+
+    Files.writeString(dir.resolve("backends.properties"), "loadbalancer.backends=\n");
+    watcher.reload();
+    assertEquals(List.of("http://a"), urls());
+  }
+}
@@ -0,0 +1,115 @@
+package org.coda.backend;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BackendRegistryTest {
+
+  private static final long DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+  BackendRegistry backendRegistry;
+
+  List<Backend> removed = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() {
+    backendRegistry = new BackendRegistry(List.of(
+        new Backend(0, "http://a", 1, DECAY_NANOS),
+        new Backend(1, "http://b", 1, DECAY_NANOS)), DECAY_NANOS);
+    backendRegistry.onRemoved(removed::add);
+  }
+
+  private List<String> urls() {
+    return Arrays.stream(backendRegistry.snapshot()).map(Backend::getUrl).toList();
+  }
+
+  @Test
+  void addPublishesANewSnapshot() {
+    Backend[] before = backendRegistry.snapshot();
+
+    Backend added = backendRegistry.add("http://c", 3);
+
+    assertEquals(List.of("http://a", "http://b", "http://c"), urls());
+    assertEquals(2, added.getIndex());
+    assertEquals(3, added.getWeight());
+    assertEquals(2, before.length);
+  }
+
+  @Test
+  void addingAKnownBackendOnlyChangesItsWeight() {
+    Backend[] before = backendRegistry.snapshot();
+
+    Backend reweighted = backendRegistry.add("http://a", 5);
+
+    assertSame(before[0], reweighted);
+    assertEquals(5, reweighted.getWeight());
+    assertNotSame(before, backendRegistry.snapshot());
+    assertArrayEquals(before, backendRegistry.snapshot());
+  }
+
+  @Test
+  void drainWaitsForInFlightRequests() {
+    Backend a = backendRegistry.snapshot()[0];
+    a.incrementInFlight();
+
+    assertTrue(backendRegistry.drain("http://a"));
+
+    assertEquals(List.of("http://b"), urls());
+    assertTrue(a.isDraining());
+    assertEquals(List.of(a), backendRegistry.draining());
+    assertTrue(removed.isEmpty());
+
+    a.decrementInFlight();
+
+    assertEquals(List.of(a), removed);
+    assertTrue(backendRegistry.draining().isEmpty());
+  }
+
+  @Test
+  void drainUnknownBackendReturnsFalse() {
+    assertFalse(backendRegistry.drain("http://unknown"));
+    assertEquals(List.of("http://a", "http://b"), urls());
+  }
+
+  @Test
+  void updateAddsReweightsAndDrains() {
+    backendRegistry.update(List.of("http://b", "http://c"), List.of(2, 4));
+
+    assertEquals(List.of("http://b", "http://c"), urls());
+    assertEquals(2, backendRegistry.snapshot()[0].getWeight());
+    assertEquals(4, backendRegistry.snapshot()[1].getWeight());
+    assertEquals(List.of("http://a"), removed.stream().map(Backend::getUrl).toList());
+  }
+
+  @Test
+  void updateRejectsMismatchedWeights() {
+    assertThrows(IllegalStateException.class,
+                 () -> backendRegistry.update(List.of("http://c"), List.of(1, 2)));
+    assertEquals(List.of("http://a", "http://b"), urls());
+  }
+
+  @Test
+  void updateKeepsBackendsThatServeRoutes() {
+    BackendRegistry routedRegistry = new BackendRegistry(List.of(
+        new Backend(0, "http://a", 1, DECAY_NANOS),
+        new Backend(1, "http://r", 1, DECAY_NANOS)), DECAY_NANOS, Set.of("http://r"));
+
+    routedRegistry.update(List.of("http://b"), List.of());
+
+    assertEquals(List.of("http://r", "http://b"),
+                 Arrays.stream(routedRegistry.snapshot()).map(Backend::getUrl).toList());
+  }
+}
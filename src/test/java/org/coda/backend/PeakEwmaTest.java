@@ -0,0 +1,41 @@
+package org.coda.backend;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class PeakEwmaTest {
+
+  private static final long DECAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+  private final PeakEwma peakEwma = new PeakEwma(DECAY_NANOS);
+
+  @Test
+  void slowSampleIsAdoptedImmediately() {
+    long now = System.nanoTime();
+    peakEwma.record(SLOW_NANOS, now);
+
+    assertEquals(SLOW_NANOS, peakEwma.cost(now), 1);
+  }
+
+  @Test
+  void fasterSamplesBlendInByElapsedTime() {
+    long now = System.nanoTime();
+    peakEwma.record(SLOW_NANOS, now);
+    peakEwma.record(0, now + DECAY_NANOS);
+
+    assertEquals(SLOW_NANOS * Math.exp(-1), peakEwma.cost(now + DECAY_NANOS), 1);
+  }
+
+  @Test
+  void costDecaysWhileIdle() {
+    long now = System.nanoTime();
+    peakEwma.record(SLOW_NANOS, now);
+
+    assertTrue(peakEwma.cost(now + 3 * DECAY_NANOS) < SLOW_NANOS * 0.1);
+  }
+}
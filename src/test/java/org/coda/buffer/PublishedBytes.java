@@ -0,0 +1,38 @@
+package org.coda.buffer;
+
+import java.io.ByteArrayOutputStream;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Flow;
+
+public final class PublishedBytes {
+
+  private PublishedBytes() {}
+
+  public static byte[] read(BodyPublisher bodyPublisher) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    bodyPublisher.subscribe(new Flow.Subscriber<>() {
+      @Override
+      public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+      }
+
+      @Override
+      public void onNext(ByteBuffer item) {
+        byte[] bytes = new byte[item.remaining()];
+        item.get(bytes);
+        out.writeBytes(bytes);
+      }
+
+      @Override
+      public void onError(Throwable throwable) {
+        throw new AssertionError(throwable);
+      }
+
+      @Override
+      public void onComplete() {}
+    });
+    return out.toByteArray();
+  }
+
+}
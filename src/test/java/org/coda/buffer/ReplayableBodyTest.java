@@ -0,0 +1,57 @@
+package org.coda.buffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class ReplayableBodyTest {
+
+  private final BufferPool bufferPool = new BufferPool(4, 8);
+
+  private final byte[] body = "{\"key\":\"value\"}".getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  void bodyWithinLimitCanBeWrittenRepeatedly() throws IOException {
+    ReplayableBody replayableBody =
+        ReplayableBody.read(new ByteArrayInputStream(body), bufferPool, 64);
+
+    assertTrue(replayableBody.isReplayable());
+    assertEquals(body.length, replayableBody.getBufferedLength());
+    for (int i = 0; i < 2; i++) {
+      assertArrayEquals(body, PublishedBytes.read(replayableBody.toBodyPublisher()));
+    }
+  }
+
+  @Test
+  void bodyExactlyAtLimitIsReplayable() throws IOException {
+    ReplayableBody replayableBody =
+        ReplayableBody.read(new ByteArrayInputStream(body), bufferPool, body.length);
+
+    assertTrue(replayableBody.isReplayable());
+  }
+
+  @Test
+  void bodyOverLimitIsSentInFull() throws IOException {
+    ReplayableBody replayableBody =
+        ReplayableBody.read(new ByteArrayInputStream(body), bufferPool, 6);
+
+    assertFalse(replayableBody.isReplayable());
+    assertArrayEquals(body, PublishedBytes.read(replayableBody.toBodyPublisher()));
+  }
+
+  @Test
+  void releaseReturnsChunksToPool() throws IOException {
+    ReplayableBody replayableBody =
+        ReplayableBody.read(new ByteArrayInputStream(body), bufferPool, 64);
+    replayableBody.release();
+
+    byte[] buffer = bufferPool.acquire();
+    assertEquals(4, buffer.length);
+  }
+}
@@ -0,0 +1,124 @@
+package org.coda.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class ResponseCacheTest {
+
+  private static final Duration TTL = Duration.ofSeconds(30);
+
+  private final AtomicLong now = new AtomicLong();
+
+  private ResponseCache cache(long maxBytes) {
+    return new ResponseCache(maxBytes, 1024, Map.of("/quote", TTL, "/lookup/", Duration.ZERO),
+                             now::get);
+  }
+
+  private static CacheKey key(String payload) {
+    return new CacheKey("POST", "/quote", payload.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static CachedResponse response(int size) {
+    return new CachedResponse(200,
+                              "application/json",
+                              HttpHeaders.of(Map.of(), (name, value) -> true),
+                              new byte[size]);
+  }
+
+  @Test
+  void storedResponseIsServedUntilItExpires() {
+    ResponseCache cache = cache(1024 * 1024);
+    CachedResponse response = response(10);
+
+    assertNull(cache.get(key("{\"id\":1}")));
+    cache.put(key("{\"id\":1}"), response, TTL);
+
+    assertEquals(response, cache.get(key("{\"id\":1}")));
+    assertNull(cache.get(key("{\"id\":2}")));
+    now.addAndGet(TTL.toNanos());
+    assertNull(cache.get(key("{\"id\":1}")));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  void weightStaysWithinMaxBytes() {
+    ResponseCache cache = cache(10_000);
+    for (int i = 0; i < 200; i++) {
+      CacheKey key = key("{\"id\":" + i + "}");
+      cache.get(key);
+      cache.put(key, response(500), TTL);
+      assertTrue(cache.weightedSize() <= 10_000, "weight " + cache.weightedSize());
+    }
+    assertTrue(cache.size() > 0);
+  }
+
+  @Test
+  void frequentlyRequestedEntriesSurviveAScan() {
+    ResponseCache cache = cache(20_000);
+    for (int i = 0; i < 10; i++) {
+      CacheKey key = key("{\"hot\":" + i + "}");
+      cache.get(key);
+      cache.put(key, response(500), TTL);
+    }
+    for (int round = 0; round < 5; round++) {
+      for (int i = 0; i < 10; i++) {
+        cache.get(key("{\"hot\":" + i + "}"));
+      }
+    }
+
+    for (int i = 0; i < 1000; i++) {
+      CacheKey key = key("{\"scan\":" + i + "}");
+      cache.get(key);
+      cache.put(key, response(500), TTL);
+    }
+
+    for (int i = 0; i < 10; i++) {
+      assertNotNull(cache.get(key("{\"hot\":" + i + "}")), "hot entry " + i);
+    }
+  }
+
+  @Test
+  void oversizedBodiesAreNotStored() {
+    ResponseCache cache = cache(1024 * 1024);
+    cache.put(key("{}"), response(2048), TTL);
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  void routesMatchWholePathSegments() {
+    ResponseCache cache = cache(1024);
+    assertEquals(TTL, cache.routeTtl("quote"));
+    assertEquals(TTL, cache.routeTtl("/quote/fx"));
+    assertNull(cache.routeTtl("/quotes"));
+    assertEquals(Duration.ZERO, cache.routeTtl("/lookup/user"));
+    assertNull(cache.routeTtl("/other"));
+  }
+
+  @Test
+  void cacheControlOverridesRouteTtl() {
+    assertEquals(TTL, ResponseCache.ttl(headers(), TTL));
+    assertEquals(Duration.ofSeconds(5),
+                 ResponseCache.ttl(headers("public, max-age=5"), TTL));
+    assertEquals(Duration.ofSeconds(7),
+                 ResponseCache.ttl(headers("max-age=5, s-maxage=7"), Duration.ZERO));
+    assertEquals(Duration.ZERO, ResponseCache.ttl(headers("no-store"), TTL));
+    assertEquals(Duration.ZERO, ResponseCache.ttl(headers("private, max-age=60"), TTL));
+  }
+
+  private static HttpHeaders headers(String... cacheControl) {
+    return HttpHeaders.of(cacheControl.length == 0
+                              ? Map.of()
+                              : Map.of("Cache-Control", List.of(cacheControl)),
+                          (name, value) -> true);
+  }
+}
@@ -0,0 +1,105 @@
+package org.coda.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.coda.backend.Backend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BackendClientTest {
+
+  private final ExecutorService virtualThreads =
+      Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("test-virtual-", 0).factory());
+  private final ExecutorService backendThreads = Executors.newCachedThreadPool();
+  private final CountDownLatch released = new CountDownLatch(1);
+  private HttpServer backendServer;
+  private Backend backend;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    backendServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    backendServer.createContext("/", exchange -> {
+      try {
+        // Keeps the response pending until the test has attached its callback.
+        Thread.sleep(100);
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+      }
+      exchange.sendResponseHeaders(204, -1);
+      exchange.close();
+    });
+    backendServer.createContext("/hold", exchange -> {
+      try {
+        released.await();
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+      }
+      exchange.sendResponseHeaders(204, -1);
+      exchange.close();
+    });
+    backendServer.setExecutor(backendThreads);
+    backendServer.start();
+    backend = new Backend(0,
+                          "http://localhost:" + backendServer.getAddress().getPort(),
+                          1,
+                          TimeUnit.SECONDS.toNanos(10));
+  }
+
+  @AfterEach
+  void tearDown() {
+    released.countDown();
+    backendServer.stop(0);
+    backendThreads.shutdownNow();
+    virtualThreads.shutdownNow();
+  }
+
+  @Test
+  void responsesCompleteOnTheConfiguredExecutor() {
+    try (BackendClient client =
+             new BackendClient(Duration.ofSeconds(1), Duration.ofSeconds(5), 4, 4, false,
+                               virtualThreads)) {
+      Thread completedOn = client.send(backend, BackendRequest.get("/ping"))
+          .thenApply(response -> {
+            assertEquals(204, response.getStatus());
+            response.close();
+            return Thread.currentThread();
+          })
+          .join();
+
+      assertTrue(completedOn.isVirtual(), completedOn.toString());
+    }
+  }
+
+  @Test
+  void probesGetThroughWhileThePoolIsFull() {
+    try (BackendClient client =
+             new BackendClient(Duration.ofSeconds(1), Duration.ofSeconds(5), 1, 0, false, null)) {
+      CompletableFuture<BackendResponse> held = client.send(backend, BackendRequest.get("/hold"));
+      CompletionException rejected = assertThrows(
+          CompletionException.class, () -> client.send(backend, BackendRequest.get("/ping")).join());
+      assertInstanceOf(PoolExhaustedException.class, rejected.getCause());
+
+      try (BackendResponse probe = client.probe(backend, BackendRequest.get("/ping")).join()) {
+        assertEquals(204, probe.getStatus());
+      }
+      assertFalse(held.isDone());
+      released.countDown();
+      held.join().close();
+    }
+  }
+}
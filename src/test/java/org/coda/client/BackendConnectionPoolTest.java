@@ -0,0 +1,175 @@
+package org.coda.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class BackendConnectionPoolTest {
+
+  @Mock
+  HttpClient httpClient;
+
+  BackendConnectionPool pool;
+
+  HttpRequest request = HttpRequest.newBuilder(URI.create("http://a/bounce")).build();
+
+  @BeforeEach
+  void setUp() {
+    pool = new BackendConnectionPool("http://a", httpClient, 1, 1);
+  }
+
+  // Typed like the handler the pool passes, so stubs need no unchecked conversion.
+  private static HttpResponse.BodyHandler<Flow.Publisher<List<ByteBuffer>>> publisherHandler() {
+    return any();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static HttpResponse<Flow.Publisher<List<ByteBuffer>>> httpResponse() {
+    HttpResponse<Flow.Publisher<List<ByteBuffer>>> response = mock(HttpResponse.class);
+    when(response.statusCode()).thenReturn(200);
+    when(response.headers()).thenReturn(HttpHeaders.of(Map.of(), (name, value) -> true));
+    when(response.body()).thenReturn(subscriber -> subscriber.onSubscribe(new Flow.Subscription() {
+      @Override
+      public void request(long n) {
+        subscriber.onComplete();
+      }
+
+      @Override
+      public void cancel() {
+      }
+    }));
+    return response;
+  }
+
+  @Test
+  void queuesBeyondMaxConnectionsAndRejectsBeyondMaxPending() {
+    CompletableFuture<HttpResponse<Flow.Publisher<List<ByteBuffer>>>> firstExchange =
+        new CompletableFuture<>();
+    when(httpClient.sendAsync(any(HttpRequest.class), publisherHandler()))
+        .thenReturn(firstExchange)
+        .thenReturn(CompletableFuture.completedFuture(httpResponse()));
+
+    CompletableFuture<BackendResponse> first = pool.send(request);
+    CompletableFuture<BackendResponse> second = pool.send(request);
+    CompletableFuture<BackendResponse> third = pool.send(request);
+
+    assertFalse(second.isDone());
+    CompletionException rejection = assertThrows(
+        CompletionException.class, third::join);
+    assertInstanceOf(PoolExhaustedException.class, rejection.getCause());
+    assertEquals(1, pool.stats().activeConnections());
+    assertEquals(1, pool.stats().pendingRequests());
+
+    firstExchange.complete(httpResponse());
+    first.join().close();
+
+    assertTrue(second.isDone());
+    verify(httpClient, times(2)).sendAsync(any(HttpRequest.class), publisherHandler());
+    second.join().close();
+
+    PoolStats stats = pool.stats();
+    assertEquals(0, stats.activeConnections());
+    assertEquals(0, stats.pendingRequests());
+    assertEquals(2, stats.completedRequests());
+    assertEquals(1, stats.rejectedRequests());
+  }
+
+  @Test
+  void failedExchangeReleasesConnection() {
+    when(httpClient.sendAsync(any(HttpRequest.class), publisherHandler()))
+        .thenReturn(CompletableFuture.failedFuture(new IOException("refused")));
+
+    CompletableFuture<BackendResponse> response = pool.send(request);
+
+    assertTrue(response.isCompletedExceptionally());
+    assertEquals(0, pool.stats().activeConnections());
+    assertEquals(1, pool.stats().failedRequests());
+  }
+
+  @Test
+  void cancellingAResponseAbortsTheExchange() {
+    CompletableFuture<HttpResponse<Flow.Publisher<List<ByteBuffer>>>> exchange =
+        new CompletableFuture<>();
+    when(httpClient.sendAsync(any(HttpRequest.class), publisherHandler()))
+        .thenReturn(exchange);
+
+    pool.send(request).cancel(true);
+
+    assertTrue(exchange.isCancelled());
+    assertEquals(0, pool.stats().activeConnections());
+  }
+
+  @Test
+  void lateResponseForCancelledQueuedRequestIsReleased() {
+    CompletableFuture<HttpResponse<Flow.Publisher<List<ByteBuffer>>>> firstExchange =
+        new CompletableFuture<>();
+    when(httpClient.sendAsync(any(HttpRequest.class), publisherHandler()))
+        .thenReturn(firstExchange);
+
+    CompletableFuture<BackendResponse> first = pool.send(request);
+    pool.send(request).cancel(true);
+    firstExchange.complete(httpResponse());
+    first.join().close();
+
+    assertEquals(0, pool.stats().activeConnections());
+    assertEquals(0, pool.stats().pendingRequests());
+    verify(httpClient, times(1)).sendAsync(any(HttpRequest.class), publisherHandler());
+  }
+
+  @Test
+  void takenBodyReleasesConnectionWhenItCompletes() {
+    HttpResponse<Flow.Publisher<List<ByteBuffer>>> httpResponse = httpResponse();
+    when(httpClient.sendAsync(any(HttpRequest.class), publisherHandler()))
+        .thenReturn(CompletableFuture.completedFuture(httpResponse));
+
+    BackendResponse response = pool.send(request).join();
+    response.takeBodyPublisher().subscribe(new Flow.Subscriber<>() {
+      @Override
+      public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(1);
+      }
+
+      @Override
+      public void onNext(List<ByteBuffer> item) {
+      }
+
+      @Override
+      public void onError(Throwable throwable) {
+      }
+
+      @Override
+      public void onComplete() {
+      }
+    });
+    response.close();
+
+    assertEquals(0, pool.stats().activeConnections());
+    assertEquals(1, pool.stats().completedRequests());
+  }
+}
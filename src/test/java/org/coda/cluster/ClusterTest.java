@@ -0,0 +1,185 @@
+package org.coda.cluster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.coda.backend.Backend;
+import org.coda.backend.BackendRegistry;
+import org.coda.config.AppConfig;
+import org.junit.jupiter.api.Test;
+
+class ClusterTest {
+
+  private static final Duration PEER_TIMEOUT = Duration.ofSeconds(3);
+
+  private static BackendRegistry registry(int backends) {
+    long decayNanos = TimeUnit.SECONDS.toNanos(10);
+    List<Backend> list = new ArrayList<>();
+    for (int i = 0; i < backends; i++) {
+      list.add(new Backend(i, "http://backend-" + i + ":8080", 1, decayNanos));
+    }
+    return new BackendRegistry(list, decayNanos);
+  }
+
+  private static Cluster cluster(int port, BackendRegistry registry) {
+    return new Cluster("lb:" + port, "lb", port, List.of(), PEER_TIMEOUT, registry);
+  }
+
+  private static void exchange(Cluster... clusters) {
+    long now = System.nanoTime();
+    for (Cluster from : clusters) {
+      GossipMessage message = from.tick(now);
+      for (Cluster to : clusters) {
+        to.receive(message, now);
+      }
+    }
+  }
+
+  @Test
+  void eachBackendIsProbedByExactlyOneLiveInstance() {
+    BackendRegistry registry = registry(30);
+    Cluster a = cluster(1, registry);
+    Cluster b = cluster(2, registry);
+    Cluster c = cluster(3, registry);
+    exchange(a, b, c);
+
+    Map<Cluster, Integer> probedBy = new HashMap<>();
+    for (Backend backend : registry.snapshot()) {
+      int probers = 0;
+      for (Cluster cluster : List.of(a, b, c)) {
+        if (cluster.probeVerdict(backend) == null) {
+          probers++;
+          probedBy.merge(cluster, 1, Integer::sum);
+        }
+      }
+      assertEquals(1, probers, backend.getUrl());
+    }
+    assertEquals(3, probedBy.size());
+  }
+
+  @Test
+  void peerVerdictsComeFromTheOwnerAndLapseWhenItGoesQuiet() {
+    BackendRegistry local = registry(10);
+    BackendRegistry remote = registry(10);
+    for (Backend backend : remote.snapshot()) {
+      backend.setHealthy(false);
+    }
+    Cluster a = cluster(1, local);
+    Cluster b = cluster(2, remote);
+    exchange(a, b);
+
+    int fromPeer = 0;
+    for (Backend backend : local.snapshot()) {
+      Boolean verdict = a.probeVerdict(backend);
+      if (verdict != null) {
+        assertFalse(verdict);
+        fromPeer++;
+      }
+    }
+    assertTrue(fromPeer > 0);
+
+    a.receive(b.tick(System.nanoTime()), System.nanoTime() - PEER_TIMEOUT.toNanos() * 2);
+    for (Backend backend : local.snapshot()) {
+      assertNull(a.probeVerdict(backend));
+    }
+  }
+
+  @Test
+  void peerInFlightIsAddedToTheLocalCount() {
+    BackendRegistry local = registry(1);
+    BackendRegistry remote = registry(1);
+    local.snapshot()[0].incrementInFlight();
+    remote.snapshot()[0].incrementInFlight();
+    remote.snapshot()[0].incrementInFlight();
+    Cluster a = cluster(1, local);
+    Cluster b = cluster(2, remote);
+
+    exchange(a, b);
+    a.tick(System.nanoTime());
+
+    assertEquals(3, local.snapshot()[0].getClusterInFlight());
+    assertEquals(1, local.snapshot()[0].getInFlight());
+  }
+
+  @Test
+  void onlyFreshPeerEjectionsAreFollowed() {
+    BackendRegistry local = registry(2);
+    BackendRegistry remote = registry(2);
+    Backend ejected = remote.snapshot()[1];
+    List<Backend> followed = new ArrayList<>();
+    Cluster a = cluster(1, local);
+    a.shareEjections(backend -> false, followed::add);
+    Cluster b = cluster(2, remote);
+    b.shareEjections(backend -> backend == ejected, backend -> {});
+
+    exchange(a, b);
+    exchange(a, b);
+
+    assertEquals(List.of(local.snapshot()[1]), followed);
+  }
+
+  @Test
+  void messagesSurviveEncoding() {
+    GossipMessage message = new GossipMessage(
+        "10.0.0.1:7946",
+        List.of(new GossipMessage.BackendState("http://a:8080", true, false, 12),
+                new GossipMessage.BackendState("http://b:8080", false, true, 0)));
+
+    GossipMessage decoded = GossipMessage.decode(ByteBuffer.wrap(message.encode()));
+
+    assertEquals(message, decoded);
+  }
+
+  @Test
+  void foreignDatagramsAreRejected() {
+    assertThrows(IllegalArgumentException.class,
+                 () -> GossipMessage.decode(ByteBuffer.wrap(new byte[] {1, 2, 3, 4})));
+    byte[] truncated = new GossipMessage("lb:1", List.of()).encode();
+    assertThrows(IllegalArgumentException.class,
+                 () -> GossipMessage.decode(ByteBuffer.wrap(truncated, 0, truncated.length - 1)));
+  }
+
+  @Test
+  void onlyDatagramsFromConfiguredPeerAddressesAreAccepted() {
+    InetSocketAddress peer = new InetSocketAddress("127.0.0.1", 7946);
+    Cluster cluster =
+        new Cluster("lb-a", "0.0.0.0", 7946, List.of(peer), PEER_TIMEOUT, registry(1));
+
+    assertTrue(cluster.isPeer(new InetSocketAddress("127.0.0.1", 7946)));
+    assertFalse(cluster.isPeer(new InetSocketAddress("127.0.0.1", 7947)));
+    assertFalse(cluster.isPeer(new InetSocketAddress("127.0.0.2", 7946)));
+  }
+
+  @Test
+  void wildcardHostNeedsANodeId() {
+    Properties properties = new Properties();
+    properties.setProperty("cluster.host", "0.0.0.0");
+    properties.setProperty("cluster.port", "7946");
+    properties.setProperty("cluster.peers", "127.0.0.1:7947");
+
+    assertThrows(IllegalStateException.class,
+                 () -> Cluster.fromConfig(AppConfig.of(properties), registry(1)));
+
+    properties.setProperty("cluster.nodeId", "lb-a");
+    GossipMessage message = Cluster.fromConfig(AppConfig.of(properties), registry(1))
+        .tick(System.nanoTime());
+    assertEquals("lb-a", message.sender());
+
+    properties.remove("cluster.nodeId");
+    properties.setProperty("cluster.host", "127.0.0.1");
+    message = Cluster.fromConfig(AppConfig.of(properties), registry(1)).tick(System.nanoTime());
+    assertEquals("127.0.0.1:7946", message.sender());
+  }
+}
@@ -0,0 +1,54 @@
+package org.coda.compression;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+
+class GzipCodecTest {
+
+  private static byte[] compress(GzipCodec codec, byte[] data) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (OutputStream gzip = codec.compress(out)) {
+      gzip.write(data, 0, data.length / 2);
+      gzip.write(data, data.length / 2, data.length - data.length / 2);
+    }
+    return out.toByteArray();
+  }
+
+  @Test
+  void pooledDeflatersProduceValidGzipStreamAfterStream() throws IOException {
+    GzipCodec codec = new GzipCodec(6, 1);
+    byte[] text = "{\"items\":[1,2,3]}".repeat(1000).getBytes(StandardCharsets.UTF_8);
+    byte[] random = new byte[100_000];
+    new Random(1).nextBytes(random);
+
+    for (byte[] data : new byte[][]{text, random, new byte[0], text}) {
+      byte[] compressed = compress(codec, data);
+      try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+        assertArrayEquals(data, in.readAllBytes());
+      }
+    }
+    assertTrue(compress(codec, text).length < text.length / 10);
+  }
+
+  @Test
+  void acceptEncodingHonoursQualityValuesAndWildcards() {
+    assertTrue(ContentCoding.accepts("gzip, deflate, br", "gzip"));
+    assertTrue(ContentCoding.accepts("br;q=1.0, GZIP;q=0.5", "gzip"));
+    assertTrue(ContentCoding.accepts("x-gzip", "gzip"));
+    assertTrue(ContentCoding.accepts("*", "gzip"));
+    assertFalse(ContentCoding.accepts("gzip;q=0, *", "gzip"));
+    assertFalse(ContentCoding.accepts("br, *;q=0", "gzip"));
+    assertFalse(ContentCoding.accepts("identity", "gzip"));
+    assertFalse(ContentCoding.accepts(null, "gzip"));
+  }
+}
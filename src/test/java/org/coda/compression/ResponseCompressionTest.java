@@ -0,0 +1,98 @@
+package org.coda.compression;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.ext.WriterInterceptorContext;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+
+class ResponseCompressionTest {
+
+  private final ResponseCompression compression = new ResponseCompression(new GzipCodec(6, 4), 100);
+
+  @Test
+  void compressesOnlyForClientsThatAcceptGzip() {
+    ContainerRequestContext request = mock(ContainerRequestContext.class);
+    ContainerResponseContext response = mock(ContainerResponseContext.class);
+    MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+    when(response.hasEntity()).thenReturn(true);
+    when(response.getHeaders()).thenReturn(headers);
+
+    when(request.getHeaderString("Accept-Encoding")).thenReturn("br");
+    compression.filter(request, response);
+    verify(request, never()).setProperty(any(), any());
+    assertEquals("Accept-Encoding", headers.getFirst("Vary"));
+
+    when(request.getHeaderString("Accept-Encoding")).thenReturn("gzip");
+    headers.putSingle("Content-Encoding", "zstd");
+    compression.filter(request, response);
+    verify(request, never()).setProperty(any(), any());
+
+    headers.remove("Content-Encoding");
+    compression.filter(request, response);
+    verify(request).setProperty(any(), any());
+  }
+
+  @Test
+  void bodiesUnderTheThresholdAreWrittenAsTheyAre() throws IOException {
+    MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+    ByteArrayOutputStream out = write(headers, new byte[99]);
+
+    assertNull(headers.getFirst("Content-Encoding"));
+    assertArrayEquals(new byte[99], out.toByteArray());
+  }
+
+  @Test
+  void bodiesReachingTheThresholdAreGzipped() throws IOException {
+    MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+    headers.putSingle("Content-Length", 5000);
+    ByteArrayOutputStream out = write(headers, new byte[5000]);
+
+    assertEquals("gzip", headers.getFirst("Content-Encoding"));
+    assertNull(headers.getFirst("Content-Length"));
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+      assertArrayEquals(new byte[5000], in.readAllBytes());
+    }
+  }
+
+  private ByteArrayOutputStream write(MultivaluedMap<String, Object> headers, byte[] body)
+      throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    AtomicReference<OutputStream> stream = new AtomicReference<>(out);
+    WriterInterceptorContext context = mock(WriterInterceptorContext.class);
+    when(context.getProperty(any())).thenReturn(Boolean.TRUE);
+    when(context.getHeaders()).thenReturn(headers);
+    when(context.getOutputStream()).thenAnswer(invocation -> stream.get());
+    doAnswer(invocation -> {
+      stream.set(invocation.getArgument(0));
+      return null;
+    }).when(context).setOutputStream(any());
+    doAnswer(invocation -> {
+      // Written in small pieces, as entity providers do.
+      for (int offset = 0; offset < body.length; offset += 30) {
+        stream.get().write(body, offset, Math.min(30, body.length - offset));
+      }
+      return null;
+    }).when(context).proceed();
+
+    compression.aroundWriteTo(context);
+    return out;
+  }
+}
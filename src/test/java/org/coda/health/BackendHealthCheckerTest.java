@@ -2,14 +2,26 @@ package org.coda.health;
 
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import jakarta.ws.rs.client.Client;
-import jakarta.ws.rs.client.Invocation;
-import jakarta.ws.rs.client.WebTarget;
-import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
+import java.io.ByteArrayInputStream;
+import java.net.http.HttpHeaders;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.coda.backend.Backend;
+import org.coda.backend.BackendRegistry;
+import org.coda.client.BackendClient;
+import org.coda.client.BackendRequest;
+import org.coda.client.BackendResponse;
+import org.coda.metrics.ProxyMetrics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -19,64 +31,110 @@ import org.mockito.junit.jupiter.MockitoExtension;
 @ExtendWith(MockitoExtension.class)
 class BackendHealthCheckerTest {
 
-  @Mock
-  BackendHealthChecker backendHealthChecker;
+  private static final Duration PROBE_TIMEOUT = Duration.ofMillis(50);
 
-  @Mock
-  Client client;
-
-  @Mock
-  WebTarget webTarget;
+  BackendHealthChecker backendHealthChecker;
 
   @Mock
-  Invocation.Builder invocationBuilder;
+  BackendClient backendClient;
 
-  @Mock
-  Response successResponse;
+  Backend backend;
 
-  @Mock
-  Response errorResponse;
+  Backend slowBackend;
 
   @BeforeEach
   void setUp() {
-    backendHealthChecker = new BackendHealthChecker(List.of("http://a"), client);
+    long decayNanos = TimeUnit.SECONDS.toNanos(10);
+    backend = new Backend(0, "http://a", 1, decayNanos);
+    slowBackend = new Backend(1, "http://b", 1, decayNanos);
+    backendHealthChecker = new BackendHealthChecker(
+        new BackendRegistry(List.of(backend, slowBackend), decayNanos),
+        backendClient,
+        new ProxyMetrics(),
+        PROBE_TIMEOUT,
+        2,
+        2);
   }
 
-  private void commonStub() {
-    when(client.target("http://a")).thenReturn(webTarget);
-    when(webTarget.path("/health")).thenReturn(webTarget);
-    when(webTarget.request()).thenReturn(invocationBuilder);
+  private void stubHealthResponse(int status) {
+    BackendResponse response = new BackendResponse(status,
+                                                   HttpHeaders.of(Map.of(), (name, value) -> true),
+                                                   new ByteArrayInputStream(new byte[0]));
+    when(backendClient.probe(eq(backend), any(BackendRequest.class)))
+        .thenReturn(CompletableFuture.completedFuture(response));
+    when(backendClient.probe(eq(slowBackend), any(BackendRequest.class)))
+        .thenReturn(new CompletableFuture<>());
   }
 
   @Test
   void isHealthy() {
-    assertTrue(backendHealthChecker.isHealthy("http://a"));
+    assertTrue(backendHealthChecker.isHealthy(backend));
   }
 
   @Test
-  void runMarksHealthyWhen200() {
-    commonStub();
+  void runMarksUnhealthyOnlyAfterFallConsecutiveFailures() {
+    stubHealthResponse(500);
 
-    when(invocationBuilder.get()).thenReturn(successResponse);
-    when(successResponse.getStatus()).thenReturn(Status.OK.getStatusCode());
+    backendHealthChecker.run();
+    assertTrue(backendHealthChecker.isHealthy(backend));
 
     backendHealthChecker.run();
-    assertTrue(backendHealthChecker.isHealthy("http://a"));
+    assertFalse(backendHealthChecker.isHealthy(backend));
   }
 
   @Test
-  void runMarksUnhealthyOnNon200() {
-    commonStub();
+  void runMarksHealthyAgainAfterRiseConsecutiveSuccesses() {
+    backendHealthChecker.recordFailure(backend, 0);
+    backendHealthChecker.recordFailure(backend, 0);
+    assertFalse(backendHealthChecker.isHealthy(backend));
+    stubHealthResponse(Status.OK.getStatusCode());
+
+    backendHealthChecker.run();
+    assertFalse(backendHealthChecker.isHealthy(backend));
 
-    when(invocationBuilder.get()).thenReturn(errorResponse);
-    when(errorResponse.getStatus()).thenReturn(500);
+    backendHealthChecker.run();
+    assertTrue(backendHealthChecker.isHealthy(backend));
+  }
+
+  @Test
+  void runDoesNotWaitForSlowProbesAndTimesThemOut() throws InterruptedException {
+    stubHealthResponse(Status.OK.getStatusCode());
 
     backendHealthChecker.run();
-    assertFalse(backendHealthChecker.isHealthy("http://a"));
+    backendHealthChecker.run();
+    assertTrue(backendHealthChecker.isHealthy(slowBackend));
+
+    Thread.sleep(PROBE_TIMEOUT.toMillis() * 4);
+    assertFalse(backendHealthChecker.isHealthy(slowBackend));
+  }
+
+  @Test
+  void successResetsTheFailureStreak() {
+    backendHealthChecker.recordFailure(backend, 0);
+    backendHealthChecker.recordSuccess(backend, 0);
+    backendHealthChecker.recordFailure(backend, 0);
+    assertTrue(backendHealthChecker.isHealthy(backend));
+
+    backendHealthChecker.recordFailure(backend, 0);
+    assertFalse(backendHealthChecker.isHealthy(backend));
   }
 
   @Test
-  void isHealthyDefaultsTrueWhenMissingKey() {
-    assertTrue(backendHealthChecker.isHealthy("unknown"));
+  void backendsProbedByAPeerTakeThePeersVerdict() {
+    long decayNanos = TimeUnit.SECONDS.toNanos(10);
+    BackendHealthChecker checker = new BackendHealthChecker(
+        new BackendRegistry(List.of(backend), decayNanos),
+        backendClient,
+        new ProxyMetrics(),
+        PROBE_TIMEOUT,
+        2,
+        2,
+        candidate -> false);
+
+    checker.run();
+    assertTrue(checker.isHealthy(backend));
+    checker.run();
+    assertFalse(checker.isHealthy(backend));
+    verify(backendClient, never()).probe(any(Backend.class), any(BackendRequest.class));
   }
-}
\ No newline at end of file
+}
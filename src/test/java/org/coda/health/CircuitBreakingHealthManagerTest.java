@@ -0,0 +1,254 @@
+package org.coda.health;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.coda.backend.Backend;
+import org.coda.backend.BackendRegistry;
+import org.coda.client.BackendClient;
+import org.coda.config.AppConfig;
+import org.coda.metrics.ProxyMetrics;
+import org.coda.health.CircuitBreakingHealthManager.State;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class CircuitBreakingHealthManagerTest {
+
+  private static final long OPEN_MS = 50;
+
+  private static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+  @Mock
+  AppConfig appConfig;
+
+  @Mock
+  BackendClient backendClient;
+
+  BackendRegistry backendRegistry;
+
+  CircuitBreakingHealthManager healthManager;
+
+  Backend backend;
+
+  @BeforeEach
+  void setUp() {
+    long decayNanos = TimeUnit.SECONDS.toNanos(10);
+    backendRegistry = new BackendRegistry(List.of(
+        new Backend(0, "http://a", 1, decayNanos),
+        new Backend(1, "http://b", 1, decayNanos),
+        new Backend(2, "http://c", 1, decayNanos),
+        new Backend(3, "http://d", 1, decayNanos)), decayNanos);
+    backend = backendRegistry.snapshot()[0];
+
+    when(appConfig.getCircuitBreakerWindowSize()).thenReturn(10);
+    when(appConfig.getCircuitBreakerMinimumCalls()).thenReturn(4);
+    when(appConfig.getCircuitBreakerFailureRatePercent()).thenReturn(50);
+    when(appConfig.getCircuitBreakerSlowCallRatePercent()).thenReturn(80);
+    when(appConfig.getCircuitBreakerSlowCallMs()).thenReturn(100);
+    when(appConfig.getCircuitBreakerOpenMs()).thenReturn((int) OPEN_MS);
+    when(appConfig.getCircuitBreakerHalfOpenTrials()).thenReturn(2);
+    when(appConfig.getCircuitBreakerMaxEjectionPercent()).thenReturn(50);
+
+    // High rise/fall thresholds keep the active checker out of the way.
+    ProxyMetrics proxyMetrics = new ProxyMetrics();
+    BackendHealthChecker checker = new BackendHealthChecker(
+        backendRegistry, backendClient, proxyMetrics, Duration.ofSeconds(1), 100, 100);
+    healthManager =
+        new CircuitBreakingHealthManager(checker, backendRegistry, proxyMetrics, appConfig);
+  }
+
+  private void trip(Backend target) {
+    for (int i = 0; i < 4; i++) {
+      healthManager.recordFailure(target, 0);
+    }
+  }
+
+  @Test
+  void opensOnceFailureRateReachesThreshold() {
+    healthManager.recordSuccess(backend, 0);
+    healthManager.recordSuccess(backend, 0);
+    healthManager.recordFailure(backend, 0);
+    assertTrue(healthManager.isHealthy(backend));
+
+    healthManager.recordFailure(backend, 0);
+    assertEquals(State.OPEN, healthManager.stateOf(backend));
+    assertFalse(healthManager.isHealthy(backend));
+  }
+
+  @Test
+  void opensOnceSlowCallRateReachesThreshold() {
+    for (int i = 0; i < 3; i++) {
+      healthManager.recordSuccess(backend, SLOW_NANOS);
+    }
+    healthManager.recordSuccess(backend, 0);
+    assertTrue(healthManager.isHealthy(backend));
+
+    healthManager.recordSuccess(backend, SLOW_NANOS);
+    assertFalse(healthManager.isHealthy(backend));
+  }
+
+  @Test
+  void halfOpenAdmitsLimitedTrialsThenCloses() throws InterruptedException {
+    trip(backend);
+    Thread.sleep(OPEN_MS * 2);
+
+    assertTrue(healthManager.isHealthy(backend));
+    assertEquals(State.HALF_OPEN, healthManager.stateOf(backend));
+    assertTrue(healthManager.tryAcquire(backend));
+    assertTrue(healthManager.tryAcquire(backend));
+    assertFalse(healthManager.tryAcquire(backend));
+    assertFalse(healthManager.isHealthy(backend));
+
+    healthManager.recordSuccess(backend, 0);
+    assertEquals(State.HALF_OPEN, healthManager.stateOf(backend));
+    healthManager.recordSuccess(backend, 0);
+    assertEquals(State.CLOSED, healthManager.stateOf(backend));
+
+    // The window starts empty again after closing.
+    healthManager.recordFailure(backend, 0);
+    assertTrue(healthManager.isHealthy(backend));
+  }
+
+  @Test
+  void halfOpenPermitsAreNotTakenByRequestsSentBeforeTheTrials() throws InterruptedException {
+    backend.incrementInFlight();
+    backend.incrementInFlight();
+    trip(backend);
+    Thread.sleep(OPEN_MS * 2);
+    assertTrue(healthManager.isHealthy(backend));
+
+    // The requests that were in flight when it opened answer now, and are not trials.
+    healthManager.recordFailure(backend, TimeUnit.MILLISECONDS.toNanos(OPEN_MS * 3));
+    healthManager.recordFailure(backend, TimeUnit.MILLISECONDS.toNanos(OPEN_MS * 3));
+    assertEquals(State.HALF_OPEN, healthManager.stateOf(backend));
+    assertTrue(healthManager.tryAcquire(backend));
+    assertTrue(healthManager.tryAcquire(backend));
+  }
+
+  @Test
+  void abandonedTrialsGiveTheirPermitBack() throws InterruptedException {
+    trip(backend);
+    Thread.sleep(OPEN_MS * 2);
+    assertTrue(healthManager.isHealthy(backend));
+    assertTrue(healthManager.tryAcquire(backend));
+    assertTrue(healthManager.tryAcquire(backend));
+
+    healthManager.abandon(backend);
+    healthManager.abandon(backend);
+    healthManager.abandon(backend);
+
+    assertTrue(healthManager.tryAcquire(backend));
+    assertTrue(healthManager.tryAcquire(backend));
+    assertFalse(healthManager.tryAcquire(backend));
+  }
+
+  @Test
+  void concurrentCallersNeverTakeMoreThanTheTrialPermits() throws Exception {
+    trip(backend);
+    Thread.sleep(OPEN_MS * 2);
+    assertTrue(healthManager.isHealthy(backend));
+
+    AtomicInteger acquired = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException exception) {
+          return;
+        }
+        for (int attempt = 0; attempt < 100; attempt++) {
+          if (healthManager.isHealthy(backend) && healthManager.tryAcquire(backend)) {
+            acquired.incrementAndGet();
+          }
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(2, acquired.get());
+  }
+
+  @Test
+  void failedTrialReopens() throws InterruptedException {
+    trip(backend);
+    Thread.sleep(OPEN_MS * 2);
+    assertTrue(healthManager.isHealthy(backend));
+
+    healthManager.recordFailure(backend, 0);
+    assertEquals(State.OPEN, healthManager.stateOf(backend));
+    assertFalse(healthManager.isHealthy(backend));
+  }
+
+  @Test
+  void maxEjectionPercentCapsOpenCircuits() {
+    Backend[] backends = backendRegistry.snapshot();
+    trip(backends[0]);
+    trip(backends[1]);
+    trip(backends[2]);
+
+    assertFalse(healthManager.isHealthy(backends[0]));
+    assertFalse(healthManager.isHealthy(backends[1]));
+    assertTrue(healthManager.isHealthy(backends[2]));
+
+    healthManager.release(backends[0]);
+    trip(backends[2]);
+    assertFalse(healthManager.isHealthy(backends[2]));
+  }
+
+  @Test
+  void passiveEjectionsShareTheCap() {
+    BackendHealthChecker passive = new BackendHealthChecker(
+        backendRegistry, backendClient, new ProxyMetrics(), Duration.ofSeconds(1), 1, 1);
+    CircuitBreakingHealthManager capped =
+        new CircuitBreakingHealthManager(passive, backendRegistry, new ProxyMetrics(), appConfig);
+    passive.capPassiveEjections(capped::tryEject, capped::releaseEjection);
+    Backend[] backends = backendRegistry.snapshot();
+
+    for (Backend target : backends) {
+      capped.recordFailure(target, 0);
+    }
+
+    assertFalse(capped.isHealthy(backends[0]));
+    assertFalse(capped.isHealthy(backends[1]));
+    assertTrue(capped.isHealthy(backends[2]));
+    assertTrue(capped.isHealthy(backends[3]));
+
+    capped.recordSuccess(backends[0], 0);
+    capped.recordFailure(backends[2], 0);
+    assertTrue(capped.isHealthy(backends[0]));
+    assertFalse(capped.isHealthy(backends[2]));
+  }
+
+  @Test
+  void peerEjectionsCountTowardsTheCapButAreNotReportedAsLocal() {
+    Backend[] backends = backendRegistry.snapshot();
+    trip(backends[3]);
+    assertTrue(healthManager.isEjectedLocally(backends[3]));
+
+    healthManager.ejectForPeer(backends[0]);
+    healthManager.ejectForPeer(backends[1]);
+
+    assertEquals(State.OPEN, healthManager.stateOf(backends[0]));
+    assertFalse(healthManager.isEjectedLocally(backends[0]));
+    assertEquals(State.CLOSED, healthManager.stateOf(backends[1]));
+  }
+}
@@ -0,0 +1,80 @@
+package org.coda.limit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.coda.backend.Backend;
+import org.junit.jupiter.api.Test;
+
+class ConcurrencyLimiterTest {
+
+  private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+  private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+  @Test
+  void limitGrowsWhileLatencyHoldsAndShrinksWhenItRises() {
+    GradientLimit limit = new GradientLimit(20, 5, 200, 1.5);
+    for (int i = 0; i < 50; i++) {
+      limit.sample(FAST, limit.getLimit(), false);
+    }
+    int grown = limit.getLimit();
+    assertTrue(grown > 20, "limit " + grown);
+
+    for (int i = 0; i < 50; i++) {
+      limit.sample(SLOW, limit.getLimit(), false);
+    }
+    assertTrue(limit.getLimit() < grown / 2, "limit " + limit.getLimit());
+  }
+
+  @Test
+  void idleSamplesDoNotRaiseTheLimitAndDropsCutIt() {
+    GradientLimit limit = new GradientLimit(20, 5, 200, 1.5);
+    for (int i = 0; i < 50; i++) {
+      limit.sample(FAST, 1, false);
+    }
+    assertEquals(20, limit.getLimit());
+
+    limit.sample(FAST, 1, true);
+    assertEquals(18, limit.getLimit());
+    for (int i = 0; i < 50; i++) {
+      limit.sample(FAST, 1, true);
+    }
+    assertEquals(5, limit.getLimit());
+  }
+
+  @Test
+  void lowPriorityIsShedFirstAndCriticalNever() {
+    ConcurrencyLimiter limiter =
+        new ConcurrencyLimiter(new GradientLimit(4, 1, 4, 1.5), 0.5, 1, 2, 2, 1.5);
+
+    assertTrue(limiter.tryAcquire(Priority.LOW));
+    assertTrue(limiter.tryAcquire(Priority.LOW));
+    assertFalse(limiter.tryAcquire(Priority.LOW));
+    assertTrue(limiter.tryAcquire(Priority.NORMAL));
+    assertTrue(limiter.tryAcquire(Priority.NORMAL));
+    assertFalse(limiter.tryAcquire(Priority.NORMAL));
+    assertTrue(limiter.tryAcquire(Priority.CRITICAL));
+
+    limiter.release();
+    limiter.release();
+    assertTrue(limiter.tryAcquire(Priority.NORMAL));
+  }
+
+  @Test
+  void backendsHaveTheirOwnLimits() {
+    ConcurrencyLimiter limiter =
+        new ConcurrencyLimiter(new GradientLimit(100, 1, 100, 1.5), 0.5, 1, 2, 10, 1.5);
+    Backend busy = new Backend(0, "http://a", 1, SLOW);
+    Backend idle = new Backend(1, "http://b", 1, SLOW);
+    busy.incrementInFlight();
+    busy.incrementInFlight();
+
+    assertFalse(limiter.hasCapacity(busy));
+    assertTrue(limiter.hasCapacity(idle));
+    limiter.sampleBackend(busy, FAST, 2, true);
+    assertEquals(1, limiter.getBackendLimit(busy));
+    assertEquals(2, limiter.getBackendLimit(idle));
+  }
+}
@@ -0,0 +1,60 @@
+package org.coda.logging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.coda.backend.Backend;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AccessLogTest {
+
+  private static final long SLOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  @TempDir
+  Path directory;
+
+  private final Backend backend = new Backend(0, "http://a", 1, TimeUnit.SECONDS.toNanos(10));
+
+  @Test
+  void errorsAndSlowRequestsBypassSampling() throws IOException {
+    Path file = directory.resolve("access.log");
+    try (AccessLog accessLog =
+             AccessLog.open(file, 16, 0, SLOW_NANOS, TimeUnit.SECONDS.toNanos(1))) {
+      accessLog.log("/fast", 200, 1_000_000, 1, backend);
+      accessLog.log("/error", 503, 2_500_000, 3, null);
+      accessLog.log("/slow", 200, SLOW_NANOS, 1, backend);
+    }
+
+    List<String> lines = Files.readAllLines(file);
+    assertEquals(2, lines.size(), lines.toString());
+    assertTrue(lines.get(0).matches(
+        "\\{\"time\":\"[^\"]+Z\",\"path\":\"/error\",\"status\":503,\"durationMs\":2\\.5,"
+            + "\"attempts\":3,\"backend\":null}"), lines.get(0));
+    assertTrue(lines.get(1).endsWith(
+        "\"path\":\"/slow\",\"status\":200,\"durationMs\":1000.0,\"attempts\":1,"
+            + "\"backend\":\"http://a\"}"), lines.get(1));
+  }
+
+  @Test
+  void fullBufferDropsEntriesWithoutBlocking() throws IOException, InterruptedException {
+    Path file = directory.resolve("access.log");
+    // Once parked, the writer only wakes up every minute, so nothing is drained before close.
+    try (AccessLog accessLog =
+             AccessLog.open(file, 4, 1, SLOW_NANOS, TimeUnit.MINUTES.toNanos(1))) {
+      Thread.sleep(100);
+      for (int i = 0; i < 10; i++) {
+        accessLog.log("/quote\"d", 200, 0, 1, backend);
+      }
+    }
+
+    List<String> lines = Files.readAllLines(file);
+    assertTrue(lines.size() >= 4 && lines.size() < 10, lines.toString());
+    assertTrue(lines.get(0).contains("\"path\":\"/quote\\\"d\""), lines.get(0));
+  }
+}
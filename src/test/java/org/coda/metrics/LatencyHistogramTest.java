@@ -0,0 +1,52 @@
+package org.coda.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+  @Test
+  void bucketsCoverEveryValue() {
+    long[] values = {0, 1, 15, 16, 17, 31, 32, 1_000, 123_456_789, Long.MAX_VALUE};
+    for (long value : values) {
+      int index = LatencyHistogram.indexOf(value);
+      long upper = LatencyHistogram.upperBoundOf(index);
+      assertTrue(upper >= value, "upper bound below " + value);
+      assertTrue(index == 0 || LatencyHistogram.upperBoundOf(index - 1) < value,
+                 "previous bucket holds " + value);
+    }
+  }
+
+  @Test
+  void percentilesAreWithinBucketPrecision() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long value = 1; value <= 10_000; value++) {
+      histogram.record(value * 1_000);
+    }
+
+    assertEquals(10_000, histogram.count());
+    long p50 = histogram.percentile(50);
+    long p95 = histogram.percentile(95);
+    assertTrue(p50 >= 5_000_000 && p50 <= 5_000_000 * 1.07, "p50 " + p50);
+    assertTrue(p95 >= 9_500_000 && p95 <= 9_500_000 * 1.07, "p95 " + p95);
+  }
+
+  @Test
+  void emptyHistogramHasNoPercentile() {
+    assertEquals(-1, new LatencyHistogram().percentile(99));
+  }
+
+  @Test
+  void cumulativeCountsEndWithTheTotal() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(10);
+    histogram.record(100);
+    histogram.record(1_000);
+
+    assertArrayEquals(new long[]{0, 1, 2, 2, 3},
+                      histogram.cumulativeCounts(new long[]{5, 10, 200, 500}));
+  }
+}
@@ -0,0 +1,68 @@
+package org.coda.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.coda.backend.Backend;
+import org.coda.client.PoolStats;
+import org.junit.jupiter.api.Test;
+
+class ProxyMetricsTest {
+
+  private final ProxyMetrics proxyMetrics = new ProxyMetrics();
+
+  private final Backend backend = new Backend(0, "http://a", 3, TimeUnit.SECONDS.toNanos(10));
+
+  @Test
+  void upstreamLatencyIsExportedAsCumulativeHistogram() {
+    proxyMetrics.recordUpstreamResponse(backend, 200, TimeUnit.MILLISECONDS.toNanos(3));
+    proxyMetrics.recordUpstreamResponse(backend, 503, TimeUnit.MILLISECONDS.toNanos(30));
+    proxyMetrics.recordUpstreamError(backend, TimeUnit.SECONDS.toNanos(20));
+
+    String scrape = proxyMetrics.scrape(List.of(backend), List.of());
+
+    String series = "lb_backend_request_duration_seconds_bucket{backend=\"http://a\",";
+    assertTrue(scrape.contains(series + "le=\"0.0025\"} 0\n"), scrape);
+    assertTrue(scrape.contains(series + "le=\"0.005\"} 1\n"), scrape);
+    assertTrue(scrape.contains(series + "le=\"0.05\"} 2\n"), scrape);
+    assertTrue(scrape.contains(series + "le=\"10\"} 2\n"), scrape);
+    assertTrue(scrape.contains(series + "le=\"+Inf\"} 3\n"), scrape);
+    assertTrue(scrape.contains(
+        "lb_backend_request_duration_seconds_count{backend=\"http://a\"} 3\n"), scrape);
+    assertTrue(scrape.contains(
+        "lb_backend_responses_total{backend=\"http://a\",code=\"error\"} 1\n"), scrape);
+    assertFalse(scrape.contains("backend=\"http://a\",code=\"4xx\""), scrape);
+  }
+
+  @Test
+  void gaugesAreReadAtScrapeTime() {
+    backend.incrementInFlight();
+    PoolStats pool = new PoolStats("http://a", 8, 2, 1, 0, 0, 0);
+
+    String scrape = proxyMetrics.scrape(List.of(backend), List.of(pool));
+
+    assertTrue(scrape.contains("lb_backend_in_flight{backend=\"http://a\"} 1\n"), scrape);
+    assertTrue(scrape.contains("lb_backend_weight{backend=\"http://a\"} 3\n"), scrape);
+    assertTrue(scrape.contains("lb_pool_connections_active{backend=\"http://a\"} 2\n"), scrape);
+    assertTrue(scrape.contains("lb_pool_requests_pending{backend=\"http://a\"} 1\n"), scrape);
+  }
+
+  @Test
+  void releasedBackendIsNoLongerReported() {
+    proxyMetrics.recordHealthTransition(backend, false);
+    assertTrue(proxyMetrics.scrape(List.of(), List.of()).contains(
+        "lb_backend_health_transitions_total{backend=\"http://a\",to=\"down\"} 1\n"));
+
+    proxyMetrics.release(backend);
+
+    assertFalse(proxyMetrics.scrape(List.of(), List.of()).contains("http://a"));
+  }
+
+  @Test
+  void labelValuesAreEscaped() {
+    assertEquals("backend=\"a\\\"b\\\\c\\nd\"", PrometheusWriter.labels("backend", "a\"b\\c\nd"));
+  }
+}
@@ -0,0 +1,42 @@
+package org.coda.routing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonPointer;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class JsonKeyExtractorTest {
+
+  private static String extract(String pointer, String json) {
+    return new JsonKeyExtractor(new JsonFactory(), JsonPointer.compile(pointer))
+        .extract(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  void findsNestedValuesPastSkippedSiblings() {
+    String json = "{\"meta\":{\"user\":{\"id\":\"wrong\"}},\"items\":[1,{\"a\":[2]}],"
+        + "\"user\":{\"tags\":[\"x\"],\"id\":42}}";
+
+    assertEquals("42", extract("/user/id", json));
+    assertEquals("2", extract("/items/1/a/0", json));
+    assertEquals("wrong", extract("/meta/user/id", json));
+  }
+
+  @Test
+  void stopsAtTheKeyWithoutReadingTheRest() {
+    assertEquals("tenant-1", extract("/tenant", "{\"tenant\":\"tenant-1\",\"rest\":[1,2,"));
+  }
+
+  @Test
+  void returnsNullForMissingContainerOrInvalidValues() {
+    assertNull(extract("/user/id", "{\"user\":{\"name\":\"a\"}}"));
+    assertNull(extract("/user", "{\"user\":{\"id\":1}}"));
+    assertNull(extract("/user", "{\"user\":null}"));
+    assertNull(extract("/items/5", "{\"items\":[1,2]}"));
+    assertNull(extract("/user", "{\"user\""));
+  }
+}
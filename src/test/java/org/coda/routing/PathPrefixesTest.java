@@ -0,0 +1,38 @@
+package org.coda.routing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class PathPrefixesTest {
+
+  @Test
+  void matchesWholeSegmentsWithTheLongestPrefixWinning() {
+    PathPrefixes<String> prefixes = PathPrefixes.of(Map.of("/quote", "quote",
+                                                           "/quote/fx", "fx",
+                                                           "lookup", "lookup"));
+
+    assertEquals("quote", prefixes.match("/quote"));
+    assertEquals("quote", prefixes.match("quote/eq/1"));
+    assertEquals("fx", prefixes.match("/quote/fx"));
+    assertEquals("fx", prefixes.match("/quote/fx/eur"));
+    assertEquals("lookup", prefixes.match("/lookup/"));
+    assertNull(prefixes.match("/quotes"));
+    assertNull(prefixes.match("/"));
+  }
+
+  @Test
+  void trailingSlashOnlyMatchesPathsBelowIt() {
+    PathPrefixes<String> prefixes = PathPrefixes.of(Map.of("/", "root",
+                                                           "/api/", "api",
+                                                           "/api", "exact"));
+
+    assertEquals("exact", prefixes.match("/api"));
+    assertEquals("api", prefixes.match("/api/"));
+    assertEquals("api", prefixes.match("/api/v1/users"));
+    assertEquals("root", prefixes.match("/apis"));
+    assertEquals("root", prefixes.match(""));
+  }
+}
@@ -0,0 +1,169 @@
+package org.coda.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import jakarta.ws.rs.ServiceUnavailableException;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import org.coda.service.IncomingRequest;
+import org.coda.service.LoadBalancerService;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ProxyHttpHandlerTest {
+
+  private final LoadBalancerService loadBalancerService = mock(LoadBalancerService.class);
+  // The JDK client offers an h2c upgrade by default, which Grizzly without HTTP/2 mishandles.
+  private final HttpClient client =
+      HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+  private HttpServer server;
+  private URI baseUri;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server = new HttpServer();
+    NetworkListener listener = new NetworkListener("test", "localhost", 0);
+    server.addListener(listener);
+    server.getServerConfiguration().addHttpHandler(new ProxyHttpHandler(loadBalancerService), "/");
+    server.start();
+    baseUri = URI.create("http://localhost:" + listener.getPort());
+  }
+
+  @AfterEach
+  void tearDown() {
+    server.shutdownNow();
+    client.close();
+  }
+
+  @Test
+  void forwardsTheRequestAndWritesTheStreamedResponse() throws Exception {
+    AtomicReference<IncomingRequest> incoming = new AtomicReference<>();
+    AtomicReference<String> body = new AtomicReference<>();
+    when(loadBalancerService.proxy(any(IncomingRequest.class), any(InputStream.class)))
+        .thenAnswer(invocation -> {
+          incoming.set(invocation.getArgument(0));
+          InputStream in = invocation.getArgument(1);
+          body.set(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+          StreamingOutput out = stream -> stream.write("pong".getBytes(StandardCharsets.UTF_8));
+          return CompletableFuture.completedFuture(
+              Response.status(201).type("text/plain").header("X-Backend", "a").entity(out).build());
+        });
+
+    HttpResponse<String> response = client.send(
+        HttpRequest.newBuilder(baseUri.resolve("/quote/fx%20spot?pair=EURUSD"))
+            .method("PATCH", BodyPublishers.ofString("ping"))
+            .header("X-Tenant", "acme")
+            .build(),
+        BodyHandlers.ofString());
+
+    assertEquals(201, response.statusCode());
+    assertEquals("pong", response.body());
+    assertEquals("a", response.headers().firstValue("X-Backend").orElseThrow());
+    assertTrue(response.headers()
+                   .firstValue("Content-Type")
+                   .orElseThrow()
+                   .startsWith("text/plain"));
+    assertEquals("PATCH", incoming.get().method());
+    assertEquals("/quote/fx spot", incoming.get().path());
+    assertEquals("/quote/fx%20spot?pair=EURUSD", incoming.get().target());
+    assertEquals("acme", incoming.get().header("x-tenant"));
+    assertEquals("ping", body.get());
+  }
+
+  @Test
+  void failuresAreAnsweredLikeTheJerseyResources() throws Exception {
+    when(loadBalancerService.proxy(any(IncomingRequest.class), any(InputStream.class)))
+        .thenReturn(CompletableFuture.failedFuture(new ServiceUnavailableException()));
+
+    HttpResponse<String> response =
+        client.send(HttpRequest.newBuilder(baseUri.resolve("/bounce")).build(),
+                    BodyHandlers.ofString());
+
+    assertEquals(503, response.statusCode());
+    assertEquals("application/json",
+                 response.headers().firstValue("Content-Type").orElseThrow());
+    assertTrue(response.body().contains("\"error\":\"ServiceUnavailableException\""));
+  }
+
+  @Test
+  void connectAndUnknownMethodsAreNotAllowed() throws IOException {
+    for (String requestLine : List.of("CONNECT evil.example:443 HTTP/1.1",
+                                      "PROPFIND /bounce HTTP/1.1")) {
+      List<String> head = rawHead(requestLine);
+
+      assertEquals("HTTP/1.1 405 Method Not Allowed", head.get(0), requestLine);
+      assertTrue(head.stream().anyMatch(line -> line.regionMatches(true, 0, "Allow: ", 0, 7)
+                                                 && line.contains("PATCH")),
+                 head.toString());
+    }
+    verifyNoInteractions(loadBalancerService);
+  }
+
+  @Test
+  void targetsThatCouldNameAnotherHostAreRejected() throws IOException {
+    for (String target : List.of("//evil.example/x", "/../x")) {
+      assertEquals("HTTP/1.1 400 Bad Request", rawHead("GET " + target + " HTTP/1.1").get(0));
+    }
+    verifyNoInteractions(loadBalancerService);
+  }
+
+  @Test
+  void routesOnThePathThatIsForwarded() throws IOException {
+    AtomicReference<IncomingRequest> incoming = new AtomicReference<>();
+    when(loadBalancerService.proxy(any(IncomingRequest.class), any(InputStream.class)))
+        .thenAnswer(invocation -> {
+          incoming.set(invocation.getArgument(0));
+          return CompletableFuture.completedFuture(Response.noContent().build());
+        });
+
+    assertEquals("HTTP/1.1 204 No Content",
+                 rawHead("GET /reports/../quote/fx%20spot?q=1 HTTP/1.1").get(0));
+    assertEquals("/quote/fx spot", incoming.get().path());
+    assertEquals("/quote/fx%20spot?q=1", incoming.get().target());
+    assertEquals("HTTP/1.1 400 Bad Request", rawHead("GET /reports%2Fdaily HTTP/1.1").get(0));
+  }
+
+  /**
+   * Sends {@code requestLine} as it is, which the JDK client would refuse or rewrite, and returns
+   * the response status line and headers.
+   */
+  private List<String> rawHead(String requestLine) throws IOException {
+    try (Socket socket = new Socket(baseUri.getHost(), baseUri.getPort())) {
+      socket.getOutputStream().write(
+          (requestLine + "\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+              .getBytes(StandardCharsets.US_ASCII));
+      BufferedReader reader = new BufferedReader(
+          new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+      List<String> head = new ArrayList<>();
+      for (String line = reader.readLine(); line != null && !line.isEmpty();
+           line = reader.readLine()) {
+        head.add(line);
+      }
+      return head;
+    }
+  }
+}
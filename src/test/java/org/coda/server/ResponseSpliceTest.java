@@ -0,0 +1,160 @@
+package org.coda.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Flow;
+import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.WriteHandler;
+import org.glassfish.grizzly.filterchain.FilterChainContext;
+import org.glassfish.grizzly.http.io.OutputBuffer;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+import org.glassfish.grizzly.memory.MemoryManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class ResponseSpliceTest {
+
+  @Mock
+  Response response;
+
+  @Mock
+  Request request;
+
+  @Mock
+  FilterChainContext context;
+
+  @Mock
+  OutputBuffer out;
+
+  @Mock
+  Connection<?> connection;
+
+  @Captor
+  ArgumentCaptor<Buffer> bufferCaptor;
+
+  @Captor
+  ArgumentCaptor<WriteHandler> writeHandlerCaptor;
+
+  private final RecordingSubscription subscription = new RecordingSubscription();
+  private ResponseSplice splice;
+
+  @BeforeEach
+  void setUp() {
+    when(response.getOutputBuffer()).thenReturn(out);
+    when(response.getRequest()).thenReturn(request);
+    when(request.getContext()).thenReturn(context);
+    when(context.getMemoryManager()).thenReturn(MemoryManager.DEFAULT_MEMORY_MANAGER);
+    splice = new ResponseSplice(response);
+    splice.onSubscribe(subscription);
+  }
+
+  @Test
+  void bodyArrivingInPartsIsWrittenAsTheClientsOwnBuffers() throws IOException {
+    when(out.canWrite()).thenReturn(true);
+    ByteBuffer first = ascii("hel");
+
+    splice.onNext(List.of(first));
+    splice.onNext(List.of(ascii("lo, "), ascii("world")));
+    splice.onComplete();
+
+    verify(out, times(2)).writeBuffer(bufferCaptor.capture());
+    List<Buffer> written = bufferCaptor.getAllValues();
+    assertEquals("hel", written.get(0).toStringContent(StandardCharsets.US_ASCII));
+    assertEquals("lo, world", written.get(1).toStringContent(StandardCharsets.US_ASCII));
+    // Wrapped, not copied, and never handed to Grizzly's pool.
+    assertEquals(first, written.get(0).toByteBuffer());
+    assertFalse(written.get(0).allowBufferDispose());
+    assertEquals(3, subscription.requested);
+    verify(response).resume();
+  }
+
+  @Test
+  void fullConnectionHoldsBackTheNextBuffersUntilItCanTakeMore() throws Exception {
+    when(out.canWrite()).thenReturn(false);
+
+    splice.onNext(List.of(ascii("slow")));
+
+    assertEquals(1, subscription.requested);
+    verify(out).notifyCanWrite(writeHandlerCaptor.capture());
+    writeHandlerCaptor.getValue().onWritePossible();
+    assertEquals(2, subscription.requested);
+  }
+
+  @Test
+  void upstreamFailureClosesTheConnectionOnce() {
+    doReturn(connection).when(request).getConnection();
+
+    splice.onError(new IOException("backend reset"));
+    splice.onComplete();
+
+    verify(connection).closeSilently();
+    verify(response, times(1)).resume();
+  }
+
+  @Test
+  void failedWriteCancelsTheBackendAndClosesTheConnection() throws IOException {
+    doReturn(connection).when(request).getConnection();
+    doThrow(new IOException("client gone")).when(out).writeBuffer(any(Buffer.class));
+
+    splice.onNext(List.of(ascii("lost")));
+
+    assertEquals(1, subscription.cancelled);
+    verify(connection).closeSilently();
+    verify(response).resume();
+    verify(out, never()).notifyCanWrite(any(WriteHandler.class));
+  }
+
+  @Test
+  void clientErrorWhileWaitingToWriteCancelsTheBackend() throws IOException {
+    doReturn(connection).when(request).getConnection();
+    when(out.canWrite()).thenReturn(false);
+
+    splice.onNext(List.of(ascii("slow")));
+    verify(out).notifyCanWrite(writeHandlerCaptor.capture());
+    writeHandlerCaptor.getValue().onError(new IOException("client timed out"));
+
+    assertEquals(1, subscription.cancelled);
+    verify(connection).closeSilently();
+    verify(response).resume();
+  }
+
+  private static ByteBuffer ascii(String text) {
+    return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private static final class RecordingSubscription implements Flow.Subscription {
+
+    private long requested;
+    private int cancelled;
+
+    @Override
+    public void request(long n) {
+      requested += n;
+    }
+
+    @Override
+    public void cancel() {
+      cancelled++;
+    }
+  }
+}
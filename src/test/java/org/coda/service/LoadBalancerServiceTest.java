@@ -1,32 +1,62 @@
 package org.coda.service;
 
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import jakarta.ws.rs.ProcessingException;
-import jakarta.ws.rs.client.Client;
-import jakarta.ws.rs.client.Entity;
-import jakarta.ws.rs.client.Invocation;
-import jakarta.ws.rs.client.WebTarget;
-import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
+import jakarta.ws.rs.core.StreamingOutput;
 import jakarta.ws.rs.core.UriInfo;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleSupplier;
+import java.util.zip.GZIPOutputStream;
+import org.coda.backend.Backend;
+import org.coda.backend.BackendRegistry;
+import org.coda.buffer.PublishedBytes;
+import org.coda.client.BackendClient;
+import org.coda.client.BackendRequest;
+import org.coda.client.BackendResponse;
 import org.coda.config.AppConfig;
 import org.coda.health.BackendHealthManager;
+import org.coda.logging.AccessLog;
+import org.coda.metrics.ProxyMetrics;
 import org.coda.model.ErrorResponse;
+import org.coda.strategy.StrategyType;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -42,7 +72,7 @@ class LoadBalancerServiceTest {
   AppConfig appConfig;
 
   @Mock
-  Client client;
+  BackendClient backendClient;
 
   @Mock
   BackendHealthManager backendHealthManager;
@@ -51,66 +81,120 @@ class LoadBalancerServiceTest {
   UriInfo uriInfo;
 
   @Mock
-  WebTarget webTarget;
-
-  @Mock
-  Invocation.Builder invocationBuilder;
+  jakarta.ws.rs.core.HttpHeaders httpHeaders;
 
   LoadBalancerService service;
 
-  @Mock
-  JsonNode payload;
+  ProxyMetrics proxyMetrics;
+
+  BackendRegistry backendRegistry;
 
   @Captor
-  ArgumentCaptor<URI> uriArgumentCaptor;
+  ArgumentCaptor<Backend> backendArgumentCaptor;
 
-  @Mock
-  Response successResponse;
+  @Captor
+  ArgumentCaptor<BackendRequest> requestArgumentCaptor;
+
+  JsonNode payload;
 
   JsonNode successJsonNode;
 
+  private static final long DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+  private static final String CLIENT = "203.0.113.7";
+
+  private final MultivaluedMap<String, String> requestHeaders = new MultivaluedHashMap<>();
+
   private final ObjectMapper mapper = new ObjectMapper();
 
 
   @BeforeEach
   void setUp() {
-    when(appConfig.getBackends())
-        .thenReturn(List.of("http://a", "http://b", "http://c"));
-
-    when(client.target(uriArgumentCaptor.capture()))
-        .thenReturn(webTarget);
+    backendRegistry = new BackendRegistry(List.of(
+        new Backend(0, "http://a", 1, DECAY_NANOS),
+        new Backend(1, "http://b", 1, DECAY_NANOS),
+        new Backend(2, "http://c", 1, DECAY_NANOS)), DECAY_NANOS);
+    when(appConfig.getReadTimeoutMs())
+        .thenReturn(2000);
+    when(appConfig.getRequestDeadlineMs())
+        .thenReturn(10000);
+    when(appConfig.getLoadBalancingStrategy())
+        .thenReturn(StrategyType.ROUND_ROBIN);
+    when(appConfig.getRetryMaxAttempts())
+        .thenReturn(3);
+    when(appConfig.getRetryBudgetRatio())
+        .thenReturn(0.2);
+    when(appConfig.getRetryBudgetMaxTokens())
+        .thenReturn(20);
+    when(appConfig.getDeadlineHeader())
+        .thenReturn("X-Request-Timeout-Ms");
 
     // backendHealthReader defaults to healthy
-    when(backendHealthManager.isHealthy(anyString()))
+    when(backendHealthManager.isHealthy(any(Backend.class)))
+        .thenReturn(true);
+    // Requests that find no healthy backend never claim one.
+    lenient().when(backendHealthManager.tryAcquire(any(Backend.class)))
         .thenReturn(true);
 
-    service = new LoadBalancerService(appConfig, client, backendHealthManager);
+    proxyMetrics = new ProxyMetrics();
+    service = newService();
 
-    when(webTarget.request(MediaType.APPLICATION_JSON))
-        .thenReturn(invocationBuilder);
+    when(uriInfo.getRequestUri())
+        .thenReturn(URI.create("http://lb.example/bounce"));
+    // Requests that are answered without a backend never look at these.
+    lenient().when(httpHeaders.getRequestHeaders())
+        .thenReturn(requestHeaders);
 
-    when(uriInfo.getPath())
-        .thenReturn("/bounce");
+    payload = mapper.createObjectNode().put("query", "bounce");
+    successJsonNode = mapper.createObjectNode().put("result", "ok");
   }
 
-  private void stubSuccessResponse() {
-    when(successResponse.getStatus())
-        .thenReturn(Status.OK.getStatusCode());
+  private LoadBalancerService newService() {
+    return new LoadBalancerService(appConfig,
+                                   backendRegistry,
+                                   backendClient,
+                                   backendHealthManager,
+                                   proxyMetrics,
+                                   AccessLog.disabled());
+  }
 
-    successJsonNode = mapper.createObjectNode().put("result", "ok");
+  private LoadBalancerService newService(DoubleSupplier slowStartDraw) {
+    return new LoadBalancerService(appConfig,
+                                   backendRegistry,
+                                   backendClient,
+                                   backendHealthManager,
+                                   proxyMetrics,
+                                   AccessLog.disabled(),
+                                   slowStartDraw);
+  }
 
-    when(successResponse.readEntity(JsonNode.class))
-        .thenReturn(successJsonNode);
+  private IncomingRequest incoming(String method, UriInfo uriInfo) {
+    return IncomingRequest.of(method, uriInfo, httpHeaders, CLIENT);
+  }
+
+  private static CompletableFuture<BackendResponse> backendResponse(int status, String body) {
+    return CompletableFuture.completedFuture(new BackendResponse(
+        status,
+        HttpHeaders.of(Map.of("Content-Type", List.of("application/json")),
+                       (name, value) -> true),
+        new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8))));
+  }
+
+  private static CompletableFuture<BackendResponse> successResponse() {
+    return backendResponse(Status.OK.getStatusCode(), "{\"result\":\"ok\"}");
+  }
+
+  private static CompletableFuture<BackendResponse> badGatewayResponse() {
+    return backendResponse(Status.BAD_GATEWAY.getStatusCode(), "");
   }
 
   @Test
   void successOnFirstBackend() {
-    stubSuccessResponse();
+    when(backendClient.send(any(Backend.class), any(BackendRequest.class)))
+        .thenReturn(successResponse());
 
-    when(invocationBuilder.post(any(Entity.class)))
-        .thenReturn(successResponse);
-
-    Response response = service.proxy(payload, uriInfo);
+    Response response = service.proxy(payload, incoming("POST", uriInfo))
+        .toCompletableFuture().join();
     assertEquals(Status.OK.getStatusCode(), response.getStatus());
     assertEquals(successJsonNode, response.getEntity());
 
@@ -118,86 +202,102 @@ class LoadBalancerServiceTest {
 
   @Test
   void successWhenNextBackendIsUnhealthy() {
-    stubSuccessResponse();
-
-    when(invocationBuilder.post(any(Entity.class)))
-        .thenReturn(successResponse);
+    when(backendClient.send(any(Backend.class), any(BackendRequest.class)))
+        .thenReturn(successResponse());
 
-    when(backendHealthManager.isHealthy("http://a"))
+    when(backendHealthManager.isHealthy(backendRegistry.snapshot()[0]))
         .thenReturn(false);
 
-    Response response = service.proxy(payload, uriInfo);
+    Response response = service.proxy(payload, incoming("POST", uriInfo))
+        .toCompletableFuture().join();
     assertEquals(Status.OK.getStatusCode(), response.getStatus());
     assertEquals(successJsonNode, response.getEntity());
 
   }
 
   @Test
-  void retryOn5xxThenSuccess() {
-    stubSuccessResponse();
+  void backendThatCannotBeClaimedIsPassedOver() {
+    Backend[] backends = backendRegistry.snapshot();
+    when(backendHealthManager.tryAcquire(backends[0])).thenReturn(false);
+    when(backendClient.send(eq(backends[1]), any(BackendRequest.class)))
+        .thenReturn(successResponse());
+
+    Response response = service.proxy(payload, incoming("POST", uriInfo))
+        .toCompletableFuture().join();
 
-    Response badGatewayResponse = mock(Response.class);
-    when(badGatewayResponse.getStatus())
-        .thenReturn(Status.BAD_GATEWAY.getStatusCode());
-    when(invocationBuilder.post(any(Entity.class)))
-        .thenReturn(badGatewayResponse)
-        .thenReturn(successResponse);
+    assertEquals(Status.OK.getStatusCode(), response.getStatus());
+    verify(backendClient, never()).send(eq(backends[0]), any(BackendRequest.class));
+  }
+
+  @Test
+  void retryOn5xxThenSuccess() {
+    when(backendClient.send(any(Backend.class), any(BackendRequest.class)))
+        .thenReturn(badGatewayResponse())
+        .thenReturn(successResponse());
 
-    Response response = service.proxy(payload, uriInfo);
+    Response response = service.proxy(payload, incoming("POST", uriInfo))
+        .toCompletableFuture().join();
     assertEquals(Status.OK.getStatusCode(), response.getStatus());
     assertEquals(successJsonNode, response.getEntity());
 
-    verify(backendHealthManager).setToUnhealthy("http://a");
+    verify(backendHealthManager).recordFailure(eq(backendRegistry.snapshot()[0]), anyLong());
+    verify(backendHealthManager).recordSuccess(eq(backendRegistry.snapshot()[1]), anyLong());
   }
 
   @Test
-  void retryOnProcessingExceptionThenSuccess() {
-    stubSuccessResponse();
+  void retryIsCountedInMetrics() {
+    when(backendClient.send(any(Backend.class), any(BackendRequest.class)))
+        .thenReturn(badGatewayResponse())
+        .thenReturn(successResponse());
+
+    service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture().join();
+
+    String scrape = proxyMetrics.scrape(List.of(), List.of());
+    assertTrue(scrape.contains("\nlb_requests_total 1\n"), scrape);
+    assertTrue(scrape.contains("\nlb_attempts_total 2\n"), scrape);
+    assertTrue(scrape.contains("\nlb_retries_total 1\n"), scrape);
+    assertTrue(scrape.contains("lb_responses_total{code=\"2xx\"} 1\n"), scrape);
+    assertTrue(scrape.contains(
+        "lb_backend_responses_total{backend=\"http://a\",code=\"5xx\"} 1\n"), scrape);
+  }
 
-    when(invocationBuilder.post(any(Entity.class)))
-        .thenThrow(new ProcessingException("timeout"))
-        .thenReturn(successResponse);
+  @Test
+  void retryOnConnectionFailureThenSuccess() {
+    when(backendClient.send(any(Backend.class), any(BackendRequest.class)))
+        .thenReturn(CompletableFuture.failedFuture(new IOException("timeout")))
+        .thenReturn(successResponse());
 
-    Response response = service.proxy(payload, uriInfo);
+    Response response = service.proxy(payload, incoming("POST", uriInfo))
+        .toCompletableFuture().join();
     assertEquals(Status.OK.getStatusCode(), response.getStatus());
     assertEquals(successJsonNode, response.getEntity());
 
-    verify(backendHealthManager).setToUnhealthy("http://a");
+    verify(backendHealthManager).recordFailure(eq(backendRegistry.snapshot()[0]), anyLong());
   }
 
   @Test
   void returnOn4xxWithoutRetry() {
-    Response notFoundResponse = mock(Response.class);
     JsonNode notFoundJsonNode = mapper.createObjectNode().put("error", "not found");
-    when(notFoundResponse.getStatus())
-        .thenReturn(Status.NOT_FOUND.getStatusCode());
-    when(notFoundResponse.readEntity(JsonNode.class))
-        .thenReturn(notFoundJsonNode);
-    when(invocationBuilder.post(any(Entity.class)))
-        .thenReturn(notFoundResponse);
-
-    Response response = service.proxy(payload, uriInfo);
+    when(backendClient.send(any(Backend.class), any(BackendRequest.class)))
+        .thenReturn(backendResponse(Status.NOT_FOUND.getStatusCode(), notFoundJsonNode.toString()));
+
+    Response response = service.proxy(payload, incoming("POST", uriInfo))
+        .toCompletableFuture().join();
     assertEquals(Status.NOT_FOUND.getStatusCode(), response.getStatus());
     assertEquals(notFoundJsonNode, response.getEntity());
 
-    verify(backendHealthManager, never()).setToUnhealthy(anyString());
+    verify(backendHealthManager, never()).recordFailure(any(Backend.class), anyLong());
   }
 
   @Test
   void allBackendsFailReturnServiceUnavailable() {
-    Response badGatewayResponse = mock(Response.class);
-    when(badGatewayResponse.getStatus())
-        .thenReturn(Status.BAD_GATEWAY.getStatusCode());
-    Response notImplementedResponse = mock(Response.class);
-    when(notImplementedResponse.getStatus())
-        .thenReturn(Status.NOT_IMPLEMENTED.getStatusCode());
-
-    when(invocationBuilder.post(any(Entity.class)))
-        .thenReturn(badGatewayResponse)
-        .thenThrow(new ProcessingException("timeout"))
-        .thenReturn(notImplementedResponse);
-
-    Response response = service.proxy(payload, uriInfo);
+    when(backendClient.send(any(Backend.class), any(BackendRequest.class)))
+        .thenReturn(badGatewayResponse())
+        .thenReturn(CompletableFuture.failedFuture(new IOException("timeout")))
+        .thenReturn(backendResponse(Status.NOT_IMPLEMENTED.getStatusCode(), ""));
+
+    Response response = service.proxy(payload, incoming("POST", uriInfo))
+        .toCompletableFuture().join();
     assertEquals(Status.SERVICE_UNAVAILABLE.getStatusCode(), response.getStatus());
     Object responseEntity = response.getEntity();
     assertInstanceOf(ErrorResponse.class, responseEntity);
@@ -209,28 +309,708 @@ class LoadBalancerServiceTest {
   }
 
   @Test
-  void roundRobinWrapsAround() {
-    stubSuccessResponse();
-    when(invocationBuilder.post(any(Entity.class))).thenReturn(successResponse);
+  void deadlineExceededStopsRetrying() {
+    when(appConfig.getRequestDeadlineMs()).thenReturn(50);
+    proxyMetrics = new ProxyMetrics();
+    service = newService();
+
+    when(backendClient.send(any(Backend.class), any(BackendRequest.class)))
+        .thenAnswer(invocation -> {
+          Thread.sleep(100);
+          return badGatewayResponse();
+        });
+
+    Response response = service.proxy(payload, incoming("POST", uriInfo))
+        .toCompletableFuture().join();
+    assertEquals(Status.GATEWAY_TIMEOUT.getStatusCode(), response.getStatus());
+    verify(backendClient, times(1)).send(any(Backend.class), any(BackendRequest.class));
+  }
+
+  @Test
+  void attemptTimeoutIsCappedByRemainingDeadline() {
+    when(appConfig.getRequestDeadlineMs()).thenReturn(500);
+    proxyMetrics = new ProxyMetrics();
+    service = newService();
+    when(backendClient.send(any(Backend.class), requestArgumentCaptor.capture()))
+        .thenReturn(successResponse());
+
+    service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture().join();
+
+    assertTrue(requestArgumentCaptor.getValue().timeout().toMillis() <= 500);
+    long advertisedMs =
+        Long.parseLong(requestArgumentCaptor.getValue().headers().get("X-Request-Timeout-Ms"));
+    assertTrue(advertisedMs > 0 && advertisedMs <= 500);
+  }
+
+  @Test
+  void exhaustedRetryBudgetStopsRetrying() {
+    when(appConfig.getRetryBudgetMaxTokens()).thenReturn(1);
+    when(appConfig.getRetryBudgetRatio()).thenReturn(0.0);
+    proxyMetrics = new ProxyMetrics();
+    service = newService();
+    when(backendClient.send(any(Backend.class), any(BackendRequest.class)))
+        .thenAnswer(invocation -> badGatewayResponse());
+
+    Response first = service.proxy(payload, incoming("POST", uriInfo))
+        .toCompletableFuture().join();
+    Response second = service.proxy(payload, incoming("POST", uriInfo))
+        .toCompletableFuture().join();
+
+    assertEquals(Status.SERVICE_UNAVAILABLE.getStatusCode(), first.getStatus());
+    assertEquals(Status.SERVICE_UNAVAILABLE.getStatusCode(), second.getStatus());
+    // Two primaries plus the single retry the budget allows.
+    verify(backendClient, times(3)).send(any(Backend.class), any(BackendRequest.class));
+  }
+
+  @Test
+  void slowPrimaryIsHedgedAndCancelled() {
+    when(appConfig.isHedgeEnabled()).thenReturn(true);
+    when(appConfig.getHedgePercentile()).thenReturn(95.0);
+    when(appConfig.getHedgeWindowSize()).thenReturn(1);
+    proxyMetrics = new ProxyMetrics();
+    service = newService();
+    Backend[] backends = backendRegistry.snapshot();
+    CompletableFuture<BackendResponse> stuck = new CompletableFuture<>();
+    when(backendClient.send(eq(backends[0]), any(BackendRequest.class)))
+        .thenReturn(successResponse());
+    when(backendClient.send(eq(backends[1]), any(BackendRequest.class)))
+        .thenReturn(stuck);
+    when(backendClient.send(eq(backends[2]), any(BackendRequest.class)))
+        .thenReturn(successResponse());
+
+    // The first response sets the hedge delay.
+    service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture().join();
+    Response response = service.proxy(payload, incoming("POST", uriInfo))
+        .toCompletableFuture().join();
+
+    assertEquals(Status.OK.getStatusCode(), response.getStatus());
+    assertTrue(stuck.isCancelled());
+    assertEquals(0, backends[1].getInFlight());
+  }
+
+  @Test
+  void requestThatCannotBeSentReleasesItsBackend() {
+    Backend backend = backendRegistry.snapshot()[0];
+    when(backendClient.send(eq(backend), any(BackendRequest.class)))
+        .thenThrow(new IllegalArgumentException("invalid URI"));
+
+    CompletableFuture<Response> response =
+        service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture();
+
+    CompletionException failure = assertThrows(CompletionException.class, response::join);
+    assertInstanceOf(IllegalArgumentException.class, failure.getCause());
+    assertEquals(0, backend.getInFlight());
+    verify(backendHealthManager).abandon(backend);
+    verify(backendHealthManager, never()).recordFailure(any(Backend.class), anyLong());
+  }
+
+  @Test
+  void hedgeThatCannotBeSentStillLetsTheRaceFinish() throws Exception {
+    when(appConfig.isHedgeEnabled()).thenReturn(true);
+    when(appConfig.getHedgePercentile()).thenReturn(95.0);
+    when(appConfig.getHedgeWindowSize()).thenReturn(1);
+    proxyMetrics = new ProxyMetrics();
+    service = newService();
+    Backend[] backends = backendRegistry.snapshot();
+    CompletableFuture<BackendResponse> failsLate = new CompletableFuture<>();
+    when(backendClient.send(eq(backends[0]), any(BackendRequest.class)))
+        .thenReturn(successResponse())
+        .thenReturn(successResponse());
+    when(backendClient.send(eq(backends[1]), any(BackendRequest.class)))
+        .thenReturn(failsLate);
+    when(backendClient.send(eq(backends[2]), any(BackendRequest.class)))
+        .thenThrow(new IllegalArgumentException("invalid URI"));
+
+    // The first response sets the hedge delay.
+    service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture().join();
+    CompletableFuture<Response> response =
+        service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture();
+    CompletableFuture.delayedExecutor(200, TimeUnit.MILLISECONDS)
+        .execute(() -> failsLate.complete(badGatewayResponse().join()));
+
+    assertEquals(Status.OK.getStatusCode(), response.get(5, TimeUnit.SECONDS).getStatus());
+    assertEquals(0, backends[2].getInFlight());
+  }
+
+  @Test
+  void passThroughReplaysBodyOnRetryAndStreamsResponse() throws IOException {
+    when(appConfig.getBufferSize()).thenReturn(8);
+    when(appConfig.getBufferPoolSize()).thenReturn(16);
+    when(appConfig.getPassThroughMaxReplayBytes()).thenReturn(1024);
+    proxyMetrics = new ProxyMetrics();
+    service = newService();
+
+    byte[] requestBody = "{\"query\":\"pass-through\"}".getBytes(StandardCharsets.UTF_8);
+
+    List<byte[]> sentBodies = new ArrayList<>();
+    List<CompletableFuture<BackendResponse>> backendResponses =
+        List.of(badGatewayResponse(), successResponse());
+    when(backendClient.send(any(Backend.class), any(BackendRequest.class)))
+        .thenAnswer(invocation -> {
+          BackendRequest request = invocation.getArgument(1);
+          sentBodies.add(PublishedBytes.read(request.body()));
+          return backendResponses.get(sentBodies.size() - 1);
+        });
+
+    Response response = service
+        .proxy(incoming("POST", uriInfo), new ByteArrayInputStream(requestBody))
+        .toCompletableFuture()
+        .join();
+    assertEquals(Status.OK.getStatusCode(), response.getStatus());
+    assertEquals("application/json", response.getMediaType().toString());
+
+    ByteArrayOutputStream streamedResponse = new ByteArrayOutputStream();
+    ((StreamingOutput) response.getEntity()).write(streamedResponse);
+    assertEquals("{\"result\":\"ok\"}", streamedResponse.toString(StandardCharsets.UTF_8));
+
+    assertEquals(2, sentBodies.size());
+    for (byte[] sentBody : sentBodies) {
+      assertArrayEquals(requestBody, sentBody);
+    }
+  }
+
+  @Test
+  void identicalPayloadsAreServedFromCache() {
+    enableCache();
+    when(backendClient.send(any(Backend.class), any(BackendRequest.class)))
+        .thenReturn(successResponse());
+
+    Response first = service
+        .proxy(mapper.createObjectNode().put("a", 1).put("b", 2), incoming("POST", uriInfo))
+        .toCompletableFuture()
+        .join();
+    Response second = service
+        .proxy(mapper.createObjectNode().put("b", 2).put("a", 1), incoming("POST", uriInfo))
+        .toCompletableFuture()
+        .join();
+
+    byte[] expected = "{\"result\":\"ok\"}".getBytes(StandardCharsets.UTF_8);
+    assertArrayEquals(expected, (byte[]) first.getEntity());
+    assertArrayEquals(expected, (byte[]) second.getEntity());
+    verify(backendClient, times(1)).send(any(Backend.class), any(BackendRequest.class));
+    assertTrue(proxyMetrics.scrape(List.of(), List.of())
+                   .contains("lb_cache_requests_total{result=\"hit\"} 1\n"));
+  }
+
+  @Test
+  void concurrentIdenticalMissesShareOneBackendCall() {
+    enableCache();
+    CompletableFuture<BackendResponse> pending = new CompletableFuture<>();
+    when(backendClient.send(any(Backend.class), any(BackendRequest.class)))
+        .thenReturn(pending);
+
+    CompletableFuture<Response> first =
+        service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture();
+    CompletableFuture<Response> second =
+        service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture();
+    pending.complete(successResponse().join());
+
+    assertEquals(Status.OK.getStatusCode(), first.join().getStatus());
+    assertEquals(Status.OK.getStatusCode(), second.join().getStatus());
+    verify(backendClient, times(1)).send(any(Backend.class), any(BackendRequest.class));
+    assertTrue(proxyMetrics.scrape(List.of(), List.of())
+                   .contains("\nlb_coalesced_requests_total 1\n"));
+  }
+
+  @Test
+  void cachedResponsesKeepTheBackendsHeadersButNotItsCookies() {
+    enableCache();
+    when(backendClient.send(any(Backend.class), any(BackendRequest.class)))
+        .thenReturn(CompletableFuture.completedFuture(new BackendResponse(
+            Status.OK.getStatusCode(),
+            HttpHeaders.of(Map.of("Content-Type", List.of("application/json"),
+                                  "ETag", List.of("\"v1\""),
+                                  "Cache-Control", List.of("max-age=60"),
+                                  "Set-Cookie", List.of("session=alice"),
+                                  "Connection", List.of("close")),
+                           (name, value) -> true),
+            new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8)))));
+
+    Response miss = service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture().join();
+    Response hit = service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture().join();
+
+    for (Response response : List.of(miss, hit)) {
+      assertEquals("\"v1\"", response.getHeaderString("ETag"));
+      assertEquals("max-age=60", response.getHeaderString("Cache-Control"));
+      assertNull(response.getHeaderString("Connection"));
+    }
+    assertEquals("session=alice", miss.getHeaderString("Set-Cookie"));
+    assertNull(hit.getHeaderString("Set-Cookie"));
+    verify(backendClient, times(1)).send(any(Backend.class), any(BackendRequest.class));
+  }
+
+  @Test
+  void requestsWithCredentialsGetResponsesOfTheirOwn() {
+    enableCache();
+    when(backendClient.send(any(Backend.class), requestArgumentCaptor.capture()))
+        .thenAnswer(invocation -> successResponse());
+    requestHeaders.add("Authorization", "Bearer alice");
+
+    service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture().join();
+    service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture().join();
+
+    assertEquals(2, requestArgumentCaptor.getAllValues().size());
+    assertEquals("Bearer alice", requestArgumentCaptor.getValue().headers().get("Authorization"));
+    assertTrue(proxyMetrics.scrape(List.of(), List.of())
+                   .contains("lb_cache_requests_total{result=\"miss\"} 0\n"));
+  }
+
+  @Test
+  void cachedResponsesAreKeptApartByTheHeadersTheRouteVariesOn() {
+    when(appConfig.getCacheVary()).thenReturn(Map.of("/bounce", List.of("X-Tenant", "Cookie")));
+    enableCache();
+    when(backendClient.send(any(Backend.class), requestArgumentCaptor.capture()))
+        .thenAnswer(invocation -> successResponse());
+
+    for (String tenant : List.of("acme", "globex", "acme")) {
+      requestHeaders.putSingle("X-Tenant", tenant);
+      requestHeaders.putSingle("Cookie", "session=" + tenant);
+      requestHeaders.putSingle("X-Forwarded-For", "198.51.100.1");
+      service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture().join();
+    }
+
+    List<BackendRequest> sent = requestArgumentCaptor.getAllValues();
+    assertEquals(List.of("acme", "globex"),
+                 sent.stream().map(request -> request.headers().get("X-Tenant")).toList());
+    assertEquals("session=globex", sent.get(1).headers().get("Cookie"));
+    assertEquals("198.51.100.1, " + CLIENT, sent.get(1).headers().get("X-Forwarded-For"));
+    assertTrue(proxyMetrics.scrape(List.of(), List.of())
+                   .contains("lb_cache_requests_total{result=\"hit\"} 1\n"));
+  }
+
+  @Test
+  void singleFlightSharesResponseOnlyWhileInFlight() {
+    when(appConfig.getSingleFlightRoutes()).thenReturn(List.of("/bounce"));
+    enableSingleFlight();
+    CompletableFuture<BackendResponse> pending = new CompletableFuture<>();
+    when(backendClient.send(any(Backend.class), any(BackendRequest.class)))
+        .thenReturn(pending)
+        .thenReturn(successResponse());
+
+    CompletableFuture<Response> first =
+        service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture();
+    CompletableFuture<Response> second =
+        service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture();
+    pending.complete(successResponse().join());
+    Response third = service.proxy(payload, incoming("POST", uriInfo))
+        .toCompletableFuture().join();
+
+    assertEquals(Status.OK.getStatusCode(), first.join().getStatus());
+    assertEquals(Status.OK.getStatusCode(), second.join().getStatus());
+    assertEquals(Status.OK.getStatusCode(), third.getStatus());
+    verify(backendClient, times(2)).send(any(Backend.class), any(BackendRequest.class));
+  }
+
+  @Test
+  void coalescedResponsesCarryTheBackendsHeadersButNotItsCookies() {
+    when(appConfig.getSingleFlightRoutes()).thenReturn(List.of("/bounce"));
+    enableSingleFlight();
+    CompletableFuture<BackendResponse> pending = new CompletableFuture<>();
+    when(backendClient.send(any(Backend.class), any(BackendRequest.class)))
+        .thenReturn(pending);
+
+    CompletableFuture<Response> leader =
+        service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture();
+    CompletableFuture<Response> waiter =
+        service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture();
+    pending.complete(new BackendResponse(
+        Status.OK.getStatusCode(),
+        HttpHeaders.of(Map.of("Content-Type", List.of("application/json"),
+                              "ETag", List.of("\"v1\""),
+                              "Set-Cookie", List.of("session=alice")),
+                       (name, value) -> true),
+        new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8))));
+
+    assertEquals("\"v1\"", leader.join().getHeaderString("ETag"));
+    assertEquals("session=alice", leader.join().getHeaderString("Set-Cookie"));
+    assertEquals("\"v1\"", waiter.join().getHeaderString("ETag"));
+    assertNull(waiter.join().getHeaderString("Set-Cookie"));
+    verify(backendClient, times(1)).send(any(Backend.class), any(BackendRequest.class));
+  }
+
+  @Test
+  void responsesTooLargeToShareAreStreamedAndWaitersCallUpstream() throws IOException {
+    when(appConfig.getBufferSize()).thenReturn(8);
+    when(appConfig.getBufferPoolSize()).thenReturn(16);
+    enableCache();
+    String large = "{\"result\":\"" + "x".repeat(2000) + "\"}";
+    CompletableFuture<BackendResponse> pending = new CompletableFuture<>();
+    when(backendClient.send(any(Backend.class), any(BackendRequest.class)))
+        .thenReturn(pending)
+        .thenAnswer(invocation -> backendResponse(Status.OK.getStatusCode(), large));
+
+    CompletableFuture<Response> leader =
+        service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture();
+    CompletableFuture<Response> waiter =
+        service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture();
+    pending.complete(backendResponse(Status.OK.getStatusCode(), large).join());
+
+    for (Response response : List.of(leader.join(), waiter.join())) {
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      assertInstanceOf(StreamingOutput.class, response.getEntity()).write(body);
+      assertEquals(large, body.toString(StandardCharsets.UTF_8));
+    }
+    service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture().join();
+    verify(backendClient, times(3)).send(any(Backend.class), any(BackendRequest.class));
+    assertTrue(proxyMetrics.scrape(List.of(), List.of())
+                   .contains("\nlb_coalesced_requests_total 0\n"));
+  }
+
+  @Test
+  void singleFlightKeepsClientsApartByCredentialsAndVariedHeaders() {
+    when(appConfig.getSingleFlightRoutes()).thenReturn(List.of("/bounce"));
+    when(appConfig.getSingleFlightVary()).thenReturn(Map.of("/bounce", List.of("X-Tenant")));
+    enableSingleFlight();
+    CompletableFuture<BackendResponse> pending = new CompletableFuture<>();
+    when(backendClient.send(any(Backend.class), requestArgumentCaptor.capture()))
+        .thenReturn(pending)
+        .thenAnswer(invocation -> successResponse());
+
+    requestHeaders.putSingle("X-Tenant", "acme");
+    CompletableFuture<Response> leader =
+        service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture();
+    CompletableFuture<Response> sameTenant =
+        service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture();
+    requestHeaders.putSingle("X-Tenant", "globex");
+    Response otherTenant =
+        service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture().join();
+    requestHeaders.putSingle("X-Tenant", "acme");
+    requestHeaders.putSingle("Cookie", "session=bob");
+    Response withCookie =
+        service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture().join();
+    pending.complete(successResponse().join());
+
+    assertEquals(Status.OK.getStatusCode(), leader.join().getStatus());
+    assertEquals(Status.OK.getStatusCode(), sameTenant.join().getStatus());
+    assertEquals(Status.OK.getStatusCode(), otherTenant.getStatus());
+    assertEquals(Status.OK.getStatusCode(), withCookie.getStatus());
+    List<BackendRequest> sent = requestArgumentCaptor.getAllValues();
+    assertEquals(List.of("acme", "globex", "acme"),
+                 sent.stream().map(request -> request.headers().get("X-Tenant")).toList());
+    assertEquals("session=bob", sent.get(2).headers().get("Cookie"));
+    assertTrue(proxyMetrics.scrape(List.of(), List.of())
+                   .contains("\nlb_coalesced_requests_total 1\n"));
+  }
+
+  @Test
+  void hashKeyPinsRequestsToOneBackendUntilItIsUnhealthy() {
+    when(appConfig.getLoadBalancingStrategy()).thenReturn(StrategyType.MAGLEV);
+    when(appConfig.getHashLoadFactor()).thenReturn(1.25);
+    when(appConfig.getHashKeyHeader()).thenReturn("X-Tenant");
+    when(appConfig.getHashKeyPointer()).thenReturn("/user/id");
+    service = newService();
+    when(backendClient.send(backendArgumentCaptor.capture(), any(BackendRequest.class)))
+        .thenAnswer(invocation -> successResponse());
+    JsonNode keyed = mapper.createObjectNode().set("user", mapper.createObjectNode().put("id", 7));
+
+    for (int i = 0; i < 5; i++) {
+      service.proxy(keyed, incoming("POST", uriInfo)).toCompletableFuture().join();
+    }
+    Backend home = backendArgumentCaptor.getValue();
+    assertEquals(List.of(home, home, home, home, home), backendArgumentCaptor.getAllValues());
+
+    when(backendHealthManager.isHealthy(home)).thenReturn(false);
+    service.proxy(keyed, incoming("POST", uriInfo)).toCompletableFuture().join();
+    Backend failover = backendArgumentCaptor.getValue();
+    assertNotEquals(home, failover);
+
+    requestHeaders.add("X-Tenant", "acme");
+    service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture().join();
+    Backend tenant = backendArgumentCaptor.getValue();
+    service.proxy(keyed, incoming("POST", uriInfo)).toCompletableFuture().join();
+    assertEquals(tenant, backendArgumentCaptor.getValue());
+  }
+
+  @Test
+  void requestsOverTheConcurrencyLimitAreShedExceptCriticalOnes() {
+    enableLimiter(1, 10);
+    CompletableFuture<BackendResponse> pending = new CompletableFuture<>();
+    when(backendClient.send(any(Backend.class), any(BackendRequest.class)))
+        .thenReturn(pending)
+        .thenReturn(successResponse());
+    UriInfo healthUriInfo = mock(UriInfo.class);
+    when(healthUriInfo.getRequestUri()).thenReturn(URI.create("http://lb.example/health"));
+
+    CompletableFuture<Response> first =
+        service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture();
+    Response shed = service.proxy(payload, incoming("POST", uriInfo))
+        .toCompletableFuture().join();
+    Response critical =
+        service.proxy(payload, incoming("POST", healthUriInfo)).toCompletableFuture().join();
+
+    assertEquals(Status.SERVICE_UNAVAILABLE.getStatusCode(), shed.getStatus());
+    assertEquals("2", shed.getHeaderString("Retry-After"));
+    assertEquals(Status.OK.getStatusCode(), critical.getStatus());
+    pending.complete(successResponse().join());
+    assertEquals(Status.OK.getStatusCode(), first.join().getStatus());
+    assertTrue(proxyMetrics.scrape(List.of(), List.of())
+                   .contains("lb_shed_requests_total{limit=\"global\"} 1"));
+  }
+
+  @Test
+  void backendsAtTheirLimitArePassedOver() {
+    enableLimiter(100, 1);
+    List<CompletableFuture<BackendResponse>> pending = new ArrayList<>();
+    when(backendClient.send(backendArgumentCaptor.capture(), any(BackendRequest.class)))
+        .thenAnswer(invocation -> {
+          CompletableFuture<BackendResponse> response = new CompletableFuture<>();
+          pending.add(response);
+          return response;
+        });
+
+    for (int i = 0; i < 3; i++) {
+      service.proxy(payload, incoming("POST", uriInfo));
+    }
+    Response shed = service.proxy(payload, incoming("POST", uriInfo))
+        .toCompletableFuture().join();
+
+    assertEquals(List.of("http://a", "http://b", "http://c"),
+                 backendArgumentCaptor.getAllValues().stream().map(Backend::getUrl).toList());
+    assertEquals(Status.SERVICE_UNAVAILABLE.getStatusCode(), shed.getStatus());
+    assertEquals("2", shed.getHeaderString("Retry-After"));
+    pending.forEach(response -> response.complete(successResponse().join()));
+  }
+
+  @Test
+  void recoveredBackendGetsALowerShareUntilWarmedUp() {
+    when(appConfig.getSlowStartWindowMs()).thenReturn(60_000);
+    when(appConfig.getSlowStartAggression()).thenReturn(1.0);
+    when(appConfig.getSlowStartMinWeightPercent()).thenReturn(10);
+    // Draws cycle through tenths, so a backend at the 10% minimum is admitted one pick in ten.
+    AtomicInteger draws = new AtomicInteger();
+    AtomicBoolean passOverWarming = new AtomicBoolean();
+    service = newService(() -> passOverWarming.get() ? 1 : draws.getAndIncrement() % 10 / 10.0);
+    when(backendClient.send(backendArgumentCaptor.capture(), any(BackendRequest.class)))
+        .thenAnswer(invocation -> successResponse());
+    Backend recovered = backendRegistry.snapshot()[0];
+    recovered.startWarmup();
+
+    for (int i = 0; i < 300; i++) {
+      service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture().join();
+    }
+    long served = backendArgumentCaptor.getAllValues().stream()
+        .filter(backend -> backend == recovered)
+        .count();
+    assertTrue(served > 0 && served < 40, "served " + served);
+
+    passOverWarming.set(true);
+    when(backendHealthManager.isHealthy(backendRegistry.snapshot()[1])).thenReturn(false);
+    when(backendHealthManager.isHealthy(backendRegistry.snapshot()[2])).thenReturn(false);
+    Response response = service.proxy(payload, incoming("POST", uriInfo))
+        .toCompletableFuture().join();
+    assertEquals(Status.OK.getStatusCode(), response.getStatus());
+    assertEquals(recovered, backendArgumentCaptor.getValue());
+  }
+
+  @Test
+  void gzipBackendResponsesAreDecodedWhenCompressionIsEnabled() throws IOException {
+    when(appConfig.isCompressionEnabled()).thenReturn(true);
+    service = newService();
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (OutputStream gzip = new GZIPOutputStream(compressed)) {
+      gzip.write("{\"result\":\"ok\"}".getBytes(StandardCharsets.UTF_8));
+    }
+    when(backendClient.send(any(Backend.class), requestArgumentCaptor.capture()))
+        .thenReturn(CompletableFuture.completedFuture(new BackendResponse(
+            200,
+            HttpHeaders.of(Map.of("Content-Type", List.of("application/json"),
+                                  "Content-Encoding", List.of("gzip")),
+                           (name, value) -> true),
+            new ByteArrayInputStream(compressed.toByteArray()))));
+
+    Response response = service.proxy(payload, incoming("POST", uriInfo))
+        .toCompletableFuture().join();
+
+    assertEquals(successJsonNode, response.getEntity());
+    assertEquals("gzip", requestArgumentCaptor.getValue().headers().get("Accept-Encoding"));
+  }
+
+  @Test
+  void passThroughForwardsEncodedBodiesUntouched() throws IOException {
+    when(appConfig.isCompressionEnabled()).thenReturn(true);
+    when(appConfig.getBufferSize()).thenReturn(8);
+    when(appConfig.getBufferPoolSize()).thenReturn(16);
+    when(appConfig.getPassThroughMaxReplayBytes()).thenReturn(1024);
+    service = newService();
+    requestHeaders.add("Content-Encoding", "zstd");
+    requestHeaders.add("Accept-Encoding", "zstd, gzip");
+    byte[] encoded = {40, -75, 47, -3, 0, 1, 2, 3};
+    List<BackendRequest> sent = new ArrayList<>();
+    List<byte[]> sentBodies = new ArrayList<>();
+    when(backendClient.send(any(Backend.class), any(BackendRequest.class)))
+        .thenAnswer(invocation -> {
+          BackendRequest request = invocation.getArgument(1);
+          sent.add(request);
+          sentBodies.add(PublishedBytes.read(request.body()));
+          return CompletableFuture.completedFuture(new BackendResponse(
+              200,
+              HttpHeaders.of(Map.of("Content-Type", List.of("application/json"),
+                                    "Content-Encoding", List.of("zstd")),
+                             (name, value) -> true),
+              new ByteArrayInputStream(encoded)));
+        });
+
+    Response response = service
+        .proxy(incoming("POST", uriInfo), new ByteArrayInputStream(encoded))
+        .toCompletableFuture()
+        .join();
+
+    assertEquals("zstd", sent.get(0).headers().get("Content-Encoding"));
+    assertEquals("zstd, gzip", sent.get(0).headers().get("Accept-Encoding"));
+    assertArrayEquals(encoded, sentBodies.get(0));
+    assertEquals("zstd", response.getHeaderString("Content-Encoding"));
+    ByteArrayOutputStream streamedResponse = new ByteArrayOutputStream();
+    ((StreamingOutput) response.getEntity()).write(streamedResponse);
+    assertArrayEquals(encoded, streamedResponse.toByteArray());
+  }
+
+  @Test
+  void targetsThatCouldNameAnotherHostAreRejected() {
+    for (String target : List.of("//evil.example/x", "/../x")) {
+      when(uriInfo.getRequestUri()).thenReturn(URI.create("http://lb.example" + target));
+      assertThrows(BadRequestException.class, () -> incoming("GET", uriInfo), target);
+    }
+    when(uriInfo.getRequestUri()).thenReturn(URI.create("http://lb.example/a/..//bounce?q=//x"));
+    when(backendClient.send(any(Backend.class), requestArgumentCaptor.capture()))
+        .thenAnswer(invocation -> successResponse());
+    service.proxy(incoming("GET", uriInfo), new ByteArrayInputStream(new byte[0]))
+        .toCompletableFuture()
+        .join();
+    assertEquals("/bounce?q=//x", requestArgumentCaptor.getValue().path());
+
+    Backend backend = backendRegistry.snapshot()[0];
+    assertEquals(URI.create("http://a/bounce?q=//x"), backend.resolve("/bounce?q=//x"));
+    assertThrows(IllegalArgumentException.class, () -> backend.resolve("//evil.example/x"));
+  }
+
+  @Test
+  void forwardsMethodQueryAndEndToEndHeaders() {
+    when(uriInfo.getRequestUri()).thenReturn(URI.create("http://lb.example/bounce?q=a%20b"));
+    requestHeaders.add("Host", "lb.example");
+    requestHeaders.add("Accept", "text/plain");
+    requestHeaders.add("Connection", "keep-alive, X-Hop");
+    requestHeaders.add("X-Hop", "dropped");
+    requestHeaders.add("Cookie", "a=1");
+    requestHeaders.add("Cookie", "b=2");
+    requestHeaders.add("X-Forwarded-For", "198.51.100.1");
+    requestHeaders.add("X-Request-Timeout-Ms", "60000");
+    when(backendClient.send(any(Backend.class), requestArgumentCaptor.capture()))
+        .thenReturn(CompletableFuture.completedFuture(new BackendResponse(
+            200,
+            HttpHeaders.of(Map.of("Content-Type", List.of("text/plain"),
+                                  "Set-Cookie", List.of("c=3", "d=4"),
+                                  "Keep-Alive", List.of("timeout=5")),
+                           (name, value) -> true),
+            new ByteArrayInputStream("ok".getBytes(StandardCharsets.UTF_8)))));
+
+    Response response = service
+        .proxy(incoming("GET", uriInfo), new ByteArrayInputStream(new byte[0]))
+        .toCompletableFuture()
+        .join();
+
+    BackendRequest sent = requestArgumentCaptor.getValue();
+    assertEquals("GET", sent.method());
+    assertEquals("/bounce?q=a%20b", sent.path());
+    assertEquals(0, sent.body().contentLength());
+    Map<String, String> forwarded = new HashMap<>(sent.headers());
+    assertTrue(Long.parseLong(forwarded.remove("X-Request-Timeout-Ms")) <= 10000);
+    assertEquals(Map.of("Accept", "text/plain",
+                        "Cookie", "a=1; b=2",
+                        "X-Forwarded-For", "198.51.100.1, " + CLIENT,
+                        "X-Forwarded-Proto", "http",
+                        "X-Forwarded-Host", "lb.example"),
+                 forwarded);
+    assertEquals(List.of("c=3", "d=4"), response.getHeaders().get("Set-Cookie"));
+    assertNull(response.getHeaderString("Keep-Alive"));
+  }
+
+  @Test
+  void routedPathsGoToTheirOwnBackends() {
+    when(appConfig.getRoutes()).thenReturn(Map.of("/reports", List.of("http://c")));
+    service = newService();
+    UriInfo reportsUriInfo = mock(UriInfo.class);
+    when(reportsUriInfo.getRequestUri()).thenReturn(URI.create("http://lb.example/reports/daily"));
+    when(backendClient.send(backendArgumentCaptor.capture(), any(BackendRequest.class)))
+        .thenAnswer(invocation -> successResponse());
 
     for (int i = 0; i < 4; i++) {
-      Response ignoredResponse = service.proxy(payload, uriInfo);
+      service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture().join();
+    }
+    service.proxy(payload, incoming("POST", reportsUriInfo)).toCompletableFuture().join();
+
+    List<String> urls = backendArgumentCaptor.getAllValues().stream().map(Backend::getUrl).toList();
+    assertEquals(List.of("http://a", "http://b", "http://a", "http://b", "http://c"), urls);
+  }
+
+  @Test
+  void routesAreMatchedOnThePathThatIsForwarded() {
+    when(appConfig.getRoutes()).thenReturn(Map.of("/reports", List.of("http://c")));
+    service = newService();
+    when(backendClient.send(backendArgumentCaptor.capture(), requestArgumentCaptor.capture()))
+        .thenAnswer(invocation -> successResponse());
+
+    for (String target : List.of("/reports/../bounce", "/bounce/../reports/daily")) {
+      when(uriInfo.getRequestUri()).thenReturn(URI.create("http://lb.example" + target));
+      service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture().join();
+    }
+
+    assertEquals(List.of("/bounce", "/reports/daily"),
+                 requestArgumentCaptor.getAllValues().stream().map(BackendRequest::path).toList());
+    assertEquals(List.of("http://a", "http://c"),
+                 backendArgumentCaptor.getAllValues().stream().map(Backend::getUrl).toList());
+    for (String target : List.of("/reports%2fdaily", "/bounce/%2E%2E/reports")) {
+      when(uriInfo.getRequestUri()).thenReturn(URI.create("http://lb.example" + target));
+      assertThrows(BadRequestException.class, () -> incoming("POST", uriInfo), target);
     }
+  }
 
-    List<URI> allUriArgumentValues = uriArgumentCaptor.getAllValues();
-    assertEquals(4, allUriArgumentValues.size());
+  private void enableLimiter(int limit, int backendLimit) {
+    when(appConfig.isLimiterEnabled()).thenReturn(true);
+    when(appConfig.getLimiterInitialLimit()).thenReturn(limit);
+    when(appConfig.getLimiterMinLimit()).thenReturn(1);
+    when(appConfig.getLimiterMaxLimit()).thenReturn(limit);
+    when(appConfig.getLimiterBackendInitialLimit()).thenReturn(backendLimit);
+    when(appConfig.getLimiterBackendMaxLimit()).thenReturn(backendLimit);
+    when(appConfig.getLimiterRttTolerance()).thenReturn(1.5);
+    when(appConfig.getLimiterLowPriorityShare()).thenReturn(0.5);
+    when(appConfig.getLimiterPriorityRoutes()).thenReturn(Map.of("/health", "critical"));
+    when(appConfig.getLimiterRetryAfterSeconds()).thenReturn(2);
+    service = newService();
+  }
 
-    URI first = allUriArgumentValues.get(0);
-    assertEquals(URI.create("http://a").resolve("/bounce"), first);
+  private void enableCache() {
+    when(appConfig.isCacheEnabled()).thenReturn(true);
+    when(appConfig.getCacheMaxBytes()).thenReturn(1024L * 1024);
+    when(appConfig.getCacheMaxEntryBytes()).thenReturn(1024);
+    when(appConfig.getCacheRoutes()).thenReturn(Map.of("/bounce", 30));
+    enableSingleFlight();
+  }
 
-    URI second = allUriArgumentValues.get(1);
-    assertEquals(URI.create("http://b").resolve("/bounce"), second);
+  private void enableSingleFlight() {
+    when(appConfig.getSingleFlightMaxWaiters()).thenReturn(10);
+    when(appConfig.getSingleFlightMaxPayloadBytes()).thenReturn(1024);
+    when(appConfig.getSingleFlightMaxResponseBytes()).thenReturn(1024);
+    proxyMetrics = new ProxyMetrics();
+    service = newService();
+  }
 
-    URI third = allUriArgumentValues.get(2);
-    assertEquals(URI.create("http://c").resolve("/bounce"), third);
+  @Test
+  void roundRobinWrapsAround() {
+    when(backendClient.send(backendArgumentCaptor.capture(), requestArgumentCaptor.capture()))
+        .thenAnswer(invocation -> successResponse());
+
+    for (int i = 0; i < 4; i++) {
+      Response ignoredResponse =
+          service.proxy(payload, incoming("POST", uriInfo)).toCompletableFuture().join();
+    }
 
-    URI fourth = allUriArgumentValues.get(3);
-    assertEquals(URI.create("http://a").resolve("/bounce"), fourth);
+    assertEquals(List.of("http://a", "http://b", "http://c", "http://a"),
+                 backendArgumentCaptor.getAllValues()
+                     .stream()
+                     .map(Backend::getUrl)
+                     .toList());
+    requestArgumentCaptor.getAllValues()
+        .forEach(request -> assertEquals("/bounce", request.path()));
 
   }
-}
\ No newline at end of file
+}
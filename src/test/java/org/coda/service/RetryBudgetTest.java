@@ -0,0 +1,34 @@
+package org.coda.service;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class RetryBudgetTest {
+
+  @Test
+  void startsFullAndRefillsByRatio() {
+    RetryBudget retryBudget = new RetryBudget(0.5, 2);
+
+    assertTrue(retryBudget.tryWithdraw());
+    assertTrue(retryBudget.tryWithdraw());
+    assertFalse(retryBudget.tryWithdraw());
+
+    retryBudget.deposit();
+    assertFalse(retryBudget.tryWithdraw());
+    retryBudget.deposit();
+    assertTrue(retryBudget.tryWithdraw());
+  }
+
+  @Test
+  void depositsAreCappedAtMaxTokens() {
+    RetryBudget retryBudget = new RetryBudget(1, 1);
+    for (int i = 0; i < 10; i++) {
+      retryBudget.deposit();
+    }
+
+    assertTrue(retryBudget.tryWithdraw());
+    assertFalse(retryBudget.tryWithdraw());
+  }
+}
@@ -0,0 +1,52 @@
+package org.coda.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+
+class SingleFlightTest {
+
+  @Test
+  void waitersShareTheLeadersResult() {
+    SingleFlight<String, String> singleFlight = new SingleFlight<>(10);
+
+    assertNull(singleFlight.join("key"));
+    CompletableFuture<String> waiter = singleFlight.join("key");
+    assertNotNull(waiter);
+    assertNull(singleFlight.join("other"));
+
+    singleFlight.share("key", "result");
+    singleFlight.land("key");
+
+    assertEquals("result", waiter.join());
+    assertNull(singleFlight.join("key"));
+  }
+
+  @Test
+  void landingWithoutSharingReleasesWaitersEmptyHanded() {
+    SingleFlight<String, String> singleFlight = new SingleFlight<>(10);
+    singleFlight.join("key");
+    CompletableFuture<String> waiter = singleFlight.join("key");
+
+    singleFlight.land("key");
+
+    assertNull(waiter.join());
+  }
+
+  @Test
+  void waitersBeyondTheLimitAreTurnedAway() {
+    SingleFlight<String, String> singleFlight = new SingleFlight<>(1);
+    singleFlight.join("key");
+    CompletableFuture<String> waiter = singleFlight.join("key");
+    CompletableFuture<String> turnedAway = singleFlight.join("key");
+
+    assertTrue(turnedAway.isDone());
+    assertNull(turnedAway.join());
+    assertFalse(waiter.isDone());
+  }
+}
@@ -0,0 +1,59 @@
+package org.coda.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.util.concurrent.TimeUnit;
+import org.coda.backend.Backend;
+import org.junit.jupiter.api.Test;
+
+class SlowStartTest {
+
+  private static final long WINDOW = TimeUnit.SECONDS.toNanos(10);
+
+  private static Backend backend() {
+    return new Backend(0, "http://a", 1, WINDOW);
+  }
+
+  @Test
+  void rampsLinearlyOrAggressivelyFromTheMinimum() {
+    SlowStart linear = new SlowStart(WINDOW, 1, 0.1);
+    SlowStart aggressive = new SlowStart(WINDOW, 2, 0.1);
+    Backend backend = backend();
+    backend.startWarmup();
+    long start = backend.getWarmupStartNanos();
+
+    assertEquals(0.1, linear.factor(backend, start), 1e-9);
+    assertEquals(0.25, linear.factor(backend, start + WINDOW / 4), 1e-9);
+    assertEquals(0.5, aggressive.factor(backend, start + WINDOW / 4), 1e-9);
+    assertEquals(1, linear.factor(backend, start + WINDOW));
+    assertEquals(Backend.NOT_WARMING, backend.getWarmupStartNanos());
+    assertEquals(1, linear.factor(backend, start));
+  }
+
+  @Test
+  void backendWarmsUpWhenItTurnsHealthy() {
+    Backend backend = backend();
+    assertEquals(Backend.NOT_WARMING, backend.getWarmupStartNanos());
+
+    backend.recordHealth(false, 1, 1);
+    assertEquals(Backend.NOT_WARMING, backend.getWarmupStartNanos());
+    backend.recordHealth(true, 1, 1);
+    assertNotEquals(Backend.NOT_WARMING, backend.getWarmupStartNanos());
+  }
+
+  @Test
+  void warmingBackendIsAdmittedAsOftenAsItsFactor() {
+    int[] draws = {0};
+    SlowStart slowStart =
+        new SlowStart(TimeUnit.DAYS.toNanos(1), 1, 0.2, () -> draws[0]++ % 100 / 100.0);
+    Backend backend = backend();
+    backend.startWarmup();
+
+    int admitted = 0;
+    for (int i = 0; i < 10_000; i++) {
+      admitted += slowStart.admits(backend) ? 1 : 0;
+    }
+    assertEquals(2_000, admitted);
+  }
+}
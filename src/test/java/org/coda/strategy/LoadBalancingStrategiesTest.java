@@ -0,0 +1,142 @@
+package org.coda.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.coda.backend.Backend;
+import org.junit.jupiter.api.Test;
+
+class LoadBalancingStrategiesTest {
+
+  private static final long DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+  private static Backend[] backends(int... weights) {
+    Backend[] backends = new Backend[weights.length];
+    for (int i = 0; i < weights.length; i++) {
+      backends[i] = new Backend(i, "http://backend-" + i, weights[i], DECAY_NANOS);
+    }
+    return backends;
+  }
+
+  @Test
+  void roundRobinSkipsIneligibleBackends() {
+    LoadBalancingStrategy strategy = LoadBalancingStrategies.create(StrategyType.ROUND_ROBIN);
+    Backend[] backends = backends(1, 1, 1);
+
+    assertEquals(0, strategy.select(backends, index -> true));
+    assertEquals(2, strategy.select(backends, index -> index != 1));
+    assertEquals(0, strategy.select(backends, index -> true));
+    assertEquals(-1, strategy.select(backends, index -> false));
+  }
+
+  @Test
+  void weightedRoundRobinFollowsSmoothSequence() {
+    assertArrayEquals(new int[]{0, 0, 1, 0, 2, 0, 0},
+                      WeightedRoundRobinStrategy.buildSchedule(backends(5, 1, 1)));
+
+    LoadBalancingStrategy strategy =
+        LoadBalancingStrategies.create(StrategyType.WEIGHTED_ROUND_ROBIN);
+    Backend[] backends = backends(2, 4, 0);
+    int[] selected = new int[6];
+    for (int i = 0; i < selected.length; i++) {
+      selected[i] = strategy.select(backends, index -> true);
+    }
+    assertArrayEquals(new int[]{1, 0, 1, 1, 0, 1}, selected);
+  }
+
+  @Test
+  void leastOutstandingRequestsPicksLeastLoadedEligibleBackend() {
+    LoadBalancingStrategy strategy =
+        LoadBalancingStrategies.create(StrategyType.LEAST_OUTSTANDING_REQUESTS);
+    Backend[] backends = backends(1, 1, 1);
+    backends[0].incrementInFlight();
+    backends[0].incrementInFlight();
+    backends[2].incrementInFlight();
+
+    assertEquals(1, strategy.select(backends, index -> true));
+    assertEquals(2, strategy.select(backends, index -> index != 1));
+  }
+
+  @Test
+  void powerOfTwoChoicesNeverPicksTheMostLoadedOfThree() {
+    LoadBalancingStrategy strategy =
+        LoadBalancingStrategies.create(StrategyType.POWER_OF_TWO_CHOICES);
+    Backend[] backends = backends(1, 1, 1);
+    backends[1].incrementInFlight();
+    backends[1].incrementInFlight();
+    backends[2].incrementInFlight();
+
+    for (int i = 0; i < 100; i++) {
+      assertNotEquals(1, strategy.select(backends, index -> true));
+    }
+    assertEquals(1, strategy.select(backends, index -> index == 1));
+    assertEquals(-1, strategy.select(backends, index -> false));
+  }
+
+  @Test
+  void peakEwmaAvoidsTheSlowestBackend() {
+    LoadBalancingStrategy strategy = LoadBalancingStrategies.create(StrategyType.PEAK_EWMA);
+    Backend[] backends = backends(1, 1, 1);
+    backends[0].getLatency().record(TimeUnit.MILLISECONDS.toNanos(5));
+    backends[1].getLatency().record(TimeUnit.MILLISECONDS.toNanos(900));
+    backends[2].getLatency().record(TimeUnit.MILLISECONDS.toNanos(5));
+
+    for (int i = 0; i < 100; i++) {
+      assertNotEquals(1, strategy.select(backends, index -> true));
+    }
+  }
+
+  @Test
+  void maglevSpreadsKeysEvenlyAndMovesOnlyTheKeysOfAnEjectedBackend() {
+    LoadBalancingStrategy strategy = LoadBalancingStrategies.create(StrategyType.MAGLEV);
+    Backend[] backends = backends(1, 1, 1, 1);
+    int keys = 20_000;
+    int[] before = new int[keys];
+    int[] counts = new int[backends.length];
+    for (int key = 0; key < keys; key++) {
+      before[key] = strategy.select(backends, index -> true, KeyHash.of("user-" + key));
+      counts[before[key]]++;
+    }
+    for (int count : counts) {
+      assertTrue(Math.abs(count - keys / 4) < keys / 40, "count " + count);
+    }
+
+    for (int key = 0; key < keys; key++) {
+      int after = strategy.select(backends, index -> index != 2, KeyHash.of("user-" + key));
+      assertNotEquals(2, after);
+      if (before[key] != 2) {
+        assertEquals(before[key], after);
+      }
+    }
+    assertEquals(-1, strategy.select(backends, index -> false, 42));
+  }
+
+  @Test
+  void maglevGivesHeavierBackendsMoreSlots() {
+    int[] lookup = MaglevStrategy.buildLookup(backends(3, 1), MaglevStrategy.tableSize(2));
+    long heavy = Arrays.stream(lookup).filter(owner -> owner == 0).count();
+    assertEquals(0.75, (double) heavy / lookup.length, 0.01);
+  }
+
+  @Test
+  void boundedLoadHashSpillsAHotKeyOverToTheNextBackend() {
+    LoadBalancingStrategy strategy =
+        LoadBalancingStrategies.create(StrategyType.BOUNDED_LOAD_HASH, 1.25);
+    Backend[] backends = backends(1, 1, 1);
+    long key = KeyHash.of("hot");
+    int home = strategy.select(backends, index -> true, key);
+    assertEquals(home, strategy.select(backends, index -> true, key));
+
+    for (int i = 0; i < 4; i++) {
+      backends[home].incrementInFlight();
+    }
+    int spilled = strategy.select(backends, index -> true, key);
+    assertNotEquals(home, spilled);
+    assertEquals(spilled, strategy.select(backends, index -> true, key));
+    assertEquals(spilled, strategy.select(backends, index -> index != home, key));
+  }
+}